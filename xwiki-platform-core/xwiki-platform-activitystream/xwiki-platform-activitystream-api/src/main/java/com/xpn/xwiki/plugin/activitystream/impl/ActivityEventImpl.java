@@ -19,6 +19,7 @@
  */
 package com.xpn.xwiki.plugin.activitystream.impl;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -31,8 +32,13 @@
 /**
  * @version $Id$
  */
-public class ActivityEventImpl implements ActivityEvent
+public class ActivityEventImpl implements ActivityEvent, Serializable
 {
+    /**
+     * Events can be spooled on disk when they cannot be stored in the database right away.
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * ID.
      */
@@ -85,4 +85,31 @@ public boolean useMainStore()
                 (ActivityStreamPlugin) context.getWiki().getPlugin(ActivityStreamPlugin.PLUGIN_NAME, context);
         return Integer.parseInt(plugin.getActivityStreamPreference("usemainstore", "1", context)) == 1;
     }
+
+    /**
+     * @return the maximum time in milliseconds during which the activity stream events are accumulated before being
+     *         stored in the database by batch, 0 to store them synchronously when they are fired (defined by the
+     *         'xwiki.plugin.activitystream.writebehind.delay' option of xwiki.cfg, 0 by default since the queued events
+     *         are lost if the JVM crashes)
+     * @since 9.12RC1
+     */
+    public long getWriteBehindDelay()
+    {
+        XWikiContext context = contextProvider.get();
+
+        return context.getWiki().ParamAsLong("xwiki.plugin.activitystream.writebehind.delay", 0L);
+    }
+
+    /**
+     * @return the maximum number of activity stream events stored in a single batch (defined by the
+     *         'xwiki.plugin.activitystream.writebehind.batchsize' option of xwiki.cfg, 100 by default)
+     * @since 9.12RC1
+     */
+    public int getWriteBehindBatchSize()
+    {
+        XWikiContext context = contextProvider.get();
+
+        return Math.max(1, (int) context.getWiki().ParamAsLong("xwiki.plugin.activitystream.writebehind.batchsize",
+            100L));
+    }
 }
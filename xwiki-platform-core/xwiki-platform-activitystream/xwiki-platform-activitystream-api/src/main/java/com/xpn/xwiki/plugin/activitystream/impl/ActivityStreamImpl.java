@@ -25,11 +25,13 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.hibernate.Query;
 import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +76,7 @@
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStream;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStreamException;
 import com.xpn.xwiki.plugin.activitystream.eventstreambridge.EventConverter;
+import com.xpn.xwiki.plugin.activitystream.internal.ActivityEventRecorder;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.web.Utils;
 
@@ -134,6 +137,11 @@ public class ActivityStreamImpl implements ActivityStream, EventListener
      */
     private ActivityStreamConfiguration configuration;
 
+    /**
+     * Used to store the events in the background.
+     */
+    private ActivityEventRecorder recorder;
+
     /**
      * Set fields related to the document which fired the event in the given event object.
      *
@@ -244,6 +252,9 @@ public void init(XWikiContext context) throws XWikiException
     {
         // Lookup the configuration
         configuration = Utils.getComponent(ActivityStreamConfiguration.class);
+        // Start storing events in the background
+        recorder = Utils.getComponent(ActivityEventRecorder.class);
+        recorder.start(context);
         // Listent to Events.
         ObservationManager observationManager = Utils.getComponent(ObservationManager.class);
         if (observationManager.getListener(getName()) == null) {
@@ -301,37 +312,51 @@ public void addActivityEvent(ActivityEvent event, XWikiDocument doc, XWikiContex
     {
         prepareEvent(event, doc, context);
 
+        List<String> wikis = new ArrayList<String>();
         if (useLocalStore()) {
             // store event in the local database
-            XWikiHibernateStore localHibernateStore = context.getWiki().getHibernateStore();
-            try {
-                localHibernateStore.beginTransaction(context);
-                Session session = localHibernateStore.getSession(context);
-                session.save(event);
-                localHibernateStore.endTransaction(context, true);
-            } catch (XWikiException e) {
-                localHibernateStore.endTransaction(context, false);
-            }
+            wikis.add(context.getWikiId());
         }
-
         if (useMainStore()) {
             // store event in the main database
-            String oriDatabase = context.getWikiId();
-            context.setWikiId(context.getMainXWiki());
-            XWikiHibernateStore mainHibernateStore = context.getWiki().getHibernateStore();
-            try {
-                mainHibernateStore.beginTransaction(context);
-                Session session = mainHibernateStore.getSession(context);
-                session.save(event);
-                mainHibernateStore.endTransaction(context, true);
-            } catch (XWikiException e) {
-                mainHibernateStore.endTransaction(context, false);
-            } finally {
-                context.setWikiId(oriDatabase);
+            wikis.add(context.getMainXWiki());
+        }
+
+        // Store the event in the background when possible so that the document save doesn't have to wait for it. The
+        // listeners are notified only once the event is stored so that they can find it in the database.
+        Runnable onStored = () -> sendEventStreamEvent(new EventStreamAddedEvent(), event);
+        if (this.recorder == null || !(event instanceof ActivityEventImpl)
+            || !this.recorder.record((ActivityEventImpl) event, wikis, onStored)) {
+            for (String wiki : wikis) {
+                storeActivityEvent(event, wiki, context);
             }
+
+            onStored.run();
         }
+    }
 
-        this.sendEventStreamEvent(new EventStreamAddedEvent(), event);
+    /**
+     * Store the passed event in the database of the passed wiki.
+     *
+     * @param event the event to store
+     * @param wiki the wiki in which to store the event
+     * @param context the XWiki context
+     */
+    private void storeActivityEvent(ActivityEvent event, String wiki, XWikiContext context)
+    {
+        String oriDatabase = context.getWikiId();
+        context.setWikiId(wiki);
+        XWikiHibernateStore hibernateStore = context.getWiki().getHibernateStore();
+        try {
+            hibernateStore.beginTransaction(context);
+            Session session = hibernateStore.getSession(context);
+            session.save(event);
+            hibernateStore.endTransaction(context, true);
+        } catch (XWikiException e) {
+            hibernateStore.endTransaction(context, false);
+        } finally {
+            context.setWikiId(oriDatabase);
+        }
     }
 
     @Override
@@ -412,6 +437,14 @@ private ActivityEventImpl loadActivityEvent(ActivityEvent event, boolean bTransa
         ActivityEventImpl act = null;
         String eventId = event.getEventId();
 
+        // The event might not be stored yet
+        if (this.recorder != null) {
+            act = this.recorder.getPendingEvent(eventId);
+            if (act != null) {
+                return act;
+            }
+        }
+
         if (useLocalStore()) {
             // load event from the local database
             XWikiHibernateStore hibstore = context.getWiki().getHibernateStore();
@@ -421,14 +454,7 @@ private ActivityEventImpl loadActivityEvent(ActivityEvent event, boolean bTransa
                     bTransactionMutable = hibstore.beginTransaction(false, context);
                 }
                 Session session = hibstore.getSession(context);
-                Query query =
-                    session
-                        .createQuery("select act.eventId from ActivityEventImpl as act where act.eventId = :eventId");
-                query.setString("eventId", eventId);
-                if (query.uniqueResult() != null) {
-                    act = new ActivityEventImpl();
-                    session.load(act, eventId);
-                }
+                act = (ActivityEventImpl) session.get(ActivityEventImpl.class, eventId);
 
                 if (bTransactionMutable) {
                     hibstore.endTransaction(context, false, false);
@@ -455,14 +481,7 @@ private ActivityEventImpl loadActivityEvent(ActivityEvent event, boolean bTransa
                     bTransactionMutable = hibstore.beginTransaction(false, context);
                 }
                 Session session = hibstore.getSession(context);
-                Query query =
-                    session
-                        .createQuery("select act.eventId from ActivityEventImpl as act where act.eventId = :eventId");
-                query.setString("eventId", eventId);
-                if (query.uniqueResult() != null) {
-                    act = new ActivityEventImpl();
-                    session.load(act, eventId);
-                }
+                act = (ActivityEventImpl) session.get(ActivityEventImpl.class, eventId);
 
                 if (bTransactionMutable) {
                     hibstore.endTransaction(context, false, false);
@@ -487,6 +506,13 @@ private ActivityEventImpl loadActivityEvent(ActivityEvent event, boolean bTransa
     @Override
     public void deleteActivityEvent(ActivityEvent event, XWikiContext context) throws ActivityStreamException
     {
+        // Nothing to delete from the database if the event was not stored yet
+        if (this.recorder != null && this.recorder.cancel(event.getEventId())) {
+            this.sendEventStreamEvent(new EventStreamDeletedEvent(), event);
+
+            return;
+        }
+
         boolean bTransaction = true;
         ActivityEventImpl evImpl = loadActivityEvent(event, true, context);
         String oriDatabase = context.getWikiId();
@@ -652,6 +678,9 @@ public List<ActivityEvent> searchEvents(String fromHql, String hql, boolean filt
         StringBuffer searchHql = new StringBuffer();
         List<ActivityEvent> results;
 
+        // Note that the HQL searches (this one and the ones below) only see the events already stored in the
+        // database: the events still pending in the write-behind queue of the recorder (when enabled) are ignored.
+
         if (filter) {
             searchHql.append("select act from ActivityEventImpl as act, ActivityEventImpl as act2 ");
             searchHql.append(fromHql);
@@ -973,7 +1002,24 @@ public List<ActivityEvent> getRelatedEvents(ActivityEvent event, XWikiContext co
         List<Object> params = new ArrayList<Object>();
         params.add(event.getRequestId());
 
-        return this.searchEvents("", "act.requestId= ? ", false, false, 0, 0, params, context);
+        List<ActivityEvent> events = new ArrayList<ActivityEvent>(
+            this.searchEvents("", "act.requestId= ? ", false, false, 0, 0, params, context));
+
+        // Add the related events which are not stored yet
+        if (this.recorder != null) {
+            Set<String> eventIds = new HashSet<String>();
+            for (ActivityEvent relatedEvent : events) {
+                eventIds.add(relatedEvent.getEventId());
+            }
+            for (ActivityEventImpl pendingEvent : this.recorder.getPendingEvents(
+                pending -> Objects.equals(pending.getRequestId(), event.getRequestId()))) {
+                if (!eventIds.contains(pendingEvent.getEventId())) {
+                    events.add(pendingEvent);
+                }
+            }
+        }
+
+        return events;
     }
 
     @Override
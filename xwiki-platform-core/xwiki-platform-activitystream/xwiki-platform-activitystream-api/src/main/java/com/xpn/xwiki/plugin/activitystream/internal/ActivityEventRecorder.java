@@ -0,0 +1,587 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.activitystream.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityEventImpl;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityStreamConfiguration;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Write-behind storage of the activity stream events: the events are queued and stored in the background by batches,
+ * each batch using a single transaction per wiki, so that saving a document doesn't have to wait for the activity
+ * stream to be updated.
+ * <p>
+ * When a batch can't be stored its events are stored one by one so that a bad event doesn't prevent the others from
+ * being stored. The events which still could not be stored are retried later and, after {@value #MAX_ATTEMPTS}
+ * attempts or when the application is stopped before they could be stored, they are spooled in the permanent
+ * directory and stored again at next startup.
+ * <p>
+ * Write-behind is disabled by default because it trades durability for speed: the queued events are lost if the JVM
+ * crashes before they are stored, and the spooled events are not visible until the next startup. The pending events
+ * can only be read by identifier or by request (see {@link #getPendingEvent(String)} and
+ * {@link #getPendingEvents(Predicate)}), the HQL searches only see the events already stored.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = ActivityEventRecorder.class)
+@Singleton
+public class ActivityEventRecorder extends AbstractXWikiRunnable implements Disposable
+{
+    /**
+     * The maximum number of times we try to store an event before spooling it.
+     */
+    static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * The events which could not be stored are retried after this number of times the write-behind delay.
+     */
+    private static final int RETRY_DELAY_FACTOR = 10;
+
+    /**
+     * The maximum time to wait for the pending events to be stored when stopping.
+     */
+    private static final long STOP_TIMEOUT = 10000L;
+
+    private static final String SPOOL_FILE_PREFIX = "events-";
+
+    private static final String SPOOL_FILE_SUFFIX = ".ser";
+
+    /**
+     * Asks the storing thread to store the events it accumulated and stop.
+     */
+    private static final PendingActivityEvent STOP = new PendingActivityEvent(null, null, null, null, null);
+
+    @Inject
+    private ActivityStreamConfiguration configuration;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Logger logger;
+
+    private final BlockingQueue<PendingActivityEvent> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The events which are not stored yet (queued, being stored or waiting to be retried) indexed by identifier.
+     */
+    private final ConcurrentMap<String, PendingActivityEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    /**
+     * Held by the storing thread while it stores a batch so that an event can't be deleted while it's being stored.
+     */
+    private final Object storeLock = new Object();
+
+    private XWikiContext initialContext;
+
+    private Thread thread;
+
+    /**
+     * An event waiting to be stored.
+     */
+    private static final class PendingActivityEvent implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ActivityEventImpl event;
+
+        /**
+         * The wikis in which the event still has to be stored.
+         */
+        private final Set<String> wikis;
+
+        /**
+         * Called once the event has been stored in all the wikis, lost when the event is spooled.
+         */
+        private final transient Runnable onStored;
+
+        /**
+         * The wiki in which the event has been fired, set in the context when notifying.
+         */
+        private final transient String wiki;
+
+        /**
+         * The user who fired the event, set in the context when notifying.
+         */
+        private final transient DocumentReference userReference;
+
+        private boolean stored;
+
+        private transient int attempts;
+
+        private PendingActivityEvent(ActivityEventImpl event, Collection<String> wikis, Runnable onStored,
+            String wiki, DocumentReference userReference)
+        {
+            this.event = event;
+            this.wikis = wikis != null ? new LinkedHashSet<>(wikis) : null;
+            this.onStored = onStored;
+            this.wiki = wiki;
+            this.userReference = userReference;
+        }
+    }
+
+    /**
+     * Start the storing thread, after having queued the events spooled during the previous execution. Does nothing if
+     * write-behind is disabled or the thread is already started.
+     *
+     * @param context the XWiki context used to initialize the storing thread's context
+     */
+    public synchronized void start(XWikiContext context)
+    {
+        if (this.thread == null && this.configuration.getWriteBehindDelay() > 0) {
+            loadSpool();
+
+            this.initialContext = context.clone();
+            this.thread = new Thread(this, "Activity Stream storing daemon");
+            // The JVM should be allowed to shutdown while this thread is running
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Queue the passed event to be stored in the passed wikis.
+     *
+     * @param event the event to store
+     * @param wikis the wikis in which to store the event
+     * @param onStored called by the storing thread once the event has been stored in all the wikis, with the wiki of
+     *            the event and the current user set in the context
+     * @return false if write-behind is not enabled, in which case the caller must store the event itself
+     */
+    public boolean record(ActivityEventImpl event, List<String> wikis, Runnable onStored)
+    {
+        if (this.thread == null) {
+            return false;
+        }
+
+        XWikiContext xcontext = this.contextProvider.get();
+        String wiki = event.getWiki() != null ? event.getWiki() : xcontext.getWikiId();
+        PendingActivityEvent pendingEvent =
+            new PendingActivityEvent(event, wikis, onStored, wiki, xcontext.getUserReference());
+        this.pendingEvents.put(event.getEventId(), pendingEvent);
+        this.queue.add(pendingEvent);
+
+        return true;
+    }
+
+    /**
+     * @param eventId the identifier of an event
+     * @return the event with the passed identifier if it's not stored yet, {@code null} otherwise
+     */
+    public ActivityEventImpl getPendingEvent(String eventId)
+    {
+        PendingActivityEvent pendingEvent = this.pendingEvents.get(eventId);
+
+        return pendingEvent != null ? pendingEvent.event : null;
+    }
+
+    /**
+     * @param filter the condition the events must match
+     * @return the events matching the passed filter which are not stored yet
+     */
+    public List<ActivityEventImpl> getPendingEvents(Predicate<ActivityEventImpl> filter)
+    {
+        List<ActivityEventImpl> events = new ArrayList<>();
+        for (PendingActivityEvent pendingEvent : this.pendingEvents.values()) {
+            if (filter.test(pendingEvent.event)) {
+                events.add(pendingEvent.event);
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Make sure the event with the passed identifier won't be stored, waiting for the batch being stored, if any.
+     *
+     * @param eventId the identifier of the event
+     * @return true if the event was not stored in any wiki yet, false if it's not pending or if it has already been
+     *         stored in some of the wikis, in which case it must be deleted from the database
+     */
+    public boolean cancel(String eventId)
+    {
+        synchronized (this.storeLock) {
+            PendingActivityEvent pendingEvent = this.pendingEvents.remove(eventId);
+
+            return pendingEvent != null && !pendingEvent.stored;
+        }
+    }
+
+    @Override
+    protected void declareProperties(ExecutionContext executionContext)
+    {
+        this.initialContext.declareInExecutionContext(executionContext);
+        this.initialContext = null;
+    }
+
+    @Override
+    protected void runInternal()
+    {
+        List<PendingActivityEvent> retries = new ArrayList<>();
+        long retryTime = 0;
+
+        boolean stop = false;
+        while (!stop) {
+            List<PendingActivityEvent> batch = new ArrayList<>();
+            if (!retries.isEmpty() && System.currentTimeMillis() >= retryTime) {
+                batch.addAll(retries);
+                retries.clear();
+            }
+
+            try {
+                stop = fillBatch(batch, retries.isEmpty() ? 0 : retryTime);
+            } catch (InterruptedException e) {
+                this.logger.warn("Activity Stream storing thread has been interrupted.");
+                stop = true;
+            }
+
+            store(batch, retries);
+            if (!retries.isEmpty() && retryTime <= System.currentTimeMillis()) {
+                retryTime = System.currentTimeMillis() + this.configuration.getWriteBehindDelay() * RETRY_DELAY_FACTOR;
+            }
+        }
+
+        // Make sure the events which could not be stored are not lost
+        spoolEvents(retries);
+    }
+
+    /**
+     * Wait for events to store and accumulate them until the configured delay expires or the configured number of
+     * events is reached.
+     *
+     * @param retryTime the time at which the failed events must be retried, 0 if there's nothing to retry
+     * @return true if the thread has been asked to stop
+     */
+    private boolean fillBatch(List<PendingActivityEvent> batch, long retryTime) throws InterruptedException
+    {
+        if (batch.isEmpty()) {
+            PendingActivityEvent pendingEvent;
+            if (retryTime > 0) {
+                pendingEvent = this.queue.poll(retryTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (pendingEvent == null) {
+                    // Time to retry
+                    return false;
+                }
+            } else {
+                pendingEvent = this.queue.take();
+            }
+            if (pendingEvent == STOP) {
+                return true;
+            }
+            batch.add(pendingEvent);
+        }
+
+        long deadline = System.currentTimeMillis() + this.configuration.getWriteBehindDelay();
+        int batchSize = this.configuration.getWriteBehindBatchSize();
+        while (batch.size() < batchSize) {
+            PendingActivityEvent pendingEvent =
+                this.queue.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            if (pendingEvent == null) {
+                break;
+            }
+            if (pendingEvent == STOP) {
+                return true;
+            }
+            batch.add(pendingEvent);
+        }
+
+        return false;
+    }
+
+    /**
+     * Store the passed events and notify the ones which are stored in all their wikis.
+     *
+     * @param batch the events to store
+     * @param retries where to put the events to retry later
+     */
+    private void store(List<PendingActivityEvent> batch, List<PendingActivityEvent> retries)
+    {
+        List<PendingActivityEvent> storedEvents = new ArrayList<>();
+
+        synchronized (this.storeLock) {
+            // Skip the events which have been deleted in the meantime
+            batch.removeIf(pendingEvent -> this.pendingEvents.get(pendingEvent.event.getEventId()) != pendingEvent);
+
+            // Group events by wiki to store them using a single transaction per wiki
+            Map<String, List<PendingActivityEvent>> eventsByWiki = new LinkedHashMap<>();
+            for (PendingActivityEvent pendingEvent : batch) {
+                for (String wiki : pendingEvent.wikis) {
+                    eventsByWiki.computeIfAbsent(wiki, k -> new ArrayList<>()).add(pendingEvent);
+                }
+            }
+
+            for (Map.Entry<String, List<PendingActivityEvent>> entry : eventsByWiki.entrySet()) {
+                for (PendingActivityEvent pendingEvent : storeInWiki(entry.getKey(), entry.getValue())) {
+                    pendingEvent.wikis.remove(entry.getKey());
+                    pendingEvent.stored = true;
+                }
+            }
+
+            List<PendingActivityEvent> failedEvents = new ArrayList<>();
+            for (PendingActivityEvent pendingEvent : batch) {
+                if (pendingEvent.wikis.isEmpty()) {
+                    this.pendingEvents.remove(pendingEvent.event.getEventId(), pendingEvent);
+                    storedEvents.add(pendingEvent);
+                } else if (++pendingEvent.attempts < MAX_ATTEMPTS) {
+                    retries.add(pendingEvent);
+                } else {
+                    failedEvents.add(pendingEvent);
+                }
+            }
+
+            if (!failedEvents.isEmpty()) {
+                this.logger.error("Failed to store [{}] activity stream events after [{}] attempts, spooling them",
+                    failedEvents.size(), MAX_ATTEMPTS);
+                spoolEvents(failedEvents);
+            }
+        }
+
+        for (PendingActivityEvent pendingEvent : storedEvents) {
+            if (pendingEvent.onStored != null) {
+                notifyStored(pendingEvent);
+            }
+        }
+    }
+
+    /**
+     * Notify the storage of the passed event in the context of the wiki and the user which fired it, since the
+     * listeners (e.g. the notifications) check the preferences of the current wiki and user.
+     */
+    private void notifyStored(PendingActivityEvent pendingEvent)
+    {
+        XWikiContext xcontext = this.contextProvider.get();
+        String currentWiki = xcontext.getWikiId();
+        DocumentReference currentUser = xcontext.getUserReference();
+        try {
+            xcontext.setWikiId(pendingEvent.wiki);
+            xcontext.setUserReference(pendingEvent.userReference);
+
+            pendingEvent.onStored.run();
+        } catch (Exception e) {
+            this.logger.error("Failed to notify the storage of activity stream event [{}]",
+                pendingEvent.event.getEventId(), e);
+        } finally {
+            xcontext.setWikiId(currentWiki);
+            xcontext.setUserReference(currentUser);
+        }
+    }
+
+    /**
+     * Store the passed events in a single transaction and, if it fails, one by one.
+     *
+     * @return the events which have been stored
+     */
+    private List<PendingActivityEvent> storeInWiki(String wiki, List<PendingActivityEvent> events)
+    {
+        try {
+            storeInWikiTransaction(wiki, events);
+
+            return events;
+        } catch (Exception e) {
+            if (events.size() == 1) {
+                this.logger.warn("Failed to store activity stream event [{}] in wiki [{}], it will be retried later",
+                    events.get(0).event.getEventId(), wiki, e);
+
+                return Collections.emptyList();
+            }
+
+            this.logger.warn("Failed to store [{}] activity stream events in wiki [{}], storing them one by one",
+                events.size(), wiki, e);
+        }
+
+        List<PendingActivityEvent> storedEvents = new ArrayList<>(events.size());
+        for (PendingActivityEvent pendingEvent : events) {
+            try {
+                storeInWikiTransaction(wiki, Collections.singletonList(pendingEvent));
+                storedEvents.add(pendingEvent);
+            } catch (Exception e) {
+                this.logger.warn("Failed to store activity stream event [{}] in wiki [{}], it will be retried later",
+                    pendingEvent.event.getEventId(), wiki, e);
+            }
+        }
+
+        return storedEvents;
+    }
+
+    private void storeInWikiTransaction(String wiki, List<PendingActivityEvent> events) throws XWikiException
+    {
+        XWikiContext xcontext = this.contextProvider.get();
+        String currentWiki = xcontext.getWikiId();
+        try {
+            xcontext.setWikiId(wiki);
+            XWikiHibernateStore hibernateStore = xcontext.getWiki().getHibernateStore();
+            boolean bTransaction = hibernateStore.beginTransaction(xcontext);
+            try {
+                Session session = hibernateStore.getSession(xcontext);
+                int batchSize = this.configuration.getWriteBehindBatchSize();
+                int count = 0;
+                for (PendingActivityEvent pendingEvent : events) {
+                    session.save(pendingEvent.event);
+                    // Send the inserts to the database (batched when hibernate.jdbc.batch_size is set) and don't keep
+                    // the events in the session cache.
+                    if (++count % batchSize == 0) {
+                        session.flush();
+                        session.clear();
+                    }
+                }
+                if (bTransaction) {
+                    hibernateStore.endTransaction(xcontext, true);
+                    bTransaction = false;
+                }
+            } finally {
+                if (bTransaction) {
+                    hibernateStore.endTransaction(xcontext, false);
+                }
+            }
+        } finally {
+            xcontext.setWikiId(currentWiki);
+        }
+    }
+
+    private File getSpoolDirectory()
+    {
+        return new File(this.environment.getPermanentDirectory(), "activitystream/spool");
+    }
+
+    /**
+     * Spool the passed events (with the wikis where they are not stored yet), skipping the deleted ones.
+     */
+    private void spoolEvents(List<PendingActivityEvent> toSpool)
+    {
+        List<PendingActivityEvent> events = new ArrayList<>(toSpool.size());
+        for (PendingActivityEvent pendingEvent : toSpool) {
+            if (this.pendingEvents.remove(pendingEvent.event.getEventId(), pendingEvent)) {
+                events.add(pendingEvent);
+            }
+        }
+
+        if (events.isEmpty()) {
+            return;
+        }
+
+        File directory = getSpoolDirectory();
+        File file = new File(directory, SPOOL_FILE_PREFIX + System.currentTimeMillis() + '-' + UUID.randomUUID()
+            + SPOOL_FILE_SUFFIX);
+        try {
+            FileUtils.forceMkdir(directory);
+            try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file))) {
+                output.writeObject(new ArrayList<>(events));
+            }
+        } catch (IOException e) {
+            this.logger.error("Failed to spool [{}] activity stream events in [{}], they are lost", events.size(),
+                file, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadSpool()
+    {
+        File[] files = getSpoolDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.getName().startsWith(SPOOL_FILE_PREFIX) && file.getName().endsWith(SPOOL_FILE_SUFFIX)) {
+                try (ObjectInputStream input = new ObjectInputStream(new FileInputStream(file))) {
+                    for (PendingActivityEvent pendingEvent : (List<PendingActivityEvent>) input.readObject()) {
+                        this.pendingEvents.put(pendingEvent.event.getEventId(), pendingEvent);
+                        this.queue.add(pendingEvent);
+                    }
+                } catch (Exception e) {
+                    this.logger.error("Failed to read the spooled activity stream events from [{}]", file, e);
+                    continue;
+                }
+
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        Thread storingThread;
+        synchronized (this) {
+            storingThread = this.thread;
+            this.thread = null;
+        }
+
+        if (storingThread != null) {
+            // Store what's still in the queue before stopping
+            this.queue.add(STOP);
+            try {
+                storingThread.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Make sure the events which could not be stored are not lost
+        List<PendingActivityEvent> remaining = new ArrayList<>();
+        this.queue.drainTo(remaining);
+        remaining.removeIf(pendingEvent -> pendingEvent == STOP);
+        spoolEvents(remaining);
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.activitystream.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityEventImpl;
+import com.xpn.xwiki.plugin.activitystream.impl.ActivityStreamConfiguration;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.web.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ActivityEventRecorder}.
+ *
+ * @version $Id$
+ */
+public class ActivityEventRecorderTest
+{
+    private static final List<String> WIKIS = Arrays.asList("wiki1", "wiki2");
+
+    private static final long TIMEOUT = 10000L;
+
+    @Rule
+    public final MockitoComponentMockingRule<ActivityEventRecorder> mocker =
+        new MockitoComponentMockingRule<>(ActivityEventRecorder.class);
+
+    private final File permanentDirectory = new File("target/test-" + System.currentTimeMillis());
+
+    private XWikiContext xcontext;
+
+    /**
+     * The events saved in the database, as {@code wiki:eventId}.
+     */
+    private final List<String> saved = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * The identifiers of the events for which the listeners have been notified.
+     */
+    private final BlockingQueue<String> notified = new LinkedBlockingQueue<>();
+
+    /**
+     * The identifiers of the events which can't be saved.
+     */
+    private final Set<String> failingEvents = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Block the storing thread when saving the event with the identifier {@link #blockedEvent}.
+     */
+    private CountDownLatch blockingLatch = new CountDownLatch(0);
+
+    private final CountDownLatch blockedLatch = new CountDownLatch(1);
+
+    private String blockedEvent;
+
+    /**
+     * The identifiers of the events the storing thread tried to save.
+     */
+    private final Set<String> attempted = Collections.synchronizedSet(new HashSet<String>());
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        // The storing thread initializes its execution context using Utils
+        Utils.setComponentManager(this.mocker);
+        this.mocker.registerMockComponent(Execution.class);
+        this.mocker.registerMockComponent(ExecutionContextManager.class);
+
+        ActivityStreamConfiguration configuration =
+            this.mocker.registerMockComponent(ActivityStreamConfiguration.class);
+        when(configuration.getWriteBehindDelay()).thenReturn(10L);
+        when(configuration.getWriteBehindBatchSize()).thenReturn(3);
+
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory);
+
+        XWiki xwiki = mock(XWiki.class);
+        this.xcontext = new XWikiContext();
+        this.xcontext.setWiki(xwiki);
+        this.xcontext.setWikiId("xwiki");
+
+        Provider<XWikiContext> contextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        when(contextProvider.get()).thenReturn(this.xcontext);
+
+        XWikiHibernateStore hibernateStore = mock(XWikiHibernateStore.class);
+        when(xwiki.getHibernateStore()).thenReturn(hibernateStore);
+        when(hibernateStore.beginTransaction(any(XWikiContext.class))).thenReturn(true);
+        Session session = mock(Session.class);
+        when(hibernateStore.getSession(any(XWikiContext.class))).thenReturn(session);
+        when(session.save(any())).then(invocation -> {
+            String eventId = ((ActivityEventImpl) invocation.getArgument(0)).getEventId();
+            this.attempted.add(eventId);
+            if (eventId.equals(this.blockedEvent)) {
+                this.blockedLatch.countDown();
+                this.blockingLatch.await();
+            }
+            if (this.failingEvents.contains(eventId)) {
+                throw new HibernateException("Failed to save [" + eventId + "]");
+            }
+            this.saved.add(this.xcontext.getWikiId() + ':' + eventId);
+            return eventId;
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.mocker.getComponentUnderTest().start(this.xcontext);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.blockingLatch.countDown();
+        this.mocker.getComponentUnderTest().dispose();
+        FileUtils.deleteDirectory(this.permanentDirectory);
+    }
+
+    private ActivityEventImpl record(String eventId) throws Exception
+    {
+        ActivityEventImpl event = new ActivityEventImpl();
+        event.setEventId(eventId);
+        event.setRequestId("request");
+
+        assertTrue(this.mocker.getComponentUnderTest().record(event, WIKIS, () -> this.notified.add(eventId)));
+
+        return event;
+    }
+
+    private void assertNotified(String... eventIds) throws Exception
+    {
+        Set<String> expected = new HashSet<>(Arrays.asList(eventIds));
+        Set<String> actual = new HashSet<>();
+        while (actual.size() < expected.size()) {
+            String eventId = this.notified.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull("Timeout while waiting for the events to be stored", eventId);
+            actual.add(eventId);
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    private void assertSaved(String eventId)
+    {
+        for (String wiki : WIKIS) {
+            assertTrue(this.saved.contains(wiki + ':' + eventId));
+        }
+    }
+
+    private File[] getSpoolFiles()
+    {
+        File[] files = new File(this.permanentDirectory, "activitystream/spool").listFiles();
+
+        return files != null ? files : new File[0];
+    }
+
+    @Test
+    public void recordReturnsFalseWhenNotStarted() throws Exception
+    {
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        recorder.dispose();
+
+        assertFalse(recorder.record(new ActivityEventImpl(), WIKIS, null));
+    }
+
+    @Test
+    public void eventsAreStoredInAllWikisAndNotifiedOnceStored() throws Exception
+    {
+        for (int i = 0; i < 7; i++) {
+            record("event" + i);
+        }
+
+        assertNotified("event0", "event1", "event2", "event3", "event4", "event5", "event6");
+
+        for (int i = 0; i < 7; i++) {
+            assertSaved("event" + i);
+            assertNull(this.mocker.getComponentUnderTest().getPendingEvent("event" + i));
+        }
+        assertEquals(14, this.saved.size());
+    }
+
+    @Test
+    public void listenersAreNotifiedInTheContextOfTheEvent() throws Exception
+    {
+        DocumentReference userReference = new DocumentReference("wiki1", "XWiki", "User");
+        this.xcontext.setUserReference(userReference);
+
+        ActivityEventImpl event = new ActivityEventImpl();
+        event.setEventId("event");
+        event.setWiki("wiki1");
+        BlockingQueue<Object> notificationContext = new LinkedBlockingQueue<>();
+        this.mocker.getComponentUnderTest().record(event, WIKIS, () -> {
+            notificationContext.add(this.xcontext.getWikiId());
+            notificationContext.add(this.xcontext.getUserReference());
+        });
+
+        // The storing thread context doesn't have the user
+        this.xcontext.setUserReference(null);
+
+        assertEquals("wiki1", notificationContext.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(userReference, notificationContext.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pendingEventsCanBeReadUntilStored() throws Exception
+    {
+        this.blockingLatch = new CountDownLatch(1);
+        this.blockedEvent = "event";
+
+        ActivityEventImpl event = record("event");
+        assertTrue(this.blockedLatch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        assertEquals(event, recorder.getPendingEvent("event"));
+        assertEquals(Arrays.asList(event), recorder.getPendingEvents(e -> "request".equals(e.getRequestId())));
+        assertTrue(recorder.getPendingEvents(e -> "other".equals(e.getRequestId())).isEmpty());
+        assertTrue(this.notified.isEmpty());
+
+        this.blockingLatch.countDown();
+
+        assertNotified("event");
+        assertNull(recorder.getPendingEvent("event"));
+    }
+
+    @Test
+    public void cancelledEventIsNotStored() throws Exception
+    {
+        this.blockingLatch = new CountDownLatch(1);
+        this.blockedEvent = "first";
+
+        record("first");
+        assertTrue(this.blockedLatch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        record("cancelled");
+
+        // Cancelling waits for the batch being stored
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> cancelled = executor.submit(() -> this.mocker.getComponentUnderTest().cancel("cancelled"));
+            this.blockingLatch.countDown();
+            assertTrue(cancelled.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Events are stored in order so the cancelled event would be stored before this one
+        record("last");
+        assertNotified("first", "last");
+
+        assertFalse(this.saved.contains("wiki1:cancelled"));
+        assertFalse(this.mocker.getComponentUnderTest().cancel("first"));
+    }
+
+    @Test
+    public void failingEventDoesntPreventTheOthersFromBeingStoredAndIsRetried() throws Exception
+    {
+        this.failingEvents.add("bad");
+
+        record("good1");
+        record("bad");
+        record("good2");
+
+        assertNotified("good1", "good2");
+        assertSaved("good1");
+        assertSaved("good2");
+        assertNotNull(this.mocker.getComponentUnderTest().getPendingEvent("bad"));
+
+        // The database is working again
+        this.failingEvents.clear();
+
+        assertNotified("bad");
+        assertSaved("bad");
+        assertNull(this.mocker.getComponentUnderTest().getPendingEvent("bad"));
+    }
+
+    @Test
+    public void eventsAreSpooledAfterTooManyAttemptsAndStoredAtNextStartup() throws Exception
+    {
+        this.failingEvents.add("bad");
+
+        record("bad");
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (getSpoolFiles().length == 0) {
+            assertTrue("Timeout while waiting for the event to be spooled", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertNull(this.mocker.getComponentUnderTest().getPendingEvent("bad"));
+
+        // Restart with a working database
+        this.failingEvents.clear();
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        recorder.dispose();
+        recorder.start(this.xcontext);
+
+        deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.saved.size() < WIKIS.size()) {
+            assertTrue("Timeout while waiting for the spooled event", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertSaved("bad");
+        assertEquals(0, getSpoolFiles().length);
+    }
+
+    @Test
+    public void eventsWaitingToBeRetriedAreSpooledWhenStopping() throws Exception
+    {
+        this.failingEvents.add("event");
+
+        record("event");
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!this.attempted.contains("event")) {
+            assertTrue("Timeout while waiting for the first attempt", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        ActivityEventRecorder recorder = this.mocker.getComponentUnderTest();
+        recorder.dispose();
+
+        assertEquals(1, getSpoolFiles().length);
+        assertNull(recorder.getPendingEvent("event"));
+
+        // The spooled event is queued again at next startup
+        this.blockingLatch = new CountDownLatch(1);
+        this.blockedEvent = "event";
+        recorder.start(this.xcontext);
+
+        assertEquals("event", recorder.getPendingEvent("event").getEventId());
+        assertEquals(0, getSpoolFiles().length);
+    }
+}
@@ -20,23 +20,34 @@
 package org.xwiki.extension.xar.internal.handler.packager;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.repository.InstalledExtensionRepository;
 import org.xwiki.extension.xar.XarExtensionExtension;
@@ -49,6 +60,9 @@
 import org.xwiki.filter.input.DefaultInputStreamInputSource;
 import org.xwiki.filter.instance.output.DocumentInstanceOutputProperties;
 import org.xwiki.filter.xar.input.XARInputProperties;
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.event.LoggerListener;
 import org.xwiki.logging.marker.BeginTranslationMarker;
 import org.xwiki.logging.marker.EndTranslationMarker;
 import org.xwiki.logging.marker.TranslationMarker;
@@ -63,7 +77,6 @@
 import org.xwiki.xar.XarEntry;
 import org.xwiki.xar.XarException;
 import org.xwiki.xar.XarFile;
-import org.xwiki.xar.internal.model.XarModel;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -72,6 +85,8 @@
 import com.xpn.xwiki.internal.event.XARImportedEvent;
 import com.xpn.xwiki.internal.event.XARImportingEvent;
 import com.xpn.xwiki.internal.filter.XWikiDocumentFilterUtils;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
 
 /**
  * Default implementation of {@link Packager}.
@@ -98,6 +113,11 @@
     private static final TranslationMarker LOG_DELETEDDOCUMENT_FAILURE =
         new TranslationMarker("extension.xar.log.delete.document.failure");
 
+    /**
+     * The maximum number of documents parsed in advance and not imported in any wiki yet, per parser thread.
+     */
+    private static final int PARSED_DOCUMENTS_PER_PARSER = 5;
+
     @Inject
     @Named("explicit")
     private DocumentReferenceResolver<EntityReference> resolver;
@@ -130,6 +150,12 @@
     @Named(XarExtensionHandler.TYPE)
     private InstalledExtensionRepository installedXARs;
 
+    @Inject
+    private XarImportConfiguration importConfiguration;
+
+    @Inject
+    private LoggerManager loggerManager;
+
     private XarInstalledExtensionRepository getXarInstalledExtensionRepository()
     {
         return (XarInstalledExtensionRepository) this.installedXARs;
@@ -138,34 +164,165 @@ private XarInstalledExtensionRepository getXarInstalledExtensionRepository()
     public void importXAR(String comment, File xarFile, PackageConfiguration configuration)
         throws IOException, XWikiException, XarException, WikiManagerException
     {
+        List<WikiReference> wikis;
         if (configuration.getWiki() == null) {
-            Collection<String> wikis = this.wikiDescriptors.getAllIds();
+            Collection<String> wikiIds = this.wikiDescriptors.getAllIds();
 
-            for (String subwiki : wikis) {
-                importXARToWiki(comment, xarFile, new WikiReference(subwiki), configuration);
+            wikis = new ArrayList<>(wikiIds.size());
+            for (String subwiki : wikiIds) {
+                wikis.add(new WikiReference(subwiki));
             }
         } else {
-            importXARToWiki(comment, xarFile, new WikiReference(configuration.getWiki()), configuration);
+            wikis = Collections.singletonList(new WikiReference(configuration.getWiki()));
+        }
+
+        // Index the package once and read the entries to import with random access
+        try (XarFile xar = new XarFile(xarFile)) {
+            List<ParsedXarEntry> entries = new ArrayList<>(xar.getEntries().size());
+            for (XarEntry entry : xar.getEntries()) {
+                // Only import what should be imported
+                if (configuration.getEntriesToImport() == null
+                    || configuration.getEntriesToImport().contains(entry.getEntryName())) {
+                    entries.add(new ParsedXarEntry(entry, wikis.size()));
+                }
+            }
+
+            if (!entries.isEmpty() && !wikis.isEmpty()) {
+                importXAR(comment, xar, entries, wikis, configuration);
+            }
         }
     }
 
-    private XarMergeResult importXARToWiki(String comment, File xarFile, WikiReference wikiReference,
+    private void importXAR(String comment, XarFile xar, List<ParsedXarEntry> entries, List<WikiReference> wikis,
         PackageConfiguration configuration) throws IOException, XarException, XWikiException
     {
-        FileInputStream fis = new FileInputStream(xarFile);
+        if (wikis.size() == 1) {
+            // Nothing to share between wikis: parse and import the documents one at a time
+            importXARToWiki(comment, xar, entries, wikis.get(0), configuration);
+
+            return;
+        }
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        // Parse each document only once in the background, whatever the number of wikis in which it's imported. The
+        // documents are parsed for the first wiki and copied for the other ones.
+        int parseThreadCount = Math.min(this.importConfiguration.getParseThreadCount(), entries.size());
+        // Don't parse too far ahead of the import, the parsed documents are kept until all the wikis got them
+        Semaphore readAhead = new Semaphore(parseThreadCount * PARSED_DOCUMENTS_PER_PARSER);
+        AtomicBoolean stopParsing = new AtomicBoolean();
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(parseThreadCount,
+            new BasicThreadFactory.Builder().namingPattern("XAR import parser thread %d").daemon(true).build());
         try {
-            return importXARToWiki(comment, fis, wikiReference, configuration);
+            for (int i = 0; i < parseThreadCount; ++i) {
+                parseExecutor.execute(
+                    new XarEntryParser(xcontext.clone(), xar, entries, wikis.get(0), readAhead, stopParsing));
+            }
+
+            // Conflicts can only be resolved in the job thread
+            int wikiThreadCount = configuration.isInteractive() ? 1
+                : Math.min(this.importConfiguration.getWikiThreadCount(), wikis.size());
+            if (wikiThreadCount > 1) {
+                importXARToWikis(comment, xar, entries, wikis, wikiThreadCount, configuration);
+            } else {
+                for (WikiReference wikiReference : wikis) {
+                    importXARToWiki(comment, xar, entries, wikiReference, configuration);
+                }
+            }
         } finally {
-            fis.close();
+            // The parsers must be done with the package before it's closed: let them finish the entry they're parsing
+            stopParsing.set(true);
+            readAhead.release(parseThreadCount);
+            parseExecutor.shutdown();
+            awaitTermination(parseExecutor);
         }
     }
 
-    private XarMergeResult importXARToWiki(String comment, InputStream xarInputStream, WikiReference wikiReference,
-        PackageConfiguration configuration) throws IOException, XarException, XWikiException
+    private void awaitTermination(ExecutorService executor)
     {
-        XarMergeResult mergeResult = new XarMergeResult();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
 
-        ZipArchiveInputStream zis = new ZipArchiveInputStream(xarInputStream);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void importXARToWikis(String comment, XarFile xar, List<ParsedXarEntry> entries, List<WikiReference> wikis,
+        int wikiThreadCount, PackageConfiguration configuration) throws IOException, XarException, XWikiException
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        ExecutorService wikiExecutor = Executors.newFixedThreadPool(wikiThreadCount,
+            new BasicThreadFactory.Builder().namingPattern("XAR import thread %d").daemon(true).build());
+        List<WikiImporter> importers = new ArrayList<>(wikis.size());
+        boolean interrupted = false;
+        try {
+            List<Future<?>> futures = new ArrayList<>(wikis.size());
+            for (WikiReference wikiReference : wikis) {
+                WikiImporter importer =
+                    new WikiImporter(xcontext.clone(), comment, xar, entries, wikiReference, configuration);
+                importers.add(importer);
+                futures.add(wikiExecutor.submit(importer));
+            }
+
+            // Wait for all the wiki imports, even when some of them failed
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    futures.get(i).get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    for (Future<?> future : futures) {
+                        future.cancel(true);
+                    }
+                } catch (CancellationException e) {
+                    // Cancelled because the current thread has been interrupted
+                } catch (ExecutionException e) {
+                    importers.get(i).error = new XarException(
+                        "Failed to import XAR [" + xar + "] in wiki [" + wikis.get(i) + "]", e.getCause());
+                }
+            }
+        } finally {
+            // The wiki imports must be done with the package before it's closed
+            wikiExecutor.shutdownNow();
+            awaitTermination(wikiExecutor);
+        }
+
+        // Forward the log of each wiki import to the job and report the first failure
+        Exception error = null;
+        for (WikiImporter importer : importers) {
+            importer.logs.log(this.logger);
+
+            if (error == null) {
+                error = importer.error;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+
+            throw new XarException("Interrupted while importing XAR [" + xar + "]", error);
+        } else if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof XarException) {
+            throw (XarException) error;
+        } else if (error instanceof XWikiException) {
+            throw (XWikiException) error;
+        } else if (error != null) {
+            throw new XarException("Failed to import XAR [" + xar + "]", error);
+        }
+    }
+
+    private XarMergeResult importXARToWiki(String comment, XarFile xar, List<ParsedXarEntry> entries,
+        WikiReference wikiReference, PackageConfiguration configuration) throws IOException, XarException, XWikiException
+    {
+        XarMergeResult mergeResult = new XarMergeResult();
 
         XWikiContext xcontext = this.xcontextProvider.get();
 
@@ -175,17 +332,11 @@ private XarMergeResult importXARToWiki(String comment, InputStream xarInputStrea
 
             this.observation.notify(new XARImportingEvent(), null, xcontext);
 
-            for (ArchiveEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
-                if (!entry.isDirectory()) {
-                    // Only import what should be imported
-                    if (!entry.getName().equals(XarModel.PATH_PACKAGE) && (configuration.getEntriesToImport() == null
-                        || configuration.getEntriesToImport().contains(entry.getName()))) {
-                        XarEntryMergeResult entityMergeResult =
-                            importDocumentToWiki(comment, wikiReference, zis, configuration);
-                        if (entityMergeResult != null) {
-                            mergeResult.addMergeResult(entityMergeResult);
-                        }
-                    }
+            for (ParsedXarEntry entry : entries) {
+                XarEntryMergeResult entityMergeResult =
+                    importDocumentToWiki(comment, xar, entry, wikiReference, configuration);
+                if (entityMergeResult != null) {
+                    mergeResult.addMergeResult(entityMergeResult);
                 }
             }
         } finally {
@@ -197,16 +348,22 @@ private XarMergeResult importXARToWiki(String comment, InputStream xarInputStrea
         return mergeResult;
     }
 
-    private XarEntryMergeResult importDocumentToWiki(String comment, WikiReference wikiReference,
-        InputStream inputStream, PackageConfiguration configuration) throws XWikiException, XarException, IOException
+    private XarEntryMergeResult importDocumentToWiki(String comment, XarFile xar, ParsedXarEntry entry,
+        WikiReference wikiReference, PackageConfiguration configuration) throws XWikiException, XarException, IOException
     {
         XWikiContext xcontext = this.xcontextProvider.get();
 
         XWikiDocument nextDocument;
         try {
-            nextDocument = getXWikiDocument(inputStream, wikiReference);
+            nextDocument = entry.getDocument(xar, wikiReference);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XarException("Interrupted while reading entry [" + entry.entry + "]", e);
         } catch (Exception e) {
-            this.logger.error("Failed to parse document", e);
+            // The document is parsed only once for all the wikis, so report the original error in the log of each wiki
+            this.logger.error("Failed to parse document [{}]: {}", entry.entry.getEntryName(),
+                ExceptionUtils.getRootCauseMessage(e), e);
 
             return null;
         }
@@ -485,4 +642,256 @@ private void getDocumentReferencesFromWiki(List<DocumentReference> documents, Co
             }
         }
     }
+
+    private XWikiDocument copyDocument(XWikiDocument document, WikiReference wikiReference)
+    {
+        DocumentReference reference = document.getDocumentReference();
+        if (reference.getWikiReference().equals(wikiReference)) {
+            return document.clone();
+        }
+
+        XWikiDocument copy = document.duplicate(reference.setWikiReference(wikiReference));
+
+        // Unlike a standard copy, the imported document should keep the identity of its class and objects
+        copy.getXClass().setCustomMapping(document.getXClass().getCustomMapping());
+        for (List<BaseObject> objects : document.getXObjects().values()) {
+            for (BaseObject object : objects) {
+                if (object != null) {
+                    BaseObject copiedObject = copy.getXObject(object.getRelativeXClassReference(), object.getNumber());
+                    if (copiedObject != null) {
+                        copiedObject.setGuid(object.getGuid());
+                    }
+                }
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * An entry of the XAR package to import, parsed only once whatever the number of wikis in which it's imported.
+     * 
+     * @version $Id$
+     */
+    private final class ParsedXarEntry
+    {
+        private final XarEntry entry;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private final CompletableFuture<XWikiDocument> document = new CompletableFuture<>();
+
+        /**
+         * The number of wikis which did not get the document yet, guarded by {@link #document}.
+         */
+        private int remainingWikis;
+
+        /**
+         * The read-ahead permit taken by the parser of the entry, if any, guarded by {@link #document}.
+         */
+        private Semaphore readAhead;
+
+        ParsedXarEntry(XarEntry entry, int wikiCount)
+        {
+            this.entry = entry;
+            this.remainingWikis = wikiCount;
+        }
+
+        boolean isClaimed()
+        {
+            return this.claimed.get();
+        }
+
+        /**
+         * @return true if the current thread is in charge of parsing the entry
+         */
+        boolean claim()
+        {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        void parse(XarFile xar, WikiReference wikiReference)
+        {
+            try (InputStream stream = xar.getInputStream(this.entry)) {
+                this.document.complete(getXWikiDocument(stream, wikiReference));
+            } catch (Exception e) {
+                this.document.completeExceptionally(e);
+            }
+        }
+
+        XWikiDocument getDocument(XarFile xar, WikiReference wikiReference) throws XarException, InterruptedException
+        {
+            // Don't wait for the parsers if none of them took care of this entry yet
+            if (claim()) {
+                parse(xar, wikiReference);
+            }
+
+            try {
+                XWikiDocument parsedDocument = this.document.get();
+
+                synchronized (this.document) {
+                    return use(parsedDocument, wikiReference);
+                }
+            } catch (ExecutionException e) {
+                synchronized (this.document) {
+                    use(null, wikiReference);
+                }
+
+                // Each wiki gets the original parsing error
+                throw new XarException("Failed to read entry [" + this.entry + "]", e.getCause());
+            }
+        }
+
+        /**
+         * Each wiki gets its own copy of the document since it's modified during the import, except the last one which
+         * can take the parsed document when it targets the same wiki. The parsed document is released once all the
+         * wikis got it.
+         */
+        private XWikiDocument use(XWikiDocument parsedDocument, WikiReference wikiReference)
+        {
+            // The parsers can go on as soon as the first wiki got the document
+            if (this.readAhead != null) {
+                this.readAhead.release();
+                this.readAhead = null;
+            }
+
+            XWikiDocument result = null;
+
+            boolean last = --this.remainingWikis == 0;
+            if (parsedDocument != null) {
+                if (last && parsedDocument.getDocumentReference().getWikiReference().equals(wikiReference)) {
+                    result = parsedDocument;
+                } else {
+                    result = copyDocument(parsedDocument, wikiReference);
+                }
+            }
+
+            if (last) {
+                this.document.obtrudeValue(null);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Parse the entries of a XAR package in the background.
+     * 
+     * @version $Id$
+     */
+    private class XarEntryParser extends AbstractXWikiRunnable
+    {
+        private final XWikiContext xcontext;
+
+        private final XarFile xar;
+
+        private final List<ParsedXarEntry> entries;
+
+        private final WikiReference wikiReference;
+
+        private final Semaphore readAhead;
+
+        private final AtomicBoolean stop;
+
+        XarEntryParser(XWikiContext xcontext, XarFile xar, List<ParsedXarEntry> entries, WikiReference wikiReference,
+            Semaphore readAhead, AtomicBoolean stop)
+        {
+            this.xcontext = xcontext;
+            this.xar = xar;
+            this.entries = entries;
+            this.wikiReference = wikiReference;
+            this.readAhead = readAhead;
+            this.stop = stop;
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.setWikiId(this.wikiReference.getName());
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            for (ParsedXarEntry entry : this.entries) {
+                if (entry.isClaimed()) {
+                    continue;
+                }
+
+                // Wait for the imports to catch up
+                this.readAhead.acquireUninterruptibly();
+
+                if (this.stop.get()) {
+                    break;
+                }
+
+                if (entry.claim()) {
+                    // Released once the first wiki got the document
+                    synchronized (entry.document) {
+                        entry.readAhead = this.readAhead;
+                    }
+                    entry.parse(this.xar, this.wikiReference);
+                } else {
+                    this.readAhead.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Import the parsed entries of a XAR package in a wiki in the background.
+     * 
+     * @version $Id$
+     */
+    private class WikiImporter extends AbstractXWikiRunnable
+    {
+        private final XWikiContext xcontext;
+
+        private final String comment;
+
+        private final XarFile xar;
+
+        private final List<ParsedXarEntry> entries;
+
+        private final WikiReference wikiReference;
+
+        private final PackageConfiguration configuration;
+
+        private final LogQueue logs = new LogQueue();
+
+        private Exception error;
+
+        WikiImporter(XWikiContext xcontext, String comment, XarFile xar, List<ParsedXarEntry> entries,
+            WikiReference wikiReference, PackageConfiguration configuration)
+        {
+            this.xcontext = xcontext;
+            this.comment = comment;
+            this.xar = xar;
+            this.entries = entries;
+            this.wikiReference = wikiReference;
+            this.configuration = configuration;
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            // Isolate the log so that it can be forwarded to the job
+            loggerManager.pushLogListener(new LoggerListener(UUID.randomUUID().toString(), this.logs));
+
+            try {
+                importXARToWiki(this.comment, this.xar, this.entries, this.wikiReference, this.configuration);
+            } catch (Exception e) {
+                this.error = e;
+            } finally {
+                loggerManager.popLogListener();
+            }
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.xar.internal.handler.packager;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Configuration of the import of XAR extensions.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = XarImportConfiguration.class)
+@Singleton
+public class XarImportConfiguration
+{
+    private static final String PREFIX = "extension.xar.import.";
+
+    @Inject
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return the number of threads used to parse the documents of a XAR package
+     */
+    public int getParseThreadCount()
+    {
+        int count = this.configurationSource.getProperty(PREFIX + "parseThreads",
+            Runtime.getRuntime().availableProcessors());
+
+        return Math.max(count, 1);
+    }
+
+    /**
+     * @return the maximum number of wikis in which the documents of a XAR package are saved at the same time when the
+     *         extension is installed on the whole farm
+     */
+    public int getWikiThreadCount()
+    {
+        int count = this.configurationSource.getProperty(PREFIX + "wikiThreads", 1);
+
+        return Math.max(count, 1);
+    }
+}
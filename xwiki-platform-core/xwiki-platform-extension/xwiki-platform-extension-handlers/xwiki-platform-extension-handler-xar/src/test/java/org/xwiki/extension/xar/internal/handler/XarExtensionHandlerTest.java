@@ -42,6 +42,7 @@
 import org.xwiki.extension.job.internal.UninstallJob;
 import org.xwiki.extension.repository.InstalledExtensionRepository;
 import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
+import org.xwiki.extension.xar.internal.handler.packager.XarImportConfiguration;
 import org.xwiki.extension.xar.internal.repository.XarInstalledExtension;
 import org.xwiki.extension.xar.internal.repository.XarInstalledExtensionRepository;
 import org.xwiki.job.Job;
@@ -744,6 +745,45 @@ public void testUpgradeOnRoot() throws Throwable
         Assert.assertFalse("Document wiki:space1.modified has been removed from the database", space1modified.isNew());
     }
 
+    @Test
+    public void testInstallOnRootWithSeveralThreads() throws Throwable
+    {
+        XarImportConfiguration importConfiguration =
+            this.componentManager.registerMockComponent(XarImportConfiguration.class);
+        when(importConfiguration.getParseThreadCount()).thenReturn(2);
+        when(importConfiguration.getWikiThreadCount()).thenReturn(2);
+
+        doReturn(Arrays.asList("wiki1", "wiki2", "wiki3")).when(this.oldcore.getWikiDescriptorManager()).getAllIds();
+
+        install(this.localXarExtensiontId1, null, this.contextUser);
+
+        // validate
+
+        for (String wiki : Arrays.asList("wiki1", "wiki2", "wiki3")) {
+            XWikiDocument page =
+                this.oldcore.getSpyXWiki().getDocument(new DocumentReference(wiki, "space", "page"), getXWikiContext());
+
+            Assert.assertFalse("Document " + wiki + ":space.page has not been saved in the database", page.isNew());
+            Assert.assertEquals("Wrong content", "content", page.getContent());
+            Assert.assertEquals("Wrong author", this.contextUser, page.getAuthorReference());
+
+            XWikiDocument pagewithattachment = this.oldcore.getSpyXWiki()
+                .getDocument(new DocumentReference(wiki, "space", "pagewithattachment"), getXWikiContext());
+
+            XWikiAttachment attachment = pagewithattachment.getAttachment("attachment.txt");
+            Assert.assertNotNull(attachment);
+            Assert.assertEquals("attachment content",
+                IOUtils.toString(attachment.getContentInputStream(getXWikiContext()), StandardCharsets.UTF_8));
+
+            XWikiDocument pagewithobject = this.oldcore.getSpyXWiki()
+                .getDocument(new DocumentReference(wiki, "space", "pagewithobject"), getXWikiContext());
+
+            BaseObject groupObject = pagewithobject.getXObject(new LocalDocumentReference("XWiki", "XWikiGroups"));
+            Assert.assertNotNull(groupObject);
+            Assert.assertEquals(new DocumentReference(wiki, "XWiki", "XWikiGroups"), groupObject.getXClassReference());
+        }
+    }
+
     @Test
     public void testDowngradeOnWiki() throws Throwable
     {
@@ -56,4 +56,23 @@ public boolean isGenerateInlineSourceMaps()
     {
         return configurationSource.getProperty(CONFIGURATION_PREFIX + "generateInlineSourceMaps", false);
     }
+
+    /**
+     * @return whether the compiled CSS should also be stored in the permanent directory so that it survives a restart
+     * @since 9.12RC1
+     */
+    public boolean isPersistentCacheEnabled()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache", true);
+    }
+
+    /**
+     * @return whether the skin files that have already been compiled should be compiled again in background when XWiki
+     *         starts
+     * @since 9.12RC1
+     */
+    public boolean isPrecompileAtStartup()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "precompileAtStartup", true);
+    }
 }
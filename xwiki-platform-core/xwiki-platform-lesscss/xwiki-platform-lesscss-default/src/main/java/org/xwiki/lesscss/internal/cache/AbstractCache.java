@@ -19,10 +19,9 @@
  */
 package org.xwiki.lesscss.internal.cache;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
@@ -59,24 +58,24 @@
      * This map stores the list of the cached files keys corresponding to a skin, in order to clear the corresponding
      * cache when a skin is saved.
      */
-    private Map<Object, List<String>> cachedFilesKeysMapPerSkin = new HashMap<>();
+    private ConcurrentMap<Object, Set<String>> cachedFilesKeysMapPerSkin = new ConcurrentHashMap<>();
 
     /**
      * This map stores the list of the cached files keys corresponding to a color theme, in order to clear the
      * corresponding cache when a color theme is saved.
      */
-    private Map<Object, List<String>> cachedFilesKeysMapPerColorTheme = new HashMap<>();
+    private ConcurrentMap<Object, Set<String>> cachedFilesKeysMapPerColorTheme = new ConcurrentHashMap<>();
 
     /**
      * This map stores the list of the cached files keys corresponding to a LESS resource, in order to clear the
      * corresponding cache when a LESS resource is saved.
      */
-    private Map<Object, List<String>> cachedFilesKeysMapPerLESSResource = new HashMap<>();
+    private ConcurrentMap<Object, Set<String>> cachedFilesKeysMapPerLESSResource = new ConcurrentHashMap<>();
 
     @Inject
     private CacheKeyFactory cacheKeyFactory;
 
-    private Map<String, String> mutexList = new HashMap<>();
+    private ConcurrentMap<String, String> mutexList = new ConcurrentHashMap<>();
 
     @Override
     public T get(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme)
@@ -106,17 +105,19 @@ public void set(LESSResourceReference lessResourceReference, SkinReference skin,
      * @param cacheKey the cache key to register
      * @param reference name of the skin or of the color theme
      */
-    private void registerCacheKey(Map<Object, List<String>> cachedFilesKeysMap, String cacheKey, Object reference)
+    private void registerCacheKey(ConcurrentMap<Object, Set<String>> cachedFilesKeysMap, String cacheKey,
+        Object reference)
     {
-        List<String> cachedFilesKeys = cachedFilesKeysMap.get(reference);
+        Set<String> cachedFilesKeys = cachedFilesKeysMap.get(reference);
         if (cachedFilesKeys == null) {
             // if the list of cached files keys corresponding to the skin/colortheme name does not exist, we create it
-            cachedFilesKeys = new ArrayList<>();
-            cachedFilesKeysMap.put(reference, cachedFilesKeys);
-        }
-        if (!cachedFilesKeys.contains(cacheKey)) {
-            cachedFilesKeys.add(cacheKey);
+            cachedFilesKeys = ConcurrentHashMap.newKeySet();
+            Set<String> existingCachedFilesKeys = cachedFilesKeysMap.putIfAbsent(reference, cachedFilesKeys);
+            if (existingCachedFilesKeys != null) {
+                cachedFilesKeys = existingCachedFilesKeys;
+            }
         }
+        cachedFilesKeys.add(cacheKey);
     }
 
     @Override
@@ -128,10 +129,10 @@ public void clear()
         cachedFilesKeysMapPerLESSResource.clear();
     }
 
-    private void clearFromCriteria(Map<Object, List<String>> cachedFilesKeysMap, Object criteria)
+    private void clearFromCriteria(ConcurrentMap<Object, Set<String>> cachedFilesKeysMap, Object criteria)
     {
         // Get the list of cached files keys corresponding to the criteria
-        List<String> cachedFilesKeys = cachedFilesKeysMap.get(criteria);
+        Set<String> cachedFilesKeys = cachedFilesKeysMap.remove(criteria);
         if (cachedFilesKeys == null) {
             return;
         }
@@ -139,8 +140,6 @@ private void clearFromCriteria(Map<Object, List<String>> cachedFilesKeysMap, Obj
         for (String cachedFileKey : cachedFilesKeys) {
             cache.remove(cachedFileKey);
         }
-        // Remove the list of cached keys corresponding to the criteria
-        cachedFilesKeysMap.remove(criteria);
     }
 
     @Override
@@ -162,17 +161,14 @@ public void clearFromLESSResource(LESSResourceReference lessResourceReference)
     }
     
     @Override
-    public synchronized Object getMutex(LESSResourceReference lessResourceReference, SkinReference skin, 
+    public Object getMutex(LESSResourceReference lessResourceReference, SkinReference skin, 
         ColorThemeReference colorTheme)
     {
         // The mutex is a string (actually the cache key) to help debugging.
         String cacheKey = cacheKeyFactory.getCacheKey(lessResourceReference, skin, colorTheme, isContextHandled);
-        String mutex = mutexList.get(cacheKey);
-        if (mutex == null) {
-            // the mutex is the key, so no extra memory is needed
-            mutex = cacheKey;
-            mutexList.put(cacheKey, mutex);
-        }
-        return mutex;
+        // the mutex is the key, so no extra memory is needed
+        String mutex = mutexList.putIfAbsent(cacheKey, cacheKey);
+
+        return mutex != null ? mutex : cacheKey;
     }
 }
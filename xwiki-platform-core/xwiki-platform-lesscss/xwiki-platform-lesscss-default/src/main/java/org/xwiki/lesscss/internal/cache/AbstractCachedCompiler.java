@@ -107,27 +107,28 @@ public T getResult(LESSResourceReference lessResourceReference, boolean includeS
         T result = null;
 
         SkinReference skinReference = skinReferenceFactory.createReference(skin);
-        ColorThemeReference colorThemeReference = colorThemeReferenceFactory.createReference(
-                currentColorThemeGetter.getCurrentColorTheme(true, "default"));
+        String colorTheme = currentColorThemeGetter.getCurrentColorTheme(true, "default");
+        ColorThemeReference colorThemeReference = colorThemeReferenceFactory.createReference(colorTheme);
+
+        // Most of the time the result is already in the cache so we first look for it without locking anything
+        if (!force) {
+            result = getCachedResult(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                colorThemeReference);
+            if (result != null) {
+                return cloneResult(result);
+            }
+        }
 
         // Only one computation is allowed in the same time per color theme, then the waiting threads will be able to
         // use the last result stored in the cache.
         Object mutex = cache.getMutex(lessResourceReference, skinReference, colorThemeReference);
         synchronized (mutex) {
 
-            // Check if the result is in the cache
+            // Check if the result has been computed by another thread in the meantime
             if (!force) {
-                result = cache.get(lessResourceReference, skinReference, colorThemeReference);
+                result = getCachedResult(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                    colorThemeReference);
                 if (result != null) {
-                    // The LESS file contains Velocity code that call resources (ie: $xwiki.getSkinFile), and the HTML
-                    // exporter listens these calls to know which resources must be exported.
-                    // If we only use the cache, we would have a correct CSS file but some resources will be missing.
-                    // So we need to execute the velocity again, even if the LESS file is cached.
-                    // To perform this quickly, we do not recompile the LESS code (which would be useless anyway), but
-                    // we only do the Velocity Execution step.
-                    if (lessContext.isHtmlExport() && useVelocity && this instanceof DefaultLESSCompiler) {
-                        compiler.compute(lessResourceReference, includeSkinStyle, true, false, skin);
-                    }
                     return cloneResult(result);
                 }
             }
@@ -135,6 +136,7 @@ public T getResult(LESSResourceReference lessResourceReference, boolean includeS
             // Either the result was in the cache or the force flag is set to true, we need to compile
             try {
                 result = compiler.compute(lessResourceReference, includeSkinStyle, useVelocity, true, skin);
+                onComputed(lessResourceReference, includeSkinStyle, useVelocity, skin, colorTheme);
             } catch (LESSCompilerException e) {
                 logger.error("Error during the compilation of the resource [{}].", lessResourceReference, e);
                 // We must cache the result, even if the compilation have failed, to prevent re-compiling again and
@@ -149,6 +151,43 @@ public T getResult(LESSResourceReference lessResourceReference, boolean includeS
         return cloneResult(result);
     }
 
+    private T getCachedResult(LESSResourceReference lessResourceReference, boolean includeSkinStyle,
+        boolean useVelocity, String skin, SkinReference skinReference, ColorThemeReference colorThemeReference)
+        throws LESSCompilerException
+    {
+        T result = cache.get(lessResourceReference, skinReference, colorThemeReference);
+        if (result != null) {
+            // The LESS file contains Velocity code that call resources (ie: $xwiki.getSkinFile), and the HTML
+            // exporter listens these calls to know which resources must be exported.
+            // If we only use the cache, we would have a correct CSS file but some resources will be missing.
+            // So we need to execute the velocity again, even if the LESS file is cached.
+            // To perform this quickly, we do not recompile the LESS code (which would be useless anyway), but
+            // we only do the Velocity Execution step.
+            if (lessContext.isHtmlExport() && useVelocity && this instanceof DefaultLESSCompiler) {
+                compiler.compute(lessResourceReference, includeSkinStyle, true, false, skin);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Called after a resource has been successfully computed and before the result is put in the cache. Does nothing
+     * by default.
+     *
+     * @param lessResourceReference reference to the LESS content
+     * @param includeSkinStyle whether the main LESS file of the skin has been included
+     * @param useVelocity whether the resource has been parsed by Velocity before compiling it
+     * @param skin name of the skin used for the context
+     * @param colorTheme the full name of the color theme used for the context
+     * @since 9.12RC1
+     */
+    protected void onComputed(LESSResourceReference lessResourceReference, boolean includeSkinStyle,
+        boolean useVelocity, String skin, String colorTheme)
+    {
+        // Nothing to do by default
+    }
+
     /**
      * Returns a clone of the result to avoid returning the instance stored in the cache. Need to be implemented by
      * subclasses.
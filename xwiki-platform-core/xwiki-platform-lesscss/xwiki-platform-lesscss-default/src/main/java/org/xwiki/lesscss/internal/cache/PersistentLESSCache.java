@@ -0,0 +1,223 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+
+/**
+ * Store the compiled CSS in the permanent directory so that it survives a restart. Each entry is identified by a
+ * digest of the LESS code (after Velocity has been executed) and is stored with the digest of the content of all the
+ * templates it imports, so that the caller can check that the entry is still valid before using it.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = PersistentLESSCache.class)
+@Singleton
+public class PersistentLESSCache implements Initializable
+{
+    /**
+     * The folder, relative to the permanent directory, where the compiled CSS is stored.
+     */
+    public static final String ROOT_DIRECTORY = "cache/lesscss";
+
+    private static final String CSS_EXTENSION = ".css";
+
+    private static final String IMPORTS_EXTENSION = ".imports";
+
+    /**
+     * The entries that have not been used since this delay are removed at startup.
+     */
+    private static final long MAXIMUM_AGE = TimeUnit.DAYS.toMillis(30);
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private LESSConfiguration lessConfiguration;
+
+    @Inject
+    private Logger logger;
+
+    private File rootDirectory;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.rootDirectory = new File(this.environment.getPermanentDirectory(), ROOT_DIRECTORY);
+
+        if (isEnabled()) {
+            purge();
+        }
+    }
+
+    /**
+     * @return whether the compiled CSS should be stored on disk
+     */
+    public boolean isEnabled()
+    {
+        return this.lessConfiguration.isPersistentCacheEnabled();
+    }
+
+    /**
+     * @param lessCode the LESS code to compile
+     * @param skin the skin holding the imported templates
+     * @param inlineSourceMap whether the generated CSS contains inline sourcemaps
+     * @return the key identifying the result of the compilation
+     */
+    public String getKey(String lessCode, String skin, boolean inlineSourceMap)
+    {
+        return DigestUtils.sha256Hex(skin + '\n' + inlineSourceMap + '\n' + lessCode);
+    }
+
+    /**
+     * @param key the key identifying the result of the compilation
+     * @return the digest of the content of each template imported by the stored compilation, indexed by template name,
+     *         or null if nothing is stored for this key
+     */
+    public Map<String, String> getImports(String key)
+    {
+        File file = new File(this.rootDirectory, key + IMPORTS_EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream stream = Files.newInputStream(file.toPath())) {
+            properties.load(stream);
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the LESS imports file [{}]: {}", file, e.getMessage());
+            return null;
+        }
+
+        Map<String, String> imports = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            imports.put(name, properties.getProperty(name));
+        }
+
+        return imports;
+    }
+
+    /**
+     * @param key the key identifying the result of the compilation
+     * @return the stored CSS or null if nothing is stored for this key
+     */
+    public String getCSS(String key)
+    {
+        File file = new File(this.rootDirectory, key + CSS_EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            String css = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+
+            // Remember that the entry is still used so that it's not purged
+            long now = System.currentTimeMillis();
+            file.setLastModified(now);
+            new File(this.rootDirectory, key + IMPORTS_EXTENSION).setLastModified(now);
+
+            return css;
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the compiled LESS file [{}]: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key identifying the result of the compilation
+     * @param css the result of the compilation
+     * @param imports the digest of the content of each template imported by the compilation, indexed by template name
+     */
+    public void set(String key, String css, Map<String, String> imports)
+    {
+        try {
+            this.rootDirectory.mkdirs();
+
+            // Write the CSS first and the imports last: the entry is looked up by its imports, so they must never be
+            // found without the CSS they describe
+            File cssFile = File.createTempFile(key, CSS_EXTENSION, this.rootDirectory);
+            FileUtils.writeStringToFile(cssFile, css, StandardCharsets.UTF_8);
+            move(cssFile, new File(this.rootDirectory, key + CSS_EXTENSION));
+
+            Properties properties = new Properties();
+            properties.putAll(imports);
+            File importsFile = File.createTempFile(key, IMPORTS_EXTENSION, this.rootDirectory);
+            try (OutputStream stream = Files.newOutputStream(importsFile.toPath())) {
+                properties.store(stream, null);
+            }
+            move(importsFile, new File(this.rootDirectory, key + IMPORTS_EXTENSION));
+        } catch (IOException e) {
+            this.logger.warn("Failed to store the compiled LESS with key [{}] in [{}]: {}", key, this.rootDirectory,
+                e.getMessage());
+        }
+    }
+
+    /**
+     * @return the folder where the compiled CSS is stored
+     */
+    public File getRootDirectory()
+    {
+        return this.rootDirectory;
+    }
+
+    private void move(File source, File target) throws IOException
+    {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void purge()
+    {
+        File[] files = this.rootDirectory.listFiles();
+        if (files != null) {
+            long limit = System.currentTimeMillis() - MAXIMUM_AGE;
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isFile() && file.lastModified() < limit
+                    && (name.endsWith(CSS_EXTENSION) || name.endsWith(IMPORTS_EXTENSION)) && !file.delete()) {
+                    this.logger.debug("Failed to delete the old compiled LESS file [{}]", file);
+                }
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@
 import org.xwiki.lesscss.compiler.LESSCompiler;
 import org.xwiki.lesscss.compiler.LESSCompilerException;
 import org.xwiki.lesscss.internal.cache.AbstractCachedCompiler;
+import org.xwiki.lesscss.internal.resources.LESSSkinFileResourceReference;
 import org.xwiki.lesscss.resources.LESSResourceReference;
 
 /**
@@ -52,6 +53,9 @@ public class DefaultLESSCompiler extends AbstractCachedCompiler<String> implemen
     @Inject
     private CachedLESSCompiler cachedLESSCompiler;
 
+    @Inject
+    private LESSPrecompiler precompiler;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -73,6 +77,19 @@ public String compile(LESSResourceReference lessResourceReference, boolean inclu
         return super.getResult(lessResourceReference, includeSkinStyle, useVelocity, skin, force);
     }
 
+    @Override
+    protected void onComputed(LESSResourceReference lessResourceReference, boolean includeSkinStyle,
+        boolean useVelocity, String skin, String colorTheme)
+    {
+        // Remember the skin files that are actually used so that they can be compiled again after a restart. The HTML
+        // export uses its own URLs so its results are not worth keeping.
+        if (lessResourceReference instanceof LESSSkinFileResourceReference && !includeSkinStyle && useVelocity
+            && !lessContext.isHtmlExport()) {
+            precompiler.register(((LESSSkinFileResourceReference) lessResourceReference).getFileName(), skin,
+                colorTheme);
+        }
+    }
+
     @Override
     protected String cloneResult(String toClone)
     {
@@ -0,0 +1,238 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.compiler.LESSCompiler;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.lesscss.internal.cache.PersistentLESSCache;
+import org.xwiki.lesscss.resources.LESSResourceReferenceFactory;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiServletRequestStub;
+
+/**
+ * Remember which skin files have been compiled, with which skin and color theme, and compile them again in background
+ * when XWiki starts so that the first requests don't have to wait for the compilation.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = LESSPrecompiler.class)
+@Singleton
+public class LESSPrecompiler implements Initializable
+{
+    private static final String COMPILATIONS_FILENAME = "compilations.txt";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final String COLOR_THEME_FIELD = "colorTheme";
+
+    /**
+     * Avoid filling the disk when color themes or skins are generated.
+     */
+    private static final int MAXIMUM_COMPILATIONS = 1000;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private LESSConfiguration lessConfiguration;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    /**
+     * We use a provider to break the cycle with {@link DefaultLESSCompiler}.
+     */
+    @Inject
+    private Provider<LESSCompiler> lessCompilerProvider;
+
+    @Inject
+    private LESSResourceReferenceFactory lessResourceReferenceFactory;
+
+    @Inject
+    private Logger logger;
+
+    private File compilationsFile;
+
+    private final Set<String> compilations = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.compilationsFile = new File(new File(this.environment.getPermanentDirectory(),
+            PersistentLESSCache.ROOT_DIRECTORY), COMPILATIONS_FILENAME);
+
+        if (this.compilationsFile.isFile()) {
+            try {
+                this.compilations.addAll(FileUtils.readLines(this.compilationsFile, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the list of LESS compilations from [{}]: {}", this.compilationsFile,
+                    e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Remember that a skin file has been compiled in the current wiki.
+     *
+     * @param fileName name of the file inside the "less" directory in the skin
+     * @param skin name of the skin used for the compilation
+     * @param colorTheme full name of the color theme used for the compilation
+     */
+    public void register(String fileName, String skin, String colorTheme)
+    {
+        if (!this.lessConfiguration.isPrecompileAtStartup() || this.compilations.size() >= MAXIMUM_COMPILATIONS) {
+            return;
+        }
+
+        String line = StringUtils.join(new String[] {this.wikiDescriptorManager.getCurrentWikiId(), fileName, skin,
+            colorTheme}, SEPARATOR);
+        if (this.compilations.add(line)) {
+            synchronized (this) {
+                try {
+                    FileUtils.writeLines(this.compilationsFile, StandardCharsets.UTF_8.name(),
+                        Collections.singletonList(line), true);
+                } catch (IOException e) {
+                    this.logger.warn("Failed to write the LESS compilation [{}] in [{}]: {}", line,
+                        this.compilationsFile, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compile again, in a background thread, all the skin files that have been registered.
+     *
+     * @param xcontext the context to clone for the background thread
+     */
+    public void start(XWikiContext xcontext)
+    {
+        if (!this.lessConfiguration.isPrecompileAtStartup() || xcontext == null) {
+            return;
+        }
+
+        List<String> lines;
+        synchronized (this.compilations) {
+            lines = new ArrayList<>(this.compilations);
+        }
+
+        if (!lines.isEmpty()) {
+            Thread thread = new Thread(new Precompiler(xcontext.clone(), lines));
+            thread.setName("LESS precompiler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+
+    private void precompile(XWikiContext xcontext, String line)
+    {
+        String[] fields = StringUtils.splitPreserveAllTokens(line, SEPARATOR);
+        if (fields.length != 4) {
+            return;
+        }
+
+        String currentWiki = xcontext.getWikiId();
+        XWikiRequest currentRequest = xcontext.getRequest();
+        try {
+            xcontext.setWikiId(fields[0]);
+
+            // The color theme is taken from the request
+            XWikiServletRequestStub request = new XWikiServletRequestStub(xcontext.getURL(), null);
+            request.put(COLOR_THEME_FIELD, fields[3]);
+            xcontext.setRequest(request);
+
+            this.lessCompilerProvider.get().compile(
+                this.lessResourceReferenceFactory.createReferenceForSkinFile(fields[1]), false, true, fields[2], false);
+        } catch (Exception e) {
+            this.logger.warn("Failed to precompile the LESS file [{}] with skin [{}] and color theme [{}] on wiki [{}]:"
+                + " {}", fields[1], fields[2], fields[3], fields[0], e.getMessage());
+        } finally {
+            xcontext.setWikiId(currentWiki);
+            xcontext.setRequest(currentRequest);
+        }
+    }
+
+    /**
+     * Compile the registered skin files.
+     *
+     * @version $Id$
+     */
+    private class Precompiler extends AbstractXWikiRunnable
+    {
+        private final XWikiContext xcontext;
+
+        private final List<String> lines;
+
+        Precompiler(XWikiContext xcontext, List<String> lines)
+        {
+            this.xcontext = xcontext;
+            this.lines = lines;
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            if (this.xcontext.getURLFactory() == null) {
+                this.xcontext.setURLFactory(this.xcontext.getWiki().getURLFactoryService()
+                    .createURLFactory(this.xcontext.getMode(), this.xcontext));
+            }
+
+            for (String line : this.lines) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                precompile(this.xcontext, line);
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.util.Map;
+
 import org.xwiki.skin.Resource;
 import org.xwiki.skin.Skin;
 import org.xwiki.template.TemplateManager;
@@ -39,6 +41,8 @@ public abstract class AbstractLESSSource extends LessSource
     
     private String folder;
 
+    private Map<String, String> imports;
+
     /**
      * Default constructor.
      * @param templateManager the template manager component
@@ -46,10 +50,32 @@ public abstract class AbstractLESSSource extends LessSource
      * @param folder the folder in which the template is located
      */
     public AbstractLESSSource(TemplateManager templateManager, Skin skin, String folder)
+    {
+        this(templateManager, skin, folder, null);
+    }
+
+    /**
+     * @param templateManager the template manager component
+     * @param skin the skin holding the templates
+     * @param folder the folder in which the template is located
+     * @param imports where to register the digest of the content of the imported templates, null if it's not needed
+     * @since 9.12RC1
+     */
+    public AbstractLESSSource(TemplateManager templateManager, Skin skin, String folder, Map<String, String> imports)
     {
         this.templateManager = templateManager;
         this.skin = skin;
         this.folder = folder;
+        this.imports = imports;
+    }
+
+    /**
+     * @return where to register the digest of the content of the imported templates, null if it's not needed
+     * @since 9.12RC1
+     */
+    protected Map<String, String> getImports()
+    {
+        return this.imports;
     }
     
     @Override
@@ -58,7 +84,7 @@ public LessSource relativeSource(String filename) throws FileNotFound
         String template = folder + "/" + filename;
         Resource resource = skin.getResource(template);
         if (resource != null) {
-            return new TemplateLESSSource(templateManager, skin, template);
+            return new TemplateLESSSource(templateManager, skin, template, this.imports);
         }
 
         // The file has not been found
@@ -19,16 +19,24 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.lesscss.internal.cache.PersistentLESSCache;
+import org.xwiki.skin.Skin;
 import org.xwiki.skin.SkinManager;
 import org.xwiki.template.TemplateManager;
 
 import com.github.sommeri.less4j.Less4jException;
 import com.github.sommeri.less4j.LessCompiler;
 import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
 import com.github.sommeri.less4j.core.DefaultLessCompiler;
 
 /**
@@ -47,6 +55,9 @@
     @Inject
     private SkinManager skinManager;
 
+    @Inject
+    private PersistentLESSCache persistentCache;
+
     /**
      * Compile the LESS code and get the included files from the skin templates.
      * @param lessCode code to compile
@@ -57,14 +68,57 @@
      */
     public String compile(String lessCode, String skin, boolean inlineSourceMap) throws Less4jException
     {
+        Skin skinObject = skinManager.getSkin(skin);
+
+        // Try to reuse the result of a previous compilation, possibly done before a restart
+        String key = null;
+        if (persistentCache.isEnabled()) {
+            key = persistentCache.getKey(lessCode, skin, inlineSourceMap);
+            String css = getStoredCSS(key, skinObject);
+            if (css != null) {
+                return css;
+            }
+        }
+
         LessCompiler lessCompiler = new DefaultLessCompiler();
         LessCompiler.Configuration options = new LessCompiler.Configuration();
         options.setCompressing(true);
         options.getSourceMapConfiguration().setInline(inlineSourceMap);
         options.getSourceMapConfiguration().setIncludeSourcesContent(true);
-        LessSource lessSource = 
-            new CustomContentLESSSource(lessCode, templateManager, skinManager.getSkin(skin));
+        Map<String, String> imports = new HashMap<>();
+        LessSource lessSource = new CustomContentLESSSource(lessCode, templateManager, skinObject, imports);
         LessCompiler.CompilationResult lessResult = lessCompiler.compile(lessSource, options);
-        return lessResult.getCss();
+        String css = lessResult.getCss();
+
+        if (key != null) {
+            persistentCache.set(key, css, imports);
+        }
+
+        return css;
+    }
+
+    /**
+     * @return the stored CSS if all the templates it has been compiled from still have the same content, null
+     *         otherwise
+     */
+    private String getStoredCSS(String key, Skin skin)
+    {
+        Map<String, String> imports = persistentCache.getImports(key);
+        if (imports == null) {
+            return null;
+        }
+
+        for (Map.Entry<String, String> entry : imports.entrySet()) {
+            try {
+                String content = new TemplateLESSSource(templateManager, skin, entry.getKey()).getContent();
+                if (!entry.getValue().equals(DigestUtils.sha256Hex(content))) {
+                    return null;
+                }
+            } catch (FileNotFound | CannotReadFile e) {
+                return null;
+            }
+        }
+
+        return persistentCache.getCSS(key);
     }
 }
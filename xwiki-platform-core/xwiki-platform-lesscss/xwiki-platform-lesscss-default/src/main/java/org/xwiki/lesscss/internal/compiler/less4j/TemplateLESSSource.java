@@ -19,6 +19,9 @@
  */
 package org.xwiki.lesscss.internal.compiler.less4j;
 
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.lesscss.internal.compiler.CachedLESSCompiler;
 import org.xwiki.skin.Skin;
@@ -46,7 +49,20 @@ public class TemplateLESSSource extends AbstractLESSSource
      */
     public TemplateLESSSource(TemplateManager templateManager, Skin skin, String templateName)
     {
-        super(templateManager, skin, getParentFolder(templateName));
+        this(templateManager, skin, templateName, null);
+    }
+
+    /**
+     * @param templateManager the template manager component
+     * @param skin the skin holding the template
+     * @param templateName the name of the template
+     * @param imports where to register the digest of the content of the imported templates, null if it's not needed
+     * @since 9.12RC1
+     */
+    public TemplateLESSSource(TemplateManager templateManager, Skin skin, String templateName,
+        Map<String, String> imports)
+    {
+        super(templateManager, skin, getParentFolder(templateName), imports);
         this.templateName = templateName;
     }
 
@@ -62,6 +78,18 @@ private static String getParentFolder(String templateName)
 
     @Override
     public String getContent() throws FileNotFound, CannotReadFile
+    {
+        String content = getTemplateContent();
+
+        // Remember what has been imported to be able to know later if the compiled result is still valid
+        if (getImports() != null) {
+            getImports().put(this.templateName, DigestUtils.sha256Hex(content));
+        }
+
+        return content;
+    }
+
+    private String getTemplateContent() throws CannotReadFile
     {
         try {
             // We execute velocity on the main skin file only (which is included by SSX objects using LESS).
@@ -52,6 +52,15 @@ public LESSSkinFileResourceReference(String fileName, TemplateManager templateMa
         this.skinManager = skinManager;
     }
 
+    /**
+     * @return the name of the file inside the "less" directory in the skin
+     * @since 9.12RC1
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link PersistentLESSCache}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class PersistentLESSCacheTest
+{
+    private static final File PERMANENT_DIRECTORY = new File("target/test-" + PersistentLESSCacheTest.class.getName());
+
+    @Rule
+    public MockitoComponentMockingRule<PersistentLESSCache> mocker =
+        new MockitoComponentMockingRule<>(PersistentLESSCache.class);
+
+    @BeforeComponent
+    public void registerMockComponents() throws Exception
+    {
+        FileUtils.deleteDirectory(PERMANENT_DIRECTORY);
+
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(PERMANENT_DIRECTORY);
+
+        LESSConfiguration lessConfiguration = this.mocker.registerMockComponent(LESSConfiguration.class);
+        when(lessConfiguration.isPersistentCacheEnabled()).thenReturn(true);
+    }
+
+    @Test
+    public void getKey() throws Exception
+    {
+        PersistentLESSCache cache = this.mocker.getComponentUnderTest();
+
+        assertEquals(cache.getKey("a {}", "flamingo", false), cache.getKey("a {}", "flamingo", false));
+        assertNotEquals(cache.getKey("a {}", "flamingo", false), cache.getKey("a {}", "flamingo", true));
+        assertNotEquals(cache.getKey("a {}", "flamingo", false), cache.getKey("a {}", "colibri", false));
+        assertNotEquals(cache.getKey("a {}", "flamingo", false), cache.getKey("b {}", "flamingo", false));
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        PersistentLESSCache cache = this.mocker.getComponentUnderTest();
+        String key = cache.getKey("a {}", "flamingo", false);
+
+        assertNull(cache.getImports(key));
+        assertNull(cache.getCSS(key));
+
+        cache.set(key, "a{}", Collections.singletonMap("less/variables.less", "digest"));
+
+        Map<String, String> imports = cache.getImports(key);
+        assertEquals(Collections.singletonMap("less/variables.less", "digest"), imports);
+        assertEquals("a{}", cache.getCSS(key));
+
+        // Only the entries are left in the folder
+        assertEquals(2, cache.getRootDirectory().list().length);
+        assertTrue(new File(PERMANENT_DIRECTORY, PersistentLESSCache.ROOT_DIRECTORY).isDirectory());
+    }
+}
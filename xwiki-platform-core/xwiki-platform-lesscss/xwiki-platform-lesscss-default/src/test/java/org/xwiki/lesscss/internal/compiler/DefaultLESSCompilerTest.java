@@ -32,6 +32,7 @@
 import org.xwiki.lesscss.internal.colortheme.ColorThemeReferenceFactory;
 import org.xwiki.lesscss.internal.colortheme.CurrentColorThemeGetter;
 import org.xwiki.lesscss.internal.colortheme.NamedColorThemeReference;
+import org.xwiki.lesscss.internal.resources.LESSSkinFileResourceReference;
 import org.xwiki.lesscss.internal.skin.FSSkinReference;
 import org.xwiki.lesscss.internal.skin.SkinReference;
 import org.xwiki.lesscss.internal.skin.SkinReferenceFactory;
@@ -125,6 +126,9 @@ public void compileWhenInCache() throws Exception
         // Verify
         verify(cache, never()).set(eq(lessResourceReference), eq(skinReference), eq(colorThemeReference), 
                 eq("cache output"));
+        // The result is taken from the cache without locking anything
+        verify(cache, never()).getMutex(any(LESSResourceReference.class), any(SkinReference.class),
+                any(ColorThemeReference.class));
     }
 
     @Test
@@ -143,6 +147,25 @@ public void compileWhenNotInCache() throws Exception
                 eq("compiled output"));
     }
 
+    @Test
+    public void compileSkinFileWhenNotInCache() throws Exception
+    {
+        // Mocks
+        LESSSkinFileResourceReference skinFileReference = mock(LESSSkinFileResourceReference.class);
+        when(skinFileReference.getFileName()).thenReturn("style.less");
+        when(cache.getMutex(eq(skinFileReference), eq(skinReference), eq(colorThemeReference))).thenReturn("mutex");
+        when(cachedLESSCompiler.compute(eq(skinFileReference), eq(false), eq(true), eq(true), eq("skin"))).
+                thenReturn("compiled output");
+
+        // Test
+        assertEquals("compiled output",
+                mocker.getComponentUnderTest().compile(skinFileReference, false, true, false));
+
+        // Verify that the compilation is remembered so that it can be done again at startup
+        LESSPrecompiler precompiler = mocker.getInstance(LESSPrecompiler.class);
+        verify(precompiler).register("style.less", "skin", "colorTheme");
+    }
+
     @Test
     public void compileWhenInCacheButForced() throws Exception
     {
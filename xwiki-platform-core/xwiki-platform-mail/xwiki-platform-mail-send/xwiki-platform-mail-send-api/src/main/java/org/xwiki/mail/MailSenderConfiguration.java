@@ -23,6 +23,7 @@
 import java.util.Properties;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Represents all XWiki configuration options for the Mail Sending feature.
@@ -97,8 +98,31 @@
 
     /**
      * @return the delay to wait between each mail being sent, in milliseconds. This is done to support mail throttling
-     *         and not considered a spammer by mail servers.
+     *         and not considered a spammer by mail servers. Since 9.12RC1 the delay applies to all the mails sent,
+     *         whatever the number of threads sending them (see {@link #getSendThreadCount()}).
      * @since 6.4RC1
      */
     long getSendWaitTime();
+
+    /**
+     * @return the number of threads sending mails in parallel, each one using its own SMTP connections
+     * @since 9.12RC1
+     */
+    @Unstable
+    default int getSendThreadCount()
+    {
+        return 1;
+    }
+
+    /**
+     * @return the minimum delay between two mails of the same batch being sent, in milliseconds, whatever the thread
+     *         sending them. This allows to throttle large batches without slowing down the other ones. 0 means no
+     *         limit.
+     * @since 9.12RC1
+     */
+    @Unstable
+    default long getBatchSendWaitTime()
+    {
+        return 0;
+    }
 }
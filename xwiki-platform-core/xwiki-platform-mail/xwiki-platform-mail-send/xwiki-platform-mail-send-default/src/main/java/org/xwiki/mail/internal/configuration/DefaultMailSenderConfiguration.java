@@ -104,6 +104,10 @@ public class DefaultMailSenderConfiguration implements MailSenderConfiguration
     private static final String PROPERTIES_PROPERTY = "properties";
     private static final String SEND_WAIT_TIME = "sendWaitTime";
 
+    private static final String SEND_THREAD_COUNT = "sendThreadCount";
+
+    private static final String BATCH_SEND_WAIT_TIME = "batchSendWaitTime";
+
     @Inject
     private Logger logger;
 
@@ -318,4 +322,17 @@ public long getSendWaitTime()
 
         return waitTime;
     }
+
+    @Override
+    public int getSendThreadCount()
+    {
+        // Note: the threads are started once when XWiki starts so it doesn't make sense to define this per wiki.
+        return Math.max(1, this.xwikiPropertiesSource.getProperty(PREFIX + SEND_THREAD_COUNT, 1));
+    }
+
+    @Override
+    public long getBatchSendWaitTime()
+    {
+        return this.xwikiPropertiesSource.getProperty(PREFIX + BATCH_SEND_WAIT_TIME, 0L);
+    }
 }
@@ -19,8 +19,15 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * Handles all operations on the Mail Queues.
@@ -33,39 +40,77 @@
 {
     /**
      * The Mail queue that the mail sender thread will use to send mails. We use a separate thread to allow sending
-     * mail asynchronously.
+     * mail asynchronously. Mails are kept in insertion order and can be removed in constant time whatever their
+     * position in the queue.
      */
-    private Queue<T> mailQueue = new ConcurrentLinkedQueue<>();
+    private final Set<T> mailQueue = new LinkedHashSet<>();
 
     /**
-     * @return the mail queue containing all pending mails to be sent
+     * The mails that are not yet claimed by a thread, indexed by batch id so that claiming a mail only has to look at
+     * the oldest unclaimed mail of each batch instead of scanning the whole queue. The batches are kept in the order
+     * in which they were last claimed from so that the threads go through them in turn.
      */
-    private Queue<T> getMailQueue()
+    private final Map<String, Queue<T>> unclaimedItems = new LinkedHashMap<>();
+
+    /**
+     * The mails currently being processed by a thread and which are thus not available to the other threads.
+     */
+    private final Set<T> claimedItems = new HashSet<>();
+
+    @Override
+    public synchronized void addToQueue(T mailQueueItem)
     {
-        return this.mailQueue;
+        this.mailQueue.add(mailQueueItem);
+        this.unclaimedItems.computeIfAbsent(mailQueueItem.getBatchId(), key -> new ArrayDeque<>()).add(mailQueueItem);
     }
 
     @Override
-    public void addToQueue(T mailQueueItem)
+    public synchronized boolean hasMessage()
     {
-        getMailQueue().add(mailQueueItem);
+        return !this.mailQueue.isEmpty();
     }
 
     @Override
-    public boolean hasMessage()
+    public synchronized T peekMessage()
     {
-        return !getMailQueue().isEmpty();
+        return this.mailQueue.isEmpty() ? null : this.mailQueue.iterator().next();
     }
 
     @Override
-    public T peekMessage()
+    public synchronized T claimMessage(Predicate<T> filter)
     {
-        return getMailQueue().peek();
+        // Note: claiming is synchronized so that the filter and the claim are atomic for the calling thread.
+        Iterator<Map.Entry<String, Queue<T>>> it = this.unclaimedItems.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Queue<T>> entry = it.next();
+            T mailQueueItem = entry.getValue().peek();
+            if (filter.test(mailQueueItem)) {
+                entry.getValue().poll();
+                this.claimedItems.add(mailQueueItem);
+                it.remove();
+                // Move the batch at the end so that the other batches are considered first by the next claim
+                if (!entry.getValue().isEmpty()) {
+                    this.unclaimedItems.put(entry.getKey(), entry.getValue());
+                }
+
+                return mailQueueItem;
+            }
+        }
+
+        return null;
     }
 
     @Override
-    public boolean removeMessageFromQueue(T mailQueueItem)
+    public synchronized boolean removeMessageFromQueue(T mailQueueItem)
     {
-        return getMailQueue().remove(mailQueueItem);
+        if (!this.claimedItems.remove(mailQueueItem)) {
+            // The mail was not claimed (it's usually the oldest mail of its batch in this case)
+            Queue<T> batchItems = this.unclaimedItems.get(mailQueueItem.getBatchId());
+            if (batchItems != null && batchItems.remove(mailQueueItem) && batchItems.isEmpty()) {
+                this.unclaimedItems.remove(mailQueueItem.getBatchId());
+            }
+        }
+
+        return this.mailQueue.remove(mailQueueItem);
     }
 }
@@ -19,6 +19,8 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.function.Predicate;
+
 import org.xwiki.component.annotation.Role;
 
 /**
@@ -49,7 +51,19 @@
     T peekMessage();
 
     /**
-     * Removes the next mail on the queue.
+     * Claims the next mail on the queue that is not already claimed by another thread and that matches the passed
+     * filter. Contrary to a poll, the claimed mail stays on the queue until {@link #removeMessageFromQueue} is called,
+     * which allows several threads to process the queue in parallel. The mails of a given batch are claimed in the
+     * order in which they were added.
+     *
+     * @param filter the filter the mail to claim must match, called only for the oldest unclaimed mail of each batch
+     * @return the claimed mail or null if there's no mail available
+     * @since 9.12RC1
+     */
+    T claimMessage(Predicate<T> filter);
+
+    /**
+     * Removes the passed mail from the queue (and release it if it was claimed).
      *
      * @param mailQueueItem the object representing the mail to remove from the queue
      * @return true if the removal was successful, false otherwise
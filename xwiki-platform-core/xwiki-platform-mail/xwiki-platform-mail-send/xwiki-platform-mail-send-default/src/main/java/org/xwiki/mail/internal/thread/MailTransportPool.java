@@ -0,0 +1,197 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal.thread;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+
+/**
+ * The SMTP connections used by a single Mail Sender Thread, one per {@link Session} configuration, so that a thread
+ * alternating between mails of several batches doesn't have to reconnect for each mail. A new Session is usually
+ * created for each batch, so sessions having the same properties and credentials share the same connection. Not
+ * thread safe: each Mail Sender Thread must use its own pool.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class MailTransportPool implements AutoCloseable
+{
+    /**
+     * The maximum number of connections kept open by a single thread. The least recently used one is closed when a
+     * connection is needed for a new Session configuration.
+     */
+    private static final int MAX_TRANSPORTS = 5;
+
+    /**
+     * The number of mails to send before reconnecting, to avoid hitting the per connection limits set by some SMTP
+     * servers.
+     */
+    private static final int MAX_MAILS_PER_CONNECTION = 100;
+
+    private final Logger logger;
+
+    private final Map<TransportKey, PooledTransport> transports = new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * Identifies the configuration of a {@link Session}: the connection of a session can be used to send the mails of
+     * another session having the same properties and credentials.
+     */
+    private static final class TransportKey
+    {
+        private final Map<Object, Object> properties;
+
+        private final String userName;
+
+        private final String password;
+
+        private TransportKey(Session session)
+        {
+            // Copy the properties so that the key doesn't change if the session's properties are modified
+            this.properties = new HashMap<>(session.getProperties());
+
+            PasswordAuthentication authentication = session.requestPasswordAuthentication(null, 0, "smtp", null, null);
+            this.userName = authentication != null ? authentication.getUserName() : null;
+            this.password = authentication != null ? authentication.getPassword() : null;
+        }
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof TransportKey)) {
+                return false;
+            }
+
+            TransportKey other = (TransportKey) object;
+
+            return this.properties.equals(other.properties) && Objects.equals(this.userName, other.userName)
+                && Objects.equals(this.password, other.password);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.properties, this.userName, this.password);
+        }
+    }
+
+    private static final class PooledTransport
+    {
+        private final Transport transport;
+
+        private int count;
+
+        private PooledTransport(Transport transport)
+        {
+            this.transport = transport;
+        }
+    }
+
+    /**
+     * @param logger the logger used to report connections that failed to be closed
+     */
+    public MailTransportPool(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+    /**
+     * @param session the session for which to get a connected transport
+     * @return a connected SMTP transport for the passed session
+     * @throws MessagingException when failing to connect
+     */
+    public Transport getTransport(Session session) throws MessagingException
+    {
+        TransportKey key = new TransportKey(session);
+        PooledTransport pooledTransport = this.transports.get(key);
+
+        if (pooledTransport != null && pooledTransport.count >= MAX_MAILS_PER_CONNECTION) {
+            closeTransport(pooledTransport.transport);
+            this.transports.remove(key);
+            pooledTransport = null;
+        }
+
+        if (pooledTransport == null) {
+            if (this.transports.size() >= MAX_TRANSPORTS) {
+                Iterator<PooledTransport> it = this.transports.values().iterator();
+                closeTransport(it.next().transport);
+                it.remove();
+            }
+
+            pooledTransport = new PooledTransport(session.getTransport("smtp"));
+            this.transports.put(key, pooledTransport);
+        }
+
+        // Reconnect if the server closed the connection (e.g. after an idle timeout)
+        if (!pooledTransport.transport.isConnected()) {
+            pooledTransport.transport.connect();
+        }
+
+        pooledTransport.count++;
+
+        return pooledTransport.transport;
+    }
+
+    /**
+     * Close the connection associated to the configuration of the passed session, for example after a send failure
+     * which may have left it in an unknown state.
+     *
+     * @param session the session for which to close the connection
+     */
+    public void release(Session session)
+    {
+        PooledTransport pooledTransport = this.transports.remove(new TransportKey(session));
+        if (pooledTransport != null) {
+            closeTransport(pooledTransport.transport);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (PooledTransport pooledTransport : this.transports.values()) {
+            closeTransport(pooledTransport.transport);
+        }
+        this.transports.clear();
+    }
+
+    private void closeTransport(Transport transport)
+    {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            this.logger.warn("Failed to close JavaMail Transport connection. Reason [{}]",
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+}
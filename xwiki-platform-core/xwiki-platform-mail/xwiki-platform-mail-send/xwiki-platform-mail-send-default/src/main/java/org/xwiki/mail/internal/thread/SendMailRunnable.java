@@ -20,16 +20,16 @@
 package org.xwiki.mail.internal.thread;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
-import javax.mail.MessagingException;
-import javax.mail.Session;
 import javax.mail.Transport;
 
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
@@ -41,7 +41,9 @@
 import com.xpn.xwiki.XWikiContext;
 
 /**
- * Runnable that regularly check for mails on a Queue, and for each mail tries to send it.
+ * Runnable that regularly check for mails on a Queue, and for each mail tries to send it. Several Mail Sender Threads
+ * can execute this runnable in parallel (see {@link org.xwiki.mail.MailSenderConfiguration#getSendThreadCount()}):
+ * each one claims the mails it sends and uses its own SMTP connections.
  *
  * @version $Id$
  * @since 6.4
@@ -64,25 +66,35 @@ public class SendMailRunnable extends AbstractMailRunnable
     @Inject
     private Provider<XWikiContext> contextProvider;
 
-    private Transport currentTransport;
+    /**
+     * The date before which no mail of a given batch should be sent, used to throttle batches independently of the
+     * number of Mail Sender Threads. The key is the batch id.
+     */
+    private final Map<String, Long> batchNextSendDates = new ConcurrentHashMap<>();
 
-    private Session currentSession;
+    /**
+     * The last time the batches that can be sent again were removed from {@link #batchNextSendDates}.
+     */
+    private long batchNextSendDatesCleanDate;
 
-    private int count;
+    /**
+     * The date before which no mail should be sent, shared by all the Mail Sender Threads so that the send wait time
+     * applies to the mails sent by all the threads and not to the mails sent by each thread.
+     */
+    private final AtomicLong nextSendDate = new AtomicLong();
 
     @Override
     public void run()
     {
-        try {
+        // Each Mail Sender Thread uses its own connections
+        try (MailTransportPool transportPool = new MailTransportPool(this.logger)) {
             // Make sure we initialize an execution context.
             prepareContext();
 
-            runInternal();
+            runInternal(transportPool);
         } catch (ExecutionContextException e) {
             // Not much to do but log.
             logger.error("Failed to initialize the send mail thread's execution context", e);
-        } finally {
-            closeTransport();
         }
     }
 
@@ -101,25 +113,29 @@ private void prepareContextForQueueItem(SendMailQueueItem mailItem)
         xcontext.setWikiId(mailItem.getWikiId());
     }
 
-    private void runInternal()
+    private void runInternal(MailTransportPool transportPool)
     {
         do {
             try {
-                // Handle next message in the queue
-                if (this.sendMailQueueManager.hasMessage()) {
-                    // Important: only remove the mail item from the queue after the mail has been sent as
-                    // otherwise, MailSender.waitTillSent() may return before the mail is actually sent!
-                    SendMailQueueItem mailItem = this.sendMailQueueManager.peekMessage();
+                // Handle next message in the queue which is not already handled by another thread.
+                // Important: only remove the mail item from the queue after the mail has been sent as
+                // otherwise, MailSender.waitTillSent() may return before the mail is actually sent!
+                SendMailQueueItem mailItem = this.sendMailQueueManager.claimMessage(this::acquireBatchSendSlot);
+                if (mailItem != null) {
                     try {
-                        sendMail(mailItem);
+                        prepareContextForQueueItem(mailItem);
+
+                        // Email throttling: wait for the send slot of the claimed mail.
+                        // Note: it's important that we wait before sending the mail and not after the previous mail
+                        // has been removed from the queue in order to let users know as soon as possible that their
+                        // mail has been sent (otherwise when sending a synchronous mail, the user would have to wait
+                        // the send wait time!).
+                        waitSendWaitTime();
+
+                        sendMail(mailItem, transportPool);
                     } finally {
                         this.sendMailQueueManager.removeMessageFromQueue(mailItem);
                     }
-                    // Email throttling: Wait before processing the next mail queue item
-                    // Note: it's important that we wait after the previous item has been removed from the queue in
-                    // order to let users know as soon as possible that their mail has been sent (otherwise when sending
-                    // a synchronous mail, the user would have to wait the send wait time!).
-                    waitSendWaitTime();
                 }
                 // Note: a short pause to catch thread interruptions and to be kind on CPU.
                 Thread.sleep(50L);
@@ -134,15 +150,42 @@ private void runInternal()
         } while (!this.shouldStop);
     }
 
+    /**
+     * Per batch throttling: decide if a mail of the passed item's batch can be sent now and if so reserve the slot.
+     * Note that this is called by {@link MailQueueManager#claimMessage} which is synchronized.
+     */
+    private boolean acquireBatchSendSlot(SendMailQueueItem item)
+    {
+        long batchSendWaitTime = this.configuration.getBatchSendWaitTime();
+        if (batchSendWaitTime <= 0) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        Long nextSendDate = this.batchNextSendDates.get(item.getBatchId());
+        if (nextSendDate != null && now < nextSendDate) {
+            return false;
+        }
+
+        // Forget about the batches that can be sent again to not keep finished batches forever. Since a date expires
+        // after the batch send wait time, it's enough to do it once per batch send wait time.
+        if (now - this.batchNextSendDatesCleanDate >= batchSendWaitTime) {
+            this.batchNextSendDates.values().removeIf(date -> date <= now);
+            this.batchNextSendDatesCleanDate = now;
+        }
+        this.batchNextSendDates.put(item.getBatchId(), now + batchSendWaitTime);
+
+        return true;
+    }
+
     /**
      * Send the mail.
      *
      * @param item the queue item containing all the data for sending the mail
+     * @param transportPool the SMTP connections of the current Mail Sender Thread
      */
-    protected void sendMail(SendMailQueueItem item)
+    private void sendMail(SendMailQueueItem item, MailTransportPool transportPool)
     {
-        prepareContextForQueueItem(item);
-
         MailListener listener = item.getListener();
 
         ExtendedMimeMessage message;
@@ -151,39 +194,44 @@ protected void sendMail(SendMailQueueItem item)
             message = this.mailContentStore.load(item.getSession(), item.getBatchId(), item.getUniqueMessageId());
         } catch (Exception e) {
             if (listener != null) {
-                listener.onSendMessageFatalError(item.getUniqueMessageId(), e, Collections.<String, Object>emptyMap());
+                // Several Mail Sender Threads can send mails of the same batch, make sure the listener is notified
+                // by one thread at a time.
+                synchronized (listener) {
+                    listener.onSendMessageFatalError(item.getUniqueMessageId(), e,
+                        Collections.<String, Object>emptyMap());
+                }
             }
             return;
         }
 
         try {
-            // Step 2: If the current Session in use is different from the one passed then close
-            // the current Transport, get a new one and reconnect.
-            // Also do that every 100 mails sent.
-            // TODO: explain why!
-            if (item.getSession() != this.currentSession || (this.count % 100) == 0) {
-                closeTransport();
-                this.currentSession = item.getSession();
-                this.currentTransport = this.currentSession.getTransport("smtp");
-                this.currentTransport.connect();
-            } else if (!this.currentTransport.isConnected()) {
-                this.currentTransport.connect();
-            }
+            // Step 2: Get a connected Transport for the Session passed. It's reused for the next mails sent with the
+            // same Session by this thread and reconnected every 100 mails or if the server closed the connection.
+            Transport transport = transportPool.getTransport(item.getSession());
 
             // Step 3: Send the mail
             // Unlike the static send method, the sendMessage method does not call the saveChanges method on the
             // message; this prevent the MessageID header to be changed.
-            this.currentTransport.sendMessage(message, message.getAllRecipients());
-            this.count++;
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (Exception e) {
+                // Don't reuse a connection which may be in an unknown state
+                transportPool.release(item.getSession());
+                throw e;
+            }
 
             // Step 4: Notify the user of the success if a listener has been provided
             if (listener != null) {
-                listener.onSendMessageSuccess(message, Collections.<String, Object>emptyMap());
+                synchronized (listener) {
+                    listener.onSendMessageSuccess(message, Collections.<String, Object>emptyMap());
+                }
             }
         } catch (Exception e) {
             // An error occurred, notify the user if a listener has been provided.
             if (listener != null) {
-                listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
+                synchronized (listener) {
+                    listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
+                }
             }
         }
     }
@@ -191,18 +239,15 @@ protected void sendMail(SendMailQueueItem item)
     private void waitSendWaitTime() throws InterruptedException
     {
         long sendWaitTime = this.configuration.getSendWaitTime();
-        Thread.sleep(sendWaitTime);
-    }
 
-    private void closeTransport()
-    {
-        if (this.currentTransport != null) {
-            try {
-                this.currentTransport.close();
-            } catch (MessagingException e) {
-                this.logger.warn("Failed to close JavaMail Transport connection. Reason [{}]",
-                    ExceptionUtils.getRootCauseMessage(e));
-            }
+        // Reserve the next send slot, whatever the thread which sent the previous mail
+        long now = System.currentTimeMillis();
+        long sendDate = this.nextSendDate.getAndAccumulate(now, (date, current) -> Math.max(date, current)
+            + sendWaitTime);
+        sendDate = Math.max(sendDate, now);
+
+        if (sendDate > now) {
+            Thread.sleep(sendDate - now);
         }
     }
 }
@@ -222,4 +222,24 @@ public void getPortWhenMailConfigDoesntExist() throws Exception
 
         assertEquals(25, this.mocker.getComponentUnderTest().getPort());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getSendThreadCount() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.sendThreadCount", 1)).thenReturn(4);
+
+        assertEquals(4, this.mocker.getComponentUnderTest().getSendThreadCount());
+    }
+
+    @Test
+    public void getSendThreadCountWhenInvalid() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.sendThreadCount", 1)).thenReturn(0);
+
+        assertEquals(1, this.mocker.getComponentUnderTest().getSendThreadCount());
+    }
+}
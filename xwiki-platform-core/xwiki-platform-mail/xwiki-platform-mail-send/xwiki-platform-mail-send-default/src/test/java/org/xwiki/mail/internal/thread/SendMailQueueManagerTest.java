@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal.thread;
+
+import java.util.Properties;
+
+import javax.mail.Session;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SendMailQueueManager}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class SendMailQueueManagerTest
+{
+    private Session session = Session.getInstance(new Properties());
+
+    private SendMailQueueManager queueManager = new SendMailQueueManager();
+
+    private SendMailQueueItem createItem(String messageId, String batchId)
+    {
+        return new SendMailQueueItem(messageId, this.session, null, batchId, "xwiki");
+    }
+
+    @Test
+    public void claimMessageGoesThroughTheBatchesInTurn()
+    {
+        SendMailQueueItem a1 = createItem("a1", "a");
+        SendMailQueueItem a2 = createItem("a2", "a");
+        SendMailQueueItem b1 = createItem("b1", "b");
+        this.queueManager.addToQueue(a1);
+        this.queueManager.addToQueue(a2);
+        this.queueManager.addToQueue(b1);
+
+        assertSame(a1, this.queueManager.claimMessage(item -> true));
+        assertSame(b1, this.queueManager.claimMessage(item -> true));
+        assertSame(a2, this.queueManager.claimMessage(item -> true));
+        assertNull(this.queueManager.claimMessage(item -> true));
+
+        // Claimed mails stay on the queue until they are removed
+        assertSame(a1, this.queueManager.peekMessage());
+        assertTrue(this.queueManager.removeMessageFromQueue(b1));
+        assertTrue(this.queueManager.removeMessageFromQueue(a1));
+        assertTrue(this.queueManager.removeMessageFromQueue(a2));
+        assertFalse(this.queueManager.hasMessage());
+    }
+
+    @Test
+    public void claimMessageSkipsTheFilteredBatches()
+    {
+        SendMailQueueItem a1 = createItem("a1", "a");
+        SendMailQueueItem b1 = createItem("b1", "b");
+        this.queueManager.addToQueue(a1);
+        this.queueManager.addToQueue(b1);
+
+        assertSame(b1, this.queueManager.claimMessage(item -> item.getBatchId().equals("b")));
+        assertNull(this.queueManager.claimMessage(item -> item.getBatchId().equals("b")));
+
+        // An unclaimed mail can be removed and is not claimed anymore
+        assertTrue(this.queueManager.removeMessageFromQueue(a1));
+        assertNull(this.queueManager.claimMessage(item -> true));
+        assertSame(b1, this.queueManager.peekMessage());
+    }
+}
@@ -25,7 +25,9 @@
 import java.util.UUID;
 
 import javax.inject.Provider;
+import javax.mail.Message.RecipientType;
 import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
 import org.junit.Before;
@@ -36,6 +38,7 @@
 import org.xwiki.mail.ExtendedMimeMessage;
 import org.xwiki.mail.MailContentStore;
 import org.xwiki.mail.MailListener;
+import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.mail.MailState;
 import org.xwiki.mail.MailStatus;
 import org.xwiki.mail.MailStoreException;
@@ -44,9 +47,12 @@
 import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.ServerSetupTest;
 import com.xpn.xwiki.XWikiContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -62,6 +68,9 @@
 })
 public class SendMailRunnableTest
 {
+    @Rule
+    public GreenMailRule mail = new GreenMailRule(ServerSetupTest.SMTP);
+
     @Rule
     public MockitoComponentMockingRule<SendMailRunnable> mocker =
         new MockitoComponentMockingRule<>(SendMailRunnable.class);
@@ -206,4 +215,70 @@ public void sendMailWhenMailRetrievalFails() throws Exception
         }
         assertEquals(2, errorCount);
     }
+
+    @Test
+    public void sendMailsWithSeveralThreads() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", "localhost");
+        properties.setProperty("mail.smtp.port", String.valueOf(this.mail.getSmtp().getPort()));
+        Session session = Session.getInstance(properties);
+
+        MemoryMailListener listener = this.mocker.getInstance(MailListener.class, "memory");
+        String batchId = UUID.randomUUID().toString();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        ((UpdateableMailStatusResult) listener.getMailStatusResult()).setTotalSize(20);
+
+        MailQueueManager mailQueueManager = this.mocker.getInstance(
+            new DefaultParameterizedType(null, MailQueueManager.class, SendMailQueueItem.class));
+        MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
+
+        for (int i = 0; i < 20; i++) {
+            MimeMessage msg = new MimeMessage(session);
+            msg.setFrom(new InternetAddress("mary@doe.com"));
+            msg.setRecipient(RecipientType.TO, new InternetAddress("john" + i + "@doe.com"));
+            msg.setSubject("subject" + i);
+            msg.setText("Content" + i);
+            ExtendedMimeMessage message = new ExtendedMimeMessage(msg);
+            String id = message.getUniqueMessageId();
+            listener.onPrepareMessageSuccess(message, Collections.<String, Object>emptyMap());
+
+            // Simulate loading the message from the content store
+            when(contentStore.load(session, batchId, id)).thenReturn(message);
+            mailQueueManager.addToQueue(new SendMailQueueItem(id, session, listener, batchId, "xwiki"));
+        }
+
+        // Several Mail Sender Threads sharing the same queue, as done by MailSenderInitializerListener
+        MailSenderConfiguration configuration = this.mocker.getInstance(MailSenderConfiguration.class);
+        when(configuration.getSendWaitTime()).thenReturn(0L);
+        MailRunnable runnable = this.mocker.getComponentUnderTest();
+        Thread[] threads = new Thread[3];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(runnable);
+            threads[i].start();
+        }
+
+        // Wait for the mails to have been processed.
+        try {
+            listener.getMailStatusResult().waitTillProcessed(30000L);
+        } finally {
+            runnable.stopProcessing();
+            for (Thread thread : threads) {
+                thread.interrupt();
+                thread.join();
+            }
+        }
+
+        // Each mail has been sent exactly once and has been reported as sent.
+        assertEquals(20, this.mail.getReceivedMessages().length);
+        assertEquals(20, listener.getMailStatusResult().getProcessedMailCount());
+        Iterator<MailStatus> statuses = listener.getMailStatusResult().getByState(MailState.SEND_SUCCESS);
+        int successCount = 0;
+        while (statuses.hasNext()) {
+            statuses.next();
+            successCount++;
+        }
+        assertEquals(20, successCount);
+        assertFalse(mailQueueManager.hasMessage());
+    }
 }
@@ -20,6 +20,7 @@
 package org.xwiki.mail;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Configuration for the storage part of the Mail Sender.
@@ -35,4 +36,15 @@
      *         they should be kept (for tracability purpose for example)
      */
     boolean discardSuccessStatuses();
+
+    /**
+     * @return the maximum delay in milliseconds during which the mail status changes are accumulated in memory before
+     *         being written to the database by batches, 0 to write each change right away
+     * @since 9.12RC1
+     */
+    @Unstable
+    default long getStatusFlushDelay()
+    {
+        return 0;
+    }
 }
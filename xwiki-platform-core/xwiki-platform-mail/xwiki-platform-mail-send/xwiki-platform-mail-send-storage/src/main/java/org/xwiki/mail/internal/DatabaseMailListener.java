@@ -67,6 +67,9 @@ public class DatabaseMailListener extends AbstractMailListener implements Initia
     @Inject
     private MailStorageConfiguration configuration;
 
+    @Inject
+    private DatabaseMailStatusWriter statusWriter;
+
     private DatabaseMailStatusResult mailStatusResult;
 
     @Override
@@ -216,7 +219,10 @@ public MailStatusResult getMailStatusResult()
     private void saveStatus(MailStatus status, Map<String, Object> parameters)
     {
         try {
-            mailStatusStore.save(status, parameters);
+            // Write the status to the database by batches when enabled
+            if (!this.statusWriter.save(status)) {
+                mailStatusStore.save(status, parameters);
+            }
         } catch (MailStoreException e) {
             // Failed to save the status in the DB, we continue but log an error
             logger.error("Failed to save mail status [{}] to the database", status, e);
@@ -226,7 +232,9 @@ private void saveStatus(MailStatus status, Map<String, Object> parameters)
     private void deleteStatus(MailStatus status, Map<String, Object> parameters)
     {
         try {
-            mailStatusStore.delete(status.getMessageId(), parameters);
+            if (!this.statusWriter.delete(status.getMessageId())) {
+                mailStatusStore.delete(status.getMessageId(), parameters);
+            }
         } catch (MailStoreException e) {
             // Failed to delete the status in the DB, we continue but log an error
             logger.error("Failed to delete mail status [{}] from the database", status, e);
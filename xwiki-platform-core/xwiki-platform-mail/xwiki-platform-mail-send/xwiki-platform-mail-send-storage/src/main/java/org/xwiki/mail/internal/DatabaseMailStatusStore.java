@@ -19,10 +19,13 @@
  */
 package org.xwiki.mail.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -37,6 +40,7 @@
 import org.xwiki.mail.MailStatus;
 import org.xwiki.mail.MailStatusStore;
 import org.xwiki.mail.MailStoreException;
+import org.xwiki.mail.internal.DatabaseMailStatusWriter.MailStatusChange;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -56,6 +60,13 @@ public class DatabaseMailStatusStore implements MailStatusStore
 {
     private static final String ID_PARAMETER_NAME = "id";
 
+    private static final String IDS_PARAMETER_NAME = "pendingIds";
+
+    /**
+     * The maximum number of values in a SQL {@code in} clause (Oracle doesn't support more than 1000).
+     */
+    private static final int MAX_IN_VALUES = 1000;
+
     @Inject
     private Logger logger;
 
@@ -66,6 +77,9 @@ public class DatabaseMailStatusStore implements MailStatusStore
     @Named("hibernate")
     private XWikiStoreInterface hibernateStore;
 
+    @Inject
+    private DatabaseMailStatusWriter statusWriter;
+
     @Override
     public void save(final MailStatus status, final Map<String, Object> parameters) throws MailStoreException
     {
@@ -102,6 +116,12 @@ public Object doInHibernate(Session session) throws HibernateException, XWikiExc
     @Override
     public MailStatus load(String uniqueMessageId) throws MailStoreException
     {
+        // Take into account the changes which have not been written yet
+        MailStatusChange pendingChange = this.statusWriter.getPendingChange(uniqueMessageId);
+        if (pendingChange != null) {
+            return pendingChange.getStatus();
+        }
+
         List<MailStatus> statuses = load(Collections.<String, Object>singletonMap(ID_PARAMETER_NAME, uniqueMessageId),
             0, 0, null, false);
         if (statuses.isEmpty()) {
@@ -114,6 +134,41 @@ public MailStatus load(String uniqueMessageId) throws MailStoreException
     public List<MailStatus> load(final Map<String, Object> filterMap, final int offset, final int count,
         String sortField, boolean sortAscending)
         throws MailStoreException
+    {
+        // Take into account the changes which have not been written yet
+        Map<String, MailStatusChange> pendingChanges = this.statusWriter.getPendingChanges();
+        if (pendingChanges.isEmpty()) {
+            return loadFromDatabase(filterMap, offset, count, sortField, sortAscending);
+        }
+
+        // Each pending change can hide a status stored in the database, so get enough statuses to fill the page
+        int databaseCount = count > 0 ? offset + count + pendingChanges.size() : 0;
+        List<MailStatus> mailStatuses = new ArrayList<>();
+        for (MailStatus mailStatus : loadFromDatabase(filterMap, 0, databaseCount, sortField, sortAscending)) {
+            if (!pendingChanges.containsKey(mailStatus.getMessageId())) {
+                mailStatuses.add(mailStatus);
+            }
+        }
+        for (MailStatusChange pendingChange : pendingChanges.values()) {
+            if (pendingChange.getStatus() != null && matches(pendingChange.getStatus(), filterMap)) {
+                mailStatuses.add(pendingChange.getStatus());
+            }
+        }
+
+        if (sortField != null) {
+            Comparator<MailStatus> comparator =
+                (status1, status2) -> compare(getProperty(status1, sortField), getProperty(status2, sortField));
+            mailStatuses.sort(sortAscending ? comparator : comparator.reversed());
+        }
+
+        int fromIndex = Math.min(offset, mailStatuses.size());
+        int toIndex = count > 0 ? Math.min(offset + count, mailStatuses.size()) : mailStatuses.size();
+
+        return new ArrayList<>(mailStatuses.subList(fromIndex, toIndex));
+    }
+
+    private List<MailStatus> loadFromDatabase(final Map<String, Object> filterMap, final int offset, final int count,
+        String sortField, boolean sortAscending) throws MailStoreException
     {
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
@@ -170,6 +225,9 @@ public List<MailStatus> doInHibernate(Session session)
     @Override
     public long count(final Map<String, Object> filterMap) throws MailStoreException
     {
+        // Take into account the changes which have not been written yet
+        final Map<String, MailStatusChange> pendingChanges = this.statusWriter.getPendingChanges();
+
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
         final XWikiContext xwikiContext = this.contextProvider.get();
@@ -179,6 +237,9 @@ public long count(final Map<String, Object> filterMap) throws MailStoreException
 
         // Compute the Query string based on the passed filter map
         final String queryString = computeCountQueryString(filterMap);
+        // Count the stored statuses which are replaced by a pending change
+        final String pendingQueryString =
+            queryString + (filterMap.isEmpty() ? " where" : " and") + " mail_id in (:" + IDS_PARAMETER_NAME + ')';
 
         try {
             Long count = store.executeRead(xwikiContext,
@@ -190,9 +251,27 @@ public Long doInHibernate(Session session)
                     {
                         Query query = session.createQuery(queryString);
                         query.setProperties(filterMap);
-                        return (Long) query.uniqueResult();
+                        long result = (Long) query.uniqueResult();
+
+                        List<String> pendingIds = new ArrayList<>(pendingChanges.keySet());
+                        for (int i = 0; i < pendingIds.size(); i += MAX_IN_VALUES) {
+                            Query pendingQuery = session.createQuery(pendingQueryString);
+                            pendingQuery.setProperties(filterMap);
+                            pendingQuery.setParameterList(IDS_PARAMETER_NAME,
+                                pendingIds.subList(i, Math.min(i + MAX_IN_VALUES, pendingIds.size())));
+                            result -= (Long) pendingQuery.uniqueResult();
+                        }
+
+                        return result;
                     }
                 });
+
+            for (MailStatusChange pendingChange : pendingChanges.values()) {
+                if (pendingChange.getStatus() != null && matches(pendingChange.getStatus(), filterMap)) {
+                    count++;
+                }
+            }
+
             return count;
         } catch (Exception e) {
             throw new MailStoreException(String.format(
@@ -205,6 +284,9 @@ public Long doInHibernate(Session session)
     @Override
     public void delete(final String uniqueMessageId, Map<String, Object> parameters) throws MailStoreException
     {
+        // This change overwrites any change which has not been written yet
+        this.statusWriter.discard(uniqueMessageId);
+
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
         XWikiContext xwikiContext = this.contextProvider.get();
@@ -232,6 +314,76 @@ public Object doInHibernate(Session session) throws HibernateException, XWikiExc
         }
     }
 
+    /**
+     * @return true if the passed status matches all the filters, evaluated like the SQL {@code like} operator
+     */
+    private boolean matches(MailStatus status, Map<String, Object> filterMap)
+    {
+        for (Map.Entry<String, Object> entry : filterMap.entrySet()) {
+            Object value = getProperty(status, entry.getKey());
+            if (value == null || !toRegex(String.valueOf(entry.getValue())).matcher(value.toString()).matches()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Pattern toRegex(String likePattern)
+    {
+        StringBuilder regex = new StringBuilder();
+        for (char c : likePattern.toCharArray()) {
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private int compare(Comparable value1, Comparable value2)
+    {
+        if (value1 == null) {
+            return value2 == null ? 0 : -1;
+        } else if (value2 == null) {
+            return 1;
+        }
+
+        return value1.compareTo(value2);
+    }
+
+    private Comparable<?> getProperty(MailStatus status, String name)
+    {
+        switch (name) {
+            case ID_PARAMETER_NAME:
+            case "messageId":
+                return status.getMessageId();
+            case "batchId":
+                return status.getBatchId();
+            case "state":
+                return status.getState();
+            case "date":
+                return status.getDate();
+            case "recipients":
+                return status.getRecipients();
+            case "type":
+                return status.getType();
+            case "errorSummary":
+                return status.getErrorSummary();
+            case "errorDescription":
+                return status.getErrorDescription();
+            case "wiki":
+                return status.getWiki();
+            default:
+                return null;
+        }
+    }
+
     protected String computeQueryString(String prefix,
         Map<String, Object> filterMap, String sortField, boolean sortAscending)
     {
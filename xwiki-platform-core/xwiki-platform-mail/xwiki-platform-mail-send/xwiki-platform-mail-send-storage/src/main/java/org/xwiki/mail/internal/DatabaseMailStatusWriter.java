@@ -0,0 +1,402 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.mail.MailStatus;
+import org.xwiki.mail.MailStorageConfiguration;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Accumulates the mail status changes in memory and writes them to the database by batches, so that sending a large
+ * number of mails doesn't require several transactions per mail. Successive changes of the same mail status are
+ * coalesced (e.g. a mail prepared then sent successfully results in a single write, or none at all when success
+ * statuses are discarded). The pending changes are taken into account by {@link DatabaseMailStatusStore} when reading
+ * mail statuses.
+ * <p>
+ * When a batch can't be written its changes are written one by one so that a bad change doesn't prevent the others
+ * from being written. The changes which still could not be written are retried with the next batch, up to
+ * {@value #MAX_ATTEMPTS} times.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = DatabaseMailStatusWriter.class)
+@Singleton
+public class DatabaseMailStatusWriter implements Disposable
+{
+    /**
+     * The number of pending changes after which they're written without waiting for the delay, and the number of
+     * statements sent in a single JDBC batch.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The maximum number of times we try to write a change before giving up.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    @Named("hibernate")
+    private XWikiStoreInterface hibernateStore;
+
+    @Inject
+    private MailStorageConfiguration configuration;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    /**
+     * The changes waiting to be written, indexed by message id.
+     */
+    private final Map<String, MailStatusChange> pendingChanges = new LinkedHashMap<>();
+
+    /**
+     * The changes currently being written, still visible to readers until the write is done.
+     */
+    private Map<String, MailStatusChange> flushingChanges = Collections.emptyMap();
+
+    /**
+     * The messages discarded while their change was being written, which must not be saved anymore.
+     */
+    private final Set<String> discardedFlushingChanges = new HashSet<>();
+
+    private final Object flushLock = new Object();
+
+    private Thread thread;
+
+    private volatile boolean shouldStop;
+
+    /**
+     * A change of a mail status waiting to be written.
+     */
+    public static final class MailStatusChange
+    {
+        private final MailStatus status;
+
+        private int attempts;
+
+        MailStatusChange(MailStatus status)
+        {
+            this.status = status;
+        }
+
+        /**
+         * @return the new mail status, or null if the mail status is deleted
+         */
+        public MailStatus getStatus()
+        {
+            return this.status;
+        }
+    }
+
+    /**
+     * Save the passed mail status, replacing any previous state of the same message.
+     *
+     * @param status the status to save
+     * @return false if the changes are not written by batches, in which case the caller must save the status itself
+     */
+    public boolean save(MailStatus status)
+    {
+        return addChange(status.getMessageId(), new MailStatusChange(status));
+    }
+
+    /**
+     * Delete the status of the passed message.
+     *
+     * @param uniqueMessageId the unique id of the message
+     * @return false if the changes are not written by batches, in which case the caller must delete the status itself
+     */
+    public boolean delete(String uniqueMessageId)
+    {
+        return addChange(uniqueMessageId, new MailStatusChange(null));
+    }
+
+    /**
+     * @param uniqueMessageId the unique id of the message
+     * @return the pending change of the passed message status or null if there's no pending change for this message
+     */
+    public synchronized MailStatusChange getPendingChange(String uniqueMessageId)
+    {
+        MailStatusChange change = this.pendingChanges.get(uniqueMessageId);
+        if (change == null) {
+            change = this.flushingChanges.get(uniqueMessageId);
+        }
+
+        return change;
+    }
+
+    /**
+     * Forget the pending change of the passed message status, for example because it's overwritten right away. A
+     * change being written is not saved anymore, and the status is deleted again after the write in case it was
+     * already saved.
+     *
+     * @param uniqueMessageId the unique id of the message
+     */
+    public synchronized void discard(String uniqueMessageId)
+    {
+        this.pendingChanges.remove(uniqueMessageId);
+
+        if (this.flushingChanges.containsKey(uniqueMessageId)) {
+            // Don't save the status if the write didn't reach it yet
+            this.discardedFlushingChanges.add(uniqueMessageId);
+            // It might already be saved in the transaction, committed after the caller deleted it from the database
+            this.pendingChanges.put(uniqueMessageId, new MailStatusChange(null));
+        }
+    }
+
+    /**
+     * @return the changes which have not been written yet, indexed by message id
+     */
+    public synchronized Map<String, MailStatusChange> getPendingChanges()
+    {
+        Map<String, MailStatusChange> changes = new LinkedHashMap<>(this.flushingChanges);
+        // The pending changes are more recent than the ones being written
+        changes.putAll(this.pendingChanges);
+
+        return changes;
+    }
+
+    private synchronized boolean isDiscarded(String uniqueMessageId)
+    {
+        return this.discardedFlushingChanges.contains(uniqueMessageId);
+    }
+
+    /**
+     * Write the pending changes to the database.
+     */
+    public void flush()
+    {
+        synchronized (this.flushLock) {
+            Map<String, MailStatusChange> changes;
+            synchronized (this) {
+                if (this.pendingChanges.isEmpty()) {
+                    return;
+                }
+                changes = new LinkedHashMap<>(this.pendingChanges);
+                this.pendingChanges.clear();
+                this.flushingChanges = changes;
+            }
+
+            try {
+                write(changes);
+            } catch (Exception e) {
+                if (changes.size() == 1) {
+                    retryLater(changes.entrySet().iterator().next(), e);
+                } else {
+                    this.logger.warn("Failed to write [{}] mail status changes to the database, writing them one by one",
+                        changes.size(), e);
+                    writeOneByOne(changes);
+                }
+            } finally {
+                synchronized (this) {
+                    this.flushingChanges = Collections.emptyMap();
+                    this.discardedFlushingChanges.clear();
+                }
+            }
+        }
+    }
+
+    private void writeOneByOne(Map<String, MailStatusChange> changes)
+    {
+        for (Map.Entry<String, MailStatusChange> entry : changes.entrySet()) {
+            try {
+                write(Collections.singletonMap(entry.getKey(), entry.getValue()));
+            } catch (Exception e) {
+                retryLater(entry, e);
+            }
+        }
+    }
+
+    /**
+     * Put back the passed change with the pending changes, unless it has been overwritten or discarded in the
+     * meantime or it failed too many times.
+     */
+    private synchronized void retryLater(Map.Entry<String, MailStatusChange> entry, Exception error)
+    {
+        String uniqueMessageId = entry.getKey();
+        MailStatusChange change = entry.getValue();
+        if (this.pendingChanges.containsKey(uniqueMessageId) || isDiscarded(uniqueMessageId)) {
+            return;
+        }
+
+        if (++change.attempts < MAX_ATTEMPTS) {
+            this.logger.warn("Failed to write the status change of message [{}], it will be retried later",
+                uniqueMessageId, error);
+            this.pendingChanges.put(uniqueMessageId, change);
+        } else {
+            this.logger.error("Failed to write the status change of message [{}] after [{}] attempts, it is lost",
+                uniqueMessageId, MAX_ATTEMPTS, error);
+        }
+    }
+
+    private synchronized boolean addChange(String uniqueMessageId, MailStatusChange change)
+    {
+        if (this.shouldStop || this.configuration.getStatusFlushDelay() <= 0) {
+            return false;
+        }
+
+        // Keep the last change only
+        this.pendingChanges.remove(uniqueMessageId);
+        this.pendingChanges.put(uniqueMessageId, change);
+
+        if (this.thread == null) {
+            startThread();
+        } else if (this.pendingChanges.size() >= BATCH_SIZE) {
+            // Don't wait for the delay to write a full batch
+            notifyAll();
+        }
+
+        return true;
+    }
+
+    private void startThread()
+    {
+        this.thread = new Thread(this::run);
+        this.thread.setName("Mail Status Writer Thread");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void run()
+    {
+        try {
+            this.executionContextManager.initialize(new ExecutionContext());
+        } catch (ExecutionContextException e) {
+            this.logger.error("Failed to initialize the mail status writer thread's execution context", e);
+        }
+
+        while (!this.shouldStop) {
+            try {
+                synchronized (this) {
+                    if (this.pendingChanges.size() < BATCH_SIZE) {
+                        wait(this.configuration.getStatusFlushDelay());
+                    }
+                }
+            } catch (InterruptedException e) {
+                this.logger.debug("Mail Status Writer Thread was interrupted", e);
+                break;
+            }
+
+            flush();
+        }
+
+        // Don't lose the last changes
+        flush();
+    }
+
+    private void write(final Map<String, MailStatusChange> changes) throws XWikiException
+    {
+        XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
+
+        XWikiContext xwikiContext = this.contextProvider.get();
+        // Save in the main wiki
+        String currentWiki = xwikiContext.getWikiId();
+        xwikiContext.setWikiId(xwikiContext.getMainXWiki());
+
+        try {
+            store.executeWrite(xwikiContext, session -> {
+                // Delete any previous state of the messages
+                List<String> messageIds = new ArrayList<>(changes.keySet());
+                String queryString =
+                    String.format("delete from %s where mail_id in (:ids)", MailStatus.class.getName());
+                for (int i = 0; i < messageIds.size(); i += BATCH_SIZE) {
+                    session.createQuery(queryString)
+                        .setParameterList("ids", messageIds.subList(i, Math.min(i + BATCH_SIZE, messageIds.size())))
+                        .executeUpdate();
+                }
+
+                // Insert the new states
+                int count = 0;
+                for (Map.Entry<String, MailStatusChange> entry : changes.entrySet()) {
+                    MailStatus status = entry.getValue().getStatus();
+                    if (status != null && !isDiscarded(entry.getKey())) {
+                        session.save(status);
+                        if (++count % BATCH_SIZE == 0) {
+                            flushSession(session);
+                        }
+                    }
+                }
+
+                return null;
+            });
+
+            this.logger.debug("Wrote [{}] mail status changes", changes.size());
+        } finally {
+            xwikiContext.setWikiId(currentWiki);
+        }
+    }
+
+    private void flushSession(Session session)
+    {
+        // Send the inserts (as a JDBC batch when hibernate.jdbc.batch_size is set) and empty the session cache
+        session.flush();
+        session.clear();
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        Thread writerThread;
+        synchronized (this) {
+            this.shouldStop = true;
+            writerThread = this.thread;
+            notifyAll();
+        }
+
+        if (writerThread != null) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -44,6 +44,10 @@ public class DefaultMailStorageConfiguration implements MailStorageConfiguration
 
     private static final String DISCARD_SUCCESS_STATUSES = "discardSuccessStatuses";
 
+    private static final String STATUS_FLUSH_DELAY = "statusFlushDelay";
+
+    private static final long DEFAULT_STATUS_FLUSH_DELAY = 1000L;
+
     @Inject
     @Named("mailsend")
     private ConfigurationSource mailConfigSource;
@@ -64,4 +68,10 @@ public boolean discardSuccessStatuses()
 
         return (discardSuccessStatuses == 1);
     }
+
+    @Override
+    public long getStatusFlushDelay()
+    {
+        return this.xwikiPropertiesSource.getProperty(PREFIX + STATUS_FLUSH_DELAY, DEFAULT_STATUS_FLUSH_DELAY);
+    }
 }
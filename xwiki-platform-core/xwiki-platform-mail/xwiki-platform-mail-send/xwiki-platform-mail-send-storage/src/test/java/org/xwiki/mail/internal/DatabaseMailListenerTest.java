@@ -49,6 +49,7 @@
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -104,6 +105,21 @@ public void onPrepareSuccess() throws Exception
         verify(mailStatusStore).save(argThat(new isSameMailStatus(MailState.PREPARE_SUCCESS, "mywiki")), anyMap());
     }
 
+    @Test
+    public void onPrepareSuccessWhenWrittenByBatch() throws Exception
+    {
+        MailStatusStore mailStatusStore = this.mocker.getInstance(MailStatusStore.class, "database");
+        DatabaseMailStatusWriter statusWriter = this.mocker.getInstance(DatabaseMailStatusWriter.class);
+        when(statusWriter.save(any(MailStatus.class))).thenReturn(true);
+
+        MailListener listener = this.mocker.getComponentUnderTest();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        listener.onPrepareMessageSuccess(this.message, Collections.<String, Object>emptyMap());
+
+        verify(statusWriter).save(argThat(new isSameMailStatus(MailState.PREPARE_SUCCESS, "mywiki")));
+        verify(mailStatusStore, never()).save(any(MailStatus.class), anyMap());
+    }
+
     @Test
     public void onPrepareError() throws Exception
     {
@@ -20,28 +20,38 @@
 package org.xwiki.mail.internal;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Provider;
 
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.junit.Rule;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.mail.MailState;
 import org.xwiki.mail.MailStatus;
+import org.xwiki.mail.internal.DatabaseMailStatusWriter.MailStatusChange;
 import org.xwiki.test.AllLogRule;
 import org.xwiki.test.LogLevel;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -113,4 +123,92 @@ public void logsForloadMailStatus() throws Exception
         assertEquals("Loaded mail status [messageId = [messageid], batchId = [batchid], state = [prepare_success], "
             + "date = [<null>], recipients = [recipients]]", this.logRule.getMessage(1));
     }
+
+    private MailStatus createStatus(String messageId, MailState state, long date)
+    {
+        MailStatus status = new MailStatus();
+        status.setBatchId("batchid");
+        status.setMessageId(messageId);
+        status.setState(state);
+        status.setDate(new Date(date));
+
+        return status;
+    }
+
+    private void mockDatabase(List<MailStatus> statuses, long count, long replacedCount) throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+
+        XWikiHibernateStore hibernateStore = mock(XWikiHibernateStore.class);
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "hibernateStore", hibernateStore);
+
+        Session session = mock(Session.class);
+        when(hibernateStore.executeRead(eq(xcontext), any())).then(
+            invocation -> invocation.<HibernateCallback<Object>>getArgument(1).doInHibernate(session));
+
+        Query listQuery = mock(Query.class);
+        when(session.createQuery(startsWith("from "))).thenReturn(listQuery);
+        when(listQuery.list()).thenReturn(statuses);
+
+        Query countQuery = mock(Query.class);
+        when(session.createQuery(startsWith("select count(*) "))).thenReturn(countQuery);
+        when(countQuery.uniqueResult()).thenReturn(count);
+
+        Query replacedQuery = mock(Query.class);
+        when(session.createQuery(eq(
+            "select count(*) from org.xwiki.mail.MailStatus where mail_state like :state and mail_id in (:pendingIds)")))
+            .thenReturn(replacedQuery);
+        when(replacedQuery.uniqueResult()).thenReturn(replacedCount);
+    }
+
+    private void mockPendingChanges(MailStatus... statuses) throws Exception
+    {
+        Map<String, MailStatusChange> changes = new LinkedHashMap<>();
+        for (MailStatus status : statuses) {
+            changes.put(status.getMessageId(), new MailStatusChange(status));
+        }
+        changes.put("deleted", new MailStatusChange(null));
+
+        DatabaseMailStatusWriter writer = this.mocker.getInstance(DatabaseMailStatusWriter.class);
+        when(writer.getPendingChanges()).thenReturn(changes);
+    }
+
+    @Test
+    public void loadIncludesThePendingChanges() throws Exception
+    {
+        MailStatus stored = createStatus("stored", MailState.SEND_ERROR, 1);
+        MailStatus replaced = createStatus("replaced", MailState.PREPARE_SUCCESS, 2);
+        MailStatus deleted = createStatus("deleted", MailState.SEND_ERROR, 4);
+        mockDatabase(Arrays.asList(deleted, replaced, stored), 0, 0);
+
+        MailStatus replacing = createStatus("replaced", MailState.SEND_ERROR, 5);
+        MailStatus added = createStatus("added", MailState.SEND_ERROR, 3);
+        MailStatus notMatching = createStatus("notmatching", MailState.SEND_SUCCESS, 6);
+        mockPendingChanges(replacing, added, notMatching);
+
+        Map<String, Object> filterMap = Collections.singletonMap("state", "send_e%");
+
+        assertEquals(Arrays.asList(replacing, added, stored),
+            this.mocker.getComponentUnderTest().load(filterMap, 0, 0, "date", false));
+        assertEquals(Arrays.asList(added),
+            this.mocker.getComponentUnderTest().load(filterMap, 1, 1, "date", false));
+
+        // The statuses stored in the database are never flushed by the reads
+        verify(this.mocker.getInstance(DatabaseMailStatusWriter.class), never()).flush();
+    }
+
+    @Test
+    public void countIncludesThePendingChanges() throws Exception
+    {
+        // The "stored", "replaced" and "deleted" statuses match the filter in the database
+        mockDatabase(Collections.<MailStatus>emptyList(), 3, 2);
+
+        mockPendingChanges(createStatus("replaced", MailState.SEND_ERROR, 5),
+            createStatus("added", MailState.SEND_ERROR, 3), createStatus("notmatching", MailState.SEND_SUCCESS, 6));
+
+        assertEquals(3,
+            this.mocker.getComponentUnderTest().count(Collections.singletonMap("state", "send_e%")));
+    }
 }
@@ -0,0 +1,243 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Provider;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.mail.MailState;
+import org.xwiki.mail.MailStatus;
+import org.xwiki.mail.MailStorageConfiguration;
+import org.xwiki.mail.internal.DatabaseMailStatusWriter.MailStatusChange;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DatabaseMailStatusWriter}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class DatabaseMailStatusWriterTest
+{
+    @Rule
+    public MockitoComponentMockingRule<DatabaseMailStatusWriter> mocker =
+        new MockitoComponentMockingRule<>(DatabaseMailStatusWriter.class);
+
+    private XWikiContext xcontext;
+
+    private XWikiHibernateStore hibernateStore;
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = this.mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        this.xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+        when(this.xcontext.getWikiId()).thenReturn("wiki");
+        when(this.xcontext.getMainXWiki()).thenReturn("mainwiki");
+
+        this.hibernateStore = mock(XWikiHibernateStore.class);
+        this.mocker.registerComponent(XWikiStoreInterface.class, "hibernate", this.hibernateStore);
+    }
+
+    private MailStatus createStatus(MailState state)
+    {
+        return createStatus("messageid", state);
+    }
+
+    private MailStatus createStatus(String messageId, MailState state)
+    {
+        MailStatus status = new MailStatus();
+        status.setBatchId("batchid");
+        status.setMessageId(messageId);
+        status.setState(state);
+
+        return status;
+    }
+
+    @Test
+    public void saveWhenFlushDelayIsDisabled() throws Exception
+    {
+        MailStatus status = createStatus(MailState.PREPARE_SUCCESS);
+
+        // The caller has to write the status right away
+        assertFalse(this.mocker.getComponentUnderTest().save(status));
+        assertFalse(this.mocker.getComponentUnderTest().delete("messageid"));
+        assertNull(this.mocker.getComponentUnderTest().getPendingChange("messageid"));
+    }
+
+    @Test
+    public void saveAndDeleteAreCoalescedAndWrittenByBatch() throws Exception
+    {
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushDelay()).thenReturn(60000L);
+
+        DatabaseMailStatusWriter writer = this.mocker.getComponentUnderTest();
+
+        MailStatus prepareStatus = createStatus(MailState.PREPARE_SUCCESS);
+        assertTrue(writer.save(prepareStatus));
+        assertSame(prepareStatus, writer.getPendingChange("messageid").getStatus());
+
+        MailStatus errorStatus = createStatus(MailState.SEND_ERROR);
+        assertTrue(writer.save(errorStatus));
+        assertSame(errorStatus, writer.getPendingChange("messageid").getStatus());
+
+        assertTrue(writer.delete("messageid"));
+        assertNull(writer.getPendingChange("messageid").getStatus());
+
+        // Nothing is written while the delay is not expired
+        verify(this.hibernateStore, never()).executeWrite(any(), any());
+
+        // The pending changes are written when stopping
+        writer.dispose();
+
+        verify(this.hibernateStore).executeWrite(eq(this.xcontext), any());
+        verify(this.xcontext).setWikiId("mainwiki");
+        assertNull(writer.getPendingChange("messageid"));
+    }
+
+    @Test
+    public void discardWhileFlushing() throws Exception
+    {
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushDelay()).thenReturn(60000L);
+
+        DatabaseMailStatusWriter writer = this.mocker.getComponentUnderTest();
+
+        Session session = mock(Session.class);
+        Query query = mock(Query.class);
+        when(session.createQuery(any(String.class))).thenReturn(query);
+        when(query.setParameterList(any(String.class), any(Collection.class))).thenReturn(query);
+        AtomicBoolean discarded = new AtomicBoolean();
+        when(this.hibernateStore.executeWrite(eq(this.xcontext), any())).then(invocation -> {
+            // The status is deleted while it's being written
+            if (!discarded.getAndSet(true)) {
+                writer.discard("messageid");
+            }
+            return invocation.<HibernateCallback<Object>>getArgument(1).doInHibernate(session);
+        });
+
+        MailStatus status = createStatus(MailState.PREPARE_SUCCESS);
+        assertTrue(writer.save(status));
+
+        writer.flush();
+
+        verify(session, never()).save(status);
+        // The status is deleted again in case the write was committed after the status was deleted
+        assertNull(writer.getPendingChange("messageid").getStatus());
+    }
+
+    @Test
+    public void failingChangeDoesntPreventTheOthersFromBeingWrittenAndIsRetried() throws Exception
+    {
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushDelay()).thenReturn(60000L);
+
+        DatabaseMailStatusWriter writer = this.mocker.getComponentUnderTest();
+
+        Session session = mock(Session.class);
+        Query query = mock(Query.class);
+        when(session.createQuery(any(String.class))).thenReturn(query);
+        when(query.setParameterList(any(String.class), any(Collection.class))).thenReturn(query);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        List<String> batch = new ArrayList<>();
+        when(session.save(any())).then(invocation -> {
+            String messageId = invocation.<MailStatus>getArgument(0).getMessageId();
+            if (failing.get() && messageId.equals("bad")) {
+                throw new HibernateException("Failed to save [bad]");
+            }
+            batch.add(messageId);
+            return messageId;
+        });
+        List<String> written = new ArrayList<>();
+        when(this.hibernateStore.executeWrite(eq(this.xcontext), any())).then(invocation -> {
+            batch.clear();
+            invocation.<HibernateCallback<Object>>getArgument(1).doInHibernate(session);
+            // The transaction is committed
+            written.addAll(batch);
+            return null;
+        });
+
+        writer.save(createStatus("good1", MailState.SEND_ERROR));
+        writer.save(createStatus("bad", MailState.SEND_ERROR));
+        writer.save(createStatus("good2", MailState.SEND_ERROR));
+
+        writer.flush();
+
+        assertEquals(Arrays.asList("good1", "good2"), written);
+        assertNull(writer.getPendingChange("good1"));
+        assertNotNull(writer.getPendingChange("bad"));
+
+        // The database is working again
+        failing.set(false);
+        writer.flush();
+
+        assertEquals(Arrays.asList("good1", "good2", "bad"), written);
+        assertNull(writer.getPendingChange("bad"));
+    }
+
+    @Test
+    public void getPendingChanges() throws Exception
+    {
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushDelay()).thenReturn(60000L);
+
+        DatabaseMailStatusWriter writer = this.mocker.getComponentUnderTest();
+
+        MailStatus status = createStatus("message1", MailState.SEND_ERROR);
+        writer.save(status);
+        writer.delete("message2");
+
+        Map<String, MailStatusChange> changes = writer.getPendingChanges();
+        assertEquals(2, changes.size());
+        assertSame(status, changes.get("message1").getStatus());
+        assertNull(changes.get("message2").getStatus());
+    }
+}
@@ -57,4 +57,14 @@ public void discardSuccessStatusesFalseWhenDefinedInMailConfig() throws Exceptio
 
         assertEquals(false, this.mocker.getComponentUnderTest().discardSuccessStatuses());
     }
+
+    @Test
+    public void getStatusFlushDelay() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.database.statusFlushDelay", 1000L)).thenReturn(5000L);
+
+        assertEquals(5000L, this.mocker.getComponentUnderTest().getStatusFlushDelay());
+    }
 }
@@ -19,7 +19,10 @@
  */
 package org.xwiki.model.internal.reference;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -42,6 +45,11 @@
 public abstract class AbstractStringEntityReferenceResolver extends AbstractEntityReferenceResolver implements
     EntityReferenceResolver<String>, Initializable
 {
+    /**
+     * The maximum number of parsed representations to keep in memory for each type of reference.
+     */
+    private static final int PARSED_CACHE_SIZE = 1000;
+
     /**
      * Array of character to unescape in entity names.
      */
@@ -57,6 +65,12 @@ public abstract class AbstractStringEntityReferenceResolver extends AbstractEnti
 
     private Map<EntityType, Map<Character, EntityType>> referenceSetup;
 
+    /**
+     * The already parsed representations, by type of the resolved reference.
+     */
+    private final Map<EntityType, ReferenceCache<String, ParsedReference>> parsedReferences =
+        createParsedReferences();
+
     /**
      * Empty constructor, to be used by the Component Manager, which will also inject the Symbol Scheme.
      */
@@ -99,11 +113,69 @@ public void initialize()
     @Override
     public EntityReference resolve(String entityReferenceRepresentation, EntityType type, Object... parameters)
     {
+        ParsedReference parsedReference;
+
+        if (entityReferenceRepresentation != null) {
+            ReferenceCache<String, ParsedReference> cache = this.parsedReferences.get(type);
+            parsedReference = cache.get(entityReferenceRepresentation);
+            if (parsedReference == null) {
+                parsedReference = parse(entityReferenceRepresentation, type);
+                cache.set(entityReferenceRepresentation, parsedReference);
+            }
+        } else {
+            parsedReference = parse(null, type);
+        }
+
+        // A reference which does not depend on default values is immutable and can be shared
+        if (parsedReference.reference != null) {
+            return parsedReference.reference;
+        }
+
+        return resolve(parsedReference, parameters);
+    }
+
+    private static Map<EntityType, ReferenceCache<String, ParsedReference>> createParsedReferences()
+    {
+        Map<EntityType, ReferenceCache<String, ParsedReference>> caches = new EnumMap<>(EntityType.class);
+        for (EntityType type : EntityType.values()) {
+            caches.put(type, new ReferenceCache<String, ParsedReference>(PARSED_CACHE_SIZE));
+        }
+
+        return caches;
+    }
+
+    private EntityReference resolve(ParsedReference parsedReference, Object... parameters)
+    {
+        EntityReference reference = null;
+
+        for (int i = 0; i < parsedReference.types.size(); ++i) {
+            EntityType currentType = parsedReference.types.get(i);
+            String name = parsedReference.names.get(i);
+
+            EntityReference newReference;
+            if (name != null) {
+                newReference = new EntityReference(name, currentType);
+            } else {
+                newReference = resolveDefaultReference(currentType, parameters);
+            }
+
+            reference = appendNewReference(reference, newReference);
+        }
+
+        return reference;
+    }
+
+    private ParsedReference parse(String entityReferenceRepresentation, EntityType type)
+    {
+        ParsedReference parsedReference = new ParsedReference();
+
         Map<Character, EntityType> typeSetup = getTypeSetup(type);
 
         // Check if the type require anything specific
         if (typeSetup == null) {
-            return getEscapedReference(entityReferenceRepresentation, type, parameters);
+            parsedReference.add(type, getEscapedName(entityReferenceRepresentation));
+
+            return parsedReference.complete();
         }
 
         // Handle the case when the passed representation is null. In this case we consider it similar to passing
@@ -115,8 +187,6 @@ public EntityReference resolve(String entityReferenceRepresentation, EntityType
             representation = new StringBuilder(entityReferenceRepresentation);
         }
 
-        EntityReference reference = null;
-
         EntityType currentType = type;
 
         while (typeSetup != null && !typeSetup.isEmpty()) {
@@ -152,7 +222,7 @@ public EntityReference resolve(String entityReferenceRepresentation, EntityType
                 }
             }
 
-            reference = appendNewReference(reference, getNewReference(i, representation, currentType, parameters));
+            parsedReference.add(currentType, getNewName(i, representation));
 
             if (parentType != null) {
                 currentType = parentType;
@@ -164,9 +234,9 @@ public EntityReference resolve(String entityReferenceRepresentation, EntityType
         }
 
         // Handle last entity reference's name
-        reference = appendNewReference(reference, getEscapedReference(representation, currentType, parameters));
+        parsedReference.add(currentType, getEscapedName(representation));
 
-        return reference;
+        return parsedReference.complete();
     }
 
     /**
@@ -182,43 +252,39 @@ protected Map<Character, EntityType> getTypeSetup(EntityType type)
         return this.referenceSetup.get(type);
     }
 
-    private EntityReference getEscapedReference(CharSequence representation, EntityType type, Object... parameters)
+    /**
+     * @return the name or null if the default reference should be used
+     */
+    private String getEscapedName(CharSequence representation)
     {
-        EntityReference newReference;
         if (representation.length() > 0) {
-            String name =
-                StringUtils.replaceEach(representation.toString(), this.escapeMatching, this.escapeMatchingReplace);
-            if (name != null) {
-                newReference = new EntityReference(name, type);
-            } else {
-                newReference = null;
-            }
-        } else {
-            newReference = resolveDefaultReference(type, parameters);
+            return StringUtils.replaceEach(representation.toString(), this.escapeMatching, this.escapeMatchingReplace);
         }
 
-        return newReference;
+        return null;
     }
 
-    private EntityReference getNewReference(int i, StringBuilder representation, EntityType type, Object... parameters)
+    /**
+     * @return the name or null if the default reference should be used
+     */
+    private String getNewName(int i, StringBuilder representation)
     {
-        EntityReference newReference;
+        String name;
 
         // Found a valid separator (not escaped), separate content on its left from content on its
         // right
         if (i == representation.length() - 1) {
-            newReference = resolveDefaultReference(type, parameters);
+            name = null;
         } else {
-            String name = representation.substring(i + 1, representation.length());
-            newReference = new EntityReference(name, type);
+            name = representation.substring(i + 1, representation.length());
         }
 
         representation.delete(i < 0 ? 0 : i, representation.length());
 
-        return newReference;
+        return name;
     }
 
-    private EntityReference appendNewReference(EntityReference reference, EntityReference newReference)
+    private static EntityReference appendNewReference(EntityReference reference, EntityReference newReference)
     {
         if (newReference != null) {
             if (reference != null) {
@@ -254,4 +320,38 @@ protected SymbolScheme getSymbolScheme()
     {
         return this.symbolScheme;
     }
+
+    /**
+     * The result of the parsing of a String representation: the name of each reference, from the child to the root,
+     * or null when the default reference should be used.
+     */
+    private static final class ParsedReference
+    {
+        private final List<EntityType> types = new ArrayList<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * The resolved reference when it does not depend on any default value.
+         */
+        private EntityReference reference;
+
+        private void add(EntityType type, String name)
+        {
+            this.types.add(type);
+            this.names.add(name);
+        }
+
+        private ParsedReference complete()
+        {
+            if (!this.names.contains(null)) {
+                for (int i = 0; i < this.types.size(); ++i) {
+                    this.reference =
+                        appendNewReference(this.reference, new EntityReference(this.names.get(i), this.types.get(i)));
+                }
+            }
+
+            return this;
+        }
+    }
 }
@@ -31,6 +31,14 @@
  */
 public abstract class AbstractStringEntityReferenceSerializer implements EntityReferenceSerializer<String>
 {
+    /**
+     * The maximum number of serialized references to keep in memory.
+     */
+    private static final int SERIALIZED_CACHE_SIZE = 5000;
+
+    private final ReferenceCache<EntityReference, String> serializedReferences =
+        new ReferenceCache<>(SERIALIZED_CACHE_SIZE);
+
     @Override
     public String serialize(EntityReference reference, Object... parameters)
     {
@@ -38,13 +46,42 @@ public String serialize(EntityReference reference, Object... parameters)
             return null;
         }
 
+        boolean cacheable = isCacheable(reference, parameters);
+        if (cacheable) {
+            String cachedRepresentation = this.serializedReferences.get(reference);
+            if (cachedRepresentation != null) {
+                return cachedRepresentation;
+            }
+        }
+
         StringBuilder representation = new StringBuilder();
 
         for (EntityReference currentReference : reference.getReversedReferenceChain()) {
             serializeEntityReference(currentReference, representation, currentReference == reference, parameters);
         }
 
-        return representation.toString();
+        String result = representation.toString();
+
+        if (cacheable) {
+            this.serializedReferences.set(reference, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicate if the result of the serialization can be reused for any reference equal to the passed one. This is
+     * only true when the serialization depends only on the names, types and parameters of the references (and not on
+     * the passed parameters, the context or the class of the reference).
+     *
+     * @param reference the reference to serialize
+     * @param parameters optional parameters
+     * @return true if the serialized reference can be cached
+     * @since 9.12RC1
+     */
+    protected boolean isCacheable(EntityReference reference, Object... parameters)
+    {
+        return false;
     }
 
     /**
@@ -60,6 +60,14 @@ public DefaultStringEntityReferenceSerializer(SymbolScheme symbolScheme)
         this.symbolScheme = symbolScheme;
     }
 
+    @Override
+    protected boolean isCacheable(EntityReference reference, Object... parameters)
+    {
+        // The serialized reference only depends on the names and types of the reference and the symbol scheme. The
+        // subclasses can depend on something else (e.g. the context) so they have to opt in explicitly.
+        return getClass() == DefaultStringEntityReferenceSerializer.class;
+    }
+
     @Override
     protected void serializeEntityReference(EntityReference currentReference, StringBuilder representation,
         boolean isLastReference, Object... parameters)
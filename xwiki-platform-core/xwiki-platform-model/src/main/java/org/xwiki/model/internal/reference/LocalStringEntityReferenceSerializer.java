@@ -59,6 +59,13 @@ public LocalStringEntityReferenceSerializer(SymbolScheme symbolScheme)
         super(symbolScheme);
     }
 
+    @Override
+    protected boolean isCacheable(EntityReference reference, Object... parameters)
+    {
+        // The serialized reference only depends on the names and types of the reference and the symbol scheme
+        return getClass() == LocalStringEntityReferenceSerializer.class;
+    }
+
     @Override
     protected void serializeEntityReference(EntityReference currentReference, StringBuilder representation,
         boolean isLastReference, Object... parameters)
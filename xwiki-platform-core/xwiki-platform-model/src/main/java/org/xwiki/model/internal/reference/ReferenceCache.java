@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.model.internal.reference;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe and bounded memory cache used by resolvers and serializers to avoid parsing or serializing the same
+ * references again and again.
+ * <p>
+ * Lookups never lock. When the maximum size is reached the cache is emptied instead of maintaining an access order
+ * which would have to be updated on each lookup: the references in use are quickly added back.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class ReferenceCache<K, V>
+{
+    private final int maxSize;
+
+    private final ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize the maximum number of entries to keep in the cache
+     */
+    public ReferenceCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value or null if there is none
+     */
+    public V get(K key)
+    {
+        return this.map.get(key);
+    }
+
+    /**
+     * @param key the key
+     * @param value the value to cache
+     */
+    public void set(K key, V value)
+    {
+        if (this.map.size() >= this.maxSize) {
+            this.map.clear();
+        }
+
+        this.map.put(key, value);
+    }
+
+    /**
+     * @return the number of entries currently in the cache
+     */
+    public int size()
+    {
+        return this.map.size();
+    }
+}
@@ -489,4 +489,26 @@ public void testResolveWikiReference()
         reference = new WikiReference(resolver.resolve("dev\\:lab\\.uix", EntityType.WIKI));
         assertEquals("dev:lab.uix", reference.getName());
     }
+
+    @Test
+    public void resolveSameRepresentationSeveralTimes()
+    {
+        // Explicit references are shared
+        EntityReference reference = resolver.resolve("wiki:space.page", EntityType.DOCUMENT);
+        assertSame(reference, resolver.resolve("wiki:space.page", EntityType.DOCUMENT));
+        assertEquals(new DocumentReference("wiki", "space", "page"), new DocumentReference(reference));
+
+        // The type is part of the key
+        assertEquals(new EntityReference("wiki:space.page", EntityType.WIKI),
+            resolver.resolve("wiki:space.page", EntityType.WIKI));
+
+        // Default values are resolved each time
+        assertEquals(new DocumentReference(DEFAULT_WIKI, DEFAULT_SPACE, "page"),
+            new DocumentReference(resolver.resolve("page", EntityType.DOCUMENT)));
+        DocumentReference baseReference = new DocumentReference("math", "Theorems", "Pitagora");
+        assertEquals(new DocumentReference("math", "Theorems", "page"),
+            new DocumentReference(resolver.resolve("page", EntityType.DOCUMENT, baseReference)));
+        assertEquals(new DocumentReference(DEFAULT_WIKI, DEFAULT_SPACE, "page"),
+            new DocumentReference(resolver.resolve("page", EntityType.DOCUMENT)));
+    }
 }
@@ -19,11 +19,14 @@
  */
 package org.xwiki.model.internal.reference;
 
+import java.util.Locale;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceProvider;
 import org.xwiki.model.reference.EntityReferenceResolver;
@@ -266,4 +269,32 @@ public void serializeRelativeReferences()
         // Ensure that the page part is not displayed in the serialized result
         assertEquals("space", serializer.serialize(reference.extractReference(EntityType.SPACE)));
     }
+
+    @Test
+    public void serializeSameReferenceSeveralTimes()
+    {
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        String serialized = serializer.serialize(reference);
+        assertEquals("wiki:space.page", serialized);
+        assertSame(serialized, serializer.serialize(new DocumentReference("wiki", "space", "page")));
+
+        // The locale is not serialized
+        assertEquals(serialized, serializer.serialize(new DocumentReference(reference, Locale.FRENCH)));
+
+        assertEquals("wiki:space.page2", serializer.serialize(new DocumentReference("wiki", "space", "page2")));
+    }
+
+    @Test
+    public void subclassesDontCacheUnlessTheyOptIn()
+    {
+        LocalizedStringEntityReferenceSerializer localizedSerializer =
+            new LocalizedStringEntityReferenceSerializer(new DefaultSymbolScheme());
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page", Locale.FRENCH);
+        assertEquals("wiki:space.page(fr)", localizedSerializer.serialize(reference));
+        assertEquals("wiki:space.page(fr)", localizedSerializer.serialize(reference));
+
+        // An entity reference is equal to the document reference but doesn't have a locale
+        assertEquals("wiki:space.page", localizedSerializer.serialize(new EntityReference(reference)));
+    }
 }
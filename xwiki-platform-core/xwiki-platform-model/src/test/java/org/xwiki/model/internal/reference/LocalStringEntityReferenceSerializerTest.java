@@ -24,6 +24,7 @@
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
@@ -73,4 +74,15 @@ public void serializeSpaceReferenceWithChild()
         EntityReference reference = resolver.resolve("wiki:space.page", EntityType.DOCUMENT);
         Assert.assertEquals("space", serializer.serialize(reference.getParent()));
     }
+
+    @Test
+    public void serializeSameReferenceSeveralTimes()
+    {
+        String serialized = serializer.serialize(new DocumentReference("wiki", "space", "page"));
+        Assert.assertEquals("space.page", serialized);
+        Assert.assertSame(serialized, serializer.serialize(new DocumentReference("wiki", "space", "page")));
+
+        // The wiki is not part of the serialized reference
+        Assert.assertEquals(serialized, serializer.serialize(new DocumentReference("otherwiki", "space", "page")));
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.model.internal.reference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for {@link ReferenceCache}.
+ * 
+ * @version $Id$
+ */
+public class ReferenceCacheTest
+{
+    @Test
+    public void setAndGet()
+    {
+        ReferenceCache<String, String> cache = new ReferenceCache<>(2);
+
+        assertNull(cache.get("key1"));
+
+        cache.set("key1", "value1");
+        cache.set("key2", "value2");
+
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value2", cache.get("key2"));
+        assertEquals(2, cache.size());
+
+        // Reaching the maximum size empty the cache
+        cache.set("key3", "value3");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get("key1"));
+        assertEquals("value3", cache.get("key3"));
+    }
+}
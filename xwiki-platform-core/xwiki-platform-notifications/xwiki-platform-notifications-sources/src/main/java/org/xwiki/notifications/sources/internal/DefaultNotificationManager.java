@@ -81,6 +81,9 @@ public class DefaultNotificationManager implements NotificationManager
     @Inject
     private NotificationFilterManager notificationFilterManager;
 
+    @Inject
+    private EventsCountCache eventsCountCache;
+
     /**
      * For internal use, avoid to give more than 7 parameters to methods.
      */
@@ -181,6 +184,13 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
     {
         DocumentReference user = documentReferenceResolver.resolve(userId);
 
+        Long count = eventsCountCache.getEventsCount(user, onlyUnread, maxCount);
+        if (count != null) {
+            return count;
+        }
+
+        long cacheVersion = eventsCountCache.getVersion(user);
+
         List<CompositeEvent> events = getEvents(new ArrayList<>(),
                 new Parameters(
                         user,
@@ -193,6 +203,8 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
                 )
         );
 
+        eventsCountCache.setEventsCount(user, onlyUnread, maxCount, events.size(), cacheVersion);
+
         return events.size();
     }
 
@@ -0,0 +1,336 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+/**
+ * Cache the number of notifications of the users, to avoid searching and grouping their events each time the
+ * notifications count is displayed.
+ * <p>
+ * The entries of a user are removed when the status of one of his events changes, when his profile (which contains
+ * his notification preferences) is modified, or when an event he is notified about is added to or deleted from the
+ * event stream (see {@link EventsCountCacheListener}). The entries also expire after a while to take into account
+ * the modifications of the rights.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = EventsCountCache.class)
+@Singleton
+public class EventsCountCache implements Initializable, Disposable
+{
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * Time (in seconds) after which a count is computed again.
+     */
+    private static final int CACHE_LIFESPAN = 600;
+
+    /**
+     * The maximum number of events waiting to be checked against the cached users.
+     */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private NotificationEventMatcher matcher;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * The counts of each user, indexed by serialized user reference.
+     */
+    private Cache<UserCounts> cache;
+
+    /**
+     * The users who have an entry in the cache, indexed by wiki and by serialized user reference. Local users are
+     * only notified about the events of their wiki, so only the users of the event's wiki and the global users have to
+     * be checked when an event is added or deleted.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, DocumentReference>> users = new ConcurrentHashMap<>();
+
+    /**
+     * Used to give a new version to an entry each time it's created or invalidated.
+     */
+    private final AtomicLong versions = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The counts of a user.
+     */
+    private static final class UserCounts
+    {
+        /**
+         * The counts indexed by count parameters.
+         */
+        private final Map<String, Long> counts = new ConcurrentHashMap<>();
+
+        private long version;
+
+        private UserCounts(long version)
+        {
+            this.version = version;
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration configuration =
+            new LRUCacheConfiguration("notifications.eventsCount", CACHE_SIZE);
+        configuration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN);
+
+        try {
+            this.cache = this.cacheManager.createNewCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the notifications count cache", e);
+        }
+
+        BasicThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("XWiki notifications count invalidation thread").daemon(true)
+            .priority(Thread.MIN_PRIORITY).build();
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @param user the user for which the notifications are going to be counted
+     * @return the current version of the counts of the user, to pass to
+     *         {@link #setEventsCount(DocumentReference, boolean, int, long, long)}
+     */
+    public long getVersion(DocumentReference user)
+    {
+        UserCounts[] counts = new UserCounts[1];
+
+        // Make sure the user is indexed as long as he has an entry
+        getUsers(user.getWikiReference().getName()).compute(this.serializer.serialize(user), (userId, value) -> {
+            counts[0] = this.cache.get(userId);
+            if (counts[0] == null) {
+                counts[0] = new UserCounts(this.versions.incrementAndGet());
+                this.cache.set(userId, counts[0]);
+            }
+
+            return user;
+        });
+
+        synchronized (counts[0]) {
+            return counts[0].version;
+        }
+    }
+
+    /**
+     * @param user the user for which to count the notifications
+     * @param onlyUnread if only unread events should be counted
+     * @param maxCount the maximum number of notifications to count
+     * @return the cached count or null if it's not in the cache
+     */
+    public Long getEventsCount(DocumentReference user, boolean onlyUnread, int maxCount)
+    {
+        UserCounts counts = this.cache.get(this.serializer.serialize(user));
+
+        return counts != null ? counts.counts.get(getKey(onlyUnread, maxCount)) : null;
+    }
+
+    /**
+     * @param user the user for which the notifications have been counted
+     * @param onlyUnread if only unread events have been counted
+     * @param maxCount the maximum number of notifications to count
+     * @param count the number of notifications
+     * @param countVersion the version of the counts of the user before the notifications have been counted
+     */
+    public void setEventsCount(DocumentReference user, boolean onlyUnread, int maxCount, long count,
+        long countVersion)
+    {
+        UserCounts counts = this.cache.get(this.serializer.serialize(user));
+
+        if (counts != null) {
+            synchronized (counts) {
+                // Don't cache a count which might have been computed before the entry was invalidated
+                if (countVersion == counts.version) {
+                    counts.counts.put(getKey(onlyUnread, maxCount), count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the cached counts of a user or a group.
+     *
+     * @param entityId the serialized reference of the user or group
+     */
+    public void invalidate(String entityId)
+    {
+        UserCounts counts = this.cache.get(entityId);
+
+        if (counts != null) {
+            // Keep the entry (and thus the user) but make sure the counts being computed are not cached
+            synchronized (counts) {
+                counts.version = this.versions.incrementAndGet();
+                counts.counts.clear();
+            }
+        }
+    }
+
+    /**
+     * Remove the cached counts of a user.
+     *
+     * @param user the reference of the user
+     */
+    public void invalidate(DocumentReference user)
+    {
+        invalidate(this.serializer.serialize(user));
+    }
+
+    /**
+     * Asynchronously remove the cached counts of the users who are notified about an event.
+     *
+     * @param event the event added to or deleted from the event stream
+     */
+    public void invalidate(Event event)
+    {
+        // Nothing is cached
+        if (this.users.values().stream().allMatch(Map::isEmpty)) {
+            return;
+        }
+
+        try {
+            this.executor.execute(() -> invalidateNotifiedUsers(event));
+        } catch (RejectedExecutionException e) {
+            // Too many events to check them one by one
+            this.logger.debug("Too many events waiting to be checked, invalidating all notifications counts");
+
+            invalidateAll();
+        }
+    }
+
+    private ConcurrentMap<String, DocumentReference> getUsers(String wikiId)
+    {
+        return this.users.computeIfAbsent(wikiId, key -> new ConcurrentHashMap<>());
+    }
+
+    private Collection<ConcurrentMap<String, DocumentReference>> getUsersToCheck(Event event)
+    {
+        WikiReference wiki = event.getWiki();
+        if (wiki == null) {
+            return this.users.values();
+        }
+
+        // The local users of the event's wiki and the global users
+        String mainWikiId = this.wikiDescriptorManager.getMainWikiId();
+        if (wiki.getName().equals(mainWikiId)) {
+            return Collections.singletonList(getUsers(mainWikiId));
+        } else {
+            return Arrays.asList(getUsers(wiki.getName()), getUsers(mainWikiId));
+        }
+    }
+
+    private void invalidateNotifiedUsers(Event event)
+    {
+        for (ConcurrentMap<String, DocumentReference> wikiUsers : getUsersToCheck(event)) {
+            invalidateNotifiedUsers(event, wikiUsers);
+        }
+    }
+
+    private void invalidateNotifiedUsers(Event event, ConcurrentMap<String, DocumentReference> wikiUsers)
+    {
+        for (Map.Entry<String, DocumentReference> entry : wikiUsers.entrySet()) {
+            // Forget the users whose entry has expired
+            if (wikiUsers.computeIfPresent(entry.getKey(),
+                (userId, user) -> this.cache.get(userId) != null ? user : null) == null) {
+                continue;
+            }
+
+            try {
+                if (this.matcher.isNotified(event, entry.getValue(), NotificationFormat.ALERT)) {
+                    invalidate(entry.getKey());
+                }
+            } catch (Exception e) {
+                this.logger.warn("Failed to check if user [{}] is notified about the event [{}]: {}",
+                    entry.getValue(), event.getId(), ExceptionUtils.getRootCauseMessage(e));
+
+                invalidate(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Remove all cached counts.
+     */
+    public void invalidateAll()
+    {
+        // The new entries get new versions so the counts being computed won't be cached (the users are forgotten when
+        // the next event is checked)
+        this.cache.removeAll();
+    }
+
+    private String getKey(boolean onlyUnread, int maxCount)
+    {
+        return String.valueOf(onlyUnread) + '/' + maxCount;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Give the events added to the event stream to {@link LiveNotificationManager}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component
+@Named(LiveNotificationListener.NAME)
+@Singleton
+public class LiveNotificationListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.notifications.sources.internal.LiveNotificationListener";
+
+    @Inject
+    private LiveNotificationManager liveNotificationManager;
+
+    @Inject
+    private NotificationConfiguration notificationConfiguration;
+
+    /**
+     * Default constructor.
+     */
+    public LiveNotificationListener()
+    {
+        super(NAME, new EventStreamAddedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (this.notificationConfiguration.isEnabled()) {
+            this.liveNotificationManager.addEvent((org.xwiki.eventstream.Event) source);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+import org.xwiki.notifications.preferences.NotificationPreference;
+import org.xwiki.notifications.preferences.NotificationPreferenceManager;
+import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+
+/**
+ * Push the new events to the inboxes of the users currently waiting for their notifications, so that they don't have
+ * to search the event stream again and again to know if something happened.
+ * <p>
+ * The users who asked for their notifications during the last minutes are indexed by the types of events they are
+ * notified about, so that a new event is only checked against the rights and filters of the users who might be
+ * interested in it. Each connection of a user (e.g. each browser tab) has its own inbox. The users and connections
+ * which stop asking are forgotten and don't cost anything anymore.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = LiveNotificationManager.class)
+@Singleton
+public class LiveNotificationManager implements Initializable, Disposable
+{
+    /**
+     * The maximum number of notifications kept for a connection between two calls.
+     */
+    private static final int INBOX_CAPACITY = 20;
+
+    /**
+     * The maximum number of connections of a user, the least recently used one is forgotten first.
+     */
+    private static final int MAX_CONNECTIONS = 10;
+
+    /**
+     * The maximum number of events waiting to be dispatched, the oldest ones are dropped first.
+     */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    /**
+     * Log a warning each time this number of events have been dropped.
+     */
+    private static final int DISCARDED_EVENTS_WARNING = 100;
+
+    /**
+     * The time after which a connection which did not ask for notifications is forgotten.
+     */
+    private static final long IDLE_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The maximum time to wait for a notification. Each waiting request holds a servlet thread so it's kept short, the
+     * clients are expected to call again right away.
+     */
+    private static final long MAX_WAIT = TimeUnit.SECONDS.toMillis(20);
+
+    /**
+     * The maximum number of requests waiting for notifications at the same time, the next ones return immediately to
+     * not exhaust the servlet threads.
+     */
+    private static final int MAX_WAITING_REQUESTS = 100;
+
+    @Inject
+    private NotificationPreferenceManager notificationPreferenceManager;
+
+    @Inject
+    private NotificationEventMatcher matcher;
+
+    @Inject
+    private SimilarityCalculator similarityCalculator;
+
+    @Inject
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * The users who recently asked for their notifications.
+     */
+    private final ConcurrentMap<DocumentReference, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * The users who recently asked for their notifications, indexed by the types of events they are notified about.
+     */
+    private final ConcurrentMap<String, Set<DocumentReference>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * The number of events which could not be dispatched because too many events were waiting.
+     */
+    private final AtomicLong discardedEvents = new AtomicLong();
+
+    private final Semaphore waitingRequests = new Semaphore(MAX_WAITING_REQUESTS);
+
+    private volatile long nextCleanup;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The inboxes of a user.
+     */
+    private static final class Subscription
+    {
+        /**
+         * The inboxes indexed by connection.
+         */
+        private final Map<String, NotificationInbox> inboxes = new ConcurrentHashMap<>();
+
+        /**
+         * The types of events the user is notified about.
+         */
+        private volatile Set<String> eventTypes = Collections.emptySet();
+
+        private volatile boolean removed;
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("XWiki live notifications thread")
+            .daemon(true).priority(Thread.NORM_PRIORITY).build();
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), factory, new ThreadPoolExecutor.DiscardOldestPolicy()
+            {
+                @Override
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+                {
+                    discarded();
+
+                    super.rejectedExecution(runnable, executor);
+                }
+            });
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    private void discarded()
+    {
+        long count = this.discardedEvents.incrementAndGet();
+
+        if (count % DISCARDED_EVENTS_WARNING == 1) {
+            this.logger.warn("Too many events are waiting to be pushed to the users, [{}] events have been dropped"
+                + " so far. Some users won't see all their notifications until they reload them.", count);
+        } else {
+            this.logger.debug("Too many events are waiting to be pushed to the users, [{}] events have been dropped",
+                count);
+        }
+    }
+
+    /**
+     * @return the number of events which have not been pushed to the users because too many events were waiting to be
+     *         dispatched
+     */
+    public long getDiscardedEventsCount()
+    {
+        return this.discardedEvents.get();
+    }
+
+    /**
+     * Return the notifications received by a connection of the user since its last call, waiting for one if there is
+     * none yet.
+     * <p>
+     * The first call of a connection only subscribes it: the notifications preceding it should be retrieved with
+     * {@link org.xwiki.notifications.sources.NotificationManager}. This method should be called in the context of the
+     * user since his notification preferences are read from it.
+     *
+     * @param user the user waiting for notifications
+     * @param connectionId the identifier of the connection (e.g. a browser tab) waiting for notifications
+     * @param timeout the maximum time to wait, in milliseconds (can't exceed 20 seconds, and no wait at all when too
+     *            many requests are already waiting)
+     * @return the new notifications, most recent first
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public List<CompositeEvent> waitForEvents(DocumentReference user, String connectionId, long timeout)
+        throws InterruptedException
+    {
+        if (user == null || connectionId == null) {
+            return Collections.emptyList();
+        }
+
+        NotificationInbox inbox = subscribe(user, connectionId);
+
+        if (timeout > 0 && this.waitingRequests.tryAcquire()) {
+            try {
+                return inbox.take(Math.min(timeout, MAX_WAIT));
+            } finally {
+                this.waitingRequests.release();
+            }
+        }
+
+        // Only return the notifications already received
+        return inbox.take(0);
+    }
+
+    private NotificationInbox subscribe(DocumentReference user, String connectionId)
+    {
+        Subscription subscription = this.subscriptions.computeIfAbsent(user, key -> new Subscription());
+
+        // Take into account the modifications of the notification preferences
+        Set<String> eventTypes = getEventTypes(user, subscription.eventTypes);
+
+        synchronized (subscription) {
+            if (subscription.removed) {
+                // The subscription has just expired
+                return subscribe(user, connectionId);
+            }
+
+            for (String eventType : subscription.eventTypes) {
+                if (!eventTypes.contains(eventType)) {
+                    unindex(eventType, user);
+                }
+            }
+            for (String eventType : eventTypes) {
+                this.subscribers.computeIfAbsent(eventType, key -> ConcurrentHashMap.newKeySet()).add(user);
+            }
+            subscription.eventTypes = eventTypes;
+
+            NotificationInbox inbox = subscription.inboxes.computeIfAbsent(connectionId,
+                key -> new NotificationInbox(INBOX_CAPACITY, this.similarityCalculator));
+            if (subscription.inboxes.size() > MAX_CONNECTIONS) {
+                removeLeastRecentlyUsedInbox(subscription, inbox);
+            }
+
+            return inbox;
+        }
+    }
+
+    private Set<String> getEventTypes(DocumentReference user, Set<String> previousEventTypes)
+    {
+        try {
+            Set<String> eventTypes = new HashSet<>();
+            for (NotificationPreference preference : this.notificationPreferenceManager.getAllPreferences(user)) {
+                Object eventType = preference.getProperties().get(NotificationPreferenceProperty.EVENT_TYPE);
+                if (preference.getFormat() == NotificationFormat.ALERT && preference.isNotificationEnabled()
+                    && eventType != null) {
+                    eventTypes.add(eventType.toString());
+                }
+            }
+
+            return eventTypes;
+        } catch (NotificationException e) {
+            this.logger.warn("Failed to get the notification preferences of user [{}]: {}", user,
+                ExceptionUtils.getRootCauseMessage(e));
+
+            return previousEventTypes;
+        }
+    }
+
+    private void removeLeastRecentlyUsedInbox(Subscription subscription, NotificationInbox currentInbox)
+    {
+        Map.Entry<String, NotificationInbox> oldest = null;
+        for (Map.Entry<String, NotificationInbox> entry : subscription.inboxes.entrySet()) {
+            if (entry.getValue() != currentInbox
+                && (oldest == null || entry.getValue().getLastAccess() < oldest.getValue().getLastAccess())) {
+                oldest = entry;
+            }
+        }
+
+        if (oldest != null) {
+            subscription.inboxes.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private void unindex(String eventType, DocumentReference user)
+    {
+        this.subscribers.computeIfPresent(eventType, (key, users) -> {
+            users.remove(user);
+
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    private void unsubscribe(DocumentReference user, Subscription subscription)
+    {
+        synchronized (subscription) {
+            // A connection might have been added in the meantime
+            if (subscription.inboxes.isEmpty() && this.subscriptions.remove(user, subscription)) {
+                subscription.removed = true;
+
+                for (String eventType : subscription.eventTypes) {
+                    unindex(eventType, user);
+                }
+            }
+        }
+    }
+
+    /**
+     * Asynchronously dispatch a new event to the inboxes of the users it concerns.
+     *
+     * @param event the event added to the event stream
+     */
+    public void addEvent(Event event)
+    {
+        // Nobody is listening
+        if (!this.subscriptions.isEmpty()) {
+            this.executor.execute(() -> dispatch(event));
+        }
+    }
+
+    private void dispatch(Event event)
+    {
+        long now = System.currentTimeMillis();
+        if (now >= this.nextCleanup) {
+            this.nextCleanup = now + IDLE_TIME;
+            removeExpiredInboxes(now - IDLE_TIME);
+        }
+
+        Set<DocumentReference> users = event.getType() != null ? this.subscribers.get(event.getType()) : null;
+        if (users != null) {
+            for (DocumentReference user : getTargetedUsers(event, users)) {
+                Subscription subscription = this.subscriptions.get(user);
+                if (subscription != null) {
+                    dispatch(event, user, subscription);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param event the event to dispatch
+     * @param users the users notified about the type of the event
+     * @return the users who should be checked
+     */
+    private Collection<DocumentReference> getTargetedUsers(Event event, Set<DocumentReference> users)
+    {
+        Set<String> target = event.getTarget();
+        if (target != null && !target.isEmpty()) {
+            List<DocumentReference> targetedUsers = new ArrayList<>(target.size());
+            for (String entity : target) {
+                DocumentReference reference = this.documentReferenceResolver.resolve(entity);
+                if (!this.subscriptions.containsKey(reference)) {
+                    // The target might be a group: let the filters decide
+                    return users;
+                }
+                if (users.contains(reference)) {
+                    targetedUsers.add(reference);
+                }
+            }
+
+            return targetedUsers;
+        }
+
+        return users;
+    }
+
+    private void removeExpiredInboxes(long expiration)
+    {
+        for (Map.Entry<DocumentReference, Subscription> entry : this.subscriptions.entrySet()) {
+            Subscription subscription = entry.getValue();
+
+            subscription.inboxes.values().removeIf(inbox -> inbox.getLastAccess() < expiration);
+            if (subscription.inboxes.isEmpty()) {
+                unsubscribe(entry.getKey(), subscription);
+            }
+        }
+    }
+
+    private void dispatch(Event event, DocumentReference user, Subscription subscription)
+    {
+        try {
+            if (this.matcher.isNotified(event, user, NotificationFormat.ALERT)) {
+                for (NotificationInbox inbox : subscription.inboxes.values()) {
+                    inbox.add(event);
+                }
+            }
+        } catch (Exception e) {
+            this.logger.warn("Failed to dispatch the event [{}] to user [{}]: {}", event.getId(), user,
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Objects;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.concurrent.ExecutionContextRunnable;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.filters.NotificationFilter;
+import org.xwiki.notifications.filters.NotificationFilterManager;
+import org.xwiki.notifications.preferences.NotificationPreference;
+import org.xwiki.notifications.preferences.NotificationPreferenceManager;
+import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+/**
+ * Check if a given user is notified about a new event, without searching the event stream.
+ * <p>
+ * Each check is done in a clean execution context since the preferences and filters of a user are cached in it, so
+ * this component should only be used from a background thread.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = NotificationEventMatcher.class)
+@Singleton
+public class NotificationEventMatcher
+{
+    @Inject
+    private NotificationPreferenceManager notificationPreferenceManager;
+
+    @Inject
+    private NotificationFilterManager notificationFilterManager;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * @param event the event added to (or deleted from) the event stream
+     * @param user the user to check
+     * @param format the format of the notifications
+     * @return true if the user is notified about the event
+     * @throws NotificationException if the preferences or filters of the user cannot be loaded
+     */
+    public boolean isNotified(Event event, DocumentReference user, NotificationFormat format)
+        throws NotificationException
+    {
+        boolean[] result = new boolean[1];
+        NotificationException[] error = new NotificationException[1];
+
+        new ExecutionContextRunnable(() -> {
+            try {
+                result[0] = isNotifiedInternal(event, user, format);
+            } catch (NotificationException e) {
+                error[0] = e;
+            }
+        }, this.componentManager).run();
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        return result[0];
+    }
+
+    private boolean isNotifiedInternal(Event event, DocumentReference user, NotificationFormat format)
+        throws NotificationException
+    {
+        // Don't notify events concerning a doc the user cannot see
+        DocumentReference document = event.getDocument();
+        if (document != null && !this.authorizationManager.hasAccess(Right.VIEW, user, document)) {
+            return false;
+        }
+
+        if (!hasEnabledPreference(event, user, format)) {
+            return false;
+        }
+
+        for (NotificationFilter filter : this.notificationFilterManager.getAllFilters(user)) {
+            if (filter.filterEvent(event, user, format)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean hasEnabledPreference(Event event, DocumentReference user, NotificationFormat format)
+        throws NotificationException
+    {
+        for (NotificationPreference preference : this.notificationPreferenceManager.getAllPreferences(user)) {
+            if (preference.getFormat() == format && preference.isNotificationEnabled()
+                && Objects.equals(event.getType(),
+                    preference.getProperties().get(NotificationPreferenceProperty.EVENT_TYPE))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
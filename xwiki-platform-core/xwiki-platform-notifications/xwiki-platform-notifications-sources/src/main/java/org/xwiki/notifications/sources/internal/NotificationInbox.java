@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+
+/**
+ * Bounded list of the notifications received by a connection of a user since it last asked for them.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class NotificationInbox
+{
+    private final int capacity;
+
+    private final SimilarityCalculator similarityCalculator;
+
+    /**
+     * The notifications, most recent first.
+     */
+    private final LinkedList<CompositeEvent> events = new LinkedList<>();
+
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * @param capacity the maximum number of notifications to keep, the oldest ones are forgotten first
+     * @param similarityCalculator used to group similar events
+     */
+    public NotificationInbox(int capacity, SimilarityCalculator similarityCalculator)
+    {
+        this.capacity = capacity;
+        this.similarityCalculator = similarityCalculator;
+    }
+
+    /**
+     * @return the date (in milliseconds) of the last time the notifications were asked
+     */
+    public long getLastAccess()
+    {
+        return this.lastAccess;
+    }
+
+    /**
+     * Add a new event, grouped with a similar notification if there is one.
+     *
+     * @param event the event to add
+     * @throws NotificationException when failing to group the event
+     */
+    public synchronized void add(Event event) throws NotificationException
+    {
+        if (!group(event)) {
+            this.events.addFirst(new CompositeEvent(event));
+
+            if (this.events.size() > this.capacity) {
+                this.events.removeLast();
+            }
+        }
+
+        notifyAll();
+    }
+
+    private boolean group(Event event) throws NotificationException
+    {
+        for (Iterator<CompositeEvent> it = this.events.iterator(); it.hasNext();) {
+            CompositeEvent compositeEvent = it.next();
+
+            int similarity = this.similarityCalculator.computeSimilarity(event, compositeEvent.getEvents().get(0));
+            if (similarity > SimilarityCalculator.NO_SIMILARITY
+                && similarity >= compositeEvent.getSimilarityBetweenEvents()) {
+                compositeEvent.add(event, similarity);
+
+                // Move the notification first since it contains the most recent event
+                it.remove();
+                this.events.addFirst(compositeEvent);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return and forget the received notifications, waiting for one if there is none yet.
+     *
+     * @param timeout the maximum time to wait for a notification, in milliseconds
+     * @return the notifications received since the last call, most recent first (empty if none arrived before the
+     *         timeout)
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized List<CompositeEvent> take(long timeout) throws InterruptedException
+    {
+        this.lastAccess = System.currentTimeMillis();
+
+        long deadline = this.lastAccess + timeout;
+        for (long remaining = timeout; this.events.isEmpty() && remaining > 0;
+            remaining = deadline - System.currentTimeMillis()) {
+            wait(remaining);
+        }
+
+        List<CompositeEvent> result;
+        if (this.events.isEmpty()) {
+            result = Collections.emptyList();
+        } else {
+            result = new ArrayList<>(this.events.size());
+            for (CompositeEvent compositeEvent : this.events) {
+                // The notifications should not be modified anymore once returned
+                result.add(new CompositeEvent(compositeEvent));
+            }
+            this.events.clear();
+        }
+
+        this.lastAccess = System.currentTimeMillis();
+
+        return result;
+    }
+}
@@ -20,6 +20,7 @@
 package org.xwiki.notifications.sources.script;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -33,6 +34,7 @@
 import org.xwiki.notifications.CompositeEvent;
 import org.xwiki.notifications.NotificationException;
 import org.xwiki.notifications.sources.NotificationManager;
+import org.xwiki.notifications.sources.internal.LiveNotificationManager;
 import org.xwiki.script.service.ScriptService;
 
 /**
@@ -49,6 +51,9 @@ public class NotificationSourcesScriptService implements ScriptService
     @Inject
     private NotificationManager notificationManager;
 
+    @Inject
+    private LiveNotificationManager liveNotificationManager;
+
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
@@ -126,4 +131,29 @@ public long getEventsCount(boolean onlyUnread, int maxCount) throws Notification
                 maxCount
         );
     }
+
+    /**
+     * Wait for new notifications concerning the current user. The first call of a connection only starts collecting
+     * the notifications, the previous ones should be retrieved with {@link #getEvents(boolean, int)}. The
+     * notifications are kept as long as the connection keeps calling this method. Each connection receives all the
+     * notifications of the user, so several browser tabs (using different identifiers) don't steal the notifications
+     * of each other.
+     *
+     * @param connectionId the identifier of the connection waiting for notifications (e.g. a random identifier
+     *            generated by each browser tab)
+     * @param timeout the maximum time to wait, in milliseconds (can't exceed 20 seconds)
+     * @return the notifications received since the last call (empty if none arrived before the timeout)
+     * @since 9.12RC1
+     */
+    public List<CompositeEvent> waitForEvents(String connectionId, long timeout)
+    {
+        try {
+            return liveNotificationManager.waitForEvents(documentAccessBridge.getCurrentUserReference(), connectionId,
+                timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Collections.emptyList();
+        }
+    }
 }
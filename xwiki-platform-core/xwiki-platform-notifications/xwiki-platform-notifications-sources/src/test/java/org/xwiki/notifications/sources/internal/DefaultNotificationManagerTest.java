@@ -54,6 +54,7 @@
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -210,6 +211,38 @@ public void getEventsCount() throws Exception
         verifyZeroInteractions(event3);
     }
 
+    @Test
+    public void getEventsCountFromCache() throws Exception
+    {
+        EventsCountCache eventsCountCache = mocker.getInstance(EventsCountCache.class);
+        when(eventsCountCache.getEventsCount(userReference, true, 5)).thenReturn(3L);
+
+        // Test
+        long result = mocker.getComponentUnderTest().getEventsCount("xwiki:XWiki.UserA", true, 5);
+
+        // Verify
+        assertEquals(3, result);
+        verifyZeroInteractions(eventStream);
+    }
+
+    @Test
+    public void getEventsCountIsCached() throws Exception
+    {
+        EventsCountCache eventsCountCache = mocker.getInstance(EventsCountCache.class);
+        when(eventsCountCache.getVersion(userReference)).thenReturn(42L);
+
+        Event event1 = createMockedEvent();
+
+        when(eventStream.searchEvents(query)).thenReturn(Arrays.asList(event1), Collections.emptyList());
+
+        // Test
+        long result = mocker.getComponentUnderTest().getEventsCount("xwiki:XWiki.UserA", true, 5);
+
+        // Verify
+        assertEquals(1, result);
+        verify(eventsCountCache).setEventsCount(userReference, true, 5, 1, 42L);
+    }
+
     @Test
     public void getEventsUC1() throws Exception
     {
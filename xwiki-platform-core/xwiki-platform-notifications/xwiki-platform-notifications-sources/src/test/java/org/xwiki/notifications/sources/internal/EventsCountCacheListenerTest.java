@@ -0,0 +1,91 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.eventstream.Event;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.events.EventStatusAddOrUpdatedEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.eventstream.events.EventStreamDeletedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link EventsCountCacheListener}.
+ *
+ * @version $Id$
+ */
+public class EventsCountCacheListenerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<>(EventsCountCacheListener.class);
+
+    @Test
+    public void onEventStreamEvents() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getInstance(EventsCountCache.class);
+        Event event = mock(Event.class);
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStreamAddedEvent(), event, null);
+        this.mocker.getComponentUnderTest().onEvent(new EventStreamDeletedEvent(), event, null);
+
+        verify(cache, times(2)).invalidate(event);
+        verify(cache, never()).invalidateAll();
+    }
+
+    @Test
+    public void onEventStatus() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getInstance(EventsCountCache.class);
+        EventStatus status = mock(EventStatus.class);
+        when(status.getEntityId()).thenReturn("xwiki:XWiki.UserA");
+
+        this.mocker.getComponentUnderTest().onEvent(new EventStatusAddOrUpdatedEvent(), status, null);
+
+        verify(cache).invalidate("xwiki:XWiki.UserA");
+        verify(cache, never()).invalidate(any(Event.class));
+    }
+
+    @Test
+    public void onUserProfileUpdated() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getInstance(EventsCountCache.class);
+        DocumentReference user = new DocumentReference("xwiki", "XWiki", "UserA");
+        DocumentModelBridge document = mock(DocumentModelBridge.class);
+        when(document.getDocumentReference()).thenReturn(user);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(user), document, null);
+
+        verify(cache).invalidate(user);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link EventsCountCache}.
+ *
+ * @version $Id$
+ */
+public class EventsCountCacheTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventsCountCache> mocker =
+        new MockitoComponentMockingRule<>(EventsCountCache.class);
+
+    private final Map<String, Object> entries = new ConcurrentHashMap<>();
+
+    private NotificationEventMatcher matcher;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> this.entries.get(invocation.getArgument(0)));
+        doAnswer(invocation -> this.entries.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache)
+            .set(anyString(), any());
+        doAnswer(invocation -> this.entries.remove(invocation.getArgument(0))).when(cache).remove(anyString());
+        doAnswer(invocation -> {
+            this.entries.clear();
+            return null;
+        }).when(cache).removeAll();
+
+        CacheManager cacheManager = this.mocker.registerMockComponent(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn((Cache) cache);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(any(EntityReference.class)))
+            .then(invocation -> invocation.getArgument(0).toString());
+
+        this.matcher = this.mocker.getInstance(NotificationEventMatcher.class);
+    }
+
+    private void setEventsCount(DocumentReference user, long count) throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        cache.setEventsCount(user, true, 20, count, cache.getVersion(user));
+    }
+
+    @Test
+    public void getEventsCount() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        assertNull(cache.getEventsCount(this.userA, true, 20));
+
+        setEventsCount(this.userA, 3);
+
+        assertEquals(Long.valueOf(3), cache.getEventsCount(this.userA, true, 20));
+        assertNull(cache.getEventsCount(this.userA, false, 20));
+        assertNull(cache.getEventsCount(this.userA, true, 10));
+        assertNull(cache.getEventsCount(this.userB, true, 20));
+    }
+
+    @Test
+    public void invalidateUser() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        setEventsCount(this.userA, 3);
+        setEventsCount(this.userB, 4);
+
+        cache.invalidate(this.userA);
+
+        assertNull(cache.getEventsCount(this.userA, true, 20));
+        assertEquals(Long.valueOf(4), cache.getEventsCount(this.userB, true, 20));
+    }
+
+    @Test
+    public void countComputedBeforeAnInvalidationIsNotCached() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        long version = cache.getVersion(this.userA);
+        cache.invalidate(this.userA);
+        cache.setEventsCount(this.userA, true, 20, 3, version);
+
+        assertNull(cache.getEventsCount(this.userA, true, 20));
+
+        // The counts of the other users are not impacted
+        version = cache.getVersion(this.userB);
+        cache.invalidate(this.userA);
+        cache.setEventsCount(this.userB, true, 20, 4, version);
+
+        assertEquals(Long.valueOf(4), cache.getEventsCount(this.userB, true, 20));
+    }
+
+    @Test
+    public void countComputedBeforeInvalidateAllIsNotCached() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        long version = cache.getVersion(this.userA);
+        cache.invalidateAll();
+        cache.setEventsCount(this.userA, true, 20, 3, version);
+        // The entry created for the next count has a new version
+        cache.getVersion(this.userA);
+        cache.setEventsCount(this.userA, true, 20, 3, version);
+
+        assertNull(cache.getEventsCount(this.userA, true, 20));
+    }
+
+    @Test
+    public void invalidateEventOnlyRemovesTheNotifiedUsers() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        setEventsCount(this.userA, 3);
+        setEventsCount(this.userB, 4);
+
+        Event event = mock(Event.class);
+        when(this.matcher.isNotified(event, this.userA, NotificationFormat.ALERT)).thenReturn(true);
+
+        cache.invalidate(event);
+
+        verify(this.matcher, timeout(10000)).isNotified(event, this.userB, NotificationFormat.ALERT);
+        long end = System.currentTimeMillis() + 10000;
+        while (cache.getEventsCount(this.userA, true, 20) != null) {
+            assertTrue("Timeout while waiting for the invalidation", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+
+        assertEquals(Long.valueOf(4), cache.getEventsCount(this.userB, true, 20));
+    }
+
+    @Test
+    public void invalidateEventOnlyChecksTheUsersOfTheEventWikiAndTheGlobalUsers() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getMainWikiId()).thenReturn("xwiki");
+
+        DocumentReference userC = new DocumentReference("wikiC", "XWiki", "UserC");
+        DocumentReference userD = new DocumentReference("wikiD", "XWiki", "UserD");
+        setEventsCount(this.userA, 3);
+        setEventsCount(userC, 4);
+        setEventsCount(userD, 5);
+
+        Event event = mock(Event.class);
+        when(event.getWiki()).thenReturn(new WikiReference("wikiC"));
+        when(this.matcher.isNotified(event, userC, NotificationFormat.ALERT)).thenReturn(true);
+
+        cache.invalidate(event);
+
+        verify(this.matcher, timeout(10000)).isNotified(event, this.userA, NotificationFormat.ALERT);
+        long end = System.currentTimeMillis() + 10000;
+        while (cache.getEventsCount(userC, true, 20) != null) {
+            assertTrue("Timeout while waiting for the invalidation", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+
+        verify(this.matcher, never()).isNotified(event, userD, NotificationFormat.ALERT);
+        assertEquals(Long.valueOf(3), cache.getEventsCount(this.userA, true, 20));
+        assertEquals(Long.valueOf(5), cache.getEventsCount(userD, true, 20));
+    }
+
+    @Test
+    public void invalidateEventWhenTheCheckFails() throws Exception
+    {
+        EventsCountCache cache = this.mocker.getComponentUnderTest();
+
+        setEventsCount(this.userA, 3);
+
+        Event event = mock(Event.class);
+        when(this.matcher.isNotified(event, this.userA, NotificationFormat.ALERT))
+            .thenThrow(new RuntimeException("error"));
+
+        cache.invalidate(event);
+
+        long end = System.currentTimeMillis() + 10000;
+        while (cache.getEventsCount(this.userA, true, 20) != null) {
+            assertTrue("Timeout while waiting for the invalidation", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.NotificationFormat;
+import org.xwiki.notifications.preferences.NotificationPreference;
+import org.xwiki.notifications.preferences.NotificationPreferenceManager;
+import org.xwiki.notifications.preferences.NotificationPreferenceProperty;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link LiveNotificationManager}.
+ *
+ * @version $Id$
+ */
+public class LiveNotificationManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<LiveNotificationManager> mocker =
+        new MockitoComponentMockingRule<>(LiveNotificationManager.class);
+
+    private NotificationEventMatcher matcher;
+
+    private DocumentReference userA = new DocumentReference("xwiki", "XWiki", "UserA");
+
+    private DocumentReference userB = new DocumentReference("xwiki", "XWiki", "UserB");
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.matcher = this.mocker.getInstance(NotificationEventMatcher.class);
+
+        NotificationPreference preference = mock(NotificationPreference.class);
+        when(preference.getFormat()).thenReturn(NotificationFormat.ALERT);
+        when(preference.isNotificationEnabled()).thenReturn(true);
+        when(preference.getProperties())
+            .thenReturn(Collections.singletonMap(NotificationPreferenceProperty.EVENT_TYPE, "update"));
+
+        NotificationPreferenceManager preferenceManager = this.mocker.getInstance(NotificationPreferenceManager.class);
+        when(preferenceManager.getAllPreferences(any(DocumentReference.class)))
+            .thenReturn(Arrays.asList(preference));
+
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+        when(resolver.resolve("xwiki:XWiki.UserA")).thenReturn(this.userA);
+        when(resolver.resolve("xwiki:XWiki.UserB")).thenReturn(this.userB);
+    }
+
+    private Event createMockedEvent(String type)
+    {
+        Event event = mock(Event.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getDate()).thenReturn(new Date());
+        return event;
+    }
+
+    private List<CompositeEvent> waitForEvents(DocumentReference user, String connectionId) throws Exception
+    {
+        return this.mocker.getComponentUnderTest().waitForEvents(user, connectionId, 10000);
+    }
+
+    @Test
+    public void eachConnectionReceivesTheNotifications() throws Exception
+    {
+        LiveNotificationManager manager = this.mocker.getComponentUnderTest();
+
+        // Subscribe
+        manager.waitForEvents(this.userA, "tab1", 0);
+        manager.waitForEvents(this.userA, "tab2", 0);
+
+        Event event = createMockedEvent("update");
+        when(this.matcher.isNotified(event, this.userA, NotificationFormat.ALERT)).thenReturn(true);
+        manager.addEvent(event);
+
+        List<CompositeEvent> tab1 = waitForEvents(this.userA, "tab1");
+        List<CompositeEvent> tab2 = waitForEvents(this.userA, "tab2");
+
+        assertEquals(1, tab1.size());
+        assertEquals(event, tab1.get(0).getEvents().get(0));
+        assertEquals(1, tab2.size());
+        assertEquals(event, tab2.get(0).getEvents().get(0));
+    }
+
+    @Test
+    public void onlyTheUsersNotifiedAboutTheTypeOfTheEventAreChecked() throws Exception
+    {
+        LiveNotificationManager manager = this.mocker.getComponentUnderTest();
+
+        manager.waitForEvents(this.userA, "tab", 0);
+
+        Event otherEvent = createMockedEvent("create");
+        manager.addEvent(otherEvent);
+        Event event = createMockedEvent("update");
+        manager.addEvent(event);
+
+        verify(this.matcher, timeout(10000)).isNotified(event, this.userA, NotificationFormat.ALERT);
+        verify(this.matcher, never()).isNotified(eq(otherEvent), any(), any());
+    }
+
+    @Test
+    public void onlyTheTargetedUsersAreChecked() throws Exception
+    {
+        LiveNotificationManager manager = this.mocker.getComponentUnderTest();
+
+        manager.waitForEvents(this.userA, "tab", 0);
+        manager.waitForEvents(this.userB, "tab", 0);
+
+        Event event = createMockedEvent("update");
+        when(event.getTarget()).thenReturn(Collections.singleton("xwiki:XWiki.UserB"));
+        manager.addEvent(event);
+        // Events are dispatched in order
+        Event lastEvent = createMockedEvent("update");
+        manager.addEvent(lastEvent);
+
+        verify(this.matcher, timeout(10000)).isNotified(lastEvent, this.userA, NotificationFormat.ALERT);
+        verify(this.matcher).isNotified(event, this.userB, NotificationFormat.ALERT);
+        verify(this.matcher, never()).isNotified(event, this.userA, NotificationFormat.ALERT);
+    }
+
+    @Test
+    public void discardedEventsAreCounted() throws Exception
+    {
+        LiveNotificationManager manager = this.mocker.getComponentUnderTest();
+
+        manager.waitForEvents(this.userA, "tab", 0);
+
+        // Block the dispatch thread
+        CountDownLatch dispatching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Event blockingEvent = createMockedEvent("update");
+        when(this.matcher.isNotified(blockingEvent, this.userA, NotificationFormat.ALERT)).then(invocation -> {
+            dispatching.countDown();
+            release.await();
+            return false;
+        });
+        manager.addEvent(blockingEvent);
+        dispatching.await();
+
+        Event event = createMockedEvent("update");
+        for (int i = 0; i < 1005; i++) {
+            manager.addEvent(event);
+        }
+
+        release.countDown();
+
+        assertEquals(5, manager.getDiscardedEventsCount());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.eventstream.Event;
+import org.xwiki.notifications.CompositeEvent;
+import org.xwiki.notifications.internal.SimilarityCalculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationInbox}.
+ *
+ * @version $Id$
+ */
+public class NotificationInboxTest
+{
+    private SimilarityCalculator similarityCalculator;
+
+    private NotificationInbox inbox;
+
+    @Before
+    public void setUp()
+    {
+        this.similarityCalculator = mock(SimilarityCalculator.class);
+        this.inbox = new NotificationInbox(2, this.similarityCalculator);
+    }
+
+    private Event createMockedEvent(long date)
+    {
+        Event event = mock(Event.class);
+        when(event.getDate()).thenReturn(new Date(date));
+        return event;
+    }
+
+    @Test
+    public void takeWhenEmpty() throws Exception
+    {
+        assertTrue(this.inbox.take(10).isEmpty());
+    }
+
+    @Test
+    public void takeKeepsTheMostRecentNotifications() throws Exception
+    {
+        Event event1 = createMockedEvent(1);
+        Event event2 = createMockedEvent(2);
+        Event event3 = createMockedEvent(3);
+
+        this.inbox.add(event1);
+        this.inbox.add(event2);
+        this.inbox.add(event3);
+
+        List<CompositeEvent> result = this.inbox.take(0);
+
+        assertEquals(2, result.size());
+        assertEquals(event3, result.get(0).getEvents().get(0));
+        assertEquals(event2, result.get(1).getEvents().get(0));
+
+        // The notifications are returned only once
+        assertTrue(this.inbox.take(0).isEmpty());
+    }
+
+    @Test
+    public void addGroupsSimilarEvents() throws Exception
+    {
+        Event event1 = createMockedEvent(1);
+        Event event2 = createMockedEvent(2);
+        when(this.similarityCalculator.computeSimilarity(event2, event1))
+            .thenReturn(SimilarityCalculator.SAME_DOCUMENT_AND_TYPE);
+
+        this.inbox.add(event1);
+        this.inbox.add(event2);
+
+        List<CompositeEvent> result = this.inbox.take(0);
+
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getEvents().size());
+    }
+
+    @Test
+    public void takeWaitsForNotifications() throws Exception
+    {
+        Event event = createMockedEvent(1);
+
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                this.inbox.add(event);
+            } catch (Exception e) {
+                // Let the test fail
+            }
+        });
+        thread.start();
+
+        List<CompositeEvent> result = this.inbox.take(10000);
+
+        assertEquals(1, result.size());
+        assertEquals(event, result.get(0).getEvents().get(0));
+
+        thread.join();
+    }
+}
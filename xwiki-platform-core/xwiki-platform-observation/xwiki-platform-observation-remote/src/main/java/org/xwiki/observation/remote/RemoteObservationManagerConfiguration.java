@@ -22,6 +22,7 @@
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Provide configuration for remote observation manager.
@@ -46,4 +47,32 @@
      * @return the identifier of the network adapter implementation to use to actually send and receive network messages
      */
     String getNetworkAdapter();
+
+    /**
+     * Batching is disabled by default. The batched network messages use a format that the members of the cluster
+     * running an older version can't read, so every member of the cluster must be upgraded before enabling batching
+     * (e.g. it can't be enabled during a rolling upgrade).
+     *
+     * @return the maximum time in milliseconds to wait for other events before sending them in the same network
+     *         message, 0 or less to send each event in its own message as soon as it's produced
+     * @since 9.12RC1
+     */
+    @Unstable
+    default long getBatchDelay()
+    {
+        return 0;
+    }
+
+    /**
+     * Like {@link #getBatchDelay()}, a value greater than 1 must only be used once every member of the cluster has
+     * been upgraded.
+     *
+     * @return the maximum number of events to send in the same network message
+     * @since 9.12RC1
+     */
+    @Unstable
+    default int getBatchSize()
+    {
+        return 1;
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.codec;
+
+import java.io.IOException;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Encode and decode {@link RemoteEventData} in a compact binary form. The network adapter put several encoded events
+ * in the same network message, strings written with {@link RemoteEventDataOutput#writeSharedString(String)} (entity
+ * references, wiki identifiers, etc.) being written only once per message.
+ * <p>
+ * Events not supported by any codec are sent using standard Java serialization. The role hint of the codec is written
+ * in the message so the receiving instances need to have the same codecs installed.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Role
+@Unstable
+public interface RemoteEventDataCodec
+{
+    /**
+     * @param remoteEvent the remote event to encode
+     * @return true if this codec is able to encode the passed event
+     */
+    boolean canEncode(RemoteEventData remoteEvent);
+
+    /**
+     * @param remoteEvent the remote event to encode
+     * @param output the output where to write the event
+     * @throws IOException when failing to write the event
+     */
+    void encode(RemoteEventData remoteEvent, RemoteEventDataOutput output) throws IOException;
+
+    /**
+     * @param input the input from where to read the event
+     * @return the decoded remote event
+     * @throws IOException when failing to read the event
+     */
+    RemoteEventData decode(RemoteEventDataInput input) throws IOException;
+}
@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.codec;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The input passed to {@link RemoteEventDataCodec#decode(RemoteEventDataInput)}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Unstable
+public interface RemoteEventDataInput extends DataInput
+{
+    /**
+     * @return the string written with {@link RemoteEventDataOutput#writeSharedString(String)}
+     * @throws IOException when failing to read the string
+     */
+    String readSharedString() throws IOException;
+
+    /**
+     * @return the object written with {@link RemoteEventDataOutput#writeSerializable(Serializable)}
+     * @throws IOException when failing to read the object
+     */
+    Serializable readSerializable() throws IOException;
+}
@@ -0,0 +1,54 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The output passed to {@link RemoteEventDataCodec#encode(org.xwiki.observation.remote.RemoteEventData,
+ * RemoteEventDataOutput)}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Unstable
+public interface RemoteEventDataOutput extends DataOutput
+{
+    /**
+     * Write a string which is likely to be repeated in the message (entity reference, wiki identifier, user, etc.).
+     * The string itself is written only once in the message, next occurrences are written as an index.
+     *
+     * @param value the string to write, can be null
+     * @throws IOException when failing to write the string
+     */
+    void writeSharedString(String value) throws IOException;
+
+    /**
+     * Write an object using standard Java serialization.
+     *
+     * @param value the object to write, can be null
+     * @throws IOException when failing to write the object
+     */
+    void writeSerializable(Serializable value) throws IOException;
+}
@@ -69,4 +69,16 @@ public String getNetworkAdapter()
     {
         return this.configurationSource.getProperty("observation.remote.networkadapter", "jgroups");
     }
+
+    @Override
+    public long getBatchDelay()
+    {
+        return this.configurationSource.getProperty("observation.remote.batch.delay", 0L);
+    }
+
+    @Override
+    public int getBatchSize()
+    {
+        return this.configurationSource.getProperty("observation.remote.batch.size", 1);
+    }
 }
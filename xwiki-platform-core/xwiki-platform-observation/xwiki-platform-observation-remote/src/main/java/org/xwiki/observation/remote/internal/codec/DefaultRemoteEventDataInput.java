@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.jgroups.util.Util;
+import org.xwiki.observation.remote.codec.RemoteEventDataInput;
+
+/**
+ * Default implementation of {@link RemoteEventDataInput}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class DefaultRemoteEventDataInput extends DataInputStream implements RemoteEventDataInput
+{
+    private final List<String> strings;
+
+    /**
+     * @param in the stream from where to read
+     * @param strings the shared strings table
+     */
+    public DefaultRemoteEventDataInput(InputStream in, List<String> strings)
+    {
+        super(in);
+
+        this.strings = strings;
+    }
+
+    /**
+     * @return the integer written with {@link DefaultRemoteEventDataOutput#writeVarInt(int)}
+     * @throws IOException when failing to read the integer
+     */
+    public int readVarInt() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * @return the string written with {@link DefaultRemoteEventDataOutput#writeString(String)}
+     * @throws IOException when failing to read the string
+     */
+    public String readString() throws IOException
+    {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the bytes prefixed with their length
+     * @throws IOException when failing to read the bytes
+     */
+    public byte[] readBytes() throws IOException
+    {
+        byte[] bytes = new byte[readVarInt()];
+        readFully(bytes);
+
+        return bytes;
+    }
+
+    @Override
+    public String readSharedString() throws IOException
+    {
+        int index = readVarInt();
+
+        if (index == 0) {
+            return null;
+        }
+
+        if (index > this.strings.size()) {
+            throw new IOException("Unknown shared string index [" + index + "]");
+        }
+
+        return this.strings.get(index - 1);
+    }
+
+    @Override
+    public Serializable readSerializable() throws IOException
+    {
+        byte[] bytes = readBytes();
+
+        try {
+            return (Serializable) Util.objectFromByteBuffer(bytes);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to unserialize object", e);
+        }
+    }
+}
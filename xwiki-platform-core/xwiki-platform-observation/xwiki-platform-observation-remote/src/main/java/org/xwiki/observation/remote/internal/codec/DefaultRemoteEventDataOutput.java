@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.jgroups.util.Util;
+import org.xwiki.observation.remote.codec.RemoteEventDataOutput;
+
+/**
+ * Default implementation of {@link RemoteEventDataOutput}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class DefaultRemoteEventDataOutput extends DataOutputStream implements RemoteEventDataOutput
+{
+    private final Map<String, Integer> indexes;
+
+    private final List<String> strings;
+
+    /**
+     * @param out the stream where to write
+     * @param indexes the index of each string already present in the shared strings table
+     * @param strings the shared strings table
+     */
+    public DefaultRemoteEventDataOutput(OutputStream out, Map<String, Integer> indexes, List<String> strings)
+    {
+        super(out);
+
+        this.indexes = indexes;
+        this.strings = strings;
+    }
+
+    /**
+     * Write a positive integer using as few bytes as possible (7 bits per byte).
+     *
+     * @param value the positive integer to write
+     * @throws IOException when failing to write the integer
+     */
+    public void writeVarInt(int value) throws IOException
+    {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        write(remaining);
+    }
+
+    /**
+     * Write a string directly in the stream.
+     *
+     * @param value the string to write
+     * @throws IOException when failing to write the string
+     */
+    public void writeString(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarInt(bytes.length);
+        write(bytes);
+    }
+
+    @Override
+    public void writeSharedString(String value) throws IOException
+    {
+        if (value == null) {
+            writeVarInt(0);
+        } else {
+            Integer index = this.indexes.get(value);
+
+            if (index == null) {
+                index = this.strings.size();
+                this.strings.add(value);
+                this.indexes.put(value, index);
+            }
+
+            writeVarInt(index + 1);
+        }
+    }
+
+    @Override
+    public void writeSerializable(Serializable value) throws IOException
+    {
+        byte[] bytes;
+        try {
+            bytes = Util.objectToByteBuffer(value);
+        } catch (Exception e) {
+            throw new IOException("Failed to serialize object [" + value + "]", e);
+        }
+
+        writeVarInt(bytes.length);
+        write(bytes);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+
+/**
+ * Encode a list of {@link RemoteEventData} in a single compact binary buffer using the available
+ * {@link RemoteEventDataCodec}s and falling back on Java serialization for the other events.
+ * <p>
+ * The format is:
+ * <ul>
+ * <li>a magic header used to distinguish a batch from a standard serialized {@link RemoteEventData}</li>
+ * <li>the shared strings table</li>
+ * <li>the number of events</li>
+ * <li>for each event the hint of the codec (as a shared string, null for Java serialization) followed by the encoded
+ * event prefixed with its size</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = RemoteEventDataBatchCodec.class)
+@Singleton
+public class RemoteEventDataBatchCodec
+{
+    private static final byte[] MAGIC = new byte[] { 'X', 'W', 'R', 'E' };
+
+    private static final byte FORMAT_VERSION = 1;
+
+    @Inject
+    private ComponentManager componentManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @param buffer the buffer
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data in the buffer
+     * @return true if the passed buffer contains a batch produced by {@link #encode(List)}
+     */
+    public static boolean isBatch(byte[] buffer, int offset, int length)
+    {
+        if (buffer == null || length < MAGIC.length + 1) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (buffer[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return buffer[offset + MAGIC.length] == FORMAT_VERSION;
+    }
+
+    private Map<String, RemoteEventDataCodec> getCodecs()
+    {
+        try {
+            return this.componentManager.getInstanceMap(RemoteEventDataCodec.class);
+        } catch (ComponentLookupException e) {
+            this.logger.error("Failed to lookup remote event codecs", e);
+
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * @param remoteEvents the events to encode
+     * @return the encoded events
+     * @throws IOException when failing to encode the events
+     */
+    public byte[] encode(List<RemoteEventData> remoteEvents) throws IOException
+    {
+        Map<String, RemoteEventDataCodec> codecs = getCodecs();
+
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DefaultRemoteEventDataOutput bodyOutput = new DefaultRemoteEventDataOutput(body, indexes, strings);
+        ByteArrayOutputStream eventBuffer = new ByteArrayOutputStream();
+        DefaultRemoteEventDataOutput eventOutput = new DefaultRemoteEventDataOutput(eventBuffer, indexes, strings);
+
+        for (RemoteEventData remoteEvent : remoteEvents) {
+            String hint = encode(remoteEvent, codecs, eventBuffer, eventOutput);
+
+            bodyOutput.writeSharedString(hint);
+            bodyOutput.writeVarInt(eventBuffer.size());
+            eventBuffer.writeTo(bodyOutput);
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 256);
+        DefaultRemoteEventDataOutput output = new DefaultRemoteEventDataOutput(result, indexes, strings);
+
+        output.write(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        output.writeVarInt(strings.size());
+        for (String string : strings) {
+            output.writeString(string);
+        }
+        output.writeVarInt(remoteEvents.size());
+        body.writeTo(output);
+
+        output.flush();
+
+        return result.toByteArray();
+    }
+
+    private String encode(RemoteEventData remoteEvent, Map<String, RemoteEventDataCodec> codecs,
+        ByteArrayOutputStream eventBuffer, DefaultRemoteEventDataOutput eventOutput) throws IOException
+    {
+        for (Map.Entry<String, RemoteEventDataCodec> entry : codecs.entrySet()) {
+            RemoteEventDataCodec codec = entry.getValue();
+
+            if (codec.canEncode(remoteEvent)) {
+                eventBuffer.reset();
+                try {
+                    codec.encode(remoteEvent, eventOutput);
+                    eventOutput.flush();
+
+                    return entry.getKey();
+                } catch (Exception e) {
+                    this.logger.warn("Failed to encode remote event [{}] with codec [{}], using Java serialization",
+                        remoteEvent, entry.getKey(), e);
+                }
+            }
+        }
+
+        // Fallback on standard Java serialization
+        eventBuffer.reset();
+        eventOutput.writeSerializable(remoteEvent);
+        eventOutput.flush();
+
+        return null;
+    }
+
+    /**
+     * @param buffer the buffer containing the encoded events
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data in the buffer
+     * @return the decoded events
+     * @throws IOException when failing to decode the events
+     */
+    public List<RemoteEventData> decode(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (!isBatch(buffer, offset, length)) {
+            throw new IOException("The buffer does not contain a batch of remote events");
+        }
+
+        List<String> strings = new ArrayList<>();
+        DefaultRemoteEventDataInput input = new DefaultRemoteEventDataInput(
+            new ByteArrayInputStream(buffer, offset + MAGIC.length + 1, length - MAGIC.length - 1), strings);
+
+        int stringCount = input.readVarInt();
+        for (int i = 0; i < stringCount; ++i) {
+            strings.add(input.readString());
+        }
+
+        Map<String, RemoteEventDataCodec> codecs = getCodecs();
+
+        int eventCount = input.readVarInt();
+        List<RemoteEventData> remoteEvents = new ArrayList<>(eventCount);
+        for (int i = 0; i < eventCount; ++i) {
+            String hint = input.readSharedString();
+            byte[] eventBytes = input.readBytes();
+
+            DefaultRemoteEventDataInput eventInput =
+                new DefaultRemoteEventDataInput(new ByteArrayInputStream(eventBytes), strings);
+
+            try {
+                if (hint == null) {
+                    remoteEvents.add((RemoteEventData) eventInput.readSerializable());
+                } else {
+                    RemoteEventDataCodec codec = codecs.get(hint);
+
+                    if (codec != null) {
+                        remoteEvents.add(codec.decode(eventInput));
+                    } else {
+                        this.logger.warn("Skipping remote event encoded with unknown codec [{}]", hint);
+                    }
+                }
+            } catch (Exception e) {
+                // Don't loose the other events of the batch
+                this.logger.error("Failed to decode remote event with codec [{}]", hint, e);
+            }
+        }
+
+        return remoteEvents;
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.observation.remote.internal.jgroups;
 
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -30,6 +32,7 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.observation.remote.RemoteEventData;
 import org.xwiki.observation.remote.RemoteObservationManager;
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataBatchCodec;
 import org.xwiki.observation.remote.jgroups.JGroupsReceiver;
 
 /**
@@ -54,6 +57,12 @@ public class DefaultJGroupsReceiver extends ReceiverAdapter implements JGroupsRe
     @Inject
     private ComponentManager componentManager;
 
+    /**
+     * Used to decode batches of events.
+     */
+    @Inject
+    private RemoteEventDataBatchCodec batchCodec;
+
     /**
      * The logger to log.
      */
@@ -79,8 +88,26 @@ public RemoteObservationManager getRemoteObservationManager()
     @Override
     public void receive(Message msg)
     {
-        RemoteEventData remoteEvent = (RemoteEventData) msg.getObject();
+        if (RemoteEventDataBatchCodec.isBatch(msg.getRawBuffer(), msg.getOffset(), msg.getLength())) {
+            List<RemoteEventData> remoteEvents;
+            try {
+                remoteEvents = this.batchCodec.decode(msg.getRawBuffer(), msg.getOffset(), msg.getLength());
+            } catch (Exception e) {
+                this.logger.error("Failed to decode JGroups remote events message", e);
 
+                return;
+            }
+
+            for (RemoteEventData remoteEvent : remoteEvents) {
+                receive(remoteEvent);
+            }
+        } else {
+            receive((RemoteEventData) msg.getObject());
+        }
+    }
+
+    private void receive(RemoteEventData remoteEvent)
+    {
         this.logger.debug("Received JGroups remote event [{}]", remoteEvent);
 
         getRemoteObservationManager().notify(remoteEvent);
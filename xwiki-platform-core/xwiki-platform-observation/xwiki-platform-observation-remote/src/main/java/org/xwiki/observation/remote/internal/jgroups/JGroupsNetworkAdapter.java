@@ -23,8 +23,13 @@
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -42,14 +47,21 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.environment.Environment;
 import org.xwiki.observation.remote.NetworkAdapter;
 import org.xwiki.observation.remote.RemoteEventData;
 import org.xwiki.observation.remote.RemoteEventException;
+import org.xwiki.observation.remote.RemoteObservationManagerConfiguration;
+import org.xwiki.observation.remote.internal.codec.RemoteEventDataBatchCodec;
 import org.xwiki.observation.remote.jgroups.JGroupsReceiver;
 
 /**
  * JGroups based implementation of {@link NetworkAdapter}.
+ * <p>
+ * When batching is enabled the events are queued and sent asynchronously by a dedicated thread which put all the
+ * events produced in a short window in the same message encoded with {@link RemoteEventDataBatchCodec}.
  *
  * @version $Id$
  * @since 2.0RC1
@@ -57,7 +69,7 @@
 @Component
 @Named("jgroups")
 @Singleton
-public class JGroupsNetworkAdapter implements NetworkAdapter
+public class JGroupsNetworkAdapter implements NetworkAdapter, Initializable
 {
     /**
      * Relative path where to find jgroups channels configurations.
@@ -76,30 +88,164 @@ public class JGroupsNetworkAdapter implements NetworkAdapter
     @Inject
     private Logger logger;
 
+    /**
+     * Used to stop the sender thread.
+     */
+    private static final RemoteEventData STOP = new RemoteEventData();
+
+    /**
+     * Used to get the batching configuration.
+     */
+    @Inject
+    private RemoteObservationManagerConfiguration configuration;
+
+    /**
+     * Used to encode batches of events.
+     */
+    @Inject
+    private RemoteEventDataBatchCodec batchCodec;
+
     /**
      * The network channels.
      */
     private Map<String, JChannel> channels = new ConcurrentHashMap<String, JChannel>();
 
+    /**
+     * The events waiting to be sent.
+     */
+    private BlockingQueue<RemoteEventData> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The thread sending the queued events.
+     */
+    private Thread senderThread;
+
+    private long batchDelay;
+
+    private int batchSize;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.batchDelay = this.configuration.getBatchDelay();
+        this.batchSize = Math.max(this.configuration.getBatchSize(), 1);
+    }
+
     @Override
     public void send(RemoteEventData remoteEvent)
     {
         this.logger.debug("Send JGroups remote event [" + remoteEvent + "]");
 
-        // Send the message to the whole group
-        Message message = new Message(null, remoteEvent);
+        if (this.batchDelay > 0) {
+            if (!this.channels.isEmpty()) {
+                this.queue.add(remoteEvent);
+            }
+        } else {
+            // Send the message to the whole group
+            send(new Message(null, remoteEvent), remoteEvent);
+        }
+    }
 
+    private void send(Message message, Object description)
+    {
         // Send message to JGroups channels
         for (Map.Entry<String, JChannel> entry : this.channels.entrySet()) {
             try {
                 entry.getValue().send(message);
             } catch (Exception e) {
                 this.logger
-                    .error("Failed to send message [" + remoteEvent + "] to the channel [" + entry.getKey() + "]", e);
+                    .error("Failed to send message [" + description + "] to the channel [" + entry.getKey() + "]", e);
             }
         }
     }
 
+    private void sendBatch(List<RemoteEventData> batch)
+    {
+        Message message;
+        try {
+            message = new Message(null, this.batchCodec.encode(batch));
+        } catch (Exception e) {
+            this.logger.error("Failed to encode remote events [{}], sending them one by one", batch, e);
+
+            for (RemoteEventData remoteEvent : batch) {
+                send(new Message(null, remoteEvent), remoteEvent);
+            }
+
+            return;
+        }
+
+        send(message, batch);
+    }
+
+    private void runSender()
+    {
+        List<RemoteEventData> batch = new ArrayList<>(this.batchSize);
+
+        boolean stop = false;
+        while (!stop) {
+            try {
+                RemoteEventData remoteEvent = this.queue.take();
+
+                // Wait a little for other events to send with this one
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.batchDelay);
+                while (remoteEvent != STOP) {
+                    batch.add(remoteEvent);
+
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= this.batchSize || remaining <= 0) {
+                        break;
+                    }
+
+                    remoteEvent = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (remoteEvent == null) {
+                        break;
+                    }
+                }
+
+                stop = remoteEvent == STOP;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                stop = true;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    sendBatch(batch);
+                } catch (Exception e) {
+                    this.logger.error("Unexpected error when sending remote events [{}]", batch, e);
+                }
+
+                batch.clear();
+            }
+        }
+    }
+
+    private synchronized void startSender()
+    {
+        if (this.batchDelay > 0 && this.senderThread == null) {
+            this.senderThread = new Thread(this::runSender, "XWiki remote events sender");
+            this.senderThread.setDaemon(true);
+            this.senderThread.start();
+        }
+    }
+
+    private synchronized void stopSender()
+    {
+        if (this.senderThread != null) {
+            // Send the remaining events before stopping
+            this.queue.add(STOP);
+
+            try {
+                this.senderThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            this.senderThread = null;
+        }
+    }
+
     @Override
     public void startChannel(String channelId) throws RemoteEventException
     {
@@ -113,6 +259,8 @@ public void startChannel(String channelId) throws RemoteEventException
             channel.connect("event");
 
             this.channels.put(channelId, channel);
+
+            startSender();
         } catch (Exception e) {
             throw new RemoteEventException("Failed to create channel [" + channelId + "]", e);
         }
@@ -137,6 +285,13 @@ public void stopChannel(String channelId) throws RemoteEventException
             throw new RemoteEventException(MessageFormat.format("Channel [{0}] is not started", channelId));
         }
 
+        // Send the queued events before closing the last channel, the sender is not needed anymore after that
+        synchronized (this) {
+            if (this.channels.size() == 1) {
+                stopSender();
+            }
+        }
+
         channel.close();
 
         this.channels.remove(channelId);
@@ -218,6 +373,8 @@ private ProtocolStackConfigurator loadChannelConfiguration(String channelId) thr
     @Override
     public void stopAllChannels() throws RemoteEventException
     {
+        stopSender();
+
         for (Map.Entry<String, JChannel> channelEntry : this.channels.entrySet()) {
             channelEntry.getValue().close();
         }
@@ -19,14 +19,19 @@
  */
 package org.xwiki.observation.remote;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jmock.Expectations;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.xwiki.logging.event.LogEvent;
 import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
 import org.xwiki.observation.remote.test.AbstractROMTestCase;
 import org.xwiki.observation.remote.test.TestEvent;
 
@@ -43,6 +48,9 @@ public void setUp() throws Exception
         System.setProperty("jgroups.bind_addr", "localhost");
 
         getConfigurationSource1().setProperty("observation.remote.channels", Arrays.asList("tcp"));
+        // Batch the events sent by the first instance only, to validate both ways of sending events
+        getConfigurationSource1().setProperty("observation.remote.batch.delay", 10L);
+        getConfigurationSource1().setProperty("observation.remote.batch.size", 100);
         RemoteObservationManager rom = getComponentManager2().getInstance(RemoteObservationManager.class);
         rom.startChannel("tcp");
     }
@@ -51,6 +59,9 @@ public void setUp() throws Exception
     public void tearDown() throws Exception
     {
         this.mockery.assertIsSatisfied();
+
+        getComponentManager1().<NetworkAdapter>getInstance(NetworkAdapter.class, "jgroups").stopAllChannels();
+        getComponentManager2().<NetworkAdapter>getInstance(NetworkAdapter.class, "jgroups").stopAllChannels();
     }
 
     /**
@@ -91,4 +102,46 @@ public void testSerializableEvent() throws InterruptedException
         // Make sure JGroups has enough time to send the message
         Thread.sleep(1000);
     }
-}
\ No newline at end of file
+
+    /**
+     * Validate that events sent in a short window are all received, in the same order.
+     */
+    @Test
+    public void testBatchedEvents() throws InterruptedException
+    {
+        final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+
+        getObservationManager2().addListener(new EventListener()
+        {
+            @Override
+            public String getName()
+            {
+                return "batchlistener";
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return Arrays.<Event>asList(new TestEvent());
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                received.add(source);
+            }
+        });
+
+        List<Object> sent = new ArrayList<>();
+        for (int i = 0; i < 250; ++i) {
+            String source = "source" + i;
+            sent.add(source);
+            getObservationManager1().notify(new TestEvent(), source, "some data");
+        }
+
+        // Make sure JGroups has enough time to send the messages
+        Thread.sleep(1000);
+
+        Assert.assertEquals(sent, received);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.remote.internal.codec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jgroups.util.Util;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+import org.xwiki.observation.remote.codec.RemoteEventDataInput;
+import org.xwiki.observation.remote.codec.RemoteEventDataOutput;
+import org.xwiki.observation.remote.test.TestEvent;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link RemoteEventDataBatchCodec}.
+ *
+ * @version $Id$
+ */
+public class RemoteEventDataBatchCodecTest
+{
+    @Rule
+    public MockitoComponentMockingRule<RemoteEventDataBatchCodec> mocker =
+        new MockitoComponentMockingRule<>(RemoteEventDataBatchCodec.class);
+
+    private ComponentManager componentManager;
+
+    /**
+     * Encode events with a {@link TestEvent} event and a String source.
+     */
+    private RemoteEventDataCodec testCodec = new RemoteEventDataCodec()
+    {
+        @Override
+        public boolean canEncode(RemoteEventData remoteEvent)
+        {
+            return remoteEvent.getEvent() instanceof TestEvent && remoteEvent.getSource() instanceof String;
+        }
+
+        @Override
+        public void encode(RemoteEventData remoteEvent, RemoteEventDataOutput output) throws IOException
+        {
+            output.writeSharedString((String) remoteEvent.getSource());
+            output.writeSerializable(remoteEvent.getData());
+        }
+
+        @Override
+        public RemoteEventData decode(RemoteEventDataInput input) throws IOException
+        {
+            return remoteEvent(new TestEvent(), input.readSharedString(), input.readSerializable());
+        }
+    };
+
+    @BeforeComponent
+    public void beforeComponent() throws Exception
+    {
+        this.componentManager = this.mocker.registerMockComponent(ComponentManager.class);
+    }
+
+    @Before
+    public void before() throws Exception
+    {
+        when(this.componentManager.<RemoteEventDataCodec>getInstanceMap(RemoteEventDataCodec.class))
+            .thenReturn(Collections.singletonMap("test", this.testCodec));
+    }
+
+    private static RemoteEventData remoteEvent(TestEvent event, String source, Serializable data)
+    {
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent(event);
+        remoteEvent.setSource(source);
+        remoteEvent.setData(data);
+
+        return remoteEvent;
+    }
+
+    private static void assertRemoteEventEquals(RemoteEventData expected, RemoteEventData actual)
+    {
+        assertEquals(expected.getEvent(), actual.getEvent());
+        assertEquals(expected.getSource(), actual.getSource());
+        assertEquals(expected.getData(), actual.getData());
+    }
+
+    private static int count(byte[] buffer, String value)
+    {
+        String content = new String(buffer, StandardCharsets.ISO_8859_1);
+
+        int count = 0;
+        for (int index = content.indexOf(value); index != -1; index = content.indexOf(value, index + 1)) {
+            ++count;
+        }
+
+        return count;
+    }
+
+    @Test
+    public void encodeDecode() throws Exception
+    {
+        List<RemoteEventData> events = Arrays.asList(remoteEvent(new TestEvent(), "wiki:Space.Page", 1),
+            remoteEvent(new TestEvent(), "wiki:Space.Page", 2), remoteEvent(new TestEvent(), null, 42));
+
+        byte[] buffer = this.mocker.getComponentUnderTest().encode(events);
+
+        assertTrue(RemoteEventDataBatchCodec.isBatch(buffer, 0, buffer.length));
+        // The reference is written only once
+        assertEquals(1, count(buffer, "wiki:Space.Page"));
+
+        List<RemoteEventData> decodedEvents =
+            this.mocker.getComponentUnderTest().decode(buffer, 0, buffer.length);
+
+        assertEquals(3, decodedEvents.size());
+        for (int i = 0; i < events.size(); ++i) {
+            assertRemoteEventEquals(events.get(i), decodedEvents.get(i));
+        }
+    }
+
+    @Test
+    public void decodeWithUnknownCodec() throws Exception
+    {
+        List<RemoteEventData> events = Arrays.asList(remoteEvent(new TestEvent(), "wiki:Space.Page", 1),
+            remoteEvent(new TestEvent(), null, 2));
+
+        byte[] buffer = this.mocker.getComponentUnderTest().encode(events);
+
+        when(this.componentManager.<RemoteEventDataCodec>getInstanceMap(RemoteEventDataCodec.class))
+            .thenReturn(Collections.emptyMap());
+
+        List<RemoteEventData> decodedEvents =
+            this.mocker.getComponentUnderTest().decode(buffer, 0, buffer.length);
+
+        // The event encoded with the unknown codec is skipped
+        assertEquals(1, decodedEvents.size());
+        assertRemoteEventEquals(events.get(1), decodedEvents.get(0));
+    }
+
+    @Test
+    public void isBatchWithSerializedRemoteEvent() throws Exception
+    {
+        byte[] buffer = Util.objectToByteBuffer(remoteEvent(new TestEvent(), "source", 1));
+
+        assertFalse(RemoteEventDataBatchCodec.isBatch(buffer, 0, buffer.length));
+    }
+}
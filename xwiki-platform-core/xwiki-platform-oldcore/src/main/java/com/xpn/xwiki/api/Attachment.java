@@ -26,6 +26,7 @@
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.suigeneris.jrcs.rcs.Version;
@@ -50,6 +51,21 @@ public Attachment(Document doc, XWikiAttachment attachment, XWikiContext context
         this.attachment = attachment;
     }
 
+    /**
+     * The attachment is shared with the document cache as long as the document is not modified through the document
+     * API so we switch to the attachment of the cloned document before loading its content or archive.
+     *
+     * @return the attachment to use for operations modifying it
+     */
+    private XWikiAttachment getModifiableAttachment()
+    {
+        if (this.doc != null) {
+            this.attachment = this.doc.resolveAttachment(this.attachment);
+        }
+
+        return this.attachment;
+    }
+
     /**
      * @return the document the file is attached to
      */
@@ -155,7 +171,7 @@ public byte[] getContent() throws XWikiException
     public byte[] getContentAsBytes() throws XWikiException
     {
         try {
-            return IOUtils.toByteArray(this.attachment.getContentInputStream(getXWikiContext()));
+            return IOUtils.toByteArray(getModifiableAttachment().getContentInputStream(getXWikiContext()));
         } catch (IOException ex) {
             // This really shouldn't happen, but it's not nice to throw exceptions from scriptable APIs
             return new byte[0];
@@ -165,7 +181,7 @@ public byte[] getContentAsBytes() throws XWikiException
     public InputStream getContentInputStream()
     {
         try {
-            return this.attachment.getContentInputStream(getXWikiContext());
+            return getModifiableAttachment().getContentInputStream(getXWikiContext());
         } catch (XWikiException e) {
             LOGGER.error("Failed to get attachment input stream", e);
 
@@ -203,8 +219,9 @@ public String getContentAsString(String charset) throws XWikiException
      */
     public Version[] getVersions() throws XWikiException
     {
-        this.attachment.loadArchive(getXWikiContext());
-        return this.attachment.getVersions();
+        XWikiAttachment modifiableAttachment = getModifiableAttachment();
+        modifiableAttachment.loadArchive(getXWikiContext());
+        return modifiableAttachment.getVersions();
     }
 
     /**
@@ -228,7 +245,7 @@ public List<Version> getVersionList() throws XWikiException
     public XWikiAttachment getAttachment()
     {
         if (hasProgrammingRights()) {
-            return this.attachment;
+            return getModifiableAttachment();
         } else {
             return null;
         }
@@ -239,7 +256,7 @@ public XWikiAttachment getAttachment()
      */
     public String getMimeType()
     {
-        return this.attachment.getMimeType(getXWikiContext());
+        return getMimeTypeAttachment().getMimeType(getXWikiContext());
     }
 
     /**
@@ -247,7 +264,15 @@ public String getMimeType()
      */
     public boolean isImage()
     {
-        return this.attachment.isImage(getXWikiContext());
+        return getMimeTypeAttachment().isImage(getXWikiContext());
+    }
+
+    /**
+     * @return the attachment to use for detecting the mime type, which might require loading the attachment content
+     */
+    private XWikiAttachment getMimeTypeAttachment()
+    {
+        return StringUtils.isEmpty(this.attachment.getMimeType()) ? getModifiableAttachment() : this.attachment;
     }
 
     /**
@@ -259,7 +284,7 @@ public boolean isImage()
      */
     public Attachment getAttachmentRevision(String rev) throws XWikiException
     {
-        XWikiAttachment att = this.attachment.getAttachmentRevision(rev, getXWikiContext());
+        XWikiAttachment att = getModifiableAttachment().getAttachmentRevision(rev, getXWikiContext());
         return att == null ? null : new Attachment(getDocument(), att, this.context);
     }
 }
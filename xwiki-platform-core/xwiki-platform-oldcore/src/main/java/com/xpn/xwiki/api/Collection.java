@@ -72,7 +72,7 @@ public Element[] getProperties()
         Property[] properties = new Property[coll.size()];
         int i = 0;
         for (BaseProperty prop : coll) {
-            properties[i++] = new Property(prop, getXWikiContext());
+            properties[i++] = createProperty(prop);
         }
         return properties;
     }
@@ -85,12 +85,22 @@ public Property getProperty(String name)
                 return null;
             }
 
-            return new Property((BaseProperty) prop, getXWikiContext());
+            return createProperty((BaseProperty) prop);
         } catch (Exception e) {
             return null;
         }
     }
 
+    private Property createProperty(BaseProperty property)
+    {
+        Property apiProperty = new Property(property, getXWikiContext());
+        if (this instanceof Object) {
+            apiProperty.setObject((Object) this);
+        }
+
+        return apiProperty;
+    }
+
     /**
      * @param name the name of the property
      * @return the value of the passed property
@@ -1077,7 +1077,7 @@ public int getObjectNumbers(String classname)
      */
     public Map<String, Vector<Object>> getxWikiObjects()
     {
-        Map<DocumentReference, List<BaseObject>> map = this.getDoc().getXObjects();
+        Map<DocumentReference, List<BaseObject>> map = this.doc.getXObjects();
         Map<String, Vector<Object>> resultmap = new HashMap<String, Vector<Object>>();
         for (Map.Entry<DocumentReference, List<BaseObject>> entry : map.entrySet()) {
             List<BaseObject> objects = entry.getValue();
@@ -1109,7 +1109,7 @@ protected Vector<Object> getXObjects(List<BaseObject> objects)
      */
     public Vector<Object> getObjects(String className)
     {
-        List<BaseObject> objects = this.getDoc().getXObjects(this.doc.resolveClassReference(className));
+        List<BaseObject> objects = this.doc.getXObjects(this.doc.resolveClassReference(className));
         return getXObjects(objects);
     }
 
@@ -1122,7 +1122,7 @@ public Vector<Object> getObjects(String className)
     public Object getFirstObject(String fieldname)
     {
         try {
-            BaseObject obj = this.getDoc().getFirstObject(fieldname, getXWikiContext());
+            BaseObject obj = this.doc.getFirstObject(fieldname, getXWikiContext());
             if (obj == null) {
                 return null;
             } else {
@@ -1145,7 +1145,7 @@ public Object getFirstObject(String fieldname)
     public Object getObject(String classname, String key, String value, boolean failover)
     {
         try {
-            BaseObject obj = this.getDoc().getObject(classname, key, value, failover);
+            BaseObject obj = this.doc.getObject(classname, key, value, failover);
             if (obj == null) {
                 return null;
             } else {
@@ -1172,7 +1172,7 @@ public Vector<Object> getObjects(String classname, String key, String value)
             return getObjects(classname);
         }
         try {
-            Vector<BaseObject> allObjects = this.getDoc().getObjects(classname);
+            Vector<BaseObject> allObjects = this.doc.getObjects(classname);
             if (allObjects == null || allObjects.size() == 0) {
                 return result;
             } else {
@@ -1205,7 +1205,7 @@ public Vector<Object> getObjects(String classname, String key, String value)
     public Object getObject(String classname, String key, String value)
     {
         try {
-            BaseObject obj = this.getDoc().getObject(classname, key, value);
+            BaseObject obj = this.doc.getObject(classname, key, value);
             if (obj == null) {
                 return null;
             } else {
@@ -1238,7 +1238,8 @@ public Object getObject(String classname)
     public Object getObject(String classname, boolean create)
     {
         try {
-            BaseObject obj = getDoc().getObject(classname, create, getXWikiContext());
+            // Only clone the document if a new object might be added to it.
+            BaseObject obj = (create ? getDoc() : this.doc).getObject(classname, create, getXWikiContext());
 
             if (obj == null) {
                 return null;
@@ -1260,7 +1261,7 @@ public Object getObject(String classname, boolean create)
     public Object getObject(String classname, int nb)
     {
         try {
-            BaseObject obj = this.getDoc().getObject(classname, nb);
+            BaseObject obj = this.doc.getObject(classname, nb);
             if (obj == null) {
                 return null;
             } else {
@@ -1273,7 +1274,59 @@ public Object getObject(String classname, int nb)
 
     private Object newObjectApi(BaseObject obj, XWikiContext context)
     {
-        return obj.newObjectApi(obj, context);
+        Object object = obj.newObjectApi(obj, context);
+        object.setDocument(this);
+
+        return object;
+    }
+
+    /**
+     * The read-only accessors of this API return objects of the wrapped document, which is shared (e.g. with the
+     * document cache) as long as the document is not modified through this API. This method resolves the object of
+     * the current version of the wrapped document corresponding to the passed object, cloning the wrapped document
+     * first if the object is about to be modified.
+     *
+     * @param object an object returned by this API
+     * @param modify {@code true} if the object is going to be modified
+     * @return the object to use
+     * @since 9.12RC1
+     */
+    BaseObject resolveXObject(BaseObject object, boolean modify)
+    {
+        XWikiDocument document = modify ? getDoc() : this.doc;
+        if (object.getOwnerDocument() != document) {
+            BaseObject documentObject = document.getXObject(object.getXClassReference(), object.getNumber());
+            if (documentObject != null) {
+                return documentObject;
+            }
+        }
+
+        return object;
+    }
+
+    /**
+     * Same as {@link #resolveXObject(BaseObject, boolean)} but for attachments. Loading the content or the archive of
+     * an attachment modifies it so it's done on the attachments of the cloned document.
+     *
+     * @param attachment an attachment returned by this API
+     * @return the attachment to use
+     * @since 9.12RC1
+     */
+    XWikiAttachment resolveAttachment(XWikiAttachment attachment)
+    {
+        XWikiDocument attachmentDocument = attachment.getDoc();
+        // Attachment revisions are not part of the document.
+        if (attachmentDocument != null && attachmentDocument.getAttachment(attachment.getFilename()) == attachment) {
+            XWikiDocument document = getDoc();
+            if (attachmentDocument != document) {
+                XWikiAttachment documentAttachment = document.getAttachment(attachment.getFilename());
+                if (documentAttachment != null) {
+                    return documentAttachment;
+                }
+            }
+        }
+
+        return attachment;
     }
 
     public String getXMLContent() throws XWikiException
@@ -1342,7 +1395,7 @@ public RevisionInfo getRevisionInfo(String version) throws XWikiException
     public List<Attachment> getAttachmentList()
     {
         List<Attachment> apis = new ArrayList<Attachment>();
-        for (XWikiAttachment attachment : this.getDoc().getAttachmentList()) {
+        for (XWikiAttachment attachment : this.doc.getAttachmentList()) {
             apis.add(new Attachment(this, attachment, getXWikiContext()));
         }
         return apis;
@@ -1355,7 +1408,7 @@ public Vector<Object> getComments()
 
     public Vector<Object> getComments(boolean asc)
     {
-        return getXObjects(this.getDoc().getComments(asc));
+        return getXObjects(this.doc.getComments(asc));
     }
 
     /**
@@ -1728,7 +1781,7 @@ public List<String> getLinkedPages()
 
     public Attachment getAttachment(String filename)
     {
-        XWikiAttachment attach = this.getDoc().getAttachment(filename);
+        XWikiAttachment attach = this.doc.getAttachment(filename);
         if (attach == null) {
             return null;
         } else {
@@ -2091,7 +2144,7 @@ public java.lang.Object getValue(String fieldName)
     {
         Object object;
         if (this.currentObj == null) {
-            object = new Object(this.getDoc().getFirstObject(fieldName, getXWikiContext()), getXWikiContext());
+            object = new Object(this.doc.getFirstObject(fieldName, getXWikiContext()), getXWikiContext());
         } else {
             object = this.currentObj;
         }
@@ -2134,7 +2187,10 @@ public String getTags()
 
     public List<String> getTagList()
     {
-        return this.getDoc().getTagsList(getXWikiContext());
+        // Return a copy since the tags list of the wrapped document is not cloned.
+        List<String> tags = this.doc.getTagsList(getXWikiContext());
+
+        return tags != null ? new ArrayList<>(tags) : null;
     }
 
     public List<String> getTagsPossibleValues()
@@ -2628,7 +2684,10 @@ public boolean isProgrammaticContent()
      */
     public boolean removeObject(Object object)
     {
-        return getDoc().removeObject(object.getBaseObject());
+        // Resolve the object in the cloned document since it's the one from which the object is removed
+        BaseObject baseObject = resolveXObject(object.getBaseObject(), true);
+
+        return getDoc().removeObject(baseObject);
     }
 
     /**
@@ -22,25 +22,63 @@
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseCollection;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseObjectReference;
 
 public class Object extends Collection
 {
+    /**
+     * The document API this object was retrieved from, used to get a clone of the object before modifying it.
+     */
+    private Document document;
+
     public Object(BaseObject obj, XWikiContext context)
     {
         super(obj, context);
     }
 
+    /**
+     * @param document the document API this object was retrieved from
+     * @since 9.12RC1
+     */
+    void setDocument(Document document)
+    {
+        this.document = document;
+    }
+
+    @Override
+    protected BaseCollection getCollection()
+    {
+        if (this.document != null) {
+            this.element = this.document.resolveXObject((BaseObject) this.element, false);
+        }
+
+        return (BaseCollection) this.element;
+    }
+
     protected BaseObject getBaseObject()
     {
         return (BaseObject) getCollection();
     }
 
+    /**
+     * @return the object to modify, which is never the one of a shared document
+     * @since 9.12RC1
+     */
+    BaseObject getModifiableBaseObject()
+    {
+        if (this.document != null) {
+            this.element = this.document.resolveXObject((BaseObject) this.element, true);
+        }
+
+        return (BaseObject) this.element;
+    }
+
     public BaseObject getXWikiObject()
     {
         if (hasProgrammingRights()) {
-            return (BaseObject) getCollection();
+            return getModifiableBaseObject();
         } else {
             return null;
         }
@@ -53,7 +91,7 @@ public String getGuid()
 
     public void setGuid(String guid)
     {
-        getBaseObject().setGuid(guid);
+        getModifiableBaseObject().setGuid(guid);
     }
 
     /**
@@ -107,10 +145,11 @@ public void set(String fieldname, java.lang.Object value)
     {
         XWikiContext xcontext = getXWikiContext();
 
-        getBaseObject().set(fieldname, value, xcontext);
+        BaseObject baseObject = getModifiableBaseObject();
+        baseObject.set(fieldname, value, xcontext);
 
         // Temporary set as author of the document the current script author (until the document is saved)
-        getBaseObject().getOwnerDocument().setAuthorReference(xcontext.getAuthorReference());
+        baseObject.getOwnerDocument().setAuthorReference(xcontext.getAuthorReference());
     }
 
     @Override
@@ -19,6 +19,10 @@
  */
 package com.xpn.xwiki.api;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.objects.BaseProperty;
 
@@ -29,6 +33,11 @@
  */
 public class Property extends Element
 {
+    /**
+     * The object API this property was retrieved from, used to get a clone of the property before exposing it.
+     */
+    private Object object;
+
     /**
      * The Constructor.
      *
@@ -40,6 +49,15 @@ public Property(BaseProperty property, XWikiContext context)
         super(property, context);
     }
 
+    /**
+     * @param object the object API this property was retrieved from
+     * @since 9.12RC1
+     */
+    void setObject(Object object)
+    {
+        this.object = object;
+    }
+
     /**
      * @return the internal {@link com.xpn.xwiki.objects.BaseProperty} which this Property wraps.
      */
@@ -54,6 +72,14 @@ protected BaseProperty getBaseProperty()
     public BaseProperty getProperty()
     {
         if (hasProgrammingRights()) {
+            // The property might be modified so make sure it's not the one of a shared document
+            if (this.object != null) {
+                BaseProperty property = (BaseProperty) this.object.getModifiableBaseObject().safeget(getName());
+                if (property != null) {
+                    this.element = property;
+                }
+            }
+
             return (BaseProperty) this.element;
         } else {
             return null;
@@ -78,7 +104,8 @@ public PropertyClass getPropertyClass()
     }
 
     /**
-     * @return the actual value of the property, as a String, Number or List.
+     * @return the actual value of the property, as a String, Number or List. Mutable values (lists and dates) are
+     *         copies, modifying them does not modify the property.
      */
     public java.lang.Object getValue()
     {
@@ -94,6 +121,24 @@ public java.lang.Object getValue()
             }
         }
 
-        return getBaseProperty().getValue();
+        return copyValue(getBaseProperty().getValue());
+    }
+
+    /**
+     * The wrapped property might be the one of a document shared with other threads (e.g. the document cache), so its
+     * value should not be modified.
+     *
+     * @param value the value of the property
+     * @return a copy of the value if it's mutable, the value itself otherwise
+     */
+    private java.lang.Object copyValue(java.lang.Object value)
+    {
+        if (value instanceof List) {
+            return new ArrayList<>((List<?>) value);
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+
+        return value;
     }
 }
@@ -50,6 +50,7 @@
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -144,6 +145,7 @@
 import org.xwiki.rendering.util.ErrorBlockGenerator;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
 import org.xwiki.velocity.VelocityManager;
 import org.xwiki.xar.internal.model.XarDocumentModel;
 import org.xwiki.xml.XMLUtils;
@@ -159,6 +161,7 @@
 import com.xpn.xwiki.doc.merge.MergeResult;
 import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
 import com.xpn.xwiki.internal.AbstractNotifyOnUpdateList;
+import com.xpn.xwiki.internal.cache.DocumentXDOMCache;
 import com.xpn.xwiki.internal.cache.rendering.RenderingCache;
 import com.xpn.xwiki.internal.filter.XWikiDocumentFilterUtils;
 import com.xpn.xwiki.internal.merge.MergeUtils;
@@ -380,6 +383,19 @@ private static ObjectReferenceResolver<EntityReference> getCurrentReferenceObjec
         return Utils.getComponent(ObjectReferenceResolver.TYPE_REFERENCE, "current");
     }
 
+    /**
+     * Used to share the parsed content between the instances of the same document version.
+     */
+    private static DocumentXDOMCache getDocumentXDOMCache()
+    {
+        try {
+            return Utils.getComponentManager().getInstance(DocumentXDOMCache.class);
+        } catch (ComponentLookupException e) {
+            // The content can still be parsed without the cache
+            return null;
+        }
+    }
+
     private String title;
 
     /**
@@ -540,6 +556,11 @@ protected void added(XWikiAttachment element)
      */
     private XWikiDocument originalDocument;
 
+    /**
+     * @see #setOriginalDocumentSupplier(Supplier)
+     */
+    private Supplier<XWikiDocument> originalDocumentSupplier;
+
     /**
      * Used to display the title and the content of this document. Do not inject the component here to avoid any simple
      * new XWikiDocument to cause many useless initialization, in particular, during initialization of the stub context
@@ -956,6 +977,11 @@ public void setRCSVersion(Version version)
     @Override
     public XWikiDocument getOriginalDocument()
     {
+        if (this.originalDocumentSupplier != null) {
+            this.originalDocument = this.originalDocumentSupplier.get();
+            this.originalDocumentSupplier = null;
+        }
+
         return this.originalDocument;
     }
 
@@ -967,6 +993,22 @@ public XWikiDocument getOriginalDocument()
     public void setOriginalDocument(XWikiDocument originalDocument)
     {
         this.originalDocument = originalDocument;
+        this.originalDocumentSupplier = null;
+    }
+
+    /**
+     * Set the original document lazily, when it's costly to get and might not be needed (e.g. when the document comes
+     * from a remote event).
+     *
+     * @param originalDocumentSupplier called the first time {@link #getOriginalDocument()} is called
+     * @see #setOriginalDocument(XWikiDocument)
+     * @since 9.12RC1
+     */
+    @Unstable
+    public void setOriginalDocumentSupplier(Supplier<XWikiDocument> originalDocumentSupplier)
+    {
+        this.originalDocument = null;
+        this.originalDocumentSupplier = originalDocumentSupplier;
     }
 
     /**
@@ -3942,6 +3984,7 @@ private void clone(XWikiDocument document)
         this.elements = document.elements;
 
         this.originalDocument = document.originalDocument;
+        this.originalDocumentSupplier = document.originalDocumentSupplier;
     }
 
     @Override
@@ -4019,6 +4062,7 @@ private XWikiDocument cloneInternal(DocumentReference newDocumentReference, bool
             doc.elements = this.elements;
 
             doc.originalDocument = this.originalDocument;
+            doc.originalDocumentSupplier = this.originalDocumentSupplier;
         } catch (Exception e) {
             // This should not happen
             LOGGER.error("Exception while cloning document", e);
@@ -8275,12 +8319,24 @@ public void convertSyntax(Syntax targetSyntax, XWikiContext context) throws XWik
     public XDOM getXDOM()
     {
         if (this.xdomCache == null) {
-            try {
-                this.xdomCache = parseContent(getContent());
-            } catch (XWikiException e) {
-                ErrorBlockGenerator errorBlockGenerator = Utils.getComponent(ErrorBlockGenerator.class);
-                return new XDOM(errorBlockGenerator.generateErrorBlocks("Failed to render content", e, false));
+            // Reuse the content parsed by another instance of the same document version, if any
+            DocumentXDOMCache sharedCache = getDocumentXDOMCache();
+            XDOM xdom = sharedCache != null ? sharedCache.get(this) : null;
+
+            if (xdom == null) {
+                try {
+                    xdom = parseContent(getContent());
+                } catch (XWikiException e) {
+                    ErrorBlockGenerator errorBlockGenerator = Utils.getComponent(ErrorBlockGenerator.class);
+                    return new XDOM(errorBlockGenerator.generateErrorBlocks("Failed to render content", e, false));
+                }
+
+                if (sharedCache != null) {
+                    sharedCache.set(this, xdom);
+                }
             }
+
+            this.xdomCache = xdom;
         }
 
         return this.xdomCache.clone();
@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.rendering.block.XDOM;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Share the parsed content of the documents between the various instances of the same document version (document
+ * cache eviction, clones made by the script API, etc.). The entries of a document are removed when the document is
+ * modified, locally or on another cluster member.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = DocumentXDOMCache.class)
+@Singleton
+public class DocumentXDOMCache implements Initializable
+{
+    /**
+     * Identifier of the cache.
+     */
+    private static final String NAME = "core.xdomcache";
+
+    /**
+     * Name of the property indicating the maximum number of parsed documents to keep.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default maximum number of parsed documents to keep.
+     */
+    private static final int PROPVALUE_SIZE = 100;
+
+    /**
+     * The content of a document and the result of its parsing.
+     *
+     * @version $Id$
+     */
+    static final class ParsedContent
+    {
+        private final String content;
+
+        private final XDOM xdom;
+
+        ParsedContent(String content, XDOM xdom)
+        {
+            this.content = content;
+            this.xdom = xdom;
+        }
+    }
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private DocumentCache<ParsedContent> cache;
+
+    @Inject
+    private Logger logger;
+
+    private boolean enabled;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE);
+
+        if (size > 0) {
+            CacheConfiguration cacheConfiguration = new CacheConfiguration();
+            cacheConfiguration.setConfigurationId(NAME);
+            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+            lru.setMaxEntries(size);
+            cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+            try {
+                this.cache.create(cacheConfiguration);
+
+                this.enabled = true;
+            } catch (CacheException e) {
+                // Documents can still be parsed without the cache
+                this.logger.error("Failed to create the documents XDOM cache", e);
+            }
+        }
+    }
+
+    /**
+     * @param document the document
+     * @return the parsed content of the passed document or null if it's not in the cache, the returned XDOM is shared
+     *         and should not be modified
+     */
+    public XDOM get(XWikiDocument document)
+    {
+        if (isCacheable(document)) {
+            ParsedContent parsedContent = this.cache.get(document.getDocumentReference(), document.getLocale(),
+                document.getVersion(), document.getSyntax().toIdString());
+
+            // Make sure the content is really the one which has been parsed (in case a document has been deleted and
+            // created again for example)
+            if (parsedContent != null && parsedContent.content.equals(document.getContent())) {
+                return parsedContent.xdom;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param document the document
+     * @param xdom the parsed content of the passed document, should not be modified afterward
+     */
+    public void set(XWikiDocument document, XDOM xdom)
+    {
+        if (isCacheable(document)) {
+            this.cache.set(new ParsedContent(document.getContent(), xdom), document.getDocumentReference(),
+                document.getLocale(), document.getVersion(), document.getSyntax().toIdString());
+        }
+    }
+
+    private boolean isCacheable(XWikiDocument document)
+    {
+        // Only the content of a stored version of the document can be shared
+        return this.enabled && !document.isNew() && !document.isContentDirty() && document.getSyntax() != null;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.observation.remote.codec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.LocaleUtils;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiCreatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.event.AbstractFilterableEvent;
+import org.xwiki.observation.event.CancelableEvent;
+import org.xwiki.observation.event.filter.AlwaysMatchingEventFilter;
+import org.xwiki.observation.event.filter.EventFilter;
+import org.xwiki.observation.event.filter.FixedNameEventFilter;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.codec.RemoteEventDataCodec;
+import org.xwiki.observation.remote.codec.RemoteEventDataInput;
+import org.xwiki.observation.remote.codec.RemoteEventDataOutput;
+
+/**
+ * Compact encoding of the document and wiki events produced by
+ * {@link com.xpn.xwiki.internal.observation.remote.converter.DocumentEventConverter} and
+ * {@link com.xpn.xwiki.internal.observation.remote.converter.WikiEventConverter} (the events used to invalidate the
+ * caches of the other cluster members). Document references, wikis and users are written as shared strings so that
+ * they are written only once per network message.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component
+@Named("xwiki")
+@Singleton
+public class XWikiRemoteEventDataCodec implements RemoteEventDataCodec
+{
+    private static final List<Class<? extends AbstractFilterableEvent>> EVENTS =
+        Arrays.asList(DocumentCreatedEvent.class, DocumentUpdatedEvent.class, DocumentDeletedEvent.class,
+            WikiCreatedEvent.class, WikiDeletedEvent.class);
+
+    private static final List<Function<EventFilter, AbstractFilterableEvent>> EVENT_FACTORIES =
+        Arrays.asList(DocumentCreatedEvent::new, DocumentUpdatedEvent::new, DocumentDeletedEvent::new,
+            WikiCreatedEvent::new, WikiDeletedEvent::new);
+
+    private static final byte FILTER_ALWAYS = 0;
+
+    private static final byte FILTER_FIXED = 1;
+
+    private static final byte VALUE_NULL = 0;
+
+    private static final byte VALUE_STRING = 1;
+
+    private static final byte VALUE_DOCUMENT = 2;
+
+    private static final byte VALUE_MAP = 3;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Override
+    public boolean canEncode(RemoteEventData remoteEvent)
+    {
+        Serializable event = remoteEvent.getEvent();
+
+        if (event == null || !EVENTS.contains(event.getClass())) {
+            return false;
+        }
+
+        if (event instanceof CancelableEvent && ((CancelableEvent) event).isCanceled()) {
+            return false;
+        }
+
+        EventFilter filter = ((AbstractFilterableEvent) event).getEventFilter();
+        if (filter.getClass() != AlwaysMatchingEventFilter.class && filter.getClass() != FixedNameEventFilter.class) {
+            return false;
+        }
+
+        return isSupported(remoteEvent.getSource(), true) && isSupported(remoteEvent.getData(), true);
+    }
+
+    private boolean isSupported(Object value, boolean allowMap)
+    {
+        if (value == null || value instanceof String || value instanceof DocumentReference) {
+            return true;
+        }
+
+        // Only accept the exact type which is going to be created when decoding
+        if (allowMap && value.getClass() == HashMap.class) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isSupported(entry.getValue(), false)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void encode(RemoteEventData remoteEvent, RemoteEventDataOutput output) throws IOException
+    {
+        AbstractFilterableEvent event = (AbstractFilterableEvent) remoteEvent.getEvent();
+
+        output.writeByte(EVENTS.indexOf(event.getClass()));
+
+        EventFilter filter = event.getEventFilter();
+        if (filter instanceof FixedNameEventFilter) {
+            output.writeByte(FILTER_FIXED);
+            output.writeSharedString(filter.getFilter());
+        } else {
+            output.writeByte(FILTER_ALWAYS);
+        }
+
+        writeValue(remoteEvent.getSource(), output);
+        writeValue(remoteEvent.getData(), output);
+    }
+
+    private void writeValue(Object value, RemoteEventDataOutput output) throws IOException
+    {
+        if (value == null) {
+            output.writeByte(VALUE_NULL);
+        } else if (value instanceof String) {
+            output.writeByte(VALUE_STRING);
+            output.writeSharedString((String) value);
+        } else if (value instanceof DocumentReference) {
+            DocumentReference reference = (DocumentReference) value;
+
+            output.writeByte(VALUE_DOCUMENT);
+            output.writeSharedString(this.serializer.serialize(reference));
+            output.writeSharedString(reference.getLocale() != null ? reference.getLocale().toString() : null);
+        } else {
+            Map<?, ?> map = (Map<?, ?>) value;
+
+            output.writeByte(VALUE_MAP);
+            output.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                output.writeSharedString((String) entry.getKey());
+                writeValue(entry.getValue(), output);
+            }
+        }
+    }
+
+    @Override
+    public RemoteEventData decode(RemoteEventDataInput input) throws IOException
+    {
+        int eventIndex = input.readByte();
+        if (eventIndex < 0 || eventIndex >= EVENT_FACTORIES.size()) {
+            throw new IOException("Unknown event index [" + eventIndex + "]");
+        }
+
+        EventFilter filter;
+        if (input.readByte() == FILTER_FIXED) {
+            filter = new FixedNameEventFilter(input.readSharedString());
+        } else {
+            filter = new AlwaysMatchingEventFilter();
+        }
+
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent(EVENT_FACTORIES.get(eventIndex).apply(filter));
+        remoteEvent.setSource(readValue(input));
+        remoteEvent.setData(readValue(input));
+
+        return remoteEvent;
+    }
+
+    private Serializable readValue(RemoteEventDataInput input) throws IOException
+    {
+        byte type = input.readByte();
+
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+
+            case VALUE_STRING:
+                return input.readSharedString();
+
+            case VALUE_DOCUMENT:
+                DocumentReference reference = this.resolver.resolve(input.readSharedString());
+                String locale = input.readSharedString();
+
+                return locale != null ? new DocumentReference(reference, LocaleUtils.toLocale(locale)) : reference;
+
+            case VALUE_MAP:
+                int size = input.readInt();
+                HashMap<String, Serializable> map = new HashMap<>(size);
+                for (int i = 0; i < size; ++i) {
+                    map.put(input.readSharedString(), readValue(input));
+                }
+
+                return map;
+
+            default:
+                throw new IOException("Unknown value type [" + type + "]");
+        }
+    }
+}
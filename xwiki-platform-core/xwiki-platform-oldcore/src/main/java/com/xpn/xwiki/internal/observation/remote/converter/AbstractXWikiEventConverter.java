@@ -22,6 +22,9 @@
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.inject.Inject;
 
@@ -76,6 +79,35 @@ public abstract class AbstractXWikiEventConverter extends AbstractEventConverter
     @Inject
     private XWikiStubContextProvider stubContextProvider;
 
+    /**
+     * The number of documents loaded from the stores when unserializing documents.
+     */
+    private final AtomicLong loadedDocuments = new AtomicLong();
+
+    /**
+     * The number of document loads avoided when unserializing documents, either because an already loaded document was
+     * reused or because a lazily loaded original document was never requested.
+     */
+    private final AtomicLong avoidedDocumentLoads = new AtomicLong();
+
+    /**
+     * @return the number of documents loaded from the stores when unserializing documents
+     * @since 9.12RC1
+     */
+    public long getLoadedDocuments()
+    {
+        return this.loadedDocuments.get();
+    }
+
+    /**
+     * @return the number of document loads avoided when unserializing documents
+     * @since 9.12RC1
+     */
+    public long getAvoidedDocumentLoads()
+    {
+        return this.avoidedDocumentLoads.get();
+    }
+
     /**
      * @param context the XWiki context to serialize
      * @return the serialized version of the context
@@ -158,6 +190,12 @@ protected Serializable serializeXWikiDocument(XWikiDocument document)
 
     protected XWikiDocument getDocument(DocumentReference documentReference, String language, String version)
         throws XWikiException
+    {
+        return getDocument(getCurrentDocument(documentReference, language), version);
+    }
+
+    private XWikiDocument getCurrentDocument(DocumentReference documentReference, String language)
+        throws XWikiException
     {
         XWikiContext xcontext = getXWikiStubContext();
 
@@ -165,14 +203,24 @@ protected XWikiDocument getDocument(DocumentReference documentReference, String
         document.setLanguage(language);
 
         // Force bypassing the cache to make extra sure we get the last version of the document.
-        XWikiDocument targetDocument = xcontext.getWiki().getNotCacheStore().loadXWikiDoc(document, xcontext);
+        this.loadedDocuments.incrementAndGet();
+        return xcontext.getWiki().getNotCacheStore().loadXWikiDoc(document, xcontext);
+    }
 
-        if (!targetDocument.getVersion().equals(version)) {
-            // It's not the last version of the document, ask versioning store.
-            targetDocument = xcontext.getWiki().getVersioningStore().loadXWikiDoc(document, version, xcontext);
+    private XWikiDocument getDocument(XWikiDocument currentDocument, String version) throws XWikiException
+    {
+        if (currentDocument.getVersion().equals(version)) {
+            return currentDocument;
         }
 
-        return targetDocument;
+        // It's not the last version of the document, ask versioning store.
+        XWikiContext xcontext = getXWikiStubContext();
+
+        XWikiDocument document = new XWikiDocument(currentDocument.getDocumentReference());
+        document.setLanguage(currentDocument.getLanguage());
+
+        this.loadedDocuments.incrementAndGet();
+        return xcontext.getWiki().getVersioningStore().loadXWikiDoc(document, version, xcontext);
     }
 
     /**
@@ -186,26 +234,107 @@ protected XWikiDocument unserializeDocument(Serializable remoteData) throws XWik
 
         DocumentReference docReference = (DocumentReference) remoteDataMap.get(DOC_NAME);
 
+        String language = (String) remoteDataMap.get(DOC_LANGUAGE);
+
         XWikiDocument doc;
+        XWikiDocument currentDocument = null;
         if (remoteDataMap.get(DOC_VERSION) == null) {
             doc = new XWikiDocument(docReference);
         } else {
-            doc =
-                getDocument(docReference, (String) remoteDataMap.get(DOC_LANGUAGE),
-                    (String) remoteDataMap.get(DOC_VERSION));
+            currentDocument = getCurrentDocument(docReference, language);
+            doc = getDocument(currentDocument, (String) remoteDataMap.get(DOC_VERSION));
         }
 
-        XWikiDocument origDoc;
         if (remoteDataMap.get(ORIGDOC_VERSION) == null) {
-            origDoc = new XWikiDocument(docReference);
+            doc.setOriginalDocument(new XWikiDocument(docReference));
         } else {
-            origDoc =
-                getDocument(docReference, (String) remoteDataMap.get(ORIGDOC_LANGUAGE),
-                    (String) remoteDataMap.get(ORIGDOC_VERSION));
+            // Most listeners don't look at the original document, and building it generally means replaying the
+            // document archive, so we load it only when it's requested.
+            String originalLanguage = (String) remoteDataMap.get(ORIGDOC_LANGUAGE);
+            doc.setOriginalDocumentSupplier(new OriginalDocumentSupplier(docReference, originalLanguage,
+                (String) remoteDataMap.get(ORIGDOC_VERSION),
+                Objects.equals(language, originalLanguage) ? currentDocument : null, doc));
         }
 
-        doc.setOriginalDocument(origDoc);
-
         return doc;
     }
+
+    /**
+     * Load the original document of a remote document event the first time it's requested. The supplier is shared by
+     * the clones of the event document so the original document is loaded at most once per event.
+     */
+    private final class OriginalDocumentSupplier implements Supplier<XWikiDocument>
+    {
+        private final DocumentReference documentReference;
+
+        private final String language;
+
+        private final String version;
+
+        private final XWikiDocument document;
+
+        private XWikiDocument currentDocument;
+
+        private XWikiDocument originalDocument;
+
+        /**
+         * @param documentReference the reference of the document
+         * @param language the language of the original document
+         * @param version the version of the original document
+         * @param currentDocument the current version of the document, if it has already been loaded
+         * @param document the event document
+         */
+        OriginalDocumentSupplier(DocumentReference documentReference, String language, String version,
+            XWikiDocument currentDocument, XWikiDocument document)
+        {
+            this.documentReference = documentReference;
+            this.language = language;
+            this.version = version;
+            this.currentDocument = currentDocument;
+            this.document = document;
+
+            if (currentDocument != null) {
+                // The current version of the document is not loaded a second time.
+                avoidedDocumentLoads.incrementAndGet();
+            }
+            // Count the remaining loads as avoided until the original document is actually requested.
+            avoidedDocumentLoads.addAndGet(getLoadCount());
+        }
+
+        private int getLoadCount()
+        {
+            if (this.currentDocument == null) {
+                return 2;
+            }
+
+            return this.currentDocument.getVersion().equals(this.version) ? 0 : 1;
+        }
+
+        @Override
+        public synchronized XWikiDocument get()
+        {
+            if (this.originalDocument == null) {
+                avoidedDocumentLoads.addAndGet(-getLoadCount());
+
+                try {
+                    if (this.currentDocument == null) {
+                        this.currentDocument = getCurrentDocument(this.documentReference, this.language);
+                    }
+                    this.originalDocument = getDocument(this.currentDocument, this.version);
+                    if (this.originalDocument == this.document) {
+                        this.originalDocument = this.originalDocument.clone();
+                    }
+                } catch (XWikiException e) {
+                    logger.error("Failed to load version [{}] of document [{}] with language [{}]", this.version,
+                        this.documentReference, this.language, e);
+
+                    this.originalDocument = new XWikiDocument(this.documentReference);
+                }
+
+                this.currentDocument = null;
+            }
+
+            return this.originalDocument;
+        }
+    }
 }
@@ -43,9 +43,15 @@
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 import org.xwiki.filter.input.InputSource;
@@ -98,7 +104,7 @@
  */
 @Component(roles = InternalTemplateManager.class)
 @Singleton
-public class InternalTemplateManager
+public class InternalTemplateManager implements Initializable
 {
     private static final Pattern PROPERTY_LINE = Pattern.compile("^##!(.+)=(.*)$\r?\n?", Pattern.MULTILINE);
 
@@ -161,9 +167,39 @@
     @Inject
     private JobProgressManager progress;
 
+    @Inject
+    private CacheManager cacheManager;
+
     @Inject
     private Logger logger;
 
+    /**
+     * The parsed templates indexed by template id.
+     */
+    private Cache<ParsedTemplate> xdomCache;
+
+    private static final class ParsedTemplate
+    {
+        private final String content;
+
+        private final Syntax syntax;
+
+        private final XDOM xdom;
+
+        ParsedTemplate(String content, Syntax syntax, XDOM xdom)
+        {
+            this.content = content;
+            this.syntax = syntax;
+            this.xdom = xdom;
+        }
+
+        boolean isParsed(TemplateContent templateContent)
+        {
+            return this.syntax.equals(templateContent.getSourceSyntax())
+                && this.content.equals(templateContent.getContent());
+        }
+    }
+
     private static abstract class AbtractTemplate<T extends TemplateContent, R extends Resource<?>> implements Template
     {
         protected R resource;
@@ -442,6 +478,27 @@ public void setPrivileged(boolean privileged)
         }
     }
 
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.xdomCache = this.cacheManager.createNewCache(new LRUCacheConfiguration("templates.xdom", 500));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize the templates XDOM cache", e);
+        }
+    }
+
+    /**
+     * Forget the parsed content of the template with the passed id.
+     *
+     * @param templateId the identifier of the modified template
+     * @since 9.12RC1
+     */
+    public void removeParsedTemplate(String templateId)
+    {
+        this.xdomCache.remove(templateId);
+    }
+
     private String getResourcePath(String suffixPath, String templateName, boolean testExist)
     {
         String templatePath = suffixPath + templateName;
@@ -565,7 +622,7 @@ private XDOM getXDOM(Template template, TemplateContent content) throws Exceptio
         XDOM xdom;
 
         if (content.getSourceSyntax() != null) {
-            xdom = this.parser.parse(content.getContent(), content.getSourceSyntax());
+            xdom = parse(template, content);
         } else {
             String result = evaluateContent(template, content);
             xdom = new XDOM(Arrays.asList(new RawBlock(result,
@@ -575,6 +632,31 @@ private XDOM getXDOM(Template template, TemplateContent content) throws Exceptio
         return xdom;
     }
 
+    private XDOM parse(Template template, TemplateContent content) throws Exception
+    {
+        // String templates don't have a unique identifier
+        String id = template instanceof StringTemplate ? null : template.getId();
+
+        if (id != null) {
+            ParsedTemplate parsedTemplate = this.xdomCache.get(id);
+
+            // Make sure the template did not change since it was parsed
+            if (parsedTemplate != null && parsedTemplate.isParsed(content)) {
+                // The returned XDOM is usually modified by the transformations
+                return (XDOM) parsedTemplate.xdom.clone();
+            }
+        }
+
+        XDOM xdom = this.parser.parse(content.getContent(), content.getSourceSyntax());
+
+        if (id != null) {
+            this.xdomCache.set(id,
+                new ParsedTemplate(content.getContent(), content.getSourceSyntax(), (XDOM) xdom.clone()));
+        }
+
+        return xdom;
+    }
+
     public XDOM getXDOM(String templateName) throws Exception
     {
         Template template = getTemplate(templateName);
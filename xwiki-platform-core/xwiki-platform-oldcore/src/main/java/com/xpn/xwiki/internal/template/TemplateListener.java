@@ -21,6 +21,7 @@
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
@@ -58,6 +59,9 @@ public class TemplateListener extends AbstractEventListener
     @Inject
     private ObservationManager observation;
 
+    @Inject
+    private Provider<InternalTemplateManager> templateManagerProvider;
+
     /**
      * Default constructor.
      */
@@ -78,6 +82,7 @@ public void onEvent(Event event, Object source, Object data)
                 AttachmentReference attachment = new AttachmentReference(((AbstractAttachmentEvent) event).getName(),
                     document.getDocumentReference());
                 String id = this.referenceSerializer.serialize(attachment);
+                this.templateManagerProvider.get().removeParsedTemplate(id);
                 if (event instanceof AttachmentDeletedEvent) {
                     this.observation.notify(new TemplateDeletedEvent(id), this);
                 } else if (event instanceof AttachmentUpdatedEvent) {
@@ -85,6 +90,7 @@ public void onEvent(Event event, Object source, Object data)
                 }
             } else if (event instanceof XObjectPropertyEvent) {
                 String id = this.referenceSerializer.serialize(((XObjectPropertyEvent) event).getReference());
+                this.templateManagerProvider.get().removeParsedTemplate(id);
                 if (event instanceof XObjectPropertyDeletedEvent) {
                     this.observation.notify(new TemplateDeletedEvent(id), this);
                 } else if (event instanceof XObjectPropertyUpdatedEvent) {
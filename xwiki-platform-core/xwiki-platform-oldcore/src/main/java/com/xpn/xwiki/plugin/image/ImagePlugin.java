@@ -21,11 +21,22 @@
 
 import java.awt.Image;
 import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
-
-import org.apache.commons.io.IOUtils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,11 +45,20 @@
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
 import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.api.Api;
 import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
+import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
 import com.xpn.xwiki.plugin.XWikiDefaultPlugin;
 import com.xpn.xwiki.plugin.XWikiPluginInterface;
 import com.xpn.xwiki.web.Utils;
@@ -63,14 +83,53 @@ public class ImagePlugin extends XWikiDefaultPlugin
     private static final String PLUGIN_NAME = "image";
 
     /**
-     * Cache for already served images.
+     * The directory, relative to the permanent directory, where the thumbnails are stored.
+     */
+    private static final String THUMBNAIL_DIRECTORY = "cache/image";
+
+    /**
+     * Separates the version from the rest of the thumbnail file name.
+     */
+    private static final char VERSION_SEPARATOR = '_';
+
+    /**
+     * The extension of the thumbnails being written.
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /**
+     * In-memory index of the already served images. The thumbnails themselves are stored on disk.
      */
-    private Cache<XWikiAttachment> imageCache;
+    private Cache<Thumbnail> imageCache;
 
     /**
      * The size of the cache. This parameter can be configured using the key {@code xwiki.plugin.image.cache.capacity}.
      */
-    private int capacity = 50;
+    private int capacity = 500;
+
+    /**
+     * The directory where the thumbnails are stored.
+     */
+    private File thumbnailDirectory;
+
+    /**
+     * The maximum size (in bytes) of the thumbnails stored on disk. This parameter can be configured (in MB) using the
+     * key {@code xwiki.plugin.image.cache.diskSize}, 0 means no limit.
+     */
+    private long maxDiskSize = 500 * MEGABYTE;
+
+    /**
+     * The size of the thumbnails currently stored on disk.
+     */
+    private final AtomicLong storedSize = new AtomicLong();
+
+    /**
+     * Held while adding or deleting a thumbnail and while computing the size of the stored thumbnails, so that the
+     * counted size always matches the files on disk.
+     */
+    private final Object storedSizeLock = new Object();
 
     /**
      * Default JPEG image quality.
@@ -116,6 +175,19 @@ public void init(XWikiContext context)
 
         initCache(context);
 
+        this.thumbnailDirectory =
+            new File(Utils.getComponent(Environment.class).getPermanentDirectory(), THUMBNAIL_DIRECTORY);
+        String diskSizeParam = context.getWiki().Param("xwiki.plugin.image.cache.diskSize");
+        if (!StringUtils.isBlank(diskSizeParam)) {
+            try {
+                this.maxDiskSize = Long.parseLong(diskSizeParam.trim()) * MEGABYTE;
+            } catch (NumberFormatException e) {
+                LOG.warn("Failed to parse xwiki.plugin.image.cache.diskSize configuration parameter. "
+                    + "Using {} MB as the maximum size of the stored thumbnails.", this.maxDiskSize / MEGABYTE);
+            }
+        }
+        initDiskCache();
+
         String imageProcessorHint = context.getWiki().Param("xwiki.plugin.image.processorHint", "thumbnailator");
         this.imageProcessor = Utils.getComponent(ImageProcessor.class, imageProcessorHint);
 
@@ -166,6 +238,32 @@ private void initCache(XWikiContext context)
         }
     }
 
+    /**
+     * Computes the size of the thumbnails stored on disk and listens to the modifications of the attachments to remove
+     * their outdated thumbnails.
+     */
+    private void initDiskCache()
+    {
+        if (this.thumbnailDirectory.isDirectory()) {
+            synchronized (this.storedSizeLock) {
+                long size = 0;
+                for (File file : FileUtils.listFiles(this.thumbnailDirectory, null, true)) {
+                    // The thumbnails being written are counted once moved
+                    if (!file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                        size += file.length();
+                    }
+                }
+                this.storedSize.set(size);
+            }
+            purge();
+        }
+
+        // Make sure we allow this plugin to be initialized several times in a row
+        ObservationManager observationManager = Utils.getComponent(ObservationManager.class);
+        observationManager.removeListener(ThumbnailListener.NAME);
+        observationManager.addListener(new ThumbnailListener());
+    }
+
     @Override
     public void flushCache()
     {
@@ -250,7 +348,7 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
         boolean keepAspectRatio = Boolean.valueOf(context.getRequest().getParameter("keepAspectRatio"));
 
         XWikiAttachment thumbnail = (this.imageCache == null)
-            ? shrinkImage(image, width, height, keepAspectRatio, quality, context)
+            ? getThumbnail(image, width, height, keepAspectRatio, quality, context).toAttachment(image)
             : downloadImageFromCache(image, width, height, keepAspectRatio, quality, context);
 
         // If the image has been transformed, update the file name extension to match the image format.
@@ -280,16 +378,72 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
     private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width, int height,
         boolean keepAspectRatio, float quality, XWikiContext context) throws Exception
     {
-        String key =
-            String.format("%s;%s;%s;%s;%s;%s", image.getId(), image.getVersion(), width, height, keepAspectRatio,
-                quality);
+        String key = getThumbnailKey(image, width, height, keepAspectRatio, quality);
 
-        XWikiAttachment thumbnail = this.imageCache.get(key);
-        if (thumbnail == null) {
-            thumbnail = shrinkImage(image, width, height, keepAspectRatio, quality, context);
+        Thumbnail thumbnail = this.imageCache.get(key);
+        if (thumbnail == null || !thumbnail.exists()) {
+            thumbnail = getThumbnail(image, width, height, keepAspectRatio, quality, context);
             this.imageCache.set(key, thumbnail);
+        } else {
+            thumbnail.touch();
         }
-        return thumbnail;
+        return thumbnail.toAttachment(image);
+    }
+
+    /**
+     * Gets the thumbnail of the given image from the disk cache, generating it if it's not there yet.
+     *
+     * @param image the image to be downloaded
+     * @param width the desired image width
+     * @param height the desired image height
+     * @param keepAspectRatio {@code true} to preserve aspect ratio when resizing the image, {@code false} otherwise
+     * @param quality the desired compression quality
+     * @param context the XWiki context
+     * @return the thumbnail
+     * @throws Exception if transforming the image fails
+     */
+    private Thumbnail getThumbnail(XWikiAttachment image, int width, int height, boolean keepAspectRatio,
+        float quality, XWikiContext context) throws Exception
+    {
+        File file = getThumbnailFile(image, getThumbnailKey(image, width, height, keepAspectRatio, quality));
+        if (file.isFile()) {
+            Thumbnail thumbnail = new Thumbnail(file);
+            thumbnail.touch();
+
+            return thumbnail;
+        }
+
+        return shrinkImage(image, file, width, height, keepAspectRatio, quality, context);
+    }
+
+    private String getThumbnailKey(XWikiAttachment image, int width, int height, boolean keepAspectRatio,
+        float quality)
+    {
+        return String.format("%s;%s;%s;%s;%s;%s", image.getReference(), image.getVersion(), width, height,
+            keepAspectRatio, quality);
+    }
+
+    /**
+     * The thumbnails of an attachment are grouped in a directory so that the thumbnails of the previous versions can
+     * be easily cleaned. The thumbnail file name starts with the attachment version.
+     *
+     * @param image the image attachment
+     * @param key the thumbnail key
+     * @return the file where the thumbnail is stored
+     */
+    private File getThumbnailFile(XWikiAttachment image, String key)
+    {
+        return new File(getThumbnailDirectory(image.getReference()),
+            image.getVersion() + VERSION_SEPARATOR + DigestUtils.sha1Hex(key));
+    }
+
+    /**
+     * @param reference the reference of an image attachment
+     * @return the directory holding the thumbnails of the attachment
+     */
+    private File getThumbnailDirectory(AttachmentReference reference)
+    {
+        return new File(this.thumbnailDirectory, DigestUtils.sha1Hex(String.valueOf(reference)));
     }
 
     /**
@@ -297,6 +451,7 @@ private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width,
      * compression quality. This helps decreasing the time needed to download the image attachment.
      *
      * @param attachment the image to be shrunk
+     * @param file the file where to store the shrunk image
      * @param requestedWidth the desired image width; this value is taken into account only if it is greater than zero
      *            and less than the current image width
      * @param requestedHeight the desired image height; this value is taken into account only if it is greater than zero
@@ -306,10 +461,10 @@ private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width,
      *            requested width and height), {@code false} otherwise
      * @param requestedQuality the desired compression quality
      * @param context the XWiki context
-     * @return the modified image attachment
+     * @return the thumbnail
      * @throws Exception if shrinking the image fails
      */
-    private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWidth, int requestedHeight,
+    private Thumbnail shrinkImage(XWikiAttachment attachment, File file, int requestedWidth, int requestedHeight,
         boolean keepAspectRatio, float requestedQuality, XWikiContext context) throws Exception
     {
         Image image = this.imageProcessor.readImage(attachment.getContentInputStream(context));
@@ -324,7 +479,7 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         if (quality < 0) {
             // If no scaling is needed and the quality parameter is not specified, return the original image.
             if (dimensions[0] == currentWidth && dimensions[1] == currentHeight) {
-                return attachment;
+                return Thumbnail.ORIGINAL;
             }
             quality = this.defaultQuality;
         }
@@ -332,19 +487,141 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         // Scale the image to the new dimensions.
         RenderedImage shrunkImage = this.imageProcessor.scaleImage(image, dimensions[0], dimensions[1]);
 
-        // Create an image attachment for the shrunk image.
-        XWikiAttachment thumbnail = (XWikiAttachment) attachment.clone();
-        thumbnail.loadAttachmentContent(context);
+        // Write the shrunk image in a temporary file first and then move it so that concurrent requests never see a
+        // partially written thumbnail.
+        File directory = file.getParentFile();
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException(String.format("Failed to create the thumbnail directory [%s]", directory));
+        }
+        File temporaryFile = File.createTempFile(file.getName(), TEMPORARY_EXTENSION, directory);
+        try {
+            try (OutputStream output = new FileOutputStream(temporaryFile)) {
+                this.imageProcessor.writeImage(shrunkImage, attachment.getMimeType(context), quality, output);
+            }
+            synchronized (this.storedSizeLock) {
+                // The same thumbnail might have been generated concurrently
+                long replacedLength = file.length();
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                this.storedSize.addAndGet(file.length() - replacedLength);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+
+        deletePreviousVersions(directory, attachment.getVersion());
 
-        OutputStream acos = thumbnail.getAttachment_content().getContentOutputStream();
-        this.imageProcessor.writeImage(shrunkImage,
-            attachment.getMimeType(context),
-            quality,
-            acos);
+        if (this.maxDiskSize > 0 && this.storedSize.get() > this.maxDiskSize) {
+            purge();
+        }
 
-        IOUtils.closeQuietly(acos);
+        return new Thumbnail(file);
+    }
 
-        return thumbnail;
+    /**
+     * Deletes the thumbnails generated for other versions of the attachment.
+     *
+     * @param directory the directory holding the thumbnails of an attachment
+     * @param version the current attachment version
+     */
+    private void deletePreviousVersions(File directory, String version)
+    {
+        String prefix = version + VERSION_SEPARATOR;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(prefix)) {
+                    deleteThumbnail(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all the thumbnails of an attachment.
+     *
+     * @param reference the reference of the attachment
+     */
+    private void deleteThumbnails(AttachmentReference reference)
+    {
+        File directory = getThumbnailDirectory(reference);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                    deleteThumbnail(file);
+                }
+            }
+            // Fails if a thumbnail is being generated, which is fine
+            directory.delete();
+        }
+    }
+
+    private void deleteThumbnail(File file)
+    {
+        synchronized (this.storedSizeLock) {
+            long length = file.length();
+            if (file.delete()) {
+                this.storedSize.addAndGet(-length);
+                return;
+            }
+        }
+
+        LOG.debug("Failed to delete the thumbnail [{}].", file);
+    }
+
+    /**
+     * Removes the least recently used thumbnails until they take less than 90% of the allowed disk size.
+     */
+    private void purge()
+    {
+        if (this.maxDiskSize <= 0 || this.storedSize.get() <= this.maxDiskSize) {
+            return;
+        }
+
+        // The thumbnails can't be added or deleted while purging, otherwise the counted size would drift from the
+        // size of the files on disk
+        synchronized (this.storedSizeLock) {
+            purgeLocked();
+        }
+    }
+
+    private void purgeLocked()
+    {
+        if (this.storedSize.get() <= this.maxDiskSize) {
+            return;
+        }
+
+        List<File> sortedFiles = new ArrayList<>();
+        long size = 0;
+        for (File file : FileUtils.listFiles(this.thumbnailDirectory, null, true)) {
+            // Don't count or delete the thumbnails being written
+            if (!file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                size += file.length();
+                sortedFiles.add(file);
+            }
+        }
+        // Read the dates once since they might change while sorting
+        final Map<File, Long> dates = new HashMap<>();
+        for (File file : sortedFiles) {
+            dates.put(file, file.lastModified());
+        }
+        Collections.sort(sortedFiles, (file1, file2) -> Long.compare(dates.get(file1), dates.get(file2)));
+
+        long target = this.maxDiskSize / 10 * 9;
+        for (File file : sortedFiles) {
+            if (size <= target) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                // Remove the directory of the attachment if it was its last thumbnail
+                file.getParentFile().delete();
+            }
+        }
+
+        this.storedSize.set(size);
     }
 
     /**
@@ -425,4 +702,85 @@ public int getHeight(XWikiAttachment attachment, XWikiContext context) throws IO
     {
         return this.imageProcessor.readImage(attachment.getContentInputStream(context)).getHeight(null);
     }
+
+    /**
+     * Entry of the in-memory thumbnail index, pointing to the thumbnail stored on disk.
+     */
+    private static final class Thumbnail
+    {
+        /**
+         * Indicates that the original image is served because it doesn't need to be transformed.
+         */
+        private static final Thumbnail ORIGINAL = new Thumbnail(null);
+
+        /**
+         * The file holding the thumbnail, {@code null} if the original image is served.
+         */
+        private final File file;
+
+        Thumbnail(File file)
+        {
+            this.file = file;
+        }
+
+        /**
+         * @return {@code true} if the thumbnail is still available, {@code false} if its file has been deleted
+         */
+        boolean exists()
+        {
+            return this.file == null || this.file.isFile();
+        }
+
+        /**
+         * Remembers that the thumbnail is still used so that it's not purged.
+         */
+        void touch()
+        {
+            if (this.file != null) {
+                this.file.setLastModified(System.currentTimeMillis());
+            }
+        }
+
+        /**
+         * @param image the original image
+         * @return the attachment to download
+         */
+        XWikiAttachment toAttachment(XWikiAttachment image)
+        {
+            if (this.file == null) {
+                return image;
+            }
+
+            XWikiAttachment thumbnail = image.clone();
+            thumbnail.setAttachment_content(new ThumbnailAttachmentContent(this.file, thumbnail));
+
+            return thumbnail;
+        }
+    }
+
+    /**
+     * Removes the thumbnails of the attachments which are deleted or updated, instead of waiting for them to be
+     * purged.
+     */
+    private class ThumbnailListener extends AbstractEventListener
+    {
+        /**
+         * The name of the listener.
+         */
+        static final String NAME = "com.xpn.xwiki.plugin.image.ImagePlugin.ThumbnailListener";
+
+        ThumbnailListener()
+        {
+            super(NAME, new AttachmentDeletedEvent(), new AttachmentUpdatedEvent());
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            AttachmentReference reference = new AttachmentReference(((AbstractAttachmentEvent) event).getName(),
+                ((XWikiDocument) source).getDocumentReference());
+
+            deleteThumbnails(reference);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.AutoCloseInputStream;
+import org.xwiki.store.UnexpectedException;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+
+/**
+ * The content of a thumbnail generated by the {@link ImagePlugin}. The content is read directly from the file stored
+ * in the thumbnail disk cache so that it's never loaded in memory.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+class ThumbnailAttachmentContent extends XWikiAttachmentContent
+{
+    /**
+     * The file holding the thumbnail.
+     */
+    private final File file;
+
+    /**
+     * @param file the file holding the thumbnail
+     * @param attachment the thumbnail attachment
+     */
+    ThumbnailAttachmentContent(File file, XWikiAttachment attachment)
+    {
+        super(attachment, null);
+
+        this.file = file;
+    }
+
+    @Override
+    public ThumbnailAttachmentContent clone()
+    {
+        return new ThumbnailAttachmentContent(this.file, getAttachment());
+    }
+
+    @Override
+    @Deprecated
+    public byte[] getContent()
+    {
+        if (getFileItem() != null) {
+            return super.getContent();
+        }
+
+        try (InputStream stream = getContentInputStream()) {
+            return IOUtils.toByteArray(stream);
+        } catch (IOException e) {
+            throw new UnexpectedException("Failed to read the thumbnail content", e);
+        }
+    }
+
+    @Override
+    public InputStream getContentInputStream()
+    {
+        if (getFileItem() != null) {
+            return super.getContentInputStream();
+        }
+
+        try {
+            return new AutoCloseInputStream(new FileInputStream(this.file));
+        } catch (IOException e) {
+            throw new UnexpectedException("Failed to get InputStream", e);
+        }
+    }
+
+    @Override
+    public long getLongSize()
+    {
+        if (getFileItem() != null) {
+            return super.getLongSize();
+        }
+
+        return this.file.length();
+    }
+}
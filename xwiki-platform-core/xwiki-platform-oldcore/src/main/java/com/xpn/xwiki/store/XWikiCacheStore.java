@@ -21,6 +21,13 @@
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +58,11 @@
 /**
  * A proxy store implementation that caches Documents when they are first fetched and subsequently return them from a
  * cache. It delegates all write and search operations to an underlying store without doing any caching on them.
+ * <p>
+ * When several threads miss the cache for the same document at the same time, only one of them loads the document from
+ * the underlying store and the others wait for its result. A thread never waits for a load which itself (directly or
+ * through other waiting threads) waits for this thread, and gives up waiting after some time: it loads the document
+ * from the underlying store in both cases.
  *
  * @version $Id$
  */
@@ -58,12 +70,48 @@ public class XWikiCacheStore implements XWikiCacheStoreInterface, EventListener
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiCacheStore.class);
 
+    /**
+     * The maximum number of seconds to wait for a document to be loaded by another thread.
+     */
+    private static final long LOAD_WAIT_TIMEOUT = 10;
+
+    /**
+     * The maximum length of the chain of waiting threads that is followed when looking for a cycle.
+     */
+    private static final int MAX_WAIT_CHAIN = 100;
+
+    /**
+     * A document being loaded from the underlying store.
+     */
+    private static final class DocumentLoad extends CompletableFuture<XWikiDocument>
+    {
+        /**
+         * The thread loading the document.
+         */
+        private final Thread thread = Thread.currentThread();
+    }
+
     private XWikiStoreInterface store;
 
     private Cache<XWikiDocument> cache;
 
     private Cache<Boolean> pageExistCache;
 
+    /**
+     * The documents currently being loaded from the underlying store, indexed by cache key.
+     */
+    private final ConcurrentMap<String, DocumentLoad> documentLoads = new ConcurrentHashMap<>();
+
+    /**
+     * The loads each thread is currently waiting for.
+     */
+    private final ConcurrentMap<Thread, DocumentLoad> waitingThreads = new ConcurrentHashMap<>();
+
+    /**
+     * The number of loads which have been avoided by waiting for a load of the same document in another thread.
+     */
+    private final AtomicLong coalescedLoads = new AtomicLong();
+
     /**
      * Used to know if a received event is a local or remote one.
      */
@@ -155,6 +203,7 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
         // We need to flush so that caches
         // on the cluster are informed about the change
         String key = getKey(doc, context);
+        this.documentLoads.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
 
@@ -169,6 +218,7 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
     @Override
     public void flushCache()
     {
+        this.documentLoads.clear();
         getCache().removeAll();
         getPageExistCache().removeAll();
     }
@@ -185,6 +235,9 @@ public void onEvent(Event event, Object source, Object data)
 
                 String key = doc.getKey();
 
+                // Make sure the next load does not wait for a version loaded before the change
+                this.documentLoads.remove(key);
+
                 if (getCache() != null) {
                     getCache().remove(key);
                 }
@@ -275,22 +328,24 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
                 // Allow writing more generic code.
                 cachedoc.setOriginalDocument(new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
             } else {
-                LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
-
-                cachedoc = this.store.loadXWikiDoc(doc, context);
-
-                LOGGER.debug("Cache: Got doc {} from storage", key);
+                DocumentLoad documentLoad = new DocumentLoad();
+                DocumentLoad currentDocumentLoad = this.documentLoads.putIfAbsent(key, documentLoad);
 
-                if (cachedoc.isNew()) {
-                    getPageExistCache().set(key, Boolean.FALSE);
+                if (currentDocumentLoad != null) {
+                    cachedoc = waitXWikiDoc(key, currentDocumentLoad, doc, context);
                 } else {
-                    getCache().set(key, cachedoc);
+                    try {
+                        cachedoc = loadXWikiDoc(key, doc, context);
 
-                    // Also update exist cache
-                    getPageExistCache().set(key, Boolean.TRUE);
-                }
+                        documentLoad.complete(cachedoc);
+                    } catch (XWikiException | RuntimeException e) {
+                        documentLoad.completeExceptionally(e);
 
-                LOGGER.debug("Cache: put doc {} in cache", key);
+                        throw e;
+                    } finally {
+                        this.documentLoads.remove(key, documentLoad);
+                    }
+                }
             }
 
             cachedoc.setStore(this.store);
@@ -301,6 +356,123 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
         return cachedoc;
     }
 
+    private XWikiDocument loadXWikiDoc(String key, XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
+
+        XWikiDocument loadedDocument = this.store.loadXWikiDoc(doc, context);
+
+        LOGGER.debug("Cache: Got doc {} from storage", key);
+
+        if (loadedDocument.isNew()) {
+            getPageExistCache().set(key, Boolean.FALSE);
+        } else {
+            getCache().set(key, loadedDocument);
+
+            // Also update exist cache
+            getPageExistCache().set(key, Boolean.TRUE);
+        }
+
+        LOGGER.debug("Cache: put doc {} in cache", key);
+
+        return loadedDocument;
+    }
+
+    private XWikiDocument waitXWikiDoc(String key, DocumentLoad documentLoad, XWikiDocument doc,
+        XWikiContext context) throws XWikiException
+    {
+        Thread currentThread = Thread.currentThread();
+
+        // Declare the wait before looking for a cycle so that two threads about to wait for each other can't both miss
+        // it
+        this.waitingThreads.put(currentThread, documentLoad);
+
+        XWikiDocument loadedDocument;
+        try {
+            if (isWaitingFor(documentLoad, currentThread)) {
+                LOGGER.debug("Cache: doc {} is being loaded by a load waiting for the current thread, load it again",
+                    key);
+
+                this.waitingThreads.remove(currentThread);
+
+                return loadXWikiDoc(key, doc, context);
+            }
+
+            LOGGER.debug("Cache: Waiting for doc {} to be loaded by another thread", key);
+
+            loadedDocument = documentLoad.get(LOAD_WAIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Cache: Gave up waiting for doc {} to be loaded by another thread after {} seconds", key,
+                LOAD_WAIT_TIMEOUT);
+
+            this.waitingThreads.remove(currentThread);
+
+            return loadXWikiDoc(key, doc, context);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Interrupted while waiting for document " + key + " to be loaded in another thread", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XWikiException) {
+                throw (XWikiException) e.getCause();
+            }
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Failed to load document " + key + " in another thread", e.getCause());
+        } finally {
+            this.waitingThreads.remove(currentThread, documentLoad);
+        }
+
+        // The result of the other thread is used
+        this.coalescedLoads.incrementAndGet();
+
+        if (loadedDocument.isNew()) {
+            // The document loaded by the other thread is its own instance so don't share it
+            doc.setNew(true);
+            doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+
+            return doc;
+        }
+
+        // Same as a document found in the cache
+        loadedDocument.setFromCache(true);
+
+        return loadedDocument;
+    }
+
+    /**
+     * @param documentLoad the load to wait for
+     * @param thread the thread which would wait
+     * @return {@code true} if the load is done by the passed thread, or by a thread waiting (directly or through other
+     *         threads) for the passed thread
+     */
+    private boolean isWaitingFor(DocumentLoad documentLoad, Thread thread)
+    {
+        DocumentLoad load = documentLoad;
+        for (int i = 0; load != null && i < MAX_WAIT_CHAIN; ++i) {
+            if (load.thread == thread) {
+                return true;
+            }
+
+            load = this.waitingThreads.get(load.thread);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of document loads which have been avoided by waiting for a load of the same document already
+     *         in progress in another thread
+     * @since 9.12RC1
+     */
+    public long getCoalescedLoadCount()
+    {
+        return this.coalescedLoads.get();
+    }
+
     @Override
     public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException
     {
@@ -309,6 +481,7 @@ public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWiki
 
         this.store.deleteXWikiDoc(doc, context);
 
+        this.documentLoads.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
         getPageExistCache().set(key, Boolean.FALSE);
@@ -64,6 +64,7 @@
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -94,6 +95,7 @@
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.BaseStringProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
 import com.xpn.xwiki.objects.LargeStringProperty;
 import com.xpn.xwiki.objects.ListProperty;
 import com.xpn.xwiki.objects.PropertyInterface;
@@ -175,6 +177,10 @@ public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWik
     @Named(HINT)
     private AttachmentVersioningStore attachmentArchiveStore;
 
+    @Inject
+    @Named("xwikicfg")
+    private ConfigurationSource xwikicfg;
+
     private Map<String, String[]> validTypesMap = new HashMap<>();
 
     /**
@@ -930,6 +936,8 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
                     localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
 
                 boolean hasGroups = false;
+                boolean batchLoading = isObjectBatchLoadingEnabled();
+                List<BaseObject> batchedObjects = new ArrayList<>();
                 while (it.hasNext()) {
                     BaseObject object = it.next();
                     DocumentReference classReference = object.getXClassReference();
@@ -962,12 +970,18 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
                     if (classReference.equals(groupsDocumentReference)) {
                         // Groups objects are handled differently.
                         hasGroups = true;
+                    } else if (batchLoading) {
+                        batchedObjects.add(object);
                     } else {
                         loadXWikiCollectionInternal(object, doc, context, false, true);
                     }
                     doc.setXObject(object.getNumber(), object);
                 }
 
+                if (!batchedObjects.isEmpty()) {
+                    loadXWikiCollectionsInternal(batchedObjects, doc, context);
+                }
+
                 // AFAICT this was added as an emergency patch because loading of objects has proven
                 // too slow and the objects which cause the most overhead are the XWikiGroups objects
                 // as each group object (each group member) would otherwise cost 2 database queries.
@@ -1329,17 +1343,7 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
             // If the class reference is null in the loaded object then skip loading properties
             if (classReference != null) {
 
-                BaseClass bclass = null;
-                if (!classReference.equals(object.getDocumentReference())) {
-                    // Let's check if the class has a custom mapping
-                    bclass = object.getXClass(context);
-                } else {
-                    // We need to get it from the document otherwise
-                    // we will go in an endless loop
-                    if (doc != null) {
-                        bclass = doc.getXClass();
-                    }
-                }
+                BaseClass bclass = getXClass(object, doc, context);
 
                 List<String> handledProps = new ArrayList<String>();
                 try {
@@ -1371,55 +1375,8 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
                         continue;
                     }
                     String classType = (String) result[1];
-                    BaseProperty property = null;
-
-                    try {
-                        property = (BaseProperty) Class.forName(classType).newInstance();
-                        property.setObject(object);
-                        property.setName(name);
-                        loadXWikiProperty(property, context, false);
-                    } catch (Exception e) {
-                        // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
-                        try {
-                            if (property instanceof StringProperty) {
-                                LargeStringProperty property2 = new LargeStringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof TextAreaClass) {
-                                        property = property2;
-                                    }
-                                }
-
-                            } else if (property instanceof LargeStringProperty) {
-                                StringProperty property2 = new StringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof StringClass) {
-                                        property = property2;
-                                    }
-                                }
-                            } else {
-                                throw e;
-                            }
-                        } catch (Throwable e2) {
-                            Object[] args =
-                                { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
-                            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
-                                "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'",
-                                e, args);
-                        }
-                    }
 
-                    object.addField(name, property);
+                    object.addField(name, loadXWikiProperty(object, bclass, name, classType, context));
                 }
             }
 
@@ -1443,6 +1400,217 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
 
     }
 
+    private BaseClass getXClass(BaseCollection object, XWikiDocument doc, XWikiContext context)
+    {
+        BaseClass bclass = null;
+        if (!object.getXClassReference().equals(object.getDocumentReference())) {
+            // Let's check if the class has a custom mapping
+            bclass = object.getXClass(context);
+        } else {
+            // We need to get it from the document otherwise
+            // we will go in an endless loop
+            if (doc != null) {
+                bclass = doc.getXClass();
+            }
+        }
+
+        return bclass;
+    }
+
+    private BaseProperty loadXWikiProperty(BaseCollection object, BaseClass bclass, String name, String classType,
+        XWikiContext context) throws XWikiException
+    {
+        BaseProperty property = null;
+
+        try {
+            property = (BaseProperty) Class.forName(classType).newInstance();
+            property.setObject(object);
+            property.setName(name);
+            loadXWikiProperty(property, context, false);
+        } catch (Exception e) {
+            // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
+            try {
+                if (property instanceof StringProperty) {
+                    LargeStringProperty property2 = new LargeStringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof TextAreaClass) {
+                            property = property2;
+                        }
+                    }
+
+                } else if (property instanceof LargeStringProperty) {
+                    StringProperty property2 = new StringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof StringClass) {
+                            property = property2;
+                        }
+                    }
+                } else {
+                    throw e;
+                }
+            } catch (Throwable e2) {
+                Object[] args =
+                    { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
+                    "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'",
+                    e, args);
+            }
+        }
+
+        return property;
+    }
+
+    /**
+     * Load the properties of all the passed objects of a document with a fixed number of queries: one to list the
+     * properties of the document objects and one for each property type. Properties which can't be found that way (e.g.
+     * stored in a table which does not match their type) are loaded one by one.
+     *
+     * @param objects the objects (already loaded) of the document, without their properties
+     * @param doc the document containing the objects
+     * @param context the XWiki context
+     * @throws XWikiException when failing to load the properties
+     */
+    protected void loadXWikiCollectionsInternal(List<BaseObject> objects, XWikiDocument doc, XWikiContext context)
+        throws XWikiException
+    {
+        Map<Long, BaseObject> objectsById = new HashMap<>();
+        Map<Long, BaseClass> classesById = new HashMap<>();
+        for (BaseObject object : objects) {
+            BaseClass bclass = getXClass(object, doc, context);
+
+            if (bclass != null && bclass.hasCustomMapping() && context.getWiki().hasCustomMappings()) {
+                // Custom mapped classes have their own table
+                loadXWikiCollectionInternal(object, doc, context, false, true);
+            } else {
+                objectsById.put(object.getId(), object);
+                classesById.put(object.getId(), bclass);
+            }
+        }
+
+        if (objectsById.isEmpty()) {
+            return;
+        }
+
+        try {
+            Session session = getSession(context);
+
+            // Load the name and type of all the properties at once
+            Query query = session.createQuery("select prop.id.id, prop.id.name, prop.classType "
+                + "from BaseProperty as prop, BaseObject as bobject "
+                + "where bobject.name = :name and bobject.id = prop.id.id");
+            query.setText("name", doc.getFullName());
+
+            // Properties to load, indexed by object id and then by name
+            Map<Long, Map<String, String>> pendingProperties = new HashMap<>();
+            Set<String> classTypes = new LinkedHashSet<>();
+            for (Object[] result : (List<Object[]>) query.list()) {
+                Long id = (Long) result[0];
+                if (objectsById.containsKey(id)) {
+                    String classType = (String) result[2];
+                    Map<String, String> objectProperties = pendingProperties.get(id);
+                    if (objectProperties == null) {
+                        objectProperties = new HashMap<>();
+                        pendingProperties.put(id, objectProperties);
+                    }
+                    objectProperties.put((String) result[1], classType);
+                    classTypes.add(classType);
+                }
+            }
+
+            // Load all the properties of a given type at once
+            for (String classType : classTypes) {
+                for (BaseProperty property : loadXWikiProperties(classType, doc, session)) {
+                    Map<String, String> objectProperties = pendingProperties.get(property.getId());
+                    if (objectProperties != null && classType.equals(objectProperties.get(property.getName()))) {
+                        objectProperties.remove(property.getName());
+
+                        BaseObject object = objectsById.get(property.getId());
+                        property.setObject(object);
+
+                        // In Oracle, empty string are converted to NULL. Since an undefined property is not found at
+                        // all, it is safe to assume that a retrieved NULL value should actually be an empty string.
+                        if (property instanceof BaseStringProperty
+                            && ((BaseStringProperty) property).getValue() == null) {
+                            ((BaseStringProperty) property).setValue("");
+                        }
+                        // Make sure lists are not lazy loaded
+                        if (property instanceof ListProperty) {
+                            ((ListProperty) property).getList();
+                        }
+                        property.setValueDirty(false);
+
+                        object.addField(property.getName(), property);
+                    }
+                }
+            }
+
+            // Fallback on the one by one loading for the properties which could not be found
+            for (Map.Entry<Long, Map<String, String>> entry : pendingProperties.entrySet()) {
+                BaseObject object = objectsById.get(entry.getKey());
+                BaseClass bclass = classesById.get(entry.getKey());
+                for (Map.Entry<String, String> propertyEntry : entry.getValue().entrySet()) {
+                    object.addField(propertyEntry.getKey(),
+                        loadXWikiProperty(object, bclass, propertyEntry.getKey(), propertyEntry.getValue(), context));
+                }
+            }
+        } catch (XWikiException e) {
+            throw e;
+        } catch (Exception e) {
+            Object[] args = { doc.getDocumentReference() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
+                "Exception while loading the objects of document [{0}]", e, args);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<BaseProperty> loadXWikiProperties(String classType, XWikiDocument doc, Session session)
+        throws ClassNotFoundException
+    {
+        // Make sure the type is a property entity before injecting it in the query
+        Class<?> propertyClass = Class.forName(classType);
+        if (!BaseProperty.class.isAssignableFrom(propertyClass)) {
+            return Collections.emptyList();
+        }
+
+        StringBuilder statement = new StringBuilder("select prop from ");
+        statement.append(propertyClass.getName());
+        statement.append(" as prop");
+        if (DBStringListProperty.class.isAssignableFrom(propertyClass)) {
+            // Avoid one query per list
+            statement.append(" left join fetch prop.list");
+        }
+        // Several types are sharing the same table
+        statement.append(" where prop.classType = :classType");
+        statement.append(" and prop.id.id in (select bobject.id from BaseObject as bobject where bobject.name = :name)");
+
+        Query query = session.createQuery(statement.toString());
+        query.setString("classType", classType);
+        query.setText("name", doc.getFullName());
+
+        return query.list();
+    }
+
+    /**
+     * @return true if the properties of a document objects should be loaded in batch
+     */
+    private boolean isObjectBatchLoadingEnabled()
+    {
+        return this.xwikicfg != null
+            && "1".equals(this.xwikicfg.getProperty("xwiki.store.hibernate.batchObjectLoading", "0"));
+    }
+
     /**
      * @deprecated This is internal to XWikiHibernateStore and may be removed in the future.
      */
@@ -19,9 +19,11 @@
  */
 package com.xpn.xwiki.store.hibernate.query;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,7 +36,10 @@
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.engine.NamedQueryDefinition;
 import org.hibernate.engine.NamedSQLQueryDefinition;
@@ -49,6 +54,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryParameter;
 import org.xwiki.query.SecureQuery;
 import org.xwiki.query.WrappingQuery;
@@ -81,6 +87,12 @@ public class HqlQueryExecutor implements QueryExecutor, Initializable
 
     private static final String ESCAPE_LIKE_PARAMETERS_FILTER = "escapeLikeParameters";
 
+    /**
+     * The number of results to get from the database at once when iterating the results and no fetch size is
+     * specified in the query.
+     */
+    private static final int DEFAULT_FETCH_SIZE = 100;
+
     /**
      * Session factory needed for register named queries mapping.
      */
@@ -200,6 +212,53 @@ public List<T> doInHibernate(Session session)
         }
     }
 
+    @Override
+    public <T> QueryIterator<T> iterate(final Query query) throws QueryException
+    {
+        // Make sure the query is allowed in the current context
+        checkAllowed(query);
+
+        XWikiContext xcontext = getContext();
+        String oldDatabase = xcontext.getWikiId();
+        String wiki = query.getWiki() != null ? query.getWiki() : oldDatabase;
+        int fetchSize = query.getFetchSize() > 0 ? query.getFetchSize() : DEFAULT_FETCH_SIZE;
+
+        // Use a dedicated session since the results are read after this method returns (and the session associated to
+        // the context would be closed by then)
+        Session session = null;
+        try {
+            this.progress.startStep(query, "query.hql.progress.execute", "Execute HQL query [{}]", query);
+
+            xcontext.setWikiId(wiki);
+
+            XWikiHibernateStore store = getStore();
+            session = store.getSessionFactory().openSession();
+            Transaction transaction = session.beginTransaction();
+            store.setDatabase(session, xcontext);
+
+            org.hibernate.Query hquery = createHibernateQuery(session, query);
+            hquery.setReadOnly(true);
+            // Note that the MySQL driver ignores the fetch size (and loads all the results in memory) unless the
+            // connection URL has useCursorFetch=true. Its streaming mode (Integer.MIN_VALUE) is not used since it
+            // forbids any other statement on the connection while the results are read (e.g. lazy loading).
+            hquery.setFetchSize(fetchSize);
+
+            ScrollableResults results = hquery.scroll(ScrollMode.FORWARD_ONLY);
+
+            return new ScrollableQueryIterator<>(query, wiki, fetchSize, session, transaction, results);
+        } catch (Exception e) {
+            if (session != null) {
+                session.close();
+            }
+
+            throw new QueryException("Exception while executing query", query, e);
+        } finally {
+            xcontext.setWikiId(oldDatabase);
+
+            this.progress.endStep(query);
+        }
+    }
+
     protected org.hibernate.Query createHibernateQuery(Session session, Query query)
     {
         org.hibernate.Query hquery;
@@ -433,4 +492,114 @@ protected XWikiContext getContext()
     {
         return (XWikiContext) this.execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
     }
+
+    /**
+     * Iterate over {@link ScrollableResults}, applying the query filters on each group of fetched results.
+     *
+     * @param <T> the type of the results
+     */
+    private class ScrollableQueryIterator<T> implements QueryIterator<T>
+    {
+        private final Query query;
+
+        private final String wiki;
+
+        private final int fetchSize;
+
+        private final Session session;
+
+        private final Transaction transaction;
+
+        private final ScrollableResults results;
+
+        private Iterator<T> currentResults = Collections.emptyIterator();
+
+        private boolean closed;
+
+        ScrollableQueryIterator(Query query, String wiki, int fetchSize, Session session, Transaction transaction,
+            ScrollableResults results)
+        {
+            this.query = query;
+            this.wiki = wiki;
+            this.fetchSize = fetchSize;
+            this.session = session;
+            this.transaction = transaction;
+            this.results = results;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!this.currentResults.hasNext() && !this.closed) {
+                fetch();
+            }
+
+            return this.currentResults.hasNext();
+        }
+
+        @Override
+        public T next()
+        {
+            hasNext();
+
+            return this.currentResults.next();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fetch()
+        {
+            List<Object> fetchedResults = new ArrayList<>(this.fetchSize);
+
+            try {
+                while (fetchedResults.size() < this.fetchSize && this.results.next()) {
+                    Object[] row = this.results.get();
+                    fetchedResults.add(row.length == 1 ? row[0] : row);
+                }
+
+                // Don't keep the fetched entities in the session cache
+                this.session.clear();
+            } catch (RuntimeException e) {
+                close();
+
+                throw e;
+            }
+
+            if (fetchedResults.size() < this.fetchSize) {
+                close();
+            }
+
+            // Apply the filters in the context of the query wiki, as #execute() does
+            List<T> filteredResults = (List<T>) fetchedResults;
+            if (this.query.getFilters() != null && !this.query.getFilters().isEmpty()) {
+                XWikiContext xcontext = getContext();
+                String oldDatabase = xcontext.getWikiId();
+                try {
+                    xcontext.setWikiId(this.wiki);
+
+                    for (QueryFilter filter : this.query.getFilters()) {
+                        filteredResults = filter.filterResults(filteredResults);
+                    }
+                } finally {
+                    xcontext.setWikiId(oldDatabase);
+                }
+            }
+
+            this.currentResults = filteredResults.iterator();
+        }
+
+        @Override
+        public void close()
+        {
+            if (!this.closed) {
+                this.closed = true;
+
+                try {
+                    this.results.close();
+                    this.transaction.rollback();
+                } finally {
+                    this.session.close();
+                }
+            }
+        }
+    }
 }
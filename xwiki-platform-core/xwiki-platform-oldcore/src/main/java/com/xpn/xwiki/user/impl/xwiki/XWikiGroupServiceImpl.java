@@ -25,6 +25,9 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -36,6 +39,8 @@
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
 import org.xwiki.cache.eviction.EntryEvictionConfiguration;
 import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.model.EntityType;
@@ -136,6 +141,12 @@ public class XWikiGroupServiceImpl implements XWikiGroupService, EventListener
 
     protected Cache<Collection<DocumentReference>> memberGroupsCache;
 
+    /**
+     * The keys of {@link #memberGroupsCache} indexed by the name of the member, used to find the entries to invalidate
+     * when the members of a group change.
+     */
+    private final ConcurrentMap<String, Set<String>> cachedKeysByMemberName = new ConcurrentHashMap<>();
+
     /**
      * Used to convert a string into a proper Document Reference.
      */
@@ -181,6 +192,27 @@ public synchronized void initCache(int iCapacity, XWikiContext context) throws X
             configuration.put(EntryEvictionConfiguration.CONFIGURATIONID, lru);
 
             this.memberGroupsCache = Utils.getComponent(CacheManager.class).createNewCache(configuration);
+            this.cachedKeysByMemberName.clear();
+            this.memberGroupsCache.addCacheEntryListener(new CacheEntryListener<Collection<DocumentReference>>()
+            {
+                @Override
+                public void cacheEntryAdded(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    // The key is indexed when the entry is set
+                }
+
+                @Override
+                public void cacheEntryRemoved(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    unindexKey(event.getEntry().getKey());
+                }
+
+                @Override
+                public void cacheEntryModified(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    // The key does not change
+                }
+            });
         } catch (CacheException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_CACHE, XWikiException.ERROR_CACHE_INITIALIZING,
                 "Failed to initialize cache", e);
@@ -192,9 +224,92 @@ public void flushCache()
     {
         if (this.memberGroupsCache != null) {
             this.memberGroupsCache.removeAll();
+            this.cachedKeysByMemberName.clear();
         }
     }
 
+    private void indexKey(String key, DocumentReference memberReference)
+    {
+        Set<String> keys = this.cachedKeysByMemberName.get(memberReference.getName());
+        if (keys == null) {
+            keys = ConcurrentHashMap.newKeySet();
+            Set<String> currentKeys = this.cachedKeysByMemberName.putIfAbsent(memberReference.getName(), keys);
+            if (currentKeys != null) {
+                keys = currentKeys;
+            }
+        }
+
+        keys.add(key);
+    }
+
+    private void unindexKey(String key)
+    {
+        // The key is made of the wiki and the member reference
+        String member = key.substring(key.indexOf('/') + 1);
+        Set<String> keys =
+            this.cachedKeysByMemberName.get(this.currentMixedDocumentReferenceResolver.resolve(member).getName());
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Remove from the cache the groups of the members which have been added to or removed from the passed group.
+     * <p>
+     * The cache contains the groups which directly contain a member so the groups containing the modified group are
+     * not impacted.
+     *
+     * @param document the new version of the group document
+     * @param oldDocument the previous version of the group document
+     */
+    private void invalidateMembers(XWikiDocument document, XWikiDocument oldDocument)
+    {
+        Set<String> newMembers = getMembers(document);
+        Set<String> oldMembers = getMembers(oldDocument);
+
+        Set<String> modifiedMembers = new HashSet<String>(newMembers);
+        modifiedMembers.addAll(oldMembers);
+        newMembers.retainAll(oldMembers);
+        modifiedMembers.removeAll(newMembers);
+
+        // The groups of a member are searched in the context wiki, which is the wiki of the group
+        String keyPrefix = document.getDocumentReference().getWikiReference().getName() + '/';
+
+        for (String member : modifiedMembers) {
+            // Members can be stored with their name only so don't rely on the space or wiki to find them
+            DocumentReference memberReference =
+                this.currentMixedDocumentReferenceResolver.resolve(member, document.getDocumentReference());
+            Set<String> keys = this.cachedKeysByMemberName.get(memberReference.getName());
+            if (keys != null) {
+                for (String key : keys) {
+                    if (key.startsWith(keyPrefix)) {
+                        this.memberGroupsCache.remove(key);
+                        keys.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<String> getMembers(XWikiDocument document)
+    {
+        Set<String> members = new HashSet<String>();
+
+        List<BaseObject> groups = document.getXObjects(GROUPCLASS_REFERENCE);
+        if (groups != null) {
+            for (BaseObject bobj : groups) {
+                if (bobj != null) {
+                    String member = bobj.getStringValue(FIELD_XWIKIGROUPS_MEMBER);
+                    if (StringUtils.isNotEmpty(member)) {
+                        members.add(member);
+                    }
+                }
+            }
+        }
+
+        return members;
+    }
+
     /**
      * Check whether the configuration specifies that every user is implicitly in XWikiAllGroup. Configured by the
      * {@code xwiki.authentication.group.allgroupimplicit} parameter in {@code xwiki.cfg}.
@@ -397,9 +512,10 @@ public void onEvent(Event event, Object source, Object data)
         XWikiDocument document = (XWikiDocument) source;
         XWikiDocument oldDocument = document.getOriginalDocument();
 
-        // if there is any chance some group changed, flush the group cache
-        if (document.getXObject(GROUPCLASS_REFERENCE) != null || oldDocument.getXObject(GROUPCLASS_REFERENCE) != null) {
-            flushCache();
+        // if there is any chance some group changed, invalidate the cached groups of the modified members
+        if (this.memberGroupsCache != null && (document.getXObject(GROUPCLASS_REFERENCE) != null
+            || oldDocument.getXObject(GROUPCLASS_REFERENCE) != null)) {
+            invalidateMembers(document, oldDocument);
         }
     }
 
@@ -780,6 +896,7 @@ public Collection<DocumentReference> getAllGroupsReferencesForMember(DocumentRef
 
                 if (supportCache) {
                     this.memberGroupsCache.set(key, groupReferences);
+                    indexKey(key, memberReference);
                 }
             }
         }
@@ -90,6 +90,12 @@ public class DownloadAction extends XWikiAction
     /** The name of the HTTP Header that signals a byte-range request. */
     private static final String RANGE_HEADER_NAME = "Range";
 
+    /** The name of the HTTP Header holding the entity tag of the response. */
+    private static final String ETAG_HEADER_NAME = "ETag";
+
+    /** The name of the HTTP Header holding the entity tags known by the client. */
+    private static final String IF_NONE_MATCH_HEADER_NAME = "If-None-Match";
+
     /** The format of a valid range header. */
     private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("bytes=([0-9]+)?-([0-9]+)?");
 
@@ -163,9 +169,9 @@ public String render(XWikiContext context) throws XWikiException
                     "Attachment content {0} not found", null, args);
             }
 
-            long lastModifiedOnClient = request.getDateHeader("If-Modified-Since");
-            long lastModifiedOnServer = attachment.getDate().getTime();
-            if (lastModifiedOnClient != -1 && lastModifiedOnClient >= lastModifiedOnServer) {
+            String etag = getETag(attachment, context);
+            response.setHeader(ETAG_HEADER_NAME, etag);
+            if (isNotModified(attachment, etag, request)) {
                 response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                 return null;
             }
@@ -197,6 +203,50 @@ private void throwNotFoundException(String filename) throws XWikiException
             XWikiException.ERROR_XWIKI_APP_ATTACHMENT_NOT_FOUND, message);
     }
 
+    /**
+     * The entity tag identifies the content of the attachment as it is served, which can differ from the stored
+     * attachment content when a plugin transforms it (e.g. image thumbnails). Since the transformation parameters are
+     * part of the request URL we only need to take into account the attachment version, date and served size.
+     *
+     * @param attachment the attachment to send
+     * @param context the current request context
+     * @return the entity tag of the attachment
+     * @throws XWikiException if the attachment content cannot be retrieved
+     */
+    private String getETag(XWikiAttachment attachment, XWikiContext context) throws XWikiException
+    {
+        return String.format("\"%s-%s-%s\"", attachment.getVersion(), attachment.getDate().getTime(),
+            attachment.getContentLongSize(context));
+    }
+
+    /**
+     * Check if the client already has the attachment. The {@code If-None-Match} header takes precedence over the
+     * {@code If-Modified-Since} header, as specified by RFC 7232.
+     *
+     * @param attachment the attachment to send
+     * @param etag the entity tag of the attachment
+     * @param request the current client request
+     * @return {@code true} if the version of the attachment cached by the client is still valid
+     */
+    private boolean isNotModified(XWikiAttachment attachment, String etag, XWikiRequest request)
+    {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER_NAME);
+        if (ifNoneMatch != null) {
+            for (String clientETag : StringUtils.split(ifNoneMatch, ',')) {
+                // Use weak comparison.
+                String value = StringUtils.removeStart(clientETag.trim(), "W/");
+                if ("*".equals(value) || etag.equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long lastModifiedOnClient = request.getDateHeader("If-Modified-Since");
+        long lastModifiedOnServer = attachment.getDate().getTime();
+        return lastModifiedOnClient != -1 && lastModifiedOnClient >= lastModifiedOnServer;
+    }
+
     /**
      * Respond to a range request, either with the requested bytes, or with a {@code 416 REQUESTED RANGE NOT
      * SATISFIABLE} response if the requested byte range falls outside the length of the attachment. If the range
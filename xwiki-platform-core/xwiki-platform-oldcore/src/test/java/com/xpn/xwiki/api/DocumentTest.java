@@ -19,6 +19,8 @@
  */
 package com.xpn.xwiki.api;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Rule;
@@ -36,7 +38,9 @@
 
 import static com.xpn.xwiki.test.mockito.OldcoreMatchers.anyXWikiContext;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -120,6 +124,82 @@ public void testRemoveObjectDoesntCauseDataLoss() throws XWikiException
         }
     }
 
+    @Test
+    public void testReadOnlyAccessorsDontCloneTheDocument() throws XWikiException
+    {
+        XWikiDocument xdoc = new XWikiDocument(new DocumentReference("wiki", "Space", "Page"));
+        xdoc.getXClass().addTextField("key", "Key", 30);
+        BaseObject xobj = xdoc.newXObject(xdoc.getDocumentReference(), this.oldcore.getXWikiContext());
+        xobj.setStringValue("key", "value");
+
+        Document adoc = xdoc.newDocument(this.oldcore.getXWikiContext());
+
+        assertEquals(1, adoc.getObjects(xdoc.getPrefixedFullName()).size());
+        assertEquals("value", adoc.getObject(xdoc.getPrefixedFullName(), "key", "value").getValue("key"));
+        assertEquals("value", adoc.getObject(xdoc.getPrefixedFullName()).getValue("key"));
+        assertEquals(0, adoc.getAttachmentList().size());
+        assertEquals(0, adoc.getComments().size());
+        assertNull(adoc.getTagList());
+
+        assertSame(xdoc, adoc.doc);
+    }
+
+    @Test
+    public void testModifyObjectCopiesTheDocumentOnWrite() throws XWikiException
+    {
+        XWikiDocument xdoc = new XWikiDocument(new DocumentReference("wiki", "Space", "Page"));
+        xdoc.getXClass().addTextField("key", "Key", 30);
+        BaseObject xobj = xdoc.newXObject(xdoc.getDocumentReference(), this.oldcore.getXWikiContext());
+        xobj.setStringValue("key", "value");
+
+        Document adoc = xdoc.newDocument(this.oldcore.getXWikiContext());
+
+        Object first = adoc.getObject(xdoc.getPrefixedFullName());
+        Object second = adoc.getObject(xdoc.getPrefixedFullName());
+        first.set("key", "modified");
+
+        // The wrapped document is left untouched.
+        assertEquals("value", xobj.getStringValue("key"));
+        assertNotSame(xdoc, adoc.doc);
+
+        // Objects retrieved before the modification see the modified document.
+        assertEquals("modified", first.getValue("key"));
+        assertEquals("modified", second.getValue("key"));
+        assertEquals("modified", adoc.getObject(xdoc.getPrefixedFullName()).getValue("key"));
+        assertSame(adoc.doc, second.getBaseObject().getOwnerDocument());
+    }
+
+    @Test
+    public void testModifyingReturnedValuesDoesntModifyTheWrappedDocument() throws XWikiException
+    {
+        XWikiDocument xdoc = new XWikiDocument(new DocumentReference("wiki", "Space", "Page"));
+        xdoc.getXClass().addStaticListField("list", "List", 5, true, "a|b|c");
+        xdoc.getXClass().addDateField("date", "Date");
+        BaseObject xobj = xdoc.newXObject(xdoc.getDocumentReference(), this.oldcore.getXWikiContext());
+        xobj.setStringListValue("list", Arrays.asList("a", "b"));
+        xobj.setDateValue("date", new Date(1000));
+
+        Document adoc = xdoc.newDocument(this.oldcore.getXWikiContext());
+        Object object = adoc.getObject(xdoc.getPrefixedFullName());
+
+        ((List<String>) object.getValue("list")).add("c");
+        ((Date) object.getProperty("date").getValue()).setTime(2000);
+
+        assertEquals(Arrays.asList("a", "b"), xobj.getListValue("list"));
+        assertEquals(new Date(1000), xobj.getDateValue("date"));
+        assertSame(xdoc, adoc.doc);
+
+        // The internal property is taken from a copy of the document
+        when(this.oldcore.getMockRightService().hasProgrammingRights(any())).thenReturn(true);
+        Property property = object.getProperty("date");
+        property.getProperty().setValue(new Date(3000));
+
+        assertEquals(new Date(1000), xobj.getDateValue("date"));
+        assertNotSame(xdoc, adoc.doc);
+        assertEquals(new Date(3000), property.getValue());
+        assertEquals(new Date(3000), adoc.getObject(xdoc.getPrefixedFullName()).getValue("date"));
+    }
+
     @Test
     public void testSaveAsAuthorUsesGuestIfDroppedPermissions() throws XWikiException
     {
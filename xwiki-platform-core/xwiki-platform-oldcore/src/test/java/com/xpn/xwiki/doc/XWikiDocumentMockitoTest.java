@@ -26,6 +26,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -72,6 +73,7 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -79,6 +81,7 @@
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -1397,4 +1400,27 @@ public void tofromXMLDocument() throws XWikiException
 
         assertEquals(this.document, newDocument);
     }
+
+    @Test
+    public void getOriginalDocumentFromSupplier()
+    {
+        XWikiDocument originalDocument = new XWikiDocument(this.document.getDocumentReference());
+        Supplier<XWikiDocument> supplier = mock(Supplier.class);
+        when(supplier.get()).thenReturn(originalDocument);
+
+        this.document.setOriginalDocumentSupplier(supplier);
+        XWikiDocument clonedDocument = this.document.clone();
+
+        verify(supplier, never()).get();
+
+        assertSame(originalDocument, this.document.getOriginalDocument());
+        assertSame(originalDocument, this.document.getOriginalDocument());
+        verify(supplier).get();
+
+        // The clone shares the supplier.
+        assertSame(originalDocument, clonedDocument.getOriginalDocument());
+
+        this.document.setOriginalDocument(null);
+        assertNull(this.document.getOriginalDocument());
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.ContentParser;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.internal.MockConfigurationSource;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.cache.DocumentXDOMCache.ParsedContent;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DocumentXDOMCache}.
+ * 
+ * @version $Id$
+ */
+public class DocumentXDOMCacheTest
+{
+    public MockitoComponentMockingRule<DocumentXDOMCache> mocker =
+        new MockitoComponentMockingRule<>(DocumentXDOMCache.class);
+
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule(this.mocker);
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "space", "page");
+
+    private DocumentCache<ParsedContent> cache;
+
+    private ContentParser parser;
+
+    @BeforeComponent
+    public void beforeComponent() throws Exception
+    {
+        this.mocker.registerComponent(MockConfigurationSource.getDescriptor("xwikiproperties"));
+    }
+
+    @Before
+    public void before() throws Exception
+    {
+        this.cache = this.mocker.getInstance(DocumentCache.class);
+        this.parser = this.mocker.registerMockComponent(ContentParser.class);
+    }
+
+    private XWikiDocument getStoredDocument(String content)
+    {
+        XWikiDocument document = new XWikiDocument(this.documentReference);
+        document.setSyntax(Syntax.XWIKI_2_1);
+        document.setContent(content);
+        document.setNew(false);
+        document.setContentDirty(false);
+
+        return document;
+    }
+
+    private ParsedContent verifySet()
+    {
+        ArgumentCaptor<ParsedContent> parsedContentCaptor = ArgumentCaptor.forClass(ParsedContent.class);
+        verify(this.cache).set(parsedContentCaptor.capture(), eq(this.documentReference), eq(Locale.ROOT), eq("1.1"),
+            eq("xwiki/2.1"));
+
+        return parsedContentCaptor.getValue();
+    }
+
+    // Tests
+
+    @Test
+    public void initialize() throws Exception
+    {
+        ArgumentCaptor<CacheConfiguration> configurationCaptor = ArgumentCaptor.forClass(CacheConfiguration.class);
+        verify(this.cache).create(configurationCaptor.capture());
+
+        assertEquals("core.xdomcache", configurationCaptor.getValue().getConfigurationId());
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        XWikiDocument document = getStoredDocument("content");
+        XDOM xdom = new XDOM(Collections.emptyList());
+
+        this.mocker.getComponentUnderTest().set(document, xdom);
+        ParsedContent parsedContent = verifySet();
+        when(this.cache.get(this.documentReference, Locale.ROOT, "1.1", "xwiki/2.1")).thenReturn(parsedContent);
+
+        assertSame(xdom, this.mocker.getComponentUnderTest().get(getStoredDocument("content")));
+
+        // Same version but different content
+        assertNull(this.mocker.getComponentUnderTest().get(getStoredDocument("other content")));
+    }
+
+    @Test
+    public void modifiedDocumentsAreNotCached() throws Exception
+    {
+        XWikiDocument document = getStoredDocument("content");
+        document.setContent("modified content");
+
+        this.mocker.getComponentUnderTest().set(document, new XDOM(Collections.emptyList()));
+        assertNull(this.mocker.getComponentUnderTest().get(document));
+
+        XWikiDocument newDocument = new XWikiDocument(this.documentReference);
+        newDocument.setSyntax(Syntax.XWIKI_2_1);
+
+        this.mocker.getComponentUnderTest().set(newDocument, new XDOM(Collections.emptyList()));
+        assertNull(this.mocker.getComponentUnderTest().get(newDocument));
+
+        verify(this.cache, never()).set(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void getXDOMParsesEachVersionOnce() throws Exception
+    {
+        XWikiDocument document = getStoredDocument("content");
+        XDOM xdom = new XDOM(Collections.emptyList());
+        when(this.parser.parse("content", Syntax.XWIKI_2_1, this.documentReference)).thenReturn(xdom);
+
+        assertNotNull(document.getXDOM());
+
+        ParsedContent parsedContent = verifySet();
+        when(this.cache.get(this.documentReference, Locale.ROOT, "1.1", "xwiki/2.1")).thenReturn(parsedContent);
+
+        // Another instance of the same document version (e.g. after a document cache eviction)
+        assertNotNull(getStoredDocument("content").getXDOM());
+
+        verify(this.parser, times(1)).parse("content", Syntax.XWIKI_2_1, this.documentReference);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.observation.remote.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.event.filter.RegexEventFilter;
+import org.xwiki.observation.remote.RemoteEventData;
+import org.xwiki.observation.remote.internal.codec.DefaultRemoteEventDataInput;
+import org.xwiki.observation.remote.internal.codec.DefaultRemoteEventDataOutput;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link XWikiRemoteEventDataCodec}.
+ *
+ * @version $Id$
+ */
+public class XWikiRemoteEventDataCodecTest
+{
+    @Rule
+    public MockitoComponentMockingRule<XWikiRemoteEventDataCodec> mocker =
+        new MockitoComponentMockingRule<>(XWikiRemoteEventDataCodec.class);
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "space", "page");
+
+    @Before
+    public void before() throws Exception
+    {
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.documentReference)).thenReturn("wiki:space.page");
+        when(serializer.serialize(new DocumentReference(this.documentReference, Locale.FRENCH)))
+            .thenReturn("wiki:space.page");
+
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
+        when(resolver.resolve("wiki:space.page")).thenReturn(this.documentReference);
+    }
+
+    private RemoteEventData encodeDecode(RemoteEventData remoteEvent) throws Exception
+    {
+        List<String> strings = new ArrayList<>();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DefaultRemoteEventDataOutput output = new DefaultRemoteEventDataOutput(stream, new HashMap<>(), strings);
+        this.mocker.getComponentUnderTest().encode(remoteEvent, output);
+        output.flush();
+
+        DefaultRemoteEventDataInput input =
+            new DefaultRemoteEventDataInput(new ByteArrayInputStream(stream.toByteArray()), strings);
+
+        return this.mocker.getComponentUnderTest().decode(input);
+    }
+
+    @Test
+    public void documentEvent() throws Exception
+    {
+        HashMap<String, Object> source = new HashMap<>();
+        source.put("docname", new DocumentReference(this.documentReference, Locale.FRENCH));
+        source.put("docversion", "2.1");
+        source.put("doclanguage", "fr");
+        source.put("origdocversion", "1.1");
+        source.put("origdoclanguage", "fr");
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("contextwiki", "wiki");
+        data.put("contextuser", null);
+
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent(new DocumentUpdatedEvent(this.documentReference));
+        remoteEvent.setSource(source);
+        remoteEvent.setData(data);
+
+        assertTrue(this.mocker.getComponentUnderTest().canEncode(remoteEvent));
+
+        RemoteEventData decodedEvent = encodeDecode(remoteEvent);
+
+        assertEquals(DocumentUpdatedEvent.class, decodedEvent.getEvent().getClass());
+        assertTrue(((DocumentUpdatedEvent) decodedEvent.getEvent())
+            .matches(new DocumentUpdatedEvent(this.documentReference)));
+        assertFalse(((DocumentUpdatedEvent) decodedEvent.getEvent())
+            .matches(new DocumentUpdatedEvent(new DocumentReference("wiki", "space", "other"))));
+        assertEquals(source, decodedEvent.getSource());
+        assertEquals(data, decodedEvent.getData());
+    }
+
+    @Test
+    public void wikiEvent() throws Exception
+    {
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent(new WikiDeletedEvent());
+        remoteEvent.setSource("wiki");
+
+        assertTrue(this.mocker.getComponentUnderTest().canEncode(remoteEvent));
+
+        RemoteEventData decodedEvent = encodeDecode(remoteEvent);
+
+        assertEquals(WikiDeletedEvent.class, decodedEvent.getEvent().getClass());
+        assertTrue(((WikiDeletedEvent) decodedEvent.getEvent()).matches(new WikiDeletedEvent("otherwiki")));
+        assertEquals("wiki", decodedEvent.getSource());
+        assertEquals(null, decodedEvent.getData());
+    }
+
+    @Test
+    public void canEncode() throws Exception
+    {
+        RemoteEventData remoteEvent = new RemoteEventData();
+        remoteEvent.setEvent(new DocumentUpdatedEvent(new RegexEventFilter(".*")));
+
+        assertFalse(this.mocker.getComponentUnderTest().canEncode(remoteEvent));
+
+        remoteEvent.setEvent(new DocumentUpdatedEvent());
+        remoteEvent.setSource(new ArrayList<>());
+
+        assertFalse(this.mocker.getComponentUnderTest().canEncode(remoteEvent));
+    }
+}
@@ -131,6 +131,22 @@ public void testRenderWiki() throws Exception
         assertEquals("<p>first line<br/>second line</p>", mocker.getComponentUnderTest().render("template"));
     }
 
+    @Test
+    public void testRenderModifiedWiki() throws Exception
+    {
+        setTemplateContent("##!source.syntax=xwiki/2.1\nfirst content");
+
+        assertEquals("<p>first content</p>", mocker.getComponentUnderTest().render("template"));
+
+        setTemplateContent("##!source.syntax=xwiki/2.1\nsecond content");
+
+        assertEquals("<p>second content</p>", mocker.getComponentUnderTest().render("template"));
+
+        setTemplateContent("##!source.syntax=xwiki/2.1\nsecond content");
+
+        assertEquals("<p>second content</p>", mocker.getComponentUnderTest().render("template"));
+    }
+
     @Test
     public void testRenderClassloaderTemplate() throws ComponentLookupException, Exception
     {
@@ -22,6 +22,7 @@
 import java.awt.Image;
 import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -29,13 +30,20 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiAttachment;
-import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 import com.xpn.xwiki.web.XWikiServletRequest;
 
@@ -94,6 +102,8 @@
 
     private ImageProcessor imageProcessor;
 
+    private ObservationManager observationManager;
+
     @Before
     public void configure() throws Exception
     {
@@ -102,6 +112,8 @@ public void configure() throws Exception
         doReturn("test").when(xwiki).Param(eq("xwiki.plugin.image.processorHint"), anyString());
 
         this.oldCore.getMocker().registerMockComponent(CacheManager.class);
+        this.oldCore.registerMockEnvironment();
+        this.observationManager = this.oldCore.getMocker().registerMockComponent(ObservationManager.class);
 
         this.imageProcessor = this.oldCore.getMocker().registerMockComponent(ImageProcessor.class, "test");
         when(this.imageProcessor.isMimeTypeSupported("image/png")).thenReturn(true);
@@ -122,17 +134,18 @@ public void testCacheOfScaledAttachment() throws Exception
     {
         XWikiContext xcontext = this.oldCore.getXWikiContext();
 
+        AttachmentReference attachmentReference =
+            new AttachmentReference("image.png", new DocumentReference("wiki", "Space", "Page"));
         XWikiAttachment attachment = mock(XWikiAttachment.class);
+        when(attachment.getReference()).thenReturn(attachmentReference);
+        when(attachment.getVersion()).thenReturn("1.1");
+        when(attachment.getFilename()).thenReturn("image.png");
         when(attachment.getMimeType(xcontext)).thenReturn("image/png");
         InputStream attachmentInputStream = new ByteArrayInputStream(testPngImageContent);
         when(attachment.getContentInputStream(xcontext)).thenReturn(attachmentInputStream);
-        when(attachment.clone()).thenReturn(attachment);
-
-        XWikiAttachmentContent attachmentContent = mock(XWikiAttachmentContent.class);
-        when(attachment.getAttachment_content()).thenReturn(attachmentContent);
-        when(attachmentContent.getContentInputStream()).thenReturn(attachmentInputStream);
-        OutputStream attachmentOutputStream = mock(OutputStream.class);
-        when(attachmentContent.getContentOutputStream()).thenReturn(attachmentOutputStream);
+        XWikiAttachment thumbnail = mock(XWikiAttachment.class);
+        when(thumbnail.getFilename()).thenReturn("image.png");
+        when(attachment.clone()).thenReturn(thumbnail);
 
         CacheManager cacheManager = this.oldCore.getMocker().getInstance(CacheManager.class);
         Cache<Object> imageCache = mock(Cache.class);
@@ -150,15 +163,116 @@ public void testCacheOfScaledAttachment() throws Exception
         RenderedImage renderedImage = mock(RenderedImage.class);
         when(imageProcessor.scaleImage(image, 30, 30)).thenReturn(renderedImage);
 
-        XWikiAttachment scaled = plugin.downloadAttachment(attachment, xcontext);
+        assertSame(thumbnail, plugin.downloadAttachment(attachment, xcontext));
+
+        String cacheKey = attachmentReference + ";1.1;30;30;false;-1.0";
+        ArgumentCaptor<Object> cachedThumbnail = ArgumentCaptor.forClass(Object.class);
+        verify(imageCache).set(eq(cacheKey), cachedThumbnail.capture());
+        when(imageCache.get(cacheKey)).thenReturn(cachedThumbnail.getValue());
 
-        String cacheKey = "0;null;30;30;false;-1.0";
-        when(imageCache.get(cacheKey)).thenReturn(scaled);
+        // The thumbnail is stored on disk.
+        Environment environment = this.oldCore.getMocker().getInstance(Environment.class);
+        File thumbnailDirectory = new File(environment.getPermanentDirectory(), "cache/image");
+        assertEquals(1, thumbnailDirectory.listFiles().length);
 
         // Load again, this time from cache.
-        assertSame(scaled, plugin.downloadAttachment(attachment, xcontext));
+        assertSame(thumbnail, plugin.downloadAttachment(attachment, xcontext));
+
+        verify(imageProcessor, times(1)).writeImage(same(renderedImage), eq("image/png"), eq(.5F),
+            any(OutputStream.class));
+        verify(imageCache, times(1)).set(any(), any());
+        verify(thumbnail, times(2)).setAttachment_content(any(ThumbnailAttachmentContent.class));
+    }
+
+    private XWikiAttachment mockScaledAttachment(String name) throws Exception
+    {
+        XWikiContext xcontext = this.oldCore.getXWikiContext();
+
+        XWikiAttachment attachment = mock(XWikiAttachment.class, name);
+        when(attachment.getReference())
+            .thenReturn(new AttachmentReference(name, new DocumentReference("wiki", "Space", "Page")));
+        when(attachment.getVersion()).thenReturn("1.1");
+        when(attachment.getFilename()).thenReturn(name);
+        when(attachment.getMimeType(xcontext)).thenReturn("image/png");
+        InputStream attachmentInputStream = new ByteArrayInputStream(testPngImageContent);
+        when(attachment.getContentInputStream(xcontext)).thenReturn(attachmentInputStream);
+        XWikiAttachment thumbnail = mock(XWikiAttachment.class);
+        when(thumbnail.getFilename()).thenReturn(name);
+        when(attachment.clone()).thenReturn(thumbnail);
+
+        Image image = mock(Image.class);
+        when(image.getWidth(null)).thenReturn(400);
+        when(image.getHeight(null)).thenReturn(300);
+        when(this.imageProcessor.readImage(attachmentInputStream)).thenReturn(image);
+        when(this.imageProcessor.scaleImage(image, 30, 30)).thenReturn(mock(RenderedImage.class));
+
+        return attachment;
+    }
+
+    private void setUpScaledDownload() throws Exception
+    {
+        CacheManager cacheManager = this.oldCore.getMocker().getInstance(CacheManager.class);
+        when(cacheManager.createNewLocalCache(any())).thenReturn(mock(Cache.class));
+
+        XWikiServletRequest request = mock(XWikiServletRequest.class);
+        when(request.getParameter("width")).thenReturn("30");
+        when(request.getParameter("height")).thenReturn("30");
+        this.oldCore.getXWikiContext().setRequest(request);
+    }
+
+    private File getThumbnailDirectory() throws Exception
+    {
+        Environment environment = this.oldCore.getMocker().getInstance(Environment.class);
+        return new File(environment.getPermanentDirectory(), "cache/image");
+    }
+
+    @Test
+    public void thumbnailsAreDeletedWithTheAttachment() throws Exception
+    {
+        setUpScaledDownload();
+        XWikiContext xcontext = this.oldCore.getXWikiContext();
+
+        this.plugin.downloadAttachment(mockScaledAttachment("image.png"), xcontext);
+        this.plugin.downloadAttachment(mockScaledAttachment("other.png"), xcontext);
+        assertEquals(2, getThumbnailDirectory().listFiles().length);
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(this.observationManager).addListener(listener.capture());
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(new DocumentReference("wiki", "Space", "Page"));
+        listener.getValue().onEvent(new AttachmentDeletedEvent("wiki:Space.Page", "image.png"), document, xcontext);
+
+        // Only the thumbnails of the deleted attachment are removed
+        File[] directories = getThumbnailDirectory().listFiles();
+        assertEquals(1, directories.length);
+        assertEquals(1, directories[0].listFiles().length);
+    }
+
+    @Test
+    public void leastRecentlyUsedThumbnailsArePurged() throws Exception
+    {
+        doReturn("1").when(this.oldCore.getSpyXWiki()).Param("xwiki.plugin.image.cache.diskSize");
+        this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), this.oldCore.getXWikiContext());
+
+        // Each thumbnail takes 600KB
+        doAnswer(invocation -> {
+            OutputStream output = invocation.getArgument(3);
+            output.write(new byte[600 * 1024]);
+            return null;
+        }).when(this.imageProcessor).writeImage(any(), any(), anyFloat(), any());
+
+        setUpScaledDownload();
+        XWikiContext xcontext = this.oldCore.getXWikiContext();
+
+        this.plugin.downloadAttachment(mockScaledAttachment("old.png"), xcontext);
+        File oldDirectory = getThumbnailDirectory().listFiles()[0];
+        // Make sure the dates are different
+        oldDirectory.listFiles()[0].setLastModified(System.currentTimeMillis() - 10000);
+
+        this.plugin.downloadAttachment(mockScaledAttachment("new.png"), xcontext);
 
-        verify(imageProcessor, times(1)).writeImage(renderedImage, "image/png", .5F, attachmentOutputStream);
-        verify(imageCache, times(1)).set(cacheKey, attachment);
+        File[] directories = getThumbnailDirectory().listFiles();
+        assertEquals(1, directories.length);
+        assertFalse(oldDirectory.exists());
     }
 }
@@ -19,6 +19,15 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -30,14 +39,18 @@
 import org.xwiki.observation.remote.RemoteObservationManagerContext;
 import org.xwiki.test.annotation.ComponentList;
 
+import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
 import static com.xpn.xwiki.test.mockito.OldcoreMatchers.isCacheConfiguration;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -115,4 +128,133 @@ public void testLoadXWikiDoc() throws Exception
         verifyNoMoreInteractions(this.cache);
         verifyNoMoreInteractions(this.existCache);
     }
+
+    @Test
+    public void loadXWikiDocConcurrently() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch loadReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loadStarted.countDown();
+            loadReleased.await();
+
+            return storedDocument;
+        }).when(this.oldcore.getMockStore()).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> first = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+            loadStarted.await();
+
+            Future<XWikiDocument> second = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+            // Wait for the second load to wait for the first one
+            Map<?, ?> waitingThreads = (Map<?, ?>) FieldUtils.readField(store, "waitingThreads", true);
+            while (waitingThreads.isEmpty()) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, store.getCoalescedLoadCount());
+
+            loadReleased.countDown();
+
+            assertSame(storedDocument, first.get());
+            assertSame(storedDocument, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, store.getCoalescedLoadCount());
+        verify(this.oldcore.getMockStore()).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+        verify(this.cache).set("4:wiki5:space4:page", storedDocument);
+    }
+
+    @Test
+    public void loadXWikiDocReentrant() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        // Loading the document needs the same document (e.g. a listener or a sheet loading it)
+        AtomicInteger loads = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (loads.incrementAndGet() == 1) {
+                assertSame(storedDocument,
+                    store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+            }
+
+            return storedDocument;
+        }).when(this.oldcore.getMockStore()).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<XWikiDocument> load = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+
+            assertSame(storedDocument, load.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals(0, store.getCoalescedLoadCount());
+    }
+
+    @Test
+    public void loadXWikiDocWaitingForEachOther() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference referenceA = new DocumentReference("wiki", "space", "pageA");
+        XWikiDocument documentA = new XWikiDocument(referenceA);
+        documentA.setNew(false);
+        DocumentReference referenceB = new DocumentReference("wiki", "space", "pageB");
+        XWikiDocument documentB = new XWikiDocument(referenceB);
+        documentB.setNew(false);
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        // Loading each document needs the other one, and both loads start at the same time
+        CountDownLatch loadsStarted = new CountDownLatch(2);
+        AtomicInteger loads = new AtomicInteger();
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            boolean isA = document.getDocumentReference().equals(referenceA);
+            if (loads.incrementAndGet() <= 2) {
+                loadsStarted.countDown();
+                loadsStarted.await();
+
+                store.loadXWikiDoc(new XWikiDocument(isA ? referenceB : referenceA), this.oldcore.getXWikiContext());
+            }
+
+            return isA ? documentA : documentB;
+        }).when(this.oldcore.getMockStore()).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> loadA = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(referenceA), this.oldcore.getXWikiContext()));
+            Future<XWikiDocument> loadB = executor
+                .submit(() -> store.loadXWikiDoc(new XWikiDocument(referenceB), this.oldcore.getXWikiContext()));
+
+            // Shorter than the time after which a thread gives up waiting
+            assertSame(documentA, loadA.get(5, TimeUnit.SECONDS));
+            assertSame(documentB, loadB.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -19,6 +19,7 @@
  */
 package com.xpn.xwiki.store;
 
+import java.io.Serializable;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Collections;
@@ -47,11 +48,15 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
+import com.xpn.xwiki.objects.IntegerProperty;
 import com.xpn.xwiki.objects.LargeStringProperty;
 import com.xpn.xwiki.objects.StringProperty;
 import com.xpn.xwiki.store.migration.DataMigrationManager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -330,4 +335,122 @@ public void getTranslationList() throws Exception
         verify(query).bindValue("space", "Path.To");
         verify(query).bindValue("name", documentReference.getName());
     }
+
+    @Test
+    public void loadXWikiCollectionsInternalWithEmptyBatch() throws Exception
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+
+        store.loadXWikiCollectionsInternal(Collections.<BaseObject>emptyList(), doc, xcontext);
+
+        verify(session, never()).createQuery(any(String.class));
+    }
+
+    @Test
+    public void loadXWikiCollectionsInternalWithSeveralObjectsAndClasses() throws Exception
+    {
+        DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+        XWikiDocument doc = mock(XWikiDocument.class);
+        when(doc.getDocumentReference()).thenReturn(documentReference);
+        when(doc.getFullName()).thenReturn("Space.Page");
+
+        DocumentReference classA = new DocumentReference("wiki", "Space", "ClassA");
+        DocumentReference classB = new DocumentReference("wiki", "Space", "ClassB");
+        BaseObject objectA1 = mockObject(1L, classA, documentReference);
+        BaseObject objectA2 = mockObject(2L, classA, documentReference);
+        BaseObject objectB = mockObject(3L, classB, documentReference);
+
+        // The properties of the document objects, including an object which is not part of the batch (e.g. a group
+        // object which is loaded differently).
+        Query propertiesQuery = mock(Query.class);
+        when(session.createQuery("select prop.id.id, prop.id.name, prop.classType "
+            + "from BaseProperty as prop, BaseObject as bobject "
+            + "where bobject.name = :name and bobject.id = prop.id.id")).thenReturn(propertiesQuery);
+        when(propertiesQuery.list()).thenReturn(Arrays.<Object>asList(
+            new Object[] {1L, "title", StringProperty.class.getName()},
+            new Object[] {2L, "title", StringProperty.class.getName()},
+            new Object[] {3L, "count", IntegerProperty.class.getName()},
+            new Object[] {3L, "tags", DBStringListProperty.class.getName()},
+            new Object[] {3L, "description", LargeStringProperty.class.getName()},
+            new Object[] {4L, "member", StringProperty.class.getName()}));
+
+        StringProperty title1 = createProperty(new StringProperty(), 1L, "title");
+        title1.setValue("First");
+        StringProperty title2 = createProperty(new StringProperty(), 2L, "title");
+        // Oracle returns NULL for empty strings
+        title2.setValue(null);
+        StringProperty member = createProperty(new StringProperty(), 4L, "member");
+        Query stringQuery = mockPropertiesQuery(StringProperty.class, "");
+        when(stringQuery.list()).thenReturn(Arrays.<Object>asList(title1, title2, member));
+
+        IntegerProperty count = createProperty(new IntegerProperty(), 3L, "count");
+        count.setValue(42);
+        Query integerQuery = mockPropertiesQuery(IntegerProperty.class, "");
+        when(integerQuery.list()).thenReturn(Collections.<Object>singletonList(count));
+
+        DBStringListProperty tags = createProperty(new DBStringListProperty(), 3L, "tags");
+        tags.setList(Arrays.asList("one", "two"));
+        Query listQuery = mockPropertiesQuery(DBStringListProperty.class, " left join fetch prop.list");
+        when(listQuery.list()).thenReturn(Collections.<Object>singletonList(tags));
+
+        // The description is stored in a table which doesn't match its type so it's not found by the batch query.
+        Query largeStringQuery = mockPropertiesQuery(LargeStringProperty.class, "");
+        when(largeStringQuery.list()).thenReturn(Collections.emptyList());
+
+        store.loadXWikiCollectionsInternal(Arrays.asList(objectA1, objectA2, objectB), doc, xcontext);
+
+        // One query to list the properties and one per property type
+        verify(propertiesQuery).setText("name", "Space.Page");
+        verify(stringQuery).setString("classType", StringProperty.class.getName());
+        verify(integerQuery).setString("classType", IntegerProperty.class.getName());
+        verify(listQuery).setString("classType", DBStringListProperty.class.getName());
+        verify(largeStringQuery).setString("classType", LargeStringProperty.class.getName());
+
+        verify(objectA1).addField("title", title1);
+        verify(objectA2).addField("title", title2);
+        verify(objectB).addField("count", count);
+        verify(objectB).addField("tags", tags);
+
+        assertSame(objectA1, title1.getObject());
+        assertEquals("", title2.getValue());
+        assertFalse(title1.isValueDirty());
+        assertFalse(tags.isValueDirty());
+
+        // The property which was not found is loaded on its own
+        ArgumentCaptor<BaseProperty> propertyCaptor = ArgumentCaptor.forClass(BaseProperty.class);
+        verify(objectB).addField(eq("description"), propertyCaptor.capture());
+        assertTrue(propertyCaptor.getValue() instanceof LargeStringProperty);
+        verify(session).load(same(propertyCaptor.getValue()), any(Serializable.class));
+
+        // The property of the object which is not part of the batch is ignored
+        verify(objectA1, never()).addField(eq("member"), any(BaseProperty.class));
+        verify(objectA2, never()).addField(eq("member"), any(BaseProperty.class));
+        verify(objectB, never()).addField(eq("member"), any(BaseProperty.class));
+    }
+
+    private BaseObject mockObject(long id, DocumentReference classReference, DocumentReference documentReference)
+    {
+        BaseObject object = mock(BaseObject.class);
+        when(object.getId()).thenReturn(id);
+        when(object.getXClassReference()).thenReturn(classReference);
+        when(object.getDocumentReference()).thenReturn(documentReference);
+        return object;
+    }
+
+    private <T extends BaseProperty> T createProperty(T property, long id, String name)
+    {
+        property.setId(id);
+        property.setName(name);
+        return property;
+    }
+
+    private Query mockPropertiesQuery(Class<? extends BaseProperty> propertyClass, String join)
+    {
+        Query query = mock(Query.class);
+        when(session.createQuery("select prop from " + propertyClass.getName() + " as prop" + join
+            + " where prop.classType = :classType"
+            + " and prop.id.id in (select bobject.id from BaseObject as bobject where bobject.name = :name)"))
+                .thenReturn(query);
+        return query;
+    }
 }
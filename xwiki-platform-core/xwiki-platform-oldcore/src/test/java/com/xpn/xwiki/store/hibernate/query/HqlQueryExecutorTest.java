@@ -29,7 +29,11 @@
 import javax.inject.Provider;
 
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.engine.NamedSQLQueryDefinition;
 import org.junit.Before;
@@ -44,6 +48,7 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.WrappingQuery;
 import org.xwiki.query.internal.DefaultQuery;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
@@ -57,12 +62,15 @@
 import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -437,4 +445,68 @@ public void executeUpdateWithoutProgrammingRight() throws Exception
                 expected.getMessage());
         }
     }
+
+    @Test
+    public void iterate() throws Exception
+    {
+        Session session = mock(Session.class);
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        when(this.store.getSessionFactory()).thenReturn(sessionFactory);
+        when(sessionFactory.openSession()).thenReturn(session);
+        Transaction transaction = mock(Transaction.class);
+        when(session.beginTransaction()).thenReturn(transaction);
+
+        org.hibernate.Query hibernateQuery = mock(org.hibernate.Query.class);
+        when(session.createQuery("select doc.fullName from XWikiDocument doc where doc.space='Main'"))
+            .thenReturn(hibernateQuery);
+        ScrollableResults results = mock(ScrollableResults.class);
+        when(hibernateQuery.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(results);
+        when(results.next()).thenReturn(true, true, true, false);
+        when(results.get()).thenReturn(new Object[] { "Main.Page1" }, new Object[] { "Main.Page2" },
+            new Object[] { "Main.Page3" });
+
+        // Filter out the second result
+        QueryFilter filter = mock(QueryFilter.class);
+        when(filter.filterStatement(anyString(), anyString())).then(returnsFirstArg());
+        when(filter.filterQuery(any(Query.class))).then(returnsFirstArg());
+        when(filter.filterResults(anyList())).then(invocation -> {
+            List<Object> filteredResults = invocation.getArgument(0);
+            filteredResults.remove("Main.Page2");
+            return filteredResults;
+        });
+
+        DefaultQuery query = new DefaultQuery("where doc.space='Main'", Query.HQL, this.executor);
+        query.addFilter(filter);
+        query.setFetchSize(2);
+
+        try (QueryIterator<String> iterator = this.executor.iterate(query)) {
+            assertEquals("Main.Page1", iterator.next());
+            assertEquals("Main.Page3", iterator.next());
+            assertFalse(iterator.hasNext());
+        }
+
+        verify(hibernateQuery).setFetchSize(2);
+        verify(hibernateQuery).setReadOnly(true);
+        // The filter is applied on each group of fetched results
+        verify(filter, times(2)).filterResults(anyList());
+        verify(results).close();
+        verify(session).close();
+    }
+
+    @Test
+    public void iterateWithoutProgrammingRight() throws Exception
+    {
+        this.hasProgrammingRight = false;
+
+        DefaultQuery query = new DefaultQuery("delete from XWikiDocument as doc", Query.HQL, this.executor);
+        query.checkCurrentAuthor(true);
+
+        try {
+            this.executor.iterate(query);
+            fail("Should have thrown an exception here");
+        } catch (QueryException expected) {
+            assertEquals("The query requires programming right. Query statement = [delete from XWikiDocument as doc]",
+                expected.getMessage());
+        }
+    }
 }
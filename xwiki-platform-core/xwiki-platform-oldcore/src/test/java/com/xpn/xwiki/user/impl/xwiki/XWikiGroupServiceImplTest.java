@@ -20,12 +20,16 @@
 package com.xpn.xwiki.user.impl.xwiki;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.query.Query;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -36,7 +40,12 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ReferenceComponentList
 public class XWikiGroupServiceImplTest
@@ -94,4 +103,32 @@ public void testListMemberForGroup() throws XWikiException
         assertEquals(new HashSet<String>(Arrays.asList(this.userWithSpaces.getFullName())), new HashSet<String>(
             this.groupService.listMemberForGroup(this.group.getFullName(), this.oldcore.getXWikiContext())));
     }
+
+    @Test
+    public void updateGroupInvalidatesOnlyModifiedMembers() throws Exception
+    {
+        Cache<Collection<DocumentReference>> cache = mock(Cache.class);
+        this.groupService.memberGroupsCache = cache;
+
+        Query query = mock(Query.class);
+        when(query.bindValue(anyString(), any())).thenReturn(query);
+        when(query.execute()).thenReturn(Arrays.<Object>asList(this.group.getFullName()));
+        when(this.oldcore.getQueryManager().getNamedQuery("listGroupsForUser")).thenReturn(query);
+
+        this.groupService.getAllGroupsReferencesForMember(this.user.getDocumentReference(), 0, 0,
+            this.oldcore.getXWikiContext());
+        this.groupService.getAllGroupsReferencesForMember(this.userWithSpaces.getDocumentReference(), 0, 0,
+            this.oldcore.getXWikiContext());
+
+        XWikiDocument newGroup = this.group.clone();
+        newGroup.setOriginalDocument(this.group);
+        newGroup.newXObject(new DocumentReference("wiki", "XWiki", "XWikiGroups"), this.oldcore.getXWikiContext())
+            .setStringValue("member", this.userWithSpaces.getFullName());
+
+        this.groupService.onEvent(new DocumentUpdatedEvent(), newGroup, this.oldcore.getXWikiContext());
+
+        verify(cache).remove("wiki/wiki:XWiki.user with spaces");
+        verify(cache, never()).remove("wiki/wiki:XWiki.user");
+        verify(cache, never()).removeAll();
+    }
 }
@@ -184,6 +184,37 @@ public void downloadWhenIfModifiedSinceAfter() throws XWikiException, IOExceptio
         assertNull(this.action.render(this.oldcore.getXWikiContext()));
     }
 
+    @Test
+    public void downloadWhenIfNoneMatchSame() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, null, -1l, DEFAULT_FILE_NAME);
+        String etag = getETag(d);
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"other\", " + etag);
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setHeader("ETag", etag);
+        verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void downloadWhenIfNoneMatchDifferent() throws XWikiException, IOException
+    {
+        Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        // If-None-Match takes precedence over If-Modified-Since.
+        setRequestExpectations(DEFAULT_URI, null, null, null, d.getTime() + 1000l, DEFAULT_FILE_NAME);
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"other\"");
+
+        assertNull(this.action.render(this.oldcore.getXWikiContext()));
+
+        verify(this.response).setHeader("ETag", getETag(d));
+        verifyResponseExpectations(d.getTime(), this.fileContent.length);
+        verifyOutputExpectations(0, this.fileContent.length);
+    }
+
     @Test(expected = XWikiException.class)
     public void downloadWhenMissingFile() throws XWikiException
     {
@@ -598,6 +629,12 @@ private void createAttachment(Date d, String name) throws IOException
         this.document.getAttachmentList().add(filetxt);
     }
 
+    private String getETag(Date d)
+    {
+        return String.format("\"%s-%s-%s\"", this.document.getAttachment(DEFAULT_FILE_NAME).getVersion(), d.getTime(),
+            this.fileContent.length);
+    }
+
     private void setRequestExpectations(String uri, String id, String forceDownload, String range, long modifiedSince,
         String attachmentName)
     {
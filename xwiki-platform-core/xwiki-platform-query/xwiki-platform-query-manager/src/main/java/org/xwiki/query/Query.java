@@ -21,6 +21,12 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.xwiki.stability.Unstable;
 
 /**
  * This is a Query interface, representing all queries in various languages for various stores.
@@ -177,4 +183,66 @@ default QueryParameter bindValue(String var)
      * @throws QueryException if something goes wrong.
      */
     <T> List<T> execute() throws QueryException;
+
+    /**
+     * @param fetchSize the number of results to get from the storage at once when iterating over the results with
+     *            {@link #iterate()}, 0 to use the default of the query executor
+     * @return this query
+     * @since 9.12RC1
+     */
+    @Unstable
+    default Query setFetchSize(int fetchSize)
+    {
+        return this;
+    }
+
+    /**
+     * @return the number of results to get from the storage at once when iterating over the results with
+     *         {@link #iterate()}, 0 to use the default of the query executor
+     * @since 9.12RC1
+     */
+    @Unstable
+    default int getFetchSize()
+    {
+        return 0;
+    }
+
+    /**
+     * Execute the query and iterate over its results without loading all of them in memory (when supported by the
+     * query executor). The {@link QueryFilter}s are applied on each group of {@link #getFetchSize()} results.
+     * <p>
+     * The returned iterator must be closed when not used anymore. Since an open iterator holds storage resources,
+     * iterating over the results of a query from a script requires programming right.
+     * <p>
+     * Whether the results are really streamed depends on the database driver. For example the MySQL driver ignores the
+     * fetch size and loads all the results in memory unless the {@code useCursorFetch=true} option is set in the JDBC
+     * connection URL.
+     *
+     * @param <T> expected type of elements in the result list
+     * @return an iterator over the results of the query
+     * @throws QueryException if something goes wrong
+     * @since 9.12RC1
+     */
+    @Unstable
+    default <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return QueryIterator.of(this.<T>execute());
+    }
+
+    /**
+     * Same as {@link #iterate()} but return a {@link Stream}. The stream must be closed when not used anymore.
+     *
+     * @param <T> expected type of elements in the result list
+     * @return a stream of the results of the query
+     * @throws QueryException if something goes wrong
+     * @since 9.12RC1
+     */
+    @Unstable
+    default <T> Stream<T> stream() throws QueryException
+    {
+        QueryIterator<T> iterator = iterate();
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(iterator::close);
+    }
 }
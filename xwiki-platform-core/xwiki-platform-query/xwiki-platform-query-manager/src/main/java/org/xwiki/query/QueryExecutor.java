@@ -22,6 +22,7 @@
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Execute a query for a given language (one implementation per language).
@@ -41,4 +42,18 @@
      * @see Query#execute()
      */
     <T> List<T> execute(Query query) throws QueryException;
+
+    /**
+     * @param <T> expected type of elements in the result list
+     * @param query query to execute
+     * @return an iterator over the results of the query
+     * @throws QueryException if something goes wrong
+     * @see Query#iterate()
+     * @since 9.12RC1
+     */
+    @Unstable
+    default <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        return QueryIterator.of(this.<T>execute(query));
+    }
 }
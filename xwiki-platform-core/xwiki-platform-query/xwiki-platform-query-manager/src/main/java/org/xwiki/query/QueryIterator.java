@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Iterate over the results of a {@link Query} without loading all of them in memory. The iterator is automatically
+ * closed when the last result is reached but it needs to be explicitly closed when the iteration is stopped before
+ * that, generally using a try-with-resources statement.
+ *
+ * @param <T> the type of the results
+ * @version $Id$
+ * @since 9.12RC1
+ * @see Query#iterate()
+ */
+@Unstable
+public interface QueryIterator<T> extends Iterator<T>, AutoCloseable
+{
+    /**
+     * Release the resources (database connection, etc.) associated to this iterator.
+     */
+    @Override
+    void close();
+
+    /**
+     * @param <T> the type of the results
+     * @param results the results already loaded in memory
+     * @return an iterator over the passed results
+     */
+    static <T> QueryIterator<T> of(List<T> results)
+    {
+        Iterator<T> iterator = results.iterator();
+
+        return new QueryIterator<T>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next()
+            {
+                return iterator.next();
+            }
+
+            @Override
+            public void close()
+            {
+                // Nothing to release
+            }
+        };
+    }
+}
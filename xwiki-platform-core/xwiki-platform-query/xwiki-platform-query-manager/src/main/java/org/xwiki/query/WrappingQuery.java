@@ -157,4 +157,22 @@ public <T> List<T> execute() throws QueryException
     {
         return getWrappedQuery().execute();
     }
+
+    @Override
+    public Query setFetchSize(int fetchSize)
+    {
+        return getWrappedQuery().setFetchSize(fetchSize);
+    }
+
+    @Override
+    public int getFetchSize()
+    {
+        return getWrappedQuery().getFetchSize();
+    }
+
+    @Override
+    public <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return getWrappedQuery().iterate();
+    }
 }
@@ -30,6 +30,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryParameter;
 import org.xwiki.query.SecureQuery;
 
@@ -86,6 +87,11 @@ public class DefaultQuery implements SecureQuery
      */
     private int offset;
 
+    /**
+     * field for {@link Query#setFetchSize(int)}.
+     */
+    private int fetchSize;
+
     /**
      * @see #isCurrentAuthorChecked()
      */
@@ -232,6 +238,19 @@ public Query setOffset(int offset)
         return this;
     }
 
+    @Override
+    public int getFetchSize()
+    {
+        return this.fetchSize;
+    }
+
+    @Override
+    public Query setFetchSize(int fetchSize)
+    {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
     @Override
     public boolean isCurrentAuthorChecked()
     {
@@ -296,6 +315,12 @@ public <T> List<T> execute() throws QueryException
         return getExecuter().execute(this);
     }
 
+    @Override
+    public <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return getExecuter().iterate(this);
+    }
+
     /**
      * @return QueryExecutor interface for execute the query.
      */
@@ -27,6 +27,7 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryManager;
 import org.xwiki.query.QueryParameter;
 import org.xwiki.query.SecureQuery;
@@ -239,12 +240,31 @@ public int getOffset()
         return this.query.getOffset();
     }
 
+    @Override
+    public Query setFetchSize(int fetchSize)
+    {
+        this.query.setFetchSize(fetchSize);
+        return this;
+    }
+
+    @Override
+    public int getFetchSize()
+    {
+        return this.query.getFetchSize();
+    }
+
     @Override
     public <T> List<T> execute() throws QueryException
     {
         return this.query.execute();
     }
 
+    @Override
+    public <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return this.query.iterate();
+    }
+
     @Override
     public boolean isCurrentAuthorChecked()
     {
@@ -119,4 +119,52 @@ public void executeSecureQueryWithoutCheckCurrentAuthor() throws QueryException
         assertTrue(query.isCurrentAuthorChecked());
         ;
     }
+
+    @Test
+    public void iterateNotSecureQueryWithoutProgrammingRight()
+    {
+        this.hasProgrammingRight = false;
+
+        // Create a Query not implementing SecureQuery
+        Query query = mock(Query.class);
+
+        try {
+            this.executor.iterate(query);
+            fail("Should have thrown an exception here");
+        } catch (QueryException expected) {
+            assertEquals("Unsecure query require programming right. Query statement = [null]",
+                expected.getMessage());
+        }
+    }
+
+    @Test
+    public void iterateSecureQueryWithoutProgrammingRight()
+    {
+        this.hasProgrammingRight = false;
+
+        DefaultQuery query = new DefaultQuery("statement", "language", this.executor);
+
+        try {
+            this.executor.iterate(query);
+            fail("Should have thrown an exception here");
+        } catch (QueryException expected) {
+            assertEquals(
+                "Iterating over the results of a query require programming right. Query statement = [statement]",
+                expected.getMessage());
+        }
+    }
+
+    @Test
+    public void iterateSecureQueryWithoutCheckCurrentAuthor() throws QueryException
+    {
+        this.hasProgrammingRight = true;
+
+        DefaultQuery query = new DefaultQuery("statement", "language", this.executor);
+
+        assertFalse(query.isCurrentAuthorChecked());
+
+        this.executor.iterate(query);
+
+        assertTrue(query.isCurrentAuthorChecked());
+    }
 }
@@ -39,6 +39,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryManager;
 import org.xwiki.query.SecureQuery;
 
@@ -47,6 +48,17 @@
 @Singleton
 public class XWQLQueryExecutor implements QueryExecutor
 {
+    /**
+     * Execute the native query corresponding to the XWQL query.
+     *
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    private interface NativeQueryExecution<R>
+    {
+        R execute(Query nativeQuery) throws QueryException;
+    }
+
     @Inject
     @Named("hql")
     private QueryTranslator translator;
@@ -77,6 +89,17 @@ public static boolean isShortFormStatement(String statement)
 
     @Override
     public <T> List<T> execute(Query query) throws QueryException
+    {
+        return execute(query, nativeQuery -> nativeQuery.<T>execute());
+    }
+
+    @Override
+    public <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        return execute(query, nativeQuery -> nativeQuery.<T>iterate());
+    }
+
+    private <R> R execute(Query query, NativeQueryExecution<R> execution) throws QueryException
     {
         EntityReference currentEntityReference = this.context.getCurrentEntityReference();
 
@@ -98,6 +121,7 @@ public <T> List<T> execute(Query query) throws QueryException
                     this.translator.getOutputLanguage());
             nativeQuery.setLimit(query.getLimit());
             nativeQuery.setOffset(query.getOffset());
+            nativeQuery.setFetchSize(query.getFetchSize());
             nativeQuery.setWiki(query.getWiki());
             if (query.getFilters() != null) {
                 for (QueryFilter filter : query.getFilters()) {
@@ -121,7 +145,7 @@ public <T> List<T> execute(Query query) throws QueryException
                 ((SecureQuery) nativeQuery).checkCurrentUser(((SecureQuery) query).isCurrentUserChecked());
             }
 
-            return nativeQuery.execute();
+            return execution.execute(nativeQuery);
         } catch (Exception e) {
             if (e instanceof QueryException) {
                 throw (QueryException) e;
@@ -104,6 +104,68 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final int SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT = 100000;
 
+    /**
+     * The name of the configuration property containing the number of index threads.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String SOLR_INDEXER_THREADS_PROPERTY = "solr.indexer.threads";
+
+    /**
+     * The default number of index threads.
+     * 
+     * @since 9.12RC1
+     */
+    public static final int SOLR_INDEXER_THREADS_DEFAULT = 1;
+
+    /**
+     * The name of the configuration property containing the maximum number of characters extracted from an
+     * attachment.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_MAXTEXTLENGTH_PROPERTY =
+        "solr.indexer.attachment.maxTextLength";
+
+    /**
+     * The default maximum number of characters extracted from an attachment (same as Tika's default).
+     * 
+     * @since 9.12RC1
+     */
+    public static final int SOLR_INDEXER_ATTACHMENT_MAXTEXTLENGTH_DEFAULT = 100000;
+
+    /**
+     * The name of the configuration property containing the maximum number of seconds spent extracting the text of an
+     * attachment.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_EXTRACTIONTIMEOUT_PROPERTY =
+        "solr.indexer.attachment.extractionTimeout";
+
+    /**
+     * The default maximum number of seconds spent extracting the text of an attachment.
+     * 
+     * @since 9.12RC1
+     */
+    public static final int SOLR_INDEXER_ATTACHMENT_EXTRACTIONTIMEOUT_DEFAULT = 60;
+
+    /**
+     * The name of the configuration property containing the maximum size (in megabytes) of the extracted attachment
+     * text kept on disk.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_TEXTCACHESIZE_PROPERTY =
+        "solr.indexer.attachment.textCacheSize";
+
+    /**
+     * The default maximum size (in megabytes) of the extracted attachment text kept on disk.
+     * 
+     * @since 9.12RC1
+     */
+    public static final int SOLR_INDEXER_ATTACHMENT_TEXTCACHESIZE_DEFAULT = 500;
+
     /**
      * The name of the configuration property indicating if a synchronization should be run at startup.
      */
@@ -114,6 +176,20 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final boolean SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT = true;
 
+    /**
+     * The name of the configuration property containing the number of wikis synchronized in parallel.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String SOLR_SYNCHRONIZATION_THREADS_PROPERTY = "solr.synchronization.threads";
+
+    /**
+     * The default number of wikis synchronized in parallel.
+     * 
+     * @since 9.12RC1
+     */
+    public static final int SOLR_SYNCHRONIZATION_THREADS_DEFAULT = 2;
+
     /**
      * The Solr configuration source.
      */
@@ -160,9 +236,43 @@ public int getIndexerQueueCapacity()
             .getProperty(SOLR_INDEXER_QUEUE_CAPACITY_PROPERTY, SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT);
     }
 
+    @Override
+    public int getIndexerThreads()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_THREADS_PROPERTY, SOLR_INDEXER_THREADS_DEFAULT);
+    }
+
+    @Override
+    public int getAttachmentTextMaxLength()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_ATTACHMENT_MAXTEXTLENGTH_PROPERTY,
+            SOLR_INDEXER_ATTACHMENT_MAXTEXTLENGTH_DEFAULT);
+    }
+
+    @Override
+    public int getAttachmentTextExtractionTimeout()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_ATTACHMENT_EXTRACTIONTIMEOUT_PROPERTY,
+            SOLR_INDEXER_ATTACHMENT_EXTRACTIONTIMEOUT_DEFAULT);
+    }
+
+    @Override
+    public int getAttachmentTextCacheSize()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_ATTACHMENT_TEXTCACHESIZE_PROPERTY,
+            SOLR_INDEXER_ATTACHMENT_TEXTCACHESIZE_DEFAULT);
+    }
+
     @Override
     public boolean synchronizeAtStartup()
     {
         return this.configuration.getProperty(SOLR_SYNCHRONIZE_AT_STARTUP, SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT);
     }
+
+    @Override
+    public int getSynchronizationThreads()
+    {
+        return this.configuration.getProperty(SOLR_SYNCHRONIZATION_THREADS_PROPERTY,
+            SOLR_SYNCHRONIZATION_THREADS_DEFAULT);
+    }
 }
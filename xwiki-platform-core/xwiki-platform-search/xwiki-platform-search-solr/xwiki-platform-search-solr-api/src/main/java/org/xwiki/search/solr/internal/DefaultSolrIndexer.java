@@ -20,8 +20,14 @@
 package org.xwiki.search.solr.internal;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -61,8 +67,10 @@
  * Default implementation of {@link SolrIndexer}.
  * <p>
  * This implementation does not directly process the given leaf-references, but adds them to a processing queue, in the
- * order they were received. The {@link Runnable} part of this implementation is the one that sequentially reads and
- * processes the queue.
+ * order they were received. The resolved references are then partitioned between a configurable number of index
+ * threads, all the operations on a given reference always ending up in the same index queue so that they are applied in
+ * order. An operation on a reference which is already waiting in the index queue is merged with the waiting one so that
+ * only the latest operation is sent to the Solr server.
  * 
  * @version $Id$
  * @since 5.1M2
@@ -73,7 +81,7 @@
 // is shutdown. We can't stop the threads immediately because the resolve & index queues may have entries that are being
 // processed.
 @DisposePriority(500)
-public class DefaultSolrIndexer implements SolrIndexer, Initializable, Disposable, Runnable
+public class DefaultSolrIndexer implements SolrIndexer, Initializable, Disposable
 {
     /**
      * Index queue entry.
@@ -93,10 +101,21 @@ public class DefaultSolrIndexer implements SolrIndexer, Initializable, Disposabl
         public String deleteQuery;
 
         /**
-         * The indexing operation to perform.
+         * The indexing operation to perform. Can be modified by the resolver thread as long as the entry is still
+         * pending in the {@link IndexWorker}.
          */
         public IndexOperation operation;
 
+        /**
+         * The number of index threads which did not reach the delete query yet.
+         */
+        public AtomicInteger remainingWorkers;
+
+        /**
+         * Released once the delete query has been executed.
+         */
+        public CountDownLatch executed;
+
         /**
          * @param indexReference the reference of the entity to index.
          * @param operation the indexing operation to perform.
@@ -117,6 +136,19 @@ public IndexQueueEntry(String deleteQuery, IndexOperation operation)
             this.operation = operation;
         }
 
+        /**
+         * @param deleteQuery the query used to filter entries to delete.
+         * @param operation the indexing operation to perform.
+         * @param workers the number of index threads which have to reach the query before it's executed
+         */
+        public IndexQueueEntry(String deleteQuery, IndexOperation operation, int workers)
+        {
+            this(deleteQuery, operation);
+
+            this.remainingWorkers = new AtomicInteger(workers);
+            this.executed = new CountDownLatch(1);
+        }
+
         @Override
         public String toString()
         {
@@ -129,6 +161,9 @@ public String toString()
                 case DELETE:
                     str = "DELETE " + this.deleteQuery;
                     break;
+                case FLUSH:
+                    str = "FLUSH";
+                    break;
                 case STOP:
                     str = "STOP";
                     break;
@@ -163,6 +198,11 @@ public String toString()
          */
         public IndexOperation operation;
 
+        /**
+         * The entry to send to all the index threads when the operation is {@link IndexOperation#FLUSH}.
+         */
+        public IndexQueueEntry flushEntry;
+
         /**
          * @param reference the reference of the entity to index.
          * @param recurse also apply operation to reference children.
@@ -198,14 +238,20 @@ public void runInternal()
                 }
 
                 if (queueEntry == RESOLVE_QUEUE_ENTRY_STOP) {
-                    // Stop the index thread: clear the queue and send the stop signal without blocking.
-                    indexQueue.clear();
-                    indexQueue.offer(INDEX_QUEUE_ENTRY_STOP);
+                    // Stop the index threads: clear the queues and send the stop signal without blocking.
+                    for (IndexWorker worker : indexWorkers) {
+                        worker.stop();
+                    }
                     break;
                 }
 
                 try {
-                    if (queueEntry.operation == IndexOperation.INDEX) {
+                    if (queueEntry.operation == IndexOperation.FLUSH) {
+                        // All the index threads have to commit the operations they received before
+                        for (IndexWorker worker : indexWorkers) {
+                            worker.putFlush(queueEntry.flushEntry);
+                        }
+                    } else if (queueEntry.operation == IndexOperation.INDEX) {
                         Iterable<EntityReference> references;
                         if (queueEntry.recurse) {
                             references = solrRefereceResolver.getReferences(queueEntry.reference);
@@ -214,14 +260,21 @@ public void runInternal()
                         }
 
                         for (EntityReference reference : references) {
-                            indexQueue.put(new IndexQueueEntry(reference, queueEntry.operation));
+                            getIndexWorker(reference).put(reference, queueEntry.operation);
                         }
                     } else {
                         if (queueEntry.recurse) {
-                            indexQueue.put(new IndexQueueEntry(solrRefereceResolver.getQuery(queueEntry.reference),
-                                queueEntry.operation));
+                            // We don't know which references are targeted by the query so all the index threads have
+                            // to reach it, in order with the operations they already have in their queue, before it's
+                            // executed.
+                            IndexQueueEntry deleteEntry = new IndexQueueEntry(
+                                solrRefereceResolver.getQuery(queueEntry.reference), queueEntry.operation,
+                                indexWorkers.length);
+                            for (IndexWorker worker : indexWorkers) {
+                                worker.putQuery(deleteEntry);
+                            }
                         } else if (queueEntry.reference != null) {
-                            indexQueue.put(new IndexQueueEntry(queueEntry.reference, queueEntry.operation));
+                            getIndexWorker(queueEntry.reference).put(queueEntry.reference, queueEntry.operation);
                         }
                     }
                 } catch (Throwable e) {
@@ -234,6 +287,298 @@ public void runInternal()
         }
     }
 
+    /**
+     * Read and process one partition of the index operations.
+     * 
+     * @version $Id$
+     */
+    private class IndexWorker implements Runnable
+    {
+        /**
+         * The queue of index operation to perform.
+         */
+        private final BlockingQueue<IndexQueueEntry> indexQueue;
+
+        /**
+         * The entries which are in the queue and not yet processed, indexed by reference. Only accessed while holding
+         * the lock on the map itself.
+         */
+        private final Map<EntityReference, IndexQueueEntry> pendingEntries = new HashMap<>();
+
+        /**
+         * The size of the not yet sent batch.
+         */
+        private volatile int batchSize;
+
+        /**
+         * @param capacity the maximum size of the queue
+         */
+        IndexWorker(int capacity)
+        {
+            this.indexQueue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Add an operation on the passed reference to the queue or, if an operation on the same reference is already
+         * waiting in the queue, replace it.
+         * 
+         * @param reference the reference of the entity to index
+         * @param operation the indexing operation to perform
+         * @throws InterruptedException if interrupted while waiting for space in the queue
+         */
+        void put(EntityReference reference, IndexOperation operation) throws InterruptedException
+        {
+            IndexQueueEntry entry;
+            synchronized (this.pendingEntries) {
+                IndexQueueEntry pendingEntry = this.pendingEntries.get(reference);
+                if (pendingEntry != null) {
+                    // Only the latest operation matters
+                    pendingEntry.operation = operation;
+                    coalescedCount.incrementAndGet();
+
+                    return;
+                }
+
+                entry = new IndexQueueEntry(reference, operation);
+                this.pendingEntries.put(reference, entry);
+            }
+
+            // Don't hold the lock while waiting for space in the queue
+            this.indexQueue.put(entry);
+        }
+
+        /**
+         * Add an operation targeting all the entries matching a query. The same entry is added to all the index queues.
+         * 
+         * @param entry the operation, with the query used to filter entries to delete
+         * @throws InterruptedException if interrupted while waiting for space in the queue
+         */
+        void putQuery(IndexQueueEntry entry) throws InterruptedException
+        {
+            // The operations added after the query must not be merged with the ones added before it
+            synchronized (this.pendingEntries) {
+                this.pendingEntries.clear();
+            }
+
+            this.indexQueue.put(entry);
+        }
+
+        /**
+         * Add a request to commit the operations received before. The same entry is added to all the index queues.
+         * 
+         * @param entry the flush request
+         * @throws InterruptedException if interrupted while waiting for space in the queue
+         */
+        void putFlush(IndexQueueEntry entry) throws InterruptedException
+        {
+            // Unlike a delete query, the operations added after the flush can be merged with the ones added before it
+            this.indexQueue.put(entry);
+        }
+
+        /**
+         * Clear the queue and send the stop signal without blocking.
+         */
+        void stop()
+        {
+            this.indexQueue.clear();
+            this.indexQueue.offer(INDEX_QUEUE_ENTRY_STOP);
+        }
+
+        /**
+         * @return the number of operations waiting in the queue or in the not yet sent batch
+         */
+        int size()
+        {
+            return this.indexQueue.size() + this.batchSize;
+        }
+
+        @Override
+        public void run()
+        {
+            logger.debug("Start SOLR indexer thread");
+
+            while (!Thread.interrupted()) {
+                // Block until there is at least one entry in the queue
+                IndexQueueEntry queueEntry = null;
+                try {
+                    queueEntry = this.indexQueue.take();
+                } catch (InterruptedException e) {
+                    logger.warn("The SOLR index thread has been interrupted", e);
+
+                    queueEntry = INDEX_QUEUE_ENTRY_STOP;
+                }
+
+                // Add to the batch until either the batch size is achieved, the queue gets emptied or the
+                // INDEX_QUEUE_ENTRY_STOP is retrieved from the queue.
+                if (!processBatch(queueEntry)) {
+                    break;
+                }
+            }
+
+            logger.debug("Stop SOLR indexer thread");
+        }
+
+        /**
+         * Process a batch of operations that were just read from the index operations queue. This method also commits
+         * the batch when it finishes to process it.
+         * 
+         * @param queueEntry the batch to process
+         * @return {@code true} to wait for another batch, {@code false} to stop the indexing thread
+         */
+        private boolean processBatch(IndexQueueEntry queueEntry)
+        {
+            SolrInstance solrInstance = solrInstanceProvider.get();
+
+            int length = 0;
+
+            for (IndexQueueEntry batchEntry = queueEntry; batchEntry != null; batchEntry = this.indexQueue.poll()) {
+                if (batchEntry == INDEX_QUEUE_ENTRY_STOP) {
+                    // Discard the current batch and stop the indexing thread.
+                    return false;
+                }
+
+                IndexOperation operation = getOperation(batchEntry);
+
+                if (operation == IndexOperation.FLUSH) {
+                    if (this.batchSize > 0) {
+                        commit();
+                        length = 0;
+                    }
+                    if (batchEntry.remainingWorkers.decrementAndGet() == 0) {
+                        batchEntry.executed.countDown();
+                    }
+
+                    continue;
+                }
+
+                // For the current contiguous operations queue, group the changes
+                try {
+                    ecim.initialize(new ExecutionContext());
+
+                    if (IndexOperation.INDEX.equals(operation)) {
+                        LengthSolrInputDocument solrDocument = getSolrDocument(batchEntry.reference);
+                        if (solrDocument != null) {
+                            solrInstance.add(solrDocument);
+                            length += solrDocument.getLength();
+                            ++this.batchSize;
+                        }
+                    } else if (IndexOperation.DELETE.equals(operation)) {
+                        if (batchEntry.reference == null) {
+                            if (!deleteByQuery(batchEntry, solrInstance)) {
+                                // Another index thread executed the query
+                                continue;
+                            }
+                        } else {
+                            solrInstance.delete(solrRefereceResolver.getId(batchEntry.reference));
+                        }
+
+                        ++this.batchSize;
+                    }
+
+                    processedCount.incrementAndGet();
+                } catch (Throwable e) {
+                    logger.error("Failed to process entry [{}]", batchEntry, e);
+                } finally {
+                    execution.removeContext();
+                }
+
+                // Commit the index changes so that they become available to queries. This is a costly operation and
+                // that is the reason why we perform it at the end of the batch.
+                if (shouldCommit(length, this.batchSize)) {
+                    commit();
+                    length = 0;
+                }
+            }
+
+            // Commit what's left
+            if (this.batchSize > 0) {
+                commit();
+            }
+
+            return true;
+        }
+
+        /**
+         * Execute the delete query once all the index threads have applied the operations they received before it, so
+         * that it's neither overtaken by an earlier operation nor applied after an operation received after it. The
+         * last index thread reaching the query executes it while the others wait.
+         * 
+         * @param entry the delete query entry, shared by all the index threads
+         * @param solrInstance the Solr instance
+         * @return {@code true} if the query has been executed by this thread
+         * @throws Exception when failing to execute the query
+         */
+        private boolean deleteByQuery(IndexQueueEntry entry, SolrInstance solrInstance) throws Exception
+        {
+            // Apply the earlier operations of this thread before the query
+            if (this.batchSize > 0) {
+                commit();
+            }
+
+            if (entry.remainingWorkers.decrementAndGet() == 0) {
+                try {
+                    solrInstance.deleteByQuery(entry.deleteQuery);
+                } finally {
+                    entry.executed.countDown();
+                }
+
+                return true;
+            }
+
+            // Wait for the query to be executed. Stop waiting if the indexer is disposed because the other index
+            // threads might never reach the query.
+            while (!entry.executed.await(1, TimeUnit.SECONDS)) {
+                if (disposed) {
+                    break;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Remove the entry from the pending entries so that any new operation on the same reference is queued again.
+         * 
+         * @param entry the entry taken from the queue
+         * @return the latest operation associated with the entry
+         */
+        private IndexOperation getOperation(IndexQueueEntry entry)
+        {
+            if (entry.reference != null) {
+                synchronized (this.pendingEntries) {
+                    this.pendingEntries.remove(entry.reference, entry);
+
+                    return entry.operation;
+                }
+            }
+
+            return entry.operation;
+        }
+
+        /**
+         * Commit.
+         */
+        private void commit()
+        {
+            SolrInstance solrInstance = solrInstanceProvider.get();
+
+            try {
+                solrInstance.commit();
+            } catch (Exception e) {
+                logger.error("Failed to commit index changes to the Solr server. Rolling back.", e);
+
+                try {
+                    solrInstance.rollback();
+                } catch (Exception ex) {
+                    // Just log the failure.
+                    logger.error("Failed to rollback index changes.", ex);
+                }
+            }
+
+            this.batchSize = 0;
+        }
+    }
+
     /**
      * Stop resolver thread.
      */
@@ -286,20 +631,15 @@ public void runInternal()
     private JobExecutor jobs;
 
     /**
-     * The queue of index operation to perform.
+     * The index threads, each one processing its own partition of the index operations.
      */
-    private BlockingQueue<IndexQueueEntry> indexQueue;
+    private IndexWorker[] indexWorkers;
 
     /**
-     * The queue of resolve references and add them to the index queue.
+     * The queue of resolve references and add them to the index queues.
      */
     private BlockingQueue<ResolveQueueEntry> resolveQueue;
 
-    /**
-     * Thread in which the indexUpdater will be executed.
-     */
-    private Thread indexThread;
-
     /**
      * Thread in which the provided references children will be resolved.
      */
@@ -308,19 +648,30 @@ public void runInternal()
     /**
      * Indicate of the component has been disposed.
      */
-    private boolean disposed;
+    private volatile boolean disposed;
 
     /**
-     * The size of the not yet sent batch.
+     * The number of operations sent to the Solr server.
      */
-    private volatile int batchSize;
+    private final AtomicLong processedCount = new AtomicLong();
+
+    /**
+     * The number of operations merged with an already queued operation.
+     */
+    private final AtomicLong coalescedCount = new AtomicLong();
 
     @Override
     public void initialize() throws InitializationException
     {
-        // Initialize the queues before starting the threads.
+        // Initialize the queues before starting the threads. The configured capacity is shared between the index
+        // threads but each queue must be able to hold at least one entry in addition to the stop signal.
         this.resolveQueue = new LinkedBlockingQueue<>();
-        this.indexQueue = new LinkedBlockingQueue<>(this.configuration.getIndexerQueueCapacity());
+        int threads = Math.max(1, this.configuration.getIndexerThreads());
+        int capacity = Math.max(2, this.configuration.getIndexerQueueCapacity() / threads);
+        this.indexWorkers = new IndexWorker[threads];
+        for (int i = 0; i < threads; ++i) {
+            this.indexWorkers[i] = new IndexWorker(capacity);
+        }
 
         // Launch the resolve thread
         this.resolveThread = new Thread(new Resolver());
@@ -329,12 +680,14 @@ public void initialize() throws InitializationException
         this.resolveThread.start();
         this.resolveThread.setPriority(Thread.NORM_PRIORITY - 1);
 
-        // Launch the index thread
-        this.indexThread = new Thread(this);
-        this.indexThread.setName("XWiki Solr index thread");
-        this.indexThread.setDaemon(true);
-        this.indexThread.start();
-        this.indexThread.setPriority(Thread.NORM_PRIORITY - 1);
+        // Launch the index threads
+        for (int i = 0; i < threads; ++i) {
+            Thread indexThread = new Thread(this.indexWorkers[i]);
+            indexThread.setName(threads > 1 ? "XWiki Solr index thread " + i : "XWiki Solr index thread");
+            indexThread.setDaemon(true);
+            indexThread.start();
+            indexThread.setPriority(Thread.NORM_PRIORITY - 1);
+        }
     }
 
     @Override
@@ -348,124 +701,33 @@ public void dispose() throws ComponentLifecycleException
         this.resolveQueue.clear();
         this.resolveQueue.offer(RESOLVE_QUEUE_ENTRY_STOP);
 
-        // Stop the index thread. Clear the queue and send the stop signal without blocking. There should be enough
-        // space in the index queue before the special stop entry is added as long the the index queue capacity is
+        // Stop the index threads. Clear the queues and send the stop signal without blocking. There should be enough
+        // space in the index queues before the special stop entry is added as long the the index queue capacity is
         // greater than 1. In the worse case, the clear call will unblock the resolve thread (which was waiting because
-        // the index queue was full) and just one entry will be added to the queue before the special stop entry.
-        this.indexQueue.clear();
-        this.indexQueue.offer(INDEX_QUEUE_ENTRY_STOP);
-    }
-
-    @Override
-    public void run()
-    {
-        this.logger.debug("Start SOLR indexer thread");
-
-        while (!Thread.interrupted()) {
-            // Block until there is at least one entry in the queue
-            IndexQueueEntry queueEntry = null;
-            try {
-                queueEntry = this.indexQueue.take();
-            } catch (InterruptedException e) {
-                this.logger.warn("The SOLR index thread has been interrupted", e);
-
-                queueEntry = INDEX_QUEUE_ENTRY_STOP;
-            }
-
-            // Add to the batch until either the batch size is achieved, the queue gets emptied or the
-            // INDEX_QUEUE_ENTRY_STOP is retrieved from the queue.
-            if (!processBatch(queueEntry)) {
-                break;
-            }
+        // an index queue was full) and just one entry will be added to the queue before the special stop entry.
+        for (IndexWorker worker : this.indexWorkers) {
+            worker.stop();
         }
-
-        this.logger.debug("Stop SOLR indexer thread");
     }
 
     /**
-     * Process a batch of operations that were just read from the index operations queue. This method also commits the
-     * batch when it finishes to process it.
+     * All the operations on a document, whatever the locale of the passed reference, and on the entities it contains
+     * are handled by the same index thread so that they are applied in order.
      * 
-     * @param queueEntry the batch to process
-     * @return {@code true} to wait for another batch, {@code false} to stop the indexing thread
-     */
-    private boolean processBatch(IndexQueueEntry queueEntry)
-    {
-        SolrInstance solrInstance = this.solrInstanceProvider.get();
-
-        int length = 0;
-
-        for (IndexQueueEntry batchEntry = queueEntry; batchEntry != null; batchEntry = this.indexQueue.poll()) {
-            if (batchEntry == INDEX_QUEUE_ENTRY_STOP) {
-                // Discard the current batch and stop the indexing thread.
-                return false;
-            }
-
-            IndexOperation operation = batchEntry.operation;
-
-            // For the current contiguous operations queue, group the changes
-            try {
-                this.ecim.initialize(new ExecutionContext());
-
-                if (IndexOperation.INDEX.equals(operation)) {
-                    LengthSolrInputDocument solrDocument = getSolrDocument(batchEntry.reference);
-                    if (solrDocument != null) {
-                        solrInstance.add(solrDocument);
-                        length += solrDocument.getLength();
-                        ++this.batchSize;
-                    }
-                } else if (IndexOperation.DELETE.equals(operation)) {
-                    if (batchEntry.reference == null) {
-                        solrInstance.deleteByQuery(batchEntry.deleteQuery);
-                    } else {
-                        solrInstance.delete(this.solrRefereceResolver.getId(batchEntry.reference));
-                    }
-
-                    ++this.batchSize;
-                }
-            } catch (Throwable e) {
-                this.logger.error("Failed to process entry [{}]", batchEntry, e);
-            } finally {
-                this.execution.removeContext();
-            }
-
-            // Commit the index changes so that they become available to queries. This is a costly operation and that is
-            // the reason why we perform it at the end of the batch.
-            if (shouldCommit(length, this.batchSize)) {
-                commit();
-                length = 0;
-            }
-        }
-
-        // Commit what's left
-        if (this.batchSize > 0) {
-            commit();
-        }
-
-        return true;
-    }
-
-    /**
-     * Commit.
+     * @param reference the reference of the entity to index
+     * @return the index thread in charge of the passed reference
      */
-    private void commit()
+    private IndexWorker getIndexWorker(EntityReference reference)
     {
-        SolrInstance solrInstance = this.solrInstanceProvider.get();
-
-        try {
-            solrInstance.commit();
-        } catch (Exception e) {
-            this.logger.error("Failed to commit index changes to the Solr server. Rolling back.", e);
-
-            try {
-                solrInstance.rollback();
-            } catch (Exception ex) {
-                // Just log the failure.
-                this.logger.error("Failed to rollback index changes.", ex);
-            }
+        EntityReference partitionReference = reference;
+        EntityReference documentReference = reference.extractReference(EntityType.DOCUMENT);
+        if (documentReference != null) {
+            // Ignore the locale
+            partitionReference = new EntityReference(documentReference.getName(), EntityType.DOCUMENT,
+                documentReference.getParent());
         }
 
-        this.batchSize = 0;
+        return this.indexWorkers[(partitionReference.hashCode() & Integer.MAX_VALUE) % this.indexWorkers.length];
     }
 
     /**
@@ -554,10 +816,50 @@ private void addToQueue(EntityReference reference, boolean recurse, IndexOperati
         }
     }
 
+    @Override
+    public boolean flush() throws InterruptedException
+    {
+        IndexQueueEntry flushEntry =
+            new IndexQueueEntry((String) null, IndexOperation.FLUSH, this.indexWorkers.length);
+        ResolveQueueEntry entry = new ResolveQueueEntry(null, false, IndexOperation.FLUSH);
+        entry.flushEntry = flushEntry;
+
+        if (this.disposed) {
+            return false;
+        }
+        this.resolveQueue.put(entry);
+
+        // The queues are cleared when the indexer is disposed so the flush request might never be processed
+        while (!flushEntry.executed.await(1, TimeUnit.SECONDS)) {
+            if (this.disposed) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     @Override
     public int getQueueSize()
     {
-        return this.indexQueue.size() + this.resolveQueue.size() + this.batchSize;
+        int size = this.resolveQueue.size();
+        for (IndexWorker worker : this.indexWorkers) {
+            size += worker.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public long getProcessedCount()
+    {
+        return this.processedCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount()
+    {
+        return this.coalescedCount.get();
     }
 
     @Override
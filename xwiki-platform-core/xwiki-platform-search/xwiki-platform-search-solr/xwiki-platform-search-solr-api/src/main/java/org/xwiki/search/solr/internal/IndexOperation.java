@@ -39,6 +39,13 @@
 
     // General operations
 
+    /**
+     * Commit the operations received before.
+     *
+     * @since 9.12RC1
+     */
+    FLUSH,
+
     /**
      * Stop indexing thread.
      */
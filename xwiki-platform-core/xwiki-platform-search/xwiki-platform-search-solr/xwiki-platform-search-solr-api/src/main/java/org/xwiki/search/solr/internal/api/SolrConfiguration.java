@@ -73,9 +73,41 @@
      */
     int getIndexerQueueCapacity();
 
+    /**
+     * @return the number of threads used to index the entities, the queued entities being partitioned between those
+     *         threads according to their reference
+     * @since 9.12RC1
+     */
+    int getIndexerThreads();
+
+    /**
+     * @return the maximum number of characters extracted from the content of an attachment
+     * @since 9.12RC1
+     */
+    int getAttachmentTextMaxLength();
+
+    /**
+     * @return the maximum number of seconds spent extracting the text of an attachment
+     * @since 9.12RC1
+     */
+    int getAttachmentTextExtractionTimeout();
+
+    /**
+     * @return the maximum size, in megabytes, of the text extracted from the attachments kept on disk, 0 to not keep
+     *         it
+     * @since 9.12RC1
+     */
+    int getAttachmentTextCacheSize();
+
     /**
      * @return true if a full synchronization job between the database and SOLR index should be run when XWiki starts
      * @since 6.1M2
      */
     boolean synchronizeAtStartup();
+
+    /**
+     * @return the number of wikis compared in parallel with the SOLR index during a synchronization
+     * @since 9.12RC1
+     */
+    int getSynchronizationThreads();
 }
@@ -55,11 +55,34 @@
      */
     void delete(EntityReference reference, boolean recurse);
 
+    /**
+     * Wait until the operations added to the queue before this call have been sent to the Solr server and committed.
+     * 
+     * @return {@code true} if the operations have been committed, {@code false} if the indexer has been stopped before
+     * @throws InterruptedException if interrupted while waiting
+     * @since 9.12RC1
+     */
+    boolean flush() throws InterruptedException;
+
     /**
      * @return the number of element in the index/delete queue
      */
     int getQueueSize();
 
+    /**
+     * @return the number of index/delete operations sent to the Solr server since the indexer started, useful to
+     *         compute the indexing throughput
+     * @since 9.12RC1
+     */
+    long getProcessedCount();
+
+    /**
+     * @return the number of operations which have been merged with an operation already waiting in the queue for the
+     *         same entity (and thus never sent to the Solr server)
+     * @since 9.12RC1
+     */
+    long getCoalescedCount();
+
     /**
      * Start an indexing with specific criteria.
      * 
@@ -61,6 +61,24 @@
 @Named("database")
 public class DatabaseDocumentIterator extends AbstractDocumentIterator<String>
 {
+    /**
+     * The value used in place of the locale of the default document translation when sorting. The default locale is
+     * stored as an empty string, which some databases (e.g. Oracle) store as {@code null}, and {@code null} doesn't
+     * match any comparison. A space sorts before any real locale, like the empty string.
+     */
+    private static final String DEFAULT_LOCALE = " ";
+
+    /**
+     * The document locale, as used to sort the documents.
+     */
+    private static final String LOCALE = "coalesce(doc.language, '" + DEFAULT_LOCALE + "')";
+
+    /**
+     * Selects the documents that come after the last document of the previous page, in the order used by the query.
+     */
+    private static final String KEYSET_CONDITION = "(doc.space > :lastSpace or (doc.space = :lastSpace"
+        + " and (doc.name > :lastName or (doc.name = :lastName and " + LOCALE + " > :lastLocale))))";
+
     /**
      * The current index in the list of {@link #results}.
      */
@@ -88,9 +106,10 @@ public class DatabaseDocumentIterator extends AbstractDocumentIterator<String>
     private String wiki;
 
     /**
-     * The offset in the current wiki.
+     * The last document of the previous 'page' of results in the current wiki, {@code null} if no page has been fetched
+     * yet from the current wiki.
      */
-    private int offset;
+    private Object[] lastResult;
 
     /**
      * Used to query the underlying storage.
@@ -111,6 +130,11 @@ public class DatabaseDocumentIterator extends AbstractDocumentIterator<String>
      */
     private Query query;
 
+    /**
+     * The query used to fetch the next pages of documents from the database.
+     */
+    private Query nextQuery;
+
     /**
      * The query used to count the documents from the database.
      */
@@ -183,7 +207,7 @@ private List<Object[]> getResults()
                     break;
                 }
                 wiki = getNextWiki();
-                offset = 0;
+                lastResult = null;
             }
             index = 0;
         }
@@ -196,11 +220,24 @@ private List<Object[]> getResults()
     private void fetchNextResults()
     {
         try {
-            // We use basic pagination (absolute offset) because we don't expect the database to change too much while
-            // the synchronization takes place. Also, the database is used as the reference store, meaning that we
-            // update the Solr index to match the database, not the other way around.
-            results = getQuery().setWiki(wiki).setOffset(offset).execute();
-            offset += LIMIT;
+            // We use keyset pagination (continue after the last document of the previous page) instead of an absolute
+            // offset because the database has to skip all the previous rows to apply an offset. Note that the rows
+            // after the previous page still have to be filtered and sorted since there's no index covering the
+            // (space, name, language) order.
+            Query pageQuery;
+            if (lastResult == null) {
+                pageQuery = getQuery();
+            } else {
+                // The queries have been created when the previous page was fetched.
+                nextQuery.bindValue("lastSpace", lastResult[0]);
+                nextQuery.bindValue("lastName", lastResult[1]);
+                nextQuery.bindValue("lastLocale", StringUtils.defaultIfEmpty((String) lastResult[2], DEFAULT_LOCALE));
+                pageQuery = nextQuery;
+            }
+            results = pageQuery.setWiki(wiki).execute();
+            if (!results.isEmpty()) {
+                lastResult = results.get(results.size() - 1);
+            }
         } catch (QueryException e) {
             results = Collections.emptyList();
             logger.error("Failed to query the database.", e);
@@ -216,7 +253,7 @@ private Query getQuery() throws QueryException
         if (query == null) {
             // This iterator must have the same order as the SolrDocumentIterator, otherwise the synchronization fails.
             String select = "select doc.space, doc.name, doc.language, doc.version from XWikiDocument doc";
-            String orderBy = " order by doc.space, doc.name, doc.language";
+            String orderBy = " order by doc.space, doc.name, " + LOCALE;
 
             EntityReference spaceReference = null;
             EntityReference documentReference = null;
@@ -233,7 +270,10 @@ private Query getQuery() throws QueryException
                 }
             }
 
+            String nextWhereClause = (whereClause.isEmpty() ? " where " : whereClause + " and ") + KEYSET_CONDITION;
+
             query = queryManager.createQuery(select + whereClause + orderBy, Query.HQL).setLimit(LIMIT);
+            nextQuery = queryManager.createQuery(select + nextWhereClause + orderBy, Query.HQL).setLimit(LIMIT);
             countQuery = queryManager.createQuery(whereClause, Query.HQL).addFilter(countFilter);
 
             if (spaceReference != null) {
@@ -244,6 +284,7 @@ private Query getQuery() throws QueryException
             }
 
             for (Map.Entry<String, Object> parameter : query.getNamedParameters().entrySet()) {
+                nextQuery.bindValue(parameter.getKey(), parameter.getValue());
                 countQuery.bindValue(parameter.getKey(), parameter.getValue());
             }
         }
@@ -19,27 +19,66 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.FacetField.Count;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.environment.Environment;
 import org.xwiki.job.AbstractJob;
 import org.xwiki.job.DefaultJobStatus;
 import org.xwiki.job.GroupedJob;
 import org.xwiki.job.JobGroupPath;
 import org.xwiki.job.Request;
+import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.search.solr.internal.api.FieldUtils;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
 import org.xwiki.search.solr.internal.job.DiffDocumentIterator.Action;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
 
 /**
  * Provide progress information and store logging of an advanced indexing.
+ * <p>
+ * When the whole farm is synchronized, the wikis are compared with the Solr index in parallel and the wikis already
+ * synchronized are remembered on disk so that an interrupted synchronization resumes with the remaining wikis.
  * 
  * @version $Id$
  * @since 5.1RC1
@@ -54,25 +93,61 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
      */
     public static final String JOBTYPE = "solr.indexer";
 
+    /**
+     * The file, relative to the permanent directory, where the progress of the synchronization is stored.
+     * 
+     * @since 9.12RC1
+     */
+    public static final String CHECKPOINT_FILE = "cache/solr/synchronization.properties";
+
     /**
      * All indexers run in the same thread.
      */
     // TODO: group indexers based on the IndexerRequest root entity
     private static final JobGroupPath GROUP = new JobGroupPath(Arrays.asList("solr", "indexer"));
 
+    private static final Type DOCUMENT_ITERATOR_TYPE =
+        new DefaultParameterizedType(null, DocumentIterator.class, String.class);
+
+    /**
+     * An older checkpoint is ignored since the wikis it lists might have changed a lot since then.
+     */
+    private static final long CHECKPOINT_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private static final String CHECKPOINT_DATE = "date";
+
+    private static final String CHECKPOINT_REMOVE_MISSING = "removeMissing";
+
+    private static final String CHECKPOINT_WIKIS = "wikis";
+
+    private static final char CHECKPOINT_WIKIS_SEPARATOR = ',';
+
     /**
      * Used to send documents to index or delete to/from Solr index.
      */
     @Inject
     private transient SolrIndexer indexer;
 
+    /**
+     * Used to create the document iterators (one pair for each synchronized wiki).
+     */
+    @Inject
+    private transient ComponentManager componentManager;
+
     @Inject
-    @Named("database")
-    private transient DocumentIterator<String> databaseIterator;
+    private transient SolrConfiguration configuration;
 
     @Inject
-    @Named("solr")
-    private transient DocumentIterator<String> solrIterator;
+    private transient WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private transient Environment environment;
+
+    /**
+     * Used to find the indexed wikis which don't exist anymore.
+     */
+    @Inject
+    private transient Provider<SolrInstance> solrInstanceProvider;
 
     @Override
     public String getType()
@@ -106,6 +181,8 @@ protected void runInternal() throws Exception
             EntityReference rootReference = getRequest().getRootReference();
             this.logger.info("Index documents in [{}].", rootReference);
             this.indexer.index(rootReference, true);
+        } else if (getRequest().getRootReference() == null) {
+            updateSolrIndexWikis();
         } else {
             updateSolrIndex();
         }
@@ -113,11 +190,165 @@ protected void runInternal() throws Exception
 
     /**
      * Update the Solr index to match the current state of the database.
+     * 
+     * @throws ComponentLookupException if the document iterators cannot be created
+     * @throws InterruptedException if the synchronization is interrupted
+     */
+    private void updateSolrIndex() throws ComponentLookupException, InterruptedException
+    {
+        long[] counter = updateSolrIndex(getRequest().getRootReference(), true);
+
+        this.logger.info("{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
+            counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
+    }
+
+    /**
+     * Update the Solr index to match the current state of the database, wiki by wiki.
+     * 
+     * @throws Exception if the synchronization of a wiki fails or is interrupted
+     */
+    private void updateSolrIndexWikis() throws Exception
+    {
+        Set<String> allWikis = new LinkedHashSet<>(this.wikiDescriptorManager.getAllIds());
+        List<String> wikis = new ArrayList<>(allWikis);
+        Collections.sort(wikis);
+
+        Properties checkpoint = loadCheckpoint();
+        Set<String> synchronizedWikis = new LinkedHashSet<>(
+            Arrays.asList(StringUtils.split(checkpoint.getProperty(CHECKPOINT_WIKIS, ""), CHECKPOINT_WIKIS_SEPARATOR)));
+        if (!synchronizedWikis.isEmpty()) {
+            this.logger.info("Resume the synchronization started on [{}]: {} wikis are already synchronized.",
+                new Date(Long.parseLong(checkpoint.getProperty(CHECKPOINT_DATE))), synchronizedWikis.size());
+        }
+        wikis.removeAll(synchronizedWikis);
+
+        long[] counter = new long[Action.values().length];
+
+        this.progressManager.pushLevelProgress(wikis.size(), this);
+
+        try {
+            int threads = Math.min(this.configuration.getSynchronizationThreads(), wikis.size());
+            if (threads <= 1) {
+                for (String wiki : wikis) {
+                    this.progressManager.startStep(this);
+                    add(counter, updateSolrIndex(new WikiReference(wiki), true));
+                    saveCheckpoint(checkpoint, synchronizedWikis, wiki);
+                    this.progressManager.endStep(this);
+                }
+            } else {
+                updateSolrIndexWikis(wikis, threads, counter, checkpoint, synchronizedWikis);
+            }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+
+        // The wikis are synchronized one by one so the documents of the deleted wikis are not listed by any of them.
+        removeMissingWikis(allWikis, counter);
+
+        // The synchronization is complete, the next one has to start from the beginning.
+        FileUtils.deleteQuietly(getCheckpointFile());
+
+        this.logger.info("{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
+            counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
+    }
+
+    private void updateSolrIndexWikis(List<String> wikis, int threads, long[] counter, Properties checkpoint,
+        Set<String> synchronizedWikis) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new BasicThreadFactory.Builder().namingPattern("Solr synchronization %d").daemon(true).build());
+
+        try {
+            CompletionService<WikiSynchronizer> completionService = new ExecutorCompletionService<>(executor);
+            for (String wiki : wikis) {
+                WikiSynchronizer synchronizer = new WikiSynchronizer(wiki);
+                completionService.submit(synchronizer, synchronizer);
+            }
+
+            // Only this thread reports the progress and updates the checkpoint, one step for each synchronized wiki.
+            for (int i = 0; i < wikis.size(); i++) {
+                this.progressManager.startStep(this);
+
+                WikiSynchronizer synchronizer = completionService.take().get();
+                if (synchronizer.error != null) {
+                    throw synchronizer.error;
+                }
+
+                add(counter, synchronizer.counter);
+                saveCheckpoint(checkpoint, synchronizedWikis, synchronizer.wiki);
+
+                this.logger.info(
+                    "{} documents added, {} deleted and {} updated during the synchronization of wiki [{}].",
+                    synchronizer.counter[Action.ADD.ordinal()], synchronizer.counter[Action.DELETE.ordinal()],
+                    synchronizer.counter[Action.UPDATE.ordinal()], synchronizer.wiki);
+
+                this.progressManager.endStep(this);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Remove from the Solr index the documents of the wikis which don't exist anymore.
+     * 
+     * @param wikis the existing wikis
+     * @param counter the number of documents for each {@link Action}, updated with the removed documents
+     */
+    private void removeMissingWikis(Set<String> wikis, long[] counter)
+    {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery(FieldUtils.TYPE + ':' + EntityType.DOCUMENT.name());
+        query.setRows(0);
+        query.setFacet(true);
+        query.addFacetField(FieldUtils.WIKI);
+        query.setFacetMinCount(1);
+        query.setFacetLimit(-1);
+
+        FacetField indexedWikis;
+        try {
+            indexedWikis = this.solrInstanceProvider.get().query(query).getFacetField(FieldUtils.WIKI);
+        } catch (Exception e) {
+            this.logger.error("Failed to find the wikis from the Solr index.", e);
+            return;
+        }
+
+        if (indexedWikis != null) {
+            for (Count indexedWiki : indexedWikis.getValues()) {
+                if (!wikis.contains(indexedWiki.getName())) {
+                    if (getRequest().isRemoveMissing()) {
+                        // The wiki doesn't exist anymore in the database.
+                        this.indexer.delete(new WikiReference(indexedWiki.getName()), true);
+                    }
+
+                    counter[Action.DELETE.ordinal()] += indexedWiki.getCount();
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the Solr index to match the current state of the database for the specified entity.
+     * 
+     * @param rootReference the entity to synchronize
+     * @param reportProgress {@code true} to report the progress of the synchronization, which is possible only from
+     *            the job thread
+     * @return the number of documents for each {@link Action}
+     * @throws ComponentLookupException if the document iterators cannot be created
+     * @throws InterruptedException if the synchronization is interrupted
      */
-    private void updateSolrIndex()
+    private long[] updateSolrIndex(EntityReference rootReference, boolean reportProgress)
+        throws ComponentLookupException, InterruptedException
     {
-        DiffDocumentIterator<String> iterator = new DiffDocumentIterator<>(this.solrIterator, this.databaseIterator);
-        iterator.setRootReference(getRequest().getRootReference());
+        DiffDocumentIterator<String> iterator =
+            new DiffDocumentIterator<>(this.componentManager.<DocumentIterator<String>>getInstance(
+                DOCUMENT_ITERATOR_TYPE, "solr"), this.componentManager.<DocumentIterator<String>>getInstance(
+                    DOCUMENT_ITERATOR_TYPE, "database"));
+        iterator.setRootReference(rootReference);
+
+        if (!reportProgress) {
+            return updateSolrIndex(-1, iterator);
+        }
 
         this.progressManager.pushLevelProgress(2, this);
 
@@ -131,22 +362,41 @@ private void updateSolrIndex()
             // Index
 
             this.progressManager.startStep(this);
-            updateSolrIndex(progressSize, iterator);
+            long[] counter = updateSolrIndex(progressSize, iterator);
             this.progressManager.endStep(this);
+
+            return counter;
         } finally {
             this.progressManager.popLevelProgress(this);
         }
     }
 
-    private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iterator)
+    /**
+     * @param progressSize the number of documents to synchronize, negative to not report the progress
+     * @param iterator the differences between the database and the Solr index
+     * @return the number of documents for each {@link Action}
+     * @throws InterruptedException if the synchronization is interrupted
+     */
+    private long[] updateSolrIndex(int progressSize, DiffDocumentIterator<String> iterator)
+        throws InterruptedException
     {
-        this.progressManager.pushLevelProgress(progressSize, this);
+        boolean reportProgress = progressSize >= 0;
+        if (reportProgress) {
+            this.progressManager.pushLevelProgress(progressSize, this);
+        }
 
         try {
             long[] counter = new long[Action.values().length];
 
             while (iterator.hasNext()) {
-                this.progressManager.startStep(this);
+                // The synchronization threads are stopped through interruption when another wiki fails
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("The synchronization of the Solr index has been interrupted");
+                }
+
+                if (reportProgress) {
+                    this.progressManager.startStep(this);
+                }
 
                 Pair<DocumentReference, Action> entry = iterator.next();
                 if (entry.getValue() == Action.ADD || entry.getValue() == Action.UPDATE) {
@@ -161,14 +411,121 @@ private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iter
 
                 counter[entry.getValue().ordinal()]++;
 
-                this.progressManager.endStep(this);
+                if (reportProgress) {
+                    this.progressManager.endStep(this);
+                }
             }
 
-            this.logger.info(
-                "{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
-                counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
+            return counter;
         } finally {
-            this.progressManager.popLevelProgress(this);
+            if (reportProgress) {
+                this.progressManager.popLevelProgress(this);
+            }
+        }
+    }
+
+    private void add(long[] total, long[] counter)
+    {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += counter[i];
+        }
+    }
+
+    private File getCheckpointFile()
+    {
+        return new File(this.environment.getPermanentDirectory(), CHECKPOINT_FILE);
+    }
+
+    /**
+     * @return the progress of the previous synchronization if it has been interrupted recently and with the same
+     *         options, a new one otherwise
+     */
+    private Properties loadCheckpoint()
+    {
+        Properties checkpoint = new Properties();
+
+        File file = getCheckpointFile();
+        if (file.isFile()) {
+            try (InputStream stream = FileUtils.openInputStream(file)) {
+                checkpoint.load(stream);
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the progress of the previous synchronization from [{}]: {}", file,
+                    e.getMessage());
+            }
+        }
+
+        String date = checkpoint.getProperty(CHECKPOINT_DATE);
+        if (date == null || !StringUtils.isNumeric(date)
+            || System.currentTimeMillis() - Long.parseLong(date) > CHECKPOINT_MAX_AGE
+            || !String.valueOf(getRequest().isRemoveMissing()).equals(
+                checkpoint.getProperty(CHECKPOINT_REMOVE_MISSING))) {
+            checkpoint.clear();
+            checkpoint.setProperty(CHECKPOINT_DATE, String.valueOf(System.currentTimeMillis()));
+            checkpoint.setProperty(CHECKPOINT_REMOVE_MISSING, String.valueOf(getRequest().isRemoveMissing()));
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Remember that the wiki is synchronized, once the operations sent to the indexer for it are committed. The
+     * operations are only kept in memory until then so a synchronization interrupted by a restart has to compare the
+     * wiki again.
+     * 
+     * @param checkpoint the progress of the synchronization
+     * @param synchronizedWikis the wikis already synchronized
+     * @param wiki the wiki which has just been synchronized
+     * @throws InterruptedException if interrupted while waiting for the indexer
+     */
+    private void saveCheckpoint(Properties checkpoint, Set<String> synchronizedWikis, String wiki)
+        throws InterruptedException
+    {
+        if (!this.indexer.flush()) {
+            // The indexer has been stopped, the operations might be lost
+            return;
+        }
+
+        synchronizedWikis.add(wiki);
+        checkpoint.setProperty(CHECKPOINT_WIKIS, StringUtils.join(synchronizedWikis, CHECKPOINT_WIKIS_SEPARATOR));
+
+        File file = getCheckpointFile();
+        try {
+            file.getParentFile().mkdirs();
+            try (OutputStream stream = FileUtils.openOutputStream(file)) {
+                checkpoint.store(stream, null);
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to store the progress of the synchronization in [{}]: {}", file,
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Synchronize the Solr index with the database for one wiki, in a separate thread.
+     * 
+     * @version $Id$
+     */
+    private class WikiSynchronizer extends AbstractXWikiRunnable
+    {
+        private final String wiki;
+
+        private long[] counter;
+
+        private Exception error;
+
+        WikiSynchronizer(String wiki)
+        {
+            this.wiki = wiki;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                this.counter = updateSolrIndex(new WikiReference(this.wiki), false);
+            } catch (Exception e) {
+                this.error = e;
+            }
         }
     }
 }
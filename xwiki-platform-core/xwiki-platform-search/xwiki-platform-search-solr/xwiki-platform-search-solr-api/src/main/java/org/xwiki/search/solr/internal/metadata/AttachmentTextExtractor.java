@@ -0,0 +1,355 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaMetadataKeys;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Extract the text of the attachments and keep it on disk so that the same attachment content is not parsed again
+ * when the document is saved again or when the index is rebuilt. The attachments from which no text could be extracted
+ * are remembered too so that they are not parsed again either.
+ * <p>
+ * The stored text is identified by the attachment reference, version, date and size, which all change when the content
+ * of the attachment changes. This way the content does not have to be read to know if it has already been parsed.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = AttachmentTextExtractor.class)
+@Singleton
+public class AttachmentTextExtractor implements Initializable, Disposable
+{
+    /**
+     * The folder, relative to the permanent directory, where the extracted text is stored.
+     */
+    public static final String ROOT_DIRECTORY = "cache/solr/attachments";
+
+    private static final String TEXT_EXTENSION = ".txt";
+
+    private static final String MISSING_EXTENSION = ".missing";
+
+    /**
+     * The extensions of the stored files, without the temporary files being written.
+     */
+    private static final String[] STORED_EXTENSIONS = { "txt", "missing" };
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /**
+     * The maximum number of attachments waiting for a parser thread.
+     */
+    private static final int QUEUE_CAPACITY = 100;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private SolrConfiguration configuration;
+
+    @Inject
+    private Logger logger;
+
+    private File rootDirectory;
+
+    /**
+     * The Tika facade is thread safe, there is no need to create it (and load its configuration) for each attachment.
+     */
+    private Tika tika;
+
+    private ExecutorService executor;
+
+    private final AtomicLong storedSize = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.rootDirectory = new File(this.environment.getPermanentDirectory(), ROOT_DIRECTORY);
+
+        this.tika = new Tika();
+        this.tika.setMaxStringLength(this.configuration.getAttachmentTextMaxLength());
+
+        // Parsing is CPU bound so there is no point in having more threads than processors
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new BasicThreadFactory.Builder().namingPattern("Solr attachment text extractor %d").daemon(true).build());
+
+        if (isStoreEnabled() && this.rootDirectory.isDirectory()) {
+            for (File file : FileUtils.listFiles(this.rootDirectory, STORED_EXTENSIONS, true)) {
+                this.storedSize.addAndGet(file.length());
+            }
+            purge();
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @param attachment the attachment to extract the text from
+     * @param xcontext the XWiki context used to read the attachment content
+     * @return the text representation of the attachment content, or {@code null} if it could not be extracted
+     */
+    public String getText(XWikiAttachment attachment, XWikiContext xcontext)
+    {
+        File textFile = null;
+        File missingFile = null;
+
+        if (isStoreEnabled()) {
+            String key = getKey(attachment);
+            File directory = new File(this.rootDirectory, key.substring(0, 2));
+            textFile = new File(directory, key + TEXT_EXTENSION);
+            missingFile = new File(directory, key + MISSING_EXTENSION);
+
+            if (missingFile.exists()) {
+                return null;
+            }
+
+            String text = read(textFile);
+            if (text != null) {
+                return text;
+            }
+        }
+
+        InputStream stream;
+        try {
+            stream = attachment.getContentInputStream(xcontext);
+        } catch (Exception e) {
+            // Probably a temporary problem with the storage, so the attachment is not marked as missing text
+            this.logger.error("Failed to retrieve the content of attachment [{}]", attachment.getReference(), e);
+            return null;
+        }
+
+        String text;
+        try {
+            text = parse(stream, attachment.getFilename());
+        } catch (TimeoutException e) {
+            this.logger.warn("Gave up extracting the text of attachment [{}] after [{}] seconds",
+                attachment.getReference(), this.configuration.getAttachmentTextExtractionTimeout());
+            text = null;
+        } catch (RejectedExecutionException e) {
+            // The attachment has not been parsed (all the parser threads are busy or they have been stopped) so it's
+            // not marked as missing text, it's parsed again the next time it's indexed
+            this.logger.warn("Skipping the text of attachment [{}]: {}", attachment.getReference(), e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            // Same as above
+            this.logger.warn("Interrupted while waiting for the text of attachment [{}]", attachment.getReference());
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            this.logger.error("Failed to retrieve the content of attachment [{}]", attachment.getReference(), e);
+            text = null;
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                this.logger.debug("Failed to close the content of attachment [{}]", attachment.getReference(), e);
+            }
+        }
+
+        if (textFile != null) {
+            if (text != null) {
+                write(textFile, text);
+            } else {
+                write(missingFile, "");
+            }
+        }
+
+        return text;
+    }
+
+    private boolean isStoreEnabled()
+    {
+        return this.configuration.getAttachmentTextCacheSize() > 0;
+    }
+
+    private String getKey(XWikiAttachment attachment)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(attachment.getReference()).append('\n');
+        builder.append(attachment.getVersion()).append('\n');
+        builder.append(attachment.getDate() != null ? attachment.getDate().getTime() : 0).append('\n');
+        builder.append(attachment.getLongSize()).append('\n');
+        builder.append(this.configuration.getAttachmentTextMaxLength());
+
+        return DigestUtils.sha256Hex(builder.toString());
+    }
+
+    private String parse(final InputStream stream, String filename) throws Exception
+    {
+        final Metadata metadata = new Metadata();
+        metadata.set(TikaMetadataKeys.RESOURCE_NAME_KEY, filename);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        Future<String> future;
+        try {
+            future = this.executor.submit(new Callable<String>()
+            {
+                @Override
+                public String call() throws Exception
+                {
+                    started.countDown();
+                    return tika.parseToString(stream, metadata);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new RejectedExecutionException("too many attachments are waiting to be parsed", e);
+        }
+
+        int timeout = this.configuration.getAttachmentTextExtractionTimeout();
+        try {
+            // The timeout applies to the parsing, not to the time spent waiting for a parser thread
+            while (!started.await(1, TimeUnit.SECONDS)) {
+                if (this.executor.isShutdown()) {
+                    throw new RejectedExecutionException("the attachment parsers have been stopped");
+                }
+            }
+
+            return timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            // Closing the stream right after (in the caller) should make the parser fail quickly if it's still running
+            future.cancel(true);
+        }
+    }
+
+    private String read(File file)
+    {
+        if (file.isFile()) {
+            try {
+                String text = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                // Remember that the text is still used so that it's not purged
+                file.setLastModified(System.currentTimeMillis());
+                return text;
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the extracted attachment text [{}]: {}", file, e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    private void write(File file, String text)
+    {
+        try {
+            file.getParentFile().mkdirs();
+            File temporaryFile = File.createTempFile(file.getName(), null, file.getParentFile());
+            FileUtils.writeStringToFile(temporaryFile, text, StandardCharsets.UTF_8);
+            // The file might already exist when the same attachment is extracted by several threads at the same time
+            long oldLength = file.length();
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            long newLength = file.length();
+
+            if (this.storedSize.addAndGet(newLength - oldLength)
+                > this.configuration.getAttachmentTextCacheSize() * MEGABYTE) {
+                purge();
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to store the extracted attachment text in [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the stored text takes less than 90% of the allowed size.
+     */
+    private synchronized void purge()
+    {
+        long limit = this.configuration.getAttachmentTextCacheSize() * MEGABYTE;
+        if (this.storedSize.get() <= limit) {
+            return;
+        }
+
+        List<File> sortedFiles = new ArrayList<>(FileUtils.listFiles(this.rootDirectory, STORED_EXTENSIONS, true));
+        // Read the dates once since they might change while sorting
+        final Map<File, Long> dates = new HashMap<>();
+        for (File file : sortedFiles) {
+            dates.put(file, file.lastModified());
+        }
+        Collections.sort(sortedFiles, new Comparator<File>()
+        {
+            @Override
+            public int compare(File file1, File file2)
+            {
+                return Long.compare(dates.get(file1), dates.get(file2));
+            }
+        });
+
+        // Subtract what is deleted instead of setting the counter, since the other threads keep updating it
+        long target = limit / 10 * 9;
+        for (File file : sortedFiles) {
+            if (this.storedSize.get() <= target) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                this.storedSize.addAndGet(-length);
+            }
+        }
+    }
+}
@@ -190,6 +190,24 @@ public int getQueueSize()
         return this.solrIndexer.getQueueSize();
     }
 
+    /**
+     * @return the number of index/delete operations sent to the Solr server since the indexer started
+     * @since 9.12RC1
+     */
+    public long getProcessedCount()
+    {
+        return this.solrIndexer.getProcessedCount();
+    }
+
+    /**
+     * @return the number of queued operations which have been merged with a pending operation on the same entity
+     * @since 9.12RC1
+     */
+    public long getCoalescedCount()
+    {
+        return this.solrIndexer.getCoalescedCount();
+    }
+
     /**
      * Extract a {@link DocumentReference} from the given {@link SolrDocument} (e.g. search result).
      * 
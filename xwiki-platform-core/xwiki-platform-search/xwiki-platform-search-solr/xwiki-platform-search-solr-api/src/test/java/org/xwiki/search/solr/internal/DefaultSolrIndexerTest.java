@@ -20,13 +20,33 @@
 package org.xwiki.search.solr.internal;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import javax.inject.Provider;
+
+import org.apache.solr.common.SolrInputDocument;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.search.solr.internal.metadata.LengthSolrInputDocument;
+import org.xwiki.search.solr.internal.metadata.SolrMetadataExtractor;
+import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
+import org.xwiki.test.annotation.BeforeComponent;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWiki;
@@ -34,19 +54,27 @@
 import com.xpn.xwiki.test.reference.ReferenceComponentList;
 import com.xpn.xwiki.web.Utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
- * TODO DOCUMENT ME!
+ * Unit tests for {@link DefaultSolrIndexer}.
  * 
  * @version $Id$
  */
 @ReferenceComponentList
 public class DefaultSolrIndexerTest
 {
+    private static final int THREADS = 4;
+
     @Rule
     public final MockitoComponentMockingRule<SolrIndexer> mocker =
         new MockitoComponentMockingRule<SolrIndexer>(DefaultSolrIndexer.class);
@@ -57,11 +85,33 @@
 
     private SolrConfiguration mockConfig;
 
+    private SolrInstance solrInstance = mock(SolrInstance.class);
+
+    /**
+     * The operations sent to the Solr instance, in order, with the name of the thread which sent them.
+     */
+    private final List<String> operations = Collections.synchronizedList(new ArrayList<String>());
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        // The resolver thread is started when the indexer is initialized.
+        Utils.setComponentManager(this.mocker);
+
+        this.mockConfig = this.mocker.registerMockComponent(SolrConfiguration.class);
+        when(this.mockConfig.getIndexerThreads()).thenReturn(THREADS);
+        when(this.mockConfig.getIndexerQueueCapacity()).thenReturn(1000);
+        when(this.mockConfig.getIndexerBatchSize()).thenReturn(50);
+        when(this.mockConfig.getIndexerBatchMaxLengh()).thenReturn(10000);
+
+        Provider<SolrInstance> solrInstanceProvider =
+            this.mocker.registerMockComponent(new DefaultParameterizedType(null, Provider.class, SolrInstance.class));
+        when(solrInstanceProvider.get()).thenReturn(this.solrInstance);
+    }
+
     @Before
     public void configure() throws Exception
     {
-        Utils.setComponentManager(mocker);
-
         // XWiki
 
         this.xwiki = mock(XWiki.class);
@@ -75,20 +125,174 @@ public void configure() throws Exception
         // Solr configuration
 
         URL url = this.getClass().getClassLoader().getResource("solrhome");
-        this.mockConfig = this.mocker.getInstance(SolrConfiguration.class);
         when(this.mockConfig.getInstanceConfiguration(eq(EmbeddedSolrInstance.TYPE), eq("home"), any()))
             .thenReturn(url.getPath());
+
+        // Solr references
+
+        SolrReferenceResolver referenceResolver = this.mocker.getInstance(SolrReferenceResolver.class);
+        when(referenceResolver.getId(any(EntityReference.class))).then(new Answer<String>()
+        {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable
+            {
+                return invocation.getArgument(0).toString();
+            }
+        });
+        when(referenceResolver.getQuery(any(EntityReference.class))).then(new Answer<String>()
+        {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable
+            {
+                return "query:" + invocation.getArgument(0);
+            }
+        });
+
+        SolrMetadataExtractor extractor = this.mocker.registerMockComponent(SolrMetadataExtractor.class, "document");
+        when(extractor.getSolrDocument(any(EntityReference.class))).then(new Answer<LengthSolrInputDocument>()
+        {
+            @Override
+            public LengthSolrInputDocument answer(InvocationOnMock invocation) throws Throwable
+            {
+                LengthSolrInputDocument document = new LengthSolrInputDocument();
+                document.setField("id", invocation.getArgument(0).toString());
+                return document;
+            }
+        });
+
+        // Solr instance
+
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                SolrInputDocument document = invocation.getArgument(0);
+                record("add " + document.getFieldValue("id"));
+                return null;
+            }
+        }).when(this.solrInstance).add(any(SolrInputDocument.class));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                record("delete " + invocation.getArgument(0));
+                return null;
+            }
+        }).when(this.solrInstance).delete(anyString());
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                record("deleteByQuery " + invocation.getArgument(0));
+                return null;
+            }
+        }).when(this.solrInstance).deleteByQuery(anyString());
+    }
+
+    private void record(String operation)
+    {
+        this.operations.add(Thread.currentThread().getName() + '\t' + operation);
+    }
+
+    private void waitForProcessedCount(long count) throws Exception
+    {
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (indexer.getProcessedCount() < count || indexer.getQueueSize() > 0) {
+            assertTrue("Timeout while waiting for the index threads", System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @return the operations sent to the Solr instance indexed by the entity they target, associated with the thread
+     *         which sent them
+     */
+    private Map<String, String> getThreadsByOperation()
+    {
+        Map<String, String> threads = new HashMap<>();
+        synchronized (this.operations) {
+            for (String operation : this.operations) {
+                String[] parts = operation.split("\t");
+                threads.put(parts[1], parts[0]);
+            }
+        }
+        return threads;
     }
 
     @Test
-    public void testIndexEmptyWiki() throws Exception
+    public void operationsOnTheSameDocumentUseTheSameThread() throws Exception
     {
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+
+        SpaceReference spaceReference = new SpaceReference("Space", new WikiReference("wiki"));
+        for (int i = 0; i < 20; i++) {
+            DocumentReference documentReference = new DocumentReference("Page" + i, spaceReference);
+            // Deletes are sent with the real locale of the document while index requests use the default locale.
+            indexer.delete(new DocumentReference(documentReference, Locale.FRENCH), false);
+            indexer.index(new DocumentReference(documentReference, Locale.ROOT), false);
+        }
+
+        waitForProcessedCount(40);
+
+        Map<String, String> threads = getThreadsByOperation();
+        for (int i = 0; i < 20; i++) {
+            DocumentReference documentReference = new DocumentReference("Page" + i, spaceReference);
+            assertEquals(threads.get("delete " + new DocumentReference(documentReference, Locale.FRENCH)),
+                threads.get("add " + new DocumentReference(documentReference, Locale.ROOT)));
+        }
+    }
+
+    @Test
+    public void flushWaitsForTheEarlierOperations() throws Exception
+    {
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+
+        SpaceReference spaceReference = new SpaceReference("Space", new WikiReference("wiki"));
+        for (int i = 0; i < 20; i++) {
+            indexer.index(new DocumentReference("Page" + i, spaceReference), false);
+        }
+
+        assertTrue(indexer.flush());
+
+        assertEquals(20, this.operations.size());
+        verify(this.solrInstance, atLeastOnce()).commit();
+    }
+
+    @Test
+    public void deleteQueryIsExecutedOnceAfterTheEarlierOperations() throws Exception
+    {
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+
+        SpaceReference spaceReference = new SpaceReference("Space", new WikiReference("wiki"));
+        for (int i = 0; i < 20; i++) {
+            indexer.index(new DocumentReference("Before" + i, spaceReference), false);
+        }
+        indexer.delete(spaceReference, true);
+        for (int i = 0; i < 20; i++) {
+            indexer.index(new DocumentReference("After" + i, spaceReference), false);
+        }
 
-        // Mock solr wrapper
-        // Add expectations
+        waitForProcessedCount(41);
 
-        WikiReference wikiReference = new WikiReference("xwiki");
+        List<String> operationNames = new ArrayList<>();
+        synchronized (this.operations) {
+            for (String operation : this.operations) {
+                operationNames.add(operation.split("\t")[1]);
+            }
+        }
 
-        // index.index(wikiReference);
+        assertEquals(41, operationNames.size());
+        int deleteIndex = operationNames.indexOf("deleteByQuery query:" + spaceReference);
+        assertEquals(deleteIndex, operationNames.lastIndexOf("deleteByQuery query:" + spaceReference));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(operationNames.indexOf("add " + new DocumentReference("Before" + i, spaceReference))
+                < deleteIndex);
+            assertTrue(operationNames.indexOf("add " + new DocumentReference("After" + i, spaceReference))
+                > deleteIndex);
+        }
     }
 }
@@ -56,6 +56,14 @@
  */
 public class DatabaseDocumentIteratorTest
 {
+    private static final String SELECT =
+        "select doc.space, doc.name, doc.language, doc.version from XWikiDocument doc";
+
+    private static final String ORDER_BY = " order by doc.space, doc.name, coalesce(doc.language, ' ')";
+
+    private static final String KEYSET_CONDITION = "(doc.space > :lastSpace or (doc.space = :lastSpace"
+        + " and (doc.name > :lastName or (doc.name = :lastName and coalesce(doc.language, ' ') > :lastLocale))))";
+
     @Rule
     public MockitoComponentMockingRule<DocumentIterator<String>> mocker =
         new MockitoComponentMockingRule<DocumentIterator<String>>(DatabaseDocumentIterator.class);
@@ -84,8 +92,6 @@ public void iterateAllWikis() throws Exception
         when(emptyQuery.execute()).thenReturn(Collections.emptyList());
 
         Query chessQuery = mock(Query.class);
-        when(chessQuery.setOffset(0)).thenReturn(chessQuery);
-        when(chessQuery.setOffset(100)).thenReturn(emptyQuery);
         when(chessQuery.execute()).thenReturn(Arrays.<Object> asList(
             new Object[] {"Blog.Code", "WebHome", "", "3.2"},
             new Object[] {"Main", "Welcome", "en", "1.1"},
@@ -99,8 +105,6 @@ public void iterateAllWikis() throws Exception
             createDocumentReference("chess", Arrays.asList("XWiki", "Syntax"), "Links", Locale.FRENCH);
 
         Query tennisQuery = mock(Query.class);
-        when(tennisQuery.setOffset(0)).thenReturn(tennisQuery);
-        when(tennisQuery.setOffset(100)).thenReturn(emptyQuery);
         when(tennisQuery.execute()).thenReturn(Arrays.<Object> asList(
             new Object[] {"Main", "Welcome", "en", "2.1"},
             new Object[] {"XWiki.Syntax", "Links", "fr", "1.3"}));
@@ -116,6 +120,10 @@ public void iterateAllWikis() throws Exception
         when(query.setWiki("chess")).thenReturn(chessQuery);
         when(query.setWiki("tennis")).thenReturn(tennisQuery);
 
+        Query nextQuery = mock(Query.class);
+        when(nextQuery.setLimit(anyInt())).thenReturn(nextQuery);
+        when(nextQuery.setWiki(anyString())).thenReturn(emptyQuery);
+
         Query chessCountQuery = mock(Query.class);
         when(chessCountQuery.execute()).thenReturn(Collections.<Object> singletonList(3L));
 
@@ -128,8 +136,9 @@ public void iterateAllWikis() throws Exception
         when(countQuery.setWiki("tennis")).thenReturn(tennisCountQuery);
 
         QueryManager queryManager = mocker.getInstance(QueryManager.class);
-        when(queryManager.createQuery("select doc.space, doc.name, doc.language, doc.version from XWikiDocument doc"
-            + " order by doc.space, doc.name, doc.language", Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(SELECT + ORDER_BY, Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(SELECT + " where " + KEYSET_CONDITION + ORDER_BY, Query.HQL))
+            .thenReturn(nextQuery);
         when(queryManager.createQuery("", Query.HQL)).thenReturn(countQuery);
 
         DocumentIterator<String> iterator = mocker.getComponentUnderTest();
@@ -149,6 +158,13 @@ public void iterateAllWikis() throws Exception
         expectedResults.add(new ImmutablePair<DocumentReference, String>(tennisXWikiSyntaxLinks, "1.3"));
 
         assertEquals(expectedResults, actualResults);
+
+        // The next pages start after the last document of the previous page (the same for both wikis).
+        verify(nextQuery, times(2)).bindValue("lastSpace", "XWiki.Syntax");
+        verify(nextQuery, times(2)).bindValue("lastName", "Links");
+        verify(nextQuery, times(2)).bindValue("lastLocale", "fr");
+        verify(nextQuery, never()).setOffset(anyInt());
+        verify(query, never()).setOffset(anyInt());
     }
 
     @Test
@@ -162,8 +178,6 @@ public void iterateOneWiki() throws Exception
         Query query = mock(Query.class);
         when(query.setLimit(anyInt())).thenReturn(query);
         when(query.setWiki(rootReference.getWikiReference().getName())).thenReturn(query);
-        when(query.setOffset(0)).thenReturn(query);
-        when(query.setOffset(100)).thenReturn(emptyQuery);
         when(query.execute()).thenReturn(Collections.<Object>singletonList(new Object[] {"A.B", "C", "de", "3.1"}));
 
         Map<String, Object> namedParameters = new HashMap<String, Object>();
@@ -171,13 +185,18 @@ public void iterateOneWiki() throws Exception
         namedParameters.put("name", "C");
         when(query.getNamedParameters()).thenReturn(namedParameters);
 
+        Query nextQuery = mock(Query.class);
+        when(nextQuery.setLimit(anyInt())).thenReturn(nextQuery);
+        when(nextQuery.setWiki(rootReference.getWikiReference().getName())).thenReturn(emptyQuery);
+
         Query countQuery = mock(Query.class);
         when(countQuery.addFilter(mocker.<QueryFilter> getInstance(QueryFilter.class, "count"))).thenReturn(countQuery);
 
         QueryManager queryManager = mocker.getInstance(QueryManager.class);
         String whereClause = " where doc.space = :space and doc.name = :name";
-        when(queryManager.createQuery("select doc.space, doc.name, doc.language, doc.version from XWikiDocument doc"
-            + whereClause + " order by doc.space, doc.name, doc.language", Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(SELECT + whereClause + ORDER_BY, Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(SELECT + whereClause + " and " + KEYSET_CONDITION + ORDER_BY, Query.HQL))
+            .thenReturn(nextQuery);
         when(queryManager.createQuery(whereClause, Query.HQL)).thenReturn(countQuery);
 
         DocumentIterator<String> iterator = mocker.getComponentUnderTest();
@@ -197,10 +216,77 @@ public void iterateOneWiki() throws Exception
         verify(query).bindValue("space", "A.B");
         verify(query).bindValue("name", "C");
 
+        verify(nextQuery).bindValue("space", "A.B");
+        verify(nextQuery).bindValue("name", "C");
+        verify(nextQuery).bindValue("lastSpace", "A.B");
+        verify(nextQuery).bindValue("lastName", "C");
+        verify(nextQuery).bindValue("lastLocale", "de");
+
         verify(countQuery).bindValue("space", "A.B");
         verify(countQuery).bindValue("name", "C");
     }
 
+    @Test
+    public void iterateWithNullLocaleOnPageBoundary() throws Exception
+    {
+        // Some databases store the empty locale of the default translation as null.
+        Query firstPageQuery = mock(Query.class);
+        when(firstPageQuery.execute()).thenReturn(Arrays.<Object>asList(
+            new Object[] {"Main", "Activity", "fr", "1.1"},
+            new Object[] {"Main", "Welcome", null, "2.1"}));
+
+        Query secondPageQuery = mock(Query.class);
+        when(secondPageQuery.execute()).thenReturn(Collections.<Object>singletonList(
+            new Object[] {"Main", "Welcome", "fr", "1.3"}), Collections.emptyList());
+
+        DocumentReference chessMainActivity =
+            createDocumentReference("chess", Arrays.asList("Main"), "Activity", Locale.FRENCH);
+        DocumentReference chessMainWelcome = createDocumentReference("chess", Arrays.asList("Main"), "Welcome", null);
+        DocumentReference chessMainWelcomeFrench =
+            createDocumentReference("chess", Arrays.asList("Main"), "Welcome", Locale.FRENCH);
+
+        Query emptyQuery = mock(Query.class);
+        when(emptyQuery.execute()).thenReturn(Collections.emptyList());
+
+        Query query = mock(Query.class);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.getNamedParameters()).thenReturn(Collections.<String, Object>emptyMap());
+        when(query.setWiki("chess")).thenReturn(firstPageQuery);
+        when(query.setWiki("tennis")).thenReturn(emptyQuery);
+
+        Query nextQuery = mock(Query.class);
+        when(nextQuery.setLimit(anyInt())).thenReturn(nextQuery);
+        when(nextQuery.setWiki("chess")).thenReturn(secondPageQuery);
+
+        Query countQuery = mock(Query.class);
+        when(countQuery.addFilter(mocker.<QueryFilter>getInstance(QueryFilter.class, "count"))).thenReturn(countQuery);
+
+        QueryManager queryManager = mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(SELECT + ORDER_BY, Query.HQL)).thenReturn(query);
+        when(queryManager.createQuery(SELECT + " where " + KEYSET_CONDITION + ORDER_BY, Query.HQL))
+            .thenReturn(nextQuery);
+        when(queryManager.createQuery("", Query.HQL)).thenReturn(countQuery);
+
+        DocumentIterator<String> iterator = mocker.getComponentUnderTest();
+
+        List<Pair<DocumentReference, String>> actualResults = new ArrayList<Pair<DocumentReference, String>>();
+        while (iterator.hasNext()) {
+            actualResults.add(iterator.next());
+        }
+
+        List<Pair<DocumentReference, String>> expectedResults = new ArrayList<Pair<DocumentReference, String>>();
+        expectedResults.add(new ImmutablePair<DocumentReference, String>(chessMainActivity, "1.1"));
+        expectedResults.add(new ImmutablePair<DocumentReference, String>(chessMainWelcome, "2.1"));
+        expectedResults.add(new ImmutablePair<DocumentReference, String>(chessMainWelcomeFrench, "1.3"));
+
+        assertEquals(expectedResults, actualResults);
+
+        // The null locale is compared as the value used to sort it, otherwise the comparison would match nothing.
+        verify(nextQuery).bindValue("lastName", "Welcome");
+        verify(nextQuery).bindValue("lastLocale", " ");
+        verify(nextQuery).bindValue("lastLocale", "fr");
+    }
+
     private DocumentReference createDocumentReference(String wiki, List<String> spaces, String name, Locale locale)
     {
         DocumentReference documentReference = new DocumentReference(wiki, spaces, name);
@@ -0,0 +1,376 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.Job;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.search.solr.internal.api.FieldUtils;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import com.xpn.xwiki.web.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IndexerJob}.
+ *
+ * @version $Id$
+ */
+public class IndexerJobTest
+{
+    private static final File PERMANENT_DIRECTORY = new File("target/test-" + IndexerJobTest.class.getName());
+
+    private static final File CHECKPOINT_FILE = new File(PERMANENT_DIRECTORY, IndexerJob.CHECKPOINT_FILE);
+
+    private static final Type DOCUMENT_ITERATOR_TYPE =
+        new DefaultParameterizedType(null, DocumentIterator.class, String.class);
+
+    private static final List<String> WIKIS = Arrays.asList("chess", "tennis", "golf");
+
+    @Rule
+    public MockitoComponentMockingRule<Job> mocker = new MockitoComponentMockingRule<Job>(IndexerJob.class);
+
+    private SolrConfiguration configuration;
+
+    private SolrInstance solrInstance = mock(SolrInstance.class);
+
+    private final List<Pair<DocumentReference, String>> databaseDocuments = new ArrayList<>();
+
+    private final List<Pair<DocumentReference, String>> solrDocuments = new ArrayList<>();
+
+    /**
+     * The wikis found in the Solr index.
+     */
+    private final FacetField indexedWikis = new FacetField(FieldUtils.WIKI);
+
+    /**
+     * The names of the threads which iterated the database documents.
+     */
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * The wiki whose database documents cannot be iterated.
+     */
+    private String failingWiki;
+
+    /**
+     * Iterates a list of documents, limited to the wiki of the root reference.
+     */
+    private class ListDocumentIterator extends AbstractDocumentIterator<String>
+    {
+        private final List<Pair<DocumentReference, String>> documents;
+
+        private int index;
+
+        ListDocumentIterator(List<Pair<DocumentReference, String>> documents)
+        {
+            this.documents = documents;
+        }
+
+        @Override
+        public void setRootReference(EntityReference rootReference)
+        {
+            super.setRootReference(rootReference);
+
+            String wiki = rootReference.extractReference(EntityType.WIKI).getName();
+            this.documents.removeIf(document -> !document.getKey().getWikiReference().getName().equals(wiki));
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.index < this.documents.size();
+        }
+
+        @Override
+        public Pair<DocumentReference, String> next()
+        {
+            return this.documents.get(this.index++);
+        }
+
+        @Override
+        public long size()
+        {
+            return this.documents.size();
+        }
+    }
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        FileUtils.deleteDirectory(PERMANENT_DIRECTORY);
+
+        // The wikis are synchronized in threads which look up the execution components.
+        Utils.setComponentManager(this.mocker);
+        this.mocker.registerMockComponent(Execution.class);
+        this.mocker.registerMockComponent(ExecutionContextManager.class);
+
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(PERMANENT_DIRECTORY);
+
+        this.configuration = this.mocker.registerMockComponent(SolrConfiguration.class);
+
+        Provider<SolrInstance> solrInstanceProvider =
+            this.mocker.registerMockComponent(new DefaultParameterizedType(null, Provider.class, SolrInstance.class));
+        when(solrInstanceProvider.get()).thenReturn(this.solrInstance);
+
+        // Each synchronized wiki needs its own document iterators.
+        ComponentManager componentManager = this.mocker.registerMockComponent(ComponentManager.class);
+        when(componentManager.getInstance(DOCUMENT_ITERATOR_TYPE, "database"))
+            .then(invocation -> new ListDocumentIterator(new ArrayList<>(this.databaseDocuments))
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    threads.add(Thread.currentThread().getName());
+                    if (this.rootReference.getName().equals(failingWiki)) {
+                        throw new RuntimeException("Failed to query the database");
+                    }
+
+                    return super.hasNext();
+                }
+            });
+        when(componentManager.getInstance(DOCUMENT_ITERATOR_TYPE, "solr"))
+            .then(invocation -> new ListDocumentIterator(new ArrayList<>(this.solrDocuments)));
+    }
+
+    @Before
+    public void configure() throws Exception
+    {
+        when(this.configuration.getSynchronizationThreads()).thenReturn(1);
+
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getAllIds()).thenReturn(WIKIS);
+
+        for (String wiki : WIKIS) {
+            this.databaseDocuments.add(new ImmutablePair<>(new DocumentReference(wiki, "Space", "Page"), "1.1"));
+        }
+
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getFacetField(FieldUtils.WIKI)).thenReturn(this.indexedWikis);
+        when(this.solrInstance.query(any(SolrQuery.class))).thenReturn(response);
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        when(indexer.flush()).thenReturn(true);
+    }
+
+    private void run() throws Exception
+    {
+        IndexerRequest request = new IndexerRequest();
+        request.setRemoveMissing(true);
+
+        Job job = this.mocker.getComponentUnderTest();
+        job.initialize(request);
+        job.run();
+    }
+
+    private void writeCheckpoint(long date, String wikis) throws IOException
+    {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("date", String.valueOf(date));
+        checkpoint.setProperty("removeMissing", "true");
+        checkpoint.setProperty("wikis", wikis);
+
+        CHECKPOINT_FILE.getParentFile().mkdirs();
+        try (OutputStream stream = FileUtils.openOutputStream(CHECKPOINT_FILE)) {
+            checkpoint.store(stream, null);
+        }
+    }
+
+    private Properties readCheckpoint() throws IOException
+    {
+        Properties checkpoint = new Properties();
+        try (InputStream stream = FileUtils.openInputStream(CHECKPOINT_FILE)) {
+            checkpoint.load(stream);
+        }
+        return checkpoint;
+    }
+
+    @Test
+    public void synchronizeWikis() throws Exception
+    {
+        this.solrDocuments.add(new ImmutablePair<>(new DocumentReference("chess", "Space", "Page"), "1.1"));
+        this.solrDocuments.add(new ImmutablePair<>(new DocumentReference("golf", "Space", "Page"), "1.0"));
+        this.solrDocuments.add(new ImmutablePair<>(new DocumentReference("golf", "Space", "Removed"), "1.1"));
+
+        run();
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        verify(indexer, never()).index(new DocumentReference("chess", "Space", "Page"), true);
+        verify(indexer).index(new DocumentReference("golf", "Space", "Page"), true);
+        verify(indexer).index(new DocumentReference("tennis", "Space", "Page"), true);
+        verify(indexer).delete(new DocumentReference("golf", "Space", "Removed"), true);
+
+        // The checkpoint is not needed anymore once the synchronization is complete.
+        assertFalse(CHECKPOINT_FILE.exists());
+    }
+
+    @Test
+    public void synchronizeWikisInParallel() throws Exception
+    {
+        when(this.configuration.getSynchronizationThreads()).thenReturn(2);
+
+        run();
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        for (String wiki : WIKIS) {
+            verify(indexer).index(new DocumentReference(wiki, "Space", "Page"), true);
+        }
+
+        assertFalse(this.threads.isEmpty());
+        assertTrue(this.threads.size() <= 2);
+        for (String thread : this.threads) {
+            assertTrue(thread.startsWith("Solr synchronization "));
+        }
+        assertFalse(CHECKPOINT_FILE.exists());
+    }
+
+    @Test
+    public void synchronizeWikisRemovesTheDeletedWikis() throws Exception
+    {
+        this.indexedWikis.add("chess", 1);
+        this.indexedWikis.add("deleted", 3);
+
+        run();
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        verify(indexer).delete(new WikiReference("deleted"), true);
+        verify(indexer, never()).delete(eq(new WikiReference("chess")), anyBoolean());
+    }
+
+    @Test
+    public void resumeInterruptedSynchronization() throws Exception
+    {
+        this.failingWiki = "golf";
+
+        run();
+
+        // The wikis are synchronized in alphabetical order, so only the first one is done.
+        assertEquals("chess", readCheckpoint().getProperty("wikis"));
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        verify(indexer).index(new DocumentReference("chess", "Space", "Page"), true);
+        verify(indexer, never()).index(new DocumentReference("tennis", "Space", "Page"), true);
+
+        this.failingWiki = null;
+
+        run();
+
+        verify(indexer).index(new DocumentReference("golf", "Space", "Page"), true);
+        verify(indexer).index(new DocumentReference("tennis", "Space", "Page"), true);
+        // The synchronized wiki is not compared again.
+        verify(indexer).index(new DocumentReference("chess", "Space", "Page"), true);
+        assertFalse(CHECKPOINT_FILE.exists());
+    }
+
+    @Test
+    public void checkpointIsSavedOnlyOnceTheOperationsAreCommitted() throws Exception
+    {
+        // The indexer is stopped before committing the operations of the first wiki.
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        when(indexer.flush()).thenReturn(false);
+        this.failingWiki = "golf";
+
+        run();
+
+        assertFalse(CHECKPOINT_FILE.exists());
+
+        when(indexer.flush()).thenReturn(true);
+        this.failingWiki = null;
+
+        run();
+
+        // The first wiki is compared again since its operations might have been lost.
+        verify(indexer, times(2)).index(new DocumentReference("chess", "Space", "Page"), true);
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception
+    {
+        writeCheckpoint(System.currentTimeMillis(), "chess,golf");
+
+        run();
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        verify(indexer, never()).index(new DocumentReference("chess", "Space", "Page"), true);
+        verify(indexer, never()).index(new DocumentReference("golf", "Space", "Page"), true);
+        verify(indexer).index(new DocumentReference("tennis", "Space", "Page"), true);
+    }
+
+    @Test
+    public void ignoreExpiredCheckpoint() throws Exception
+    {
+        writeCheckpoint(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2), "chess,golf");
+
+        run();
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        for (String wiki : WIKIS) {
+            verify(indexer).index(new DocumentReference(wiki, "Space", "Page"), true);
+        }
+    }
+}
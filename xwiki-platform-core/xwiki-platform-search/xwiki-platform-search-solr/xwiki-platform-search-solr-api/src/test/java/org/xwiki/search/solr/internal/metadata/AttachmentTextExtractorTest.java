@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AttachmentTextExtractor}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class AttachmentTextExtractorTest
+{
+    private static final File PERMANENT_DIRECTORY =
+        new File("target/test-" + AttachmentTextExtractorTest.class.getName());
+
+    @Rule
+    public MockitoComponentMockingRule<AttachmentTextExtractor> mocker =
+        new MockitoComponentMockingRule<>(AttachmentTextExtractor.class);
+
+    private XWikiContext xcontext = mock(XWikiContext.class);
+
+    private XWikiAttachment attachment = mock(XWikiAttachment.class);
+
+    @BeforeComponent
+    public void registerMockComponents() throws Exception
+    {
+        FileUtils.deleteDirectory(PERMANENT_DIRECTORY);
+
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(PERMANENT_DIRECTORY);
+
+        SolrConfiguration configuration = this.mocker.registerMockComponent(SolrConfiguration.class);
+        when(configuration.getAttachmentTextMaxLength()).thenReturn(100000);
+        when(configuration.getAttachmentTextExtractionTimeout()).thenReturn(60);
+        when(configuration.getAttachmentTextCacheSize()).thenReturn(1);
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+        when(this.attachment.getReference()).thenReturn(new AttachmentReference("file.txt", documentReference));
+        when(this.attachment.getFilename()).thenReturn("file.txt");
+        when(this.attachment.getVersion()).thenReturn("1.1");
+        when(this.attachment.getDate()).thenReturn(new Date(42));
+        when(this.attachment.getLongSize()).thenReturn(12L);
+    }
+
+    @Test
+    public void getTextExtractsOnlyOnce() throws Exception
+    {
+        when(this.attachment.getContentInputStream(this.xcontext))
+            .thenReturn(new ByteArrayInputStream("text content".getBytes()));
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+
+        verify(this.attachment, times(1)).getContentInputStream(this.xcontext);
+    }
+
+    @Test
+    public void getTextRemembersFailures() throws Exception
+    {
+        InputStream stream = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("corrupted");
+            }
+        };
+        when(this.attachment.getContentInputStream(this.xcontext)).thenReturn(stream);
+
+        assertNull(this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+        assertNull(this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+
+        verify(this.attachment, times(1)).getContentInputStream(this.xcontext);
+    }
+
+    @Test
+    public void getTextWhenContentChanged() throws Exception
+    {
+        when(this.attachment.getContentInputStream(this.xcontext))
+            .thenReturn(new ByteArrayInputStream("text content".getBytes()))
+            .thenReturn(new ByteArrayInputStream("new content".getBytes()));
+
+        assertEquals("text content\n", this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+
+        when(this.attachment.getVersion()).thenReturn("2.1");
+
+        assertEquals("new content\n", this.mocker.getComponentUnderTest().getText(this.attachment, this.xcontext));
+    }
+
+    @Test
+    public void purgeKeepsTheStoredSizeAccurate() throws Exception
+    {
+        AttachmentTextExtractor extractor = this.mocker.getComponentUnderTest();
+
+        // 15 versions of 100KB, more than the 1MB allowed
+        String content = StringUtils.repeat('a', 100000);
+        for (int i = 1; i <= 15; i++) {
+            when(this.attachment.getVersion()).thenReturn(i + ".1");
+            when(this.attachment.getContentInputStream(this.xcontext))
+                .thenReturn(new ByteArrayInputStream(content.getBytes()));
+
+            extractor.getText(this.attachment, this.xcontext);
+        }
+
+        long size = 0;
+        File rootDirectory = new File(PERMANENT_DIRECTORY, AttachmentTextExtractor.ROOT_DIRECTORY);
+        for (File file : FileUtils.listFiles(rootDirectory, null, true)) {
+            size += file.length();
+        }
+        assertTrue(size <= 1024L * 1024L);
+        assertEquals(size, ((AtomicLong) FieldUtils.readField(extractor, "storedSize", true)).get());
+    }
+}
@@ -20,6 +20,7 @@
 package org.xwiki.search.solr.internal.metadata;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,6 +45,7 @@
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
@@ -53,9 +55,12 @@
 import org.xwiki.rendering.renderer.BlockRenderer;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
 import org.xwiki.search.solr.internal.api.FieldUtils;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrFieldNameEncoder;
 import org.xwiki.search.solr.internal.api.SolrIndexerException;
 import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWiki;
@@ -90,6 +95,7 @@
  * 
  * @version $Id$
  */
+@ComponentList(AttachmentTextExtractor.class)
 public class DocumentSolrMetadataExtractorTest
 {
     @Rule
@@ -106,6 +112,17 @@
     private DocumentReference documentReference =
         new DocumentReference("wiki", Arrays.asList("Path", "To", "Page"), "WebHome");
 
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        // Extract the attachment text for real, without keeping it on disk
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(new File("target/permanent"));
+        SolrConfiguration configuration = this.mocker.registerMockComponent(SolrConfiguration.class);
+        when(configuration.getAttachmentTextMaxLength()).thenReturn(100000);
+        when(configuration.getAttachmentTextExtractionTimeout()).thenReturn(60);
+    }
+
     @Before
     public void setUp() throws Exception
     {
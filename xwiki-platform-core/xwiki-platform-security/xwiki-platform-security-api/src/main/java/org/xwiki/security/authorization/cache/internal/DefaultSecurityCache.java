@@ -25,9 +25,9 @@
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -54,6 +54,10 @@
 
 /**
  * Default implementation of the security cache.
+ * <p>
+ * Only the modifications of the cache are serialized, the read path does not take any lock: an entry is always fully
+ * linked to its parents before being published in the cache and an entry which has been disposed (because it, or one of
+ * its parents, has been removed) is never returned, even if the cascaded removal is still in progress.
  *
  * @version $Id$
  * @since 4.0M2 
@@ -72,14 +76,8 @@ public class DefaultSecurityCache implements SecurityCache, Initializable
     @Inject
     private Logger logger;
 
-    /** Fair read-write lock used for fair scheduling of cache access. */
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-
-    /** Fair read lock. */
-    private final Lock readLock = readWriteLock.readLock();
-
-    /** Fair write lock. */
-    private final Lock writeLock = readWriteLock.writeLock();
+    /** Lock used to serialize the modifications of the cache, reading the cache does not require any lock. */
+    private final Lock writeLock = new ReentrantLock();
 
     /** The keys in the cache are generated from instances of {@link org.xwiki.model.reference.EntityReference}. */
     @Inject
@@ -129,22 +127,23 @@ private class SecurityCacheEntry implements DisposableCacheValue
         /**
          * The cached security entry.
          */
-        private SecurityEntry entry;
+        private volatile SecurityEntry entry;
 
         /**
-         * Parents of this cached entry.
+         * Parents of this cached entry. The collection is never modified once published so that it can be read
+         * without lock.
          */
-        private Collection<SecurityCacheEntry> parents;
+        private volatile Collection<SecurityCacheEntry> parents;
 
         /**
-         * Children of this cached entry.
+         * Children of this cached entry. Only accessed while holding the write lock.
          */
         private Collection<SecurityCacheEntry> children;
 
         /**
          * True if this entry has been removed.
          */
-        private boolean disposed;
+        private volatile boolean disposed;
 
         /**
          * Create a new cache entry for a security rule, linking it to its parent.
@@ -262,16 +261,17 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
             this.entry = entry;
             int parentSize = groups.size() + ((parentReference == null) ? 0 : 1);
             if (parentSize > 0) {
-                this.parents = new ArrayList<SecurityCacheEntry>(parentSize);
+                List<SecurityCacheEntry> newParents = new ArrayList<SecurityCacheEntry>(parentSize);
                 if (parentReference != null) {
                     SecurityCacheEntry parent = DefaultSecurityCache.this.getEntry(parentReference);
                     if (parent == null) {
                         throw new ParentEntryEvictedException();
                     }
-                    this.parents.add(parent);
+                    newParents.add(parent);
                     parent.addChild(this);
                 }
-                addParentGroups(groups, parentReference);
+                addParentGroups(newParents, groups, parentReference);
+                this.parents = newParents;
                 logNewEntry();
             } else {
                 this.parents = null;
@@ -282,11 +282,12 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
         /**
          * Add provided groups as parent of this entry, excluding the main parent reference.
          *
+         * @param newParents the parents being built, to which the groups are added.
          * @param groups the list of groups to add.
          * @param parentReference the main parent reference to exclude.
          * @throws ParentEntryEvictedException if the parents required are no more available in the cache.
          */
-        private void addParentGroups(Collection<GroupSecurityReference> groups,
+        private void addParentGroups(List<SecurityCacheEntry> newParents, Collection<GroupSecurityReference> groups,
             SecurityReference parentReference) throws ParentEntryEvictedException
         {
             for (GroupSecurityReference group : groups) {
@@ -300,7 +301,7 @@ private void addParentGroups(Collection<GroupSecurityReference> groups,
                 if (parent == null) {
                     throw new ParentEntryEvictedException();
                 }
-                this.parents.add(parent);
+                newParents.add(parent);
                 parent.addChild(this);
             }
         }
@@ -319,15 +320,18 @@ boolean updateParentGroups(Collection<GroupSecurityReference> groups)
             }
 
             if (groups != null && !groups.isEmpty()) {
+                // Build the new parents before publishing them since they can be read without lock
+                List<SecurityCacheEntry> newParents;
                 if (this.parents == null) {
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size());
-                    addParentGroups(groups, null);
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size());
+                    addParentGroups(newParents, groups, null);
                 } else {
                     SecurityCacheEntry parent = this.parents.iterator().next();
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
-                    this.parents.add(parent);
-                    addParentGroups(groups, parent.entry.getReference());
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
+                    newParents.add(parent);
+                    addParentGroups(newParents, groups, parent.entry.getReference());
                 }
+                this.parents = newParents;
             }
 
             return true;
@@ -392,8 +396,9 @@ public void dispose()
 
         protected void disconnectFromParents()
         {
-            if (parents != null) {
-                for (SecurityCacheEntry parent : parents) {
+            Collection<SecurityCacheEntry> currentParents = this.parents;
+            if (currentParents != null) {
+                for (SecurityCacheEntry parent : currentParents) {
                     if (!parent.disposed) {
                         parent.removeChild(this);
                     }
@@ -539,12 +544,7 @@ private String getEntryKey(SecurityAccessEntry entry)
      */
     private SecurityCacheEntry getEntry(SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getLiveEntry(getEntryKey(reference));
     }
 
     /**
@@ -555,12 +555,7 @@ private SecurityCacheEntry getEntry(SecurityReference reference)
      */
     private SecurityCacheEntry getEntry(UserSecurityReference userReference, SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(userReference, reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getLiveEntry(getEntryKey(userReference, reference));
     }
 
     /**
@@ -571,12 +566,51 @@ private SecurityCacheEntry getEntry(UserSecurityReference userReference, Securit
      */
     private SecurityCacheEntry getShadowEntry(SecurityReference userReference, SecurityReference wiki)
     {
-        readLock.lock();
-        try {
-            return cache.get(getShadowEntryKey(userReference, wiki));
-        } finally {
-            readLock.unlock();
+        return getLiveEntry(getShadowEntryKey(userReference, wiki));
+    }
+
+    /**
+     * @param key the key of the entry.
+     * @return the security cache entry stored with the given key, null if none is available in the cache or if it, or
+     *         one of its parents, has been disposed and it is about to be removed from the cache.
+     */
+    private SecurityCacheEntry getLiveEntry(String key)
+    {
+        SecurityCacheEntry entry = cache.get(key);
+
+        return (entry != null && isLive(entry)) ? entry : null;
+    }
+
+    /**
+     * The cascaded removal of the children of a disposed entry is done under the write lock while the entries are read
+     * without lock, so a child might still be in the cache right after its parent has been disposed.
+     *
+     * @param entry the entry to check
+     * @return true if neither the entry nor any of its ancestors has been disposed
+     */
+    private boolean isLive(SecurityCacheEntry entry)
+    {
+        Deque<SecurityCacheEntry> entriesToCheck = new ArrayDeque<>();
+        Collection<SecurityCacheEntry> checkedEntries = new HashSet<>();
+        entriesToCheck.push(entry);
+        while (!entriesToCheck.isEmpty()) {
+            SecurityCacheEntry currentEntry = entriesToCheck.pop();
+            if (currentEntry.disposed) {
+                return false;
+            }
+
+            Collection<SecurityCacheEntry> currentParents = currentEntry.parents;
+            if (currentParents != null) {
+                for (SecurityCacheEntry parent : currentParents) {
+                    // The same group can be reached through several paths
+                    if (checkedEntries.add(parent)) {
+                        entriesToCheck.push(parent);
+                    }
+                }
+            }
         }
+
+        return true;
     }
 
     /**
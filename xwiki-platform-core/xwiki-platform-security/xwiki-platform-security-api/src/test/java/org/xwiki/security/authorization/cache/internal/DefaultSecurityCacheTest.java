@@ -26,6 +26,8 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -809,4 +811,97 @@ public boolean keepAccess(SecurityAccessEntry entry) {
             }
         });
     }
+
+    @Test
+    public void testEntriesOfARemovedParentAreNotReturned() throws Exception
+    {
+        InsertEntities();
+
+        // Read the document while the entries are removed, once its parent space has been disposed
+        final List<SecurityRuleEntry> readEntries = new ArrayList<SecurityRuleEntry>();
+        final AtomicBoolean spaceRemoved = new AtomicBoolean();
+        cache.setRemovalListener(key -> {
+            if (spaceRemoved.getAndSet(true)) {
+                readEntries.add(securityCache.get(xdocRef));
+            }
+        });
+
+        try {
+            securityCache.remove(xspaceRef);
+        } finally {
+            cache.setRemovalListener(null);
+        }
+
+        assertThat(readEntries.isEmpty(), is(false));
+        for (SecurityRuleEntry readEntry : readEntries) {
+            assertThat(readEntry, nullValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsDuringRemoval() throws Exception
+    {
+        // Fill the cache
+        Map<String, SecurityEntry> entries = InsertUsers();
+        entries.putAll(InsertEntities());
+        entries.putAll(InsertAccess());
+
+        // Resolve the references before starting the readers
+        final List<SecurityReference[]> readReferences = new ArrayList<SecurityReference[]>();
+        for (SecurityEntry entry : entries.values()) {
+            if (entry instanceof SecurityAccessEntry) {
+                readReferences.add(new SecurityReference[] {((SecurityAccessEntry) entry).getUserReference(),
+                    entry.getReference()});
+            } else if (entry instanceof SecurityRuleEntry) {
+                readReferences.add(new SecurityReference[] {entry.getReference()});
+            }
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; ++i) {
+            Thread reader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        for (int pass = 0; running.get() && pass < 1000; ++pass) {
+                            for (SecurityReference[] references : readReferences) {
+                                if (references.length == 2) {
+                                    securityCache.get((UserSecurityReference) references[0], references[1]);
+                                } else {
+                                    securityCache.get(references[0]);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // Remove entries while they are being read, the cache content is validated after each removal
+        try {
+            removerTest(entries, new Remover()
+            {
+                @Override
+                public void remove(SecurityReference ref)
+                {
+                    securityCache.remove(ref);
+                }
+            });
+        } finally {
+            running.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        assertThat(failure.get(), nullValue());
+    }
 }
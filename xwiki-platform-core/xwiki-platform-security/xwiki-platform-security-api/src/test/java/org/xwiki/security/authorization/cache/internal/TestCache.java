@@ -20,8 +20,9 @@
 
 package org.xwiki.security.authorization.cache.internal;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheEntry;
@@ -43,9 +44,10 @@
  */
 public class TestCache<T> implements Cache<T>
 {
-    private Map<String, T> cache = new HashMap<String, T>();
+    private Map<String, T> cache = new ConcurrentHashMap<String, T>();
     private CacheEntryListener<T> listener;
-    private String lastInsertedKey;
+    private volatile String lastInsertedKey;
+    private volatile Consumer<String> removalListener;
 
     class TestCacheEntry implements CacheEntry<T>
     {
@@ -123,6 +125,10 @@ public T get(String key)
     @Override
     public void remove(String key)
     {
+        if (removalListener != null) {
+            removalListener.accept(key);
+        }
+
         T value = cache.remove(key);
         if (listener != null) {
             listener.cacheEntryRemoved(getEvent(key, value));
@@ -166,6 +172,14 @@ private void disposeCacheValue(T value)
         }
     }
 
+    /**
+     * @param removalListener called with the key of each removed entry, before it's actually removed
+     */
+    public void setRemovalListener(Consumer<String> removalListener)
+    {
+        this.removalListener = removalListener;
+    }
+
     public String getLastInsertedKey()
     {
         return lastInsertedKey;
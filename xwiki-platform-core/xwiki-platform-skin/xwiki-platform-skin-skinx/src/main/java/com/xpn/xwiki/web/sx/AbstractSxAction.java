@@ -27,9 +27,12 @@
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import org.xwiki.skinx.internal.SxOutput;
+import org.xwiki.skinx.internal.SxOutputCache;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.XWikiAction;
 import com.xpn.xwiki.web.XWikiRequest;
 import com.xpn.xwiki.web.XWikiResponse;
@@ -59,8 +62,23 @@ public abstract class AbstractSxAction extends XWikiAction
     /** What http header parameter is used to specify when the cache should expire. */
     private static final String CACHE_EXPIRES_HEADER = "Expires";
 
-    /** The response will be sent to the browser as a byte array in this character set. */
-    private static final String RESPONSE_CHARACTER_SET = "UTF-8";
+    /** What http header parameter is used to specify the identifier of the content. */
+    private static final String ETAG_HEADER = "ETag";
+
+    /** What http header parameter is used by the browser to indicate the content it already has. */
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    /** What http header parameter is used by the browser to indicate the encodings it supports. */
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    /** What http header parameter is used to specify the encoding of the content. */
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    /** What http header parameter is used to specify the request headers the response depends on. */
+    private static final String VARY_HEADER = "Vary";
+
+    /** The gzip content encoding. */
+    private static final String GZIP_ENCODING = "gzip";
 
     /** If the user passes this parameter in the URL, we will look for the script in the jar files. */
     private static final String JAR_RESOURCE_REQUEST_PARAMETER = "resource";
@@ -109,18 +127,72 @@ public void renderExtension(SxSource sxSource, Extension sxType, XWikiContext co
             response.setHeader(CACHE_CONTROL_HEADER, "no-cache, no-store, must-revalidate");
         }
 
-        if (BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(
-            request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"))) {
-            extensionContent = sxType.getCompressor().compress(extensionContent);
-        }
+        boolean compress =
+            BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"));
 
         try {
-            response.setContentLength(extensionContent.getBytes(RESPONSE_CHARACTER_SET).length);
-            response.getOutputStream().write(extensionContent.getBytes(RESPONSE_CHARACTER_SET));
+            SxOutput output = Utils.getComponent(SxOutputCache.class).getOutput(extensionContent, sxType, compress,
+                cachePolicy != CachePolicy.FORBID);
+
+            boolean gzipped = output.getGzippedContent() != null && acceptsGzip(request);
+
+            response.setHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+
+            if (cachePolicy != CachePolicy.FORBID) {
+                String etag = output.getETag(gzipped);
+                response.setHeader(ETAG_HEADER, etag);
+
+                if (matches(request.getHeader(IF_NONE_MATCH_HEADER), etag)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+                    return;
+                }
+            }
+
+            byte[] content;
+            if (gzipped) {
+                response.setHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING);
+                content = output.getGzippedContent();
+            } else {
+                content = output.getContent();
+            }
+
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
         } catch (IOException ex) {
             getLogger().warn("Failed to send SX content: [{}]", ex.getMessage());
         }
+    }
+
+    private boolean acceptsGzip(XWikiRequest request)
+    {
+        String acceptEncoding = request.getHeader(ACCEPT_ENCODING_HEADER);
+
+        if (acceptEncoding != null) {
+            for (String encoding : StringUtils.split(acceptEncoding, ',')) {
+                String[] parameters = StringUtils.split(encoding, ';');
+                if (parameters.length > 0 && GZIP_ENCODING.equalsIgnoreCase(parameters[0].trim())) {
+                    // gzip;q=0 means that gzip is not accepted
+                    return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean matches(String ifNoneMatch, String etag)
+    {
+        if (ifNoneMatch != null) {
+            for (String value : StringUtils.split(ifNoneMatch, ',')) {
+                String trimmedValue = value.trim();
+                if (trimmedValue.equals("*") || trimmedValue.equals(etag)) {
+                    return true;
+                }
+            }
+        }
 
+        return false;
     }
 
     @Override
@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The bytes to send for a skin extension, in plain and (when it's kept in memory) gzip encoding.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class SxOutput
+{
+    private final String etag;
+
+    private final byte[] content;
+
+    private final byte[] gzippedContent;
+
+    /**
+     * @param content the content to send
+     * @param etag the identifier of the content, used to generate the HTTP entity tags
+     * @throws IOException when failing to compress the content
+     */
+    public SxOutput(String content, String etag) throws IOException
+    {
+        this(content, etag, true);
+    }
+
+    /**
+     * @param content the content to send
+     * @param etag the identifier of the content, used to generate the HTTP entity tags
+     * @param gzip true if the gzip encoded content should be computed, which is only worth it if the output is reused
+     *            for several requests
+     * @throws IOException when failing to compress the content
+     */
+    public SxOutput(String content, String etag, boolean gzip) throws IOException
+    {
+        this.etag = etag;
+        this.content = content.getBytes(StandardCharsets.UTF_8);
+        this.gzippedContent = gzip ? gzip(this.content) : null;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(stream)) {
+            gzipStream.write(content);
+        }
+
+        // Not worth it for very small contents
+        return stream.size() < content.length ? stream.toByteArray() : null;
+    }
+
+    /**
+     * @param gzipped true if the gzip encoded content is sent
+     * @return the strong HTTP entity tag of the content
+     */
+    public String getETag(boolean gzipped)
+    {
+        // Each encoding is a different representation so it needs a different strong entity tag
+        return gzipped ? '"' + this.etag + "-gzip\"" : '"' + this.etag + '"';
+    }
+
+    /**
+     * @return the content encoded in UTF-8
+     */
+    public byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the content encoded in UTF-8 and compressed with gzip or null if it's not smaller than the plain content
+     *         or if it was not computed
+     */
+    public byte[] getGzippedContent()
+    {
+        return this.gzippedContent;
+    }
+}
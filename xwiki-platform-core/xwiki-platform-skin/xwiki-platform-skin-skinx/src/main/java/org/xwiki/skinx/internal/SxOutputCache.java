@@ -0,0 +1,154 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import com.xpn.xwiki.web.sx.Extension;
+
+/**
+ * Keep the minified and gzipped output of skin extensions so that they are not compressed again on each request.
+ * <p>
+ * The key is a digest of the extension type and of the generated source. The source of a skin extension depends on
+ * the document version but also, through Velocity and LESS, on the skin, the color theme or anything in the context,
+ * so it's regenerated on each request (including the ones answered with 304 Not Modified) and only the minification
+ * and the compression are saved. A modified document or a different skin produces a different source and thus a
+ * different entry, and the entries which are not used anymore are evicted.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = SxOutputCache.class)
+@Singleton
+public class SxOutputCache implements Initializable, Disposable
+{
+    /**
+     * Identifier of the cache.
+     */
+    private static final String NAME = "skinx.cache";
+
+    /**
+     * Name of the property indicating the maximum number of skin extension outputs to keep.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default maximum number of skin extension outputs to keep.
+     */
+    private static final int PROPVALUE_SIZE = 200;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Logger logger;
+
+    private Cache<SxOutput> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE);
+
+        if (size > 0) {
+            CacheConfiguration cacheConfiguration = new CacheConfiguration();
+            cacheConfiguration.setConfigurationId(NAME);
+            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+            lru.setMaxEntries(size);
+            cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+            try {
+                this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+            } catch (CacheException e) {
+                // Skin extensions can still be served without the cache
+                this.logger.error("Failed to create the skin extensions cache", e);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * @param source the generated source of the skin extension
+     * @param extension the type of skin extension
+     * @param compress true if the source should be minified
+     * @param cacheable false if the output should not be kept in memory (nor cached by the browser), in which case it's
+     *            not gzipped either
+     * @return the output to send
+     * @throws IOException when failing to compress the content
+     */
+    public SxOutput getOutput(String source, Extension extension, boolean compress, boolean cacheable)
+        throws IOException
+    {
+        String content;
+
+        if (!cacheable) {
+            // Compressing an output sent only once with gzip costs more than what it saves
+            content = compress ? extension.getCompressor().compress(source) : source;
+
+            return new SxOutput(content, null, false);
+        }
+
+        String key = DigestUtils.sha256Hex(extension.getClassName() + '\n' + compress + '\n' + source);
+
+        SxOutput output = this.cache != null ? this.cache.get(key) : null;
+
+        if (output == null) {
+            content = compress ? extension.getCompressor().compress(source) : source;
+
+            // The output is only gzipped if it's going to be reused
+            output = new SxOutput(content, key, this.cache != null);
+
+            if (this.cache != null) {
+                this.cache.set(key, output);
+            }
+        }
+
+        return output;
+    }
+}
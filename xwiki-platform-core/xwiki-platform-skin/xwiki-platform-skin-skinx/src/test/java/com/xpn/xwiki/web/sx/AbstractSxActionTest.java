@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web.sx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.skinx.internal.SxOutput;
+import org.xwiki.skinx.internal.SxOutputCache;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.JsxAction;
+import com.xpn.xwiki.web.Utils;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+import com.xpn.xwiki.web.sx.SxSource.CachePolicy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AbstractSxAction}.
+ *
+ * @version $Id$
+ */
+public class AbstractSxActionTest
+{
+    private static final String CONTENT = StringUtils.repeat("var a = 'skin extension';\n", 100);
+
+    @Rule
+    public MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    private JsxAction action = new JsxAction();
+
+    private SxSource source = mock(SxSource.class);
+
+    private XWikiContext context = mock(XWikiContext.class);
+
+    private XWikiRequest request = mock(XWikiRequest.class);
+
+    private XWikiResponse response = mock(XWikiResponse.class);
+
+    private ByteArrayOutputStream responseContent = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Utils.setComponentManager(this.componentManager);
+
+        SxOutputCache outputCache = this.componentManager.registerMockComponent(SxOutputCache.class);
+        when(outputCache.getOutput(eq(CONTENT), eq(JsxAction.JSX), anyBoolean(), eq(true)))
+            .thenReturn(new SxOutput(CONTENT, "digest"));
+        when(outputCache.getOutput(eq(CONTENT), eq(JsxAction.JSX), anyBoolean(), eq(false)))
+            .thenReturn(new SxOutput(CONTENT, null, false));
+
+        when(this.source.getContent()).thenReturn(CONTENT);
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.LONG);
+
+        when(this.context.getRequest()).thenReturn(this.request);
+        when(this.context.getResponse()).thenReturn(this.response);
+        ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        when(this.response.getOutputStream()).thenReturn(outputStream);
+        doAnswer(invocation -> {
+            this.responseContent.write(invocation.<byte[]>getArgument(0));
+            return null;
+        }).when(outputStream).write(any(byte[].class));
+    }
+
+    @Test
+    public void renderExtensionSendsTheContentWithAnETag() throws Exception
+    {
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response).setHeader("ETag", "\"digest\"");
+        verify(this.response).setHeader("Vary", "Accept-Encoding");
+        verify(this.response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(this.response).setContentLength(CONTENT.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(CONTENT, new String(this.responseContent.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void renderExtensionWhenTheBrowserHasTheContent() throws Exception
+    {
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"other\", \"digest\"");
+
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response).setHeader("ETag", "\"digest\"");
+        verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response, never()).getOutputStream();
+    }
+
+    @Test
+    public void renderExtensionWhenTheBrowserHasAnotherContent() throws Exception
+    {
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"other\"");
+
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response, never()).setHeader(eq("Content-Encoding"), any());
+        assertEquals(CONTENT, new String(this.responseContent.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void renderExtensionWhenTheBrowserAcceptsGzip() throws Exception
+    {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=1.0");
+
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response).setHeader("ETag", "\"digest-gzip\"");
+        verify(this.response).setHeader("Content-Encoding", "gzip");
+        verify(this.response).setContentLength(this.responseContent.size());
+        ByteArrayInputStream gzippedContent = new ByteArrayInputStream(this.responseContent.toByteArray());
+        try (GZIPInputStream stream = new GZIPInputStream(gzippedContent)) {
+            assertArrayEquals(CONTENT.getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void renderExtensionWhenTheBrowserHasTheGzippedContent() throws Exception
+    {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        // The plain content is a different representation
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"digest\"");
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+        verify(this.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        when(this.request.getHeader("If-None-Match")).thenReturn("\"digest-gzip\"");
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+        verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void renderExtensionWhenTheBrowserRefusesGzip() throws Exception
+    {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, identity");
+
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response).setHeader("ETag", "\"digest\"");
+        verify(this.response, never()).setHeader(eq("Content-Encoding"), anyString());
+        assertEquals(CONTENT, new String(this.responseContent.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void renderExtensionWhenCachingIsForbidden() throws Exception
+    {
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.FORBID);
+        when(this.request.getHeader("If-None-Match")).thenReturn("*");
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        this.action.renderExtension(this.source, JsxAction.JSX, this.context);
+
+        verify(this.response, never()).setHeader(eq("ETag"), any());
+        verify(this.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response, never()).setHeader(eq("Content-Encoding"), any());
+        assertEquals(CONTENT, new String(this.responseContent.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -20,24 +20,50 @@
 package org.xwiki.uiextension.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
+import javax.inject.Singleton;
 
 import org.slf4j.Logger;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.internal.multi.ComponentManagerManager;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.namespace.Namespace;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.ModelContext;
+import org.xwiki.model.namespace.DocumentNamespace;
+import org.xwiki.model.namespace.SpaceNamespace;
+import org.xwiki.model.namespace.UserNamespace;
+import org.xwiki.model.namespace.WikiNamespace;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.uiextension.UIExtension;
 import org.xwiki.uiextension.UIExtensionManager;
 
 /**
  * Default UIExtensionManager, retrieves all the extensions for a given extension point.
+ * <p>
+ * The extensions are indexed by extension point for each combination of namespaces (user, document, space, wiki)
+ * having its own Component Manager. The index is updated when {@link UIExtension} components are registered or
+ * unregistered (see {@link UIExtensionComponentListener}).
  *
  * @version $Id$
  * @since 4.3.1
  */
+@Component
+@Singleton
 public class DefaultUIExtensionManager implements UIExtensionManager
 {
     /**
@@ -55,22 +81,173 @@ public class DefaultUIExtensionManager implements UIExtensionManager
     @Named("context")
     private Provider<ComponentManager> contextComponentManagerProvider;
 
+    /**
+     * Used to find which namespaces have their own Component Manager.
+     */
+    @Inject
+    private ComponentManagerManager componentManagerManager;
+
+    /**
+     * Used to access the current user and document.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Used to access the current wiki.
+     */
+    @Inject
+    private ModelContext modelContext;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    /**
+     * The extensions indexed by extension point id, for each list of namespaces with a Component Manager.
+     */
+    private final ConcurrentMap<List<String>, ConcurrentMap<String, List<UIExtension>>> index =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the extension points provided by the extensions registered with a given hint.
+     */
+    private final ConcurrentMap<String, Set<String>> extensionPointsByHint = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented each time the index is modified, to avoid indexing a list of extensions computed before the
+     * modification.
+     */
+    private final AtomicLong version = new AtomicLong();
+
     @Override
     public List<UIExtension> get(String extensionPointId)
     {
-        List<UIExtension> extensions = new ArrayList<UIExtension>();
+        ConcurrentMap<String, List<UIExtension>> namespaceIndex =
+            this.index.computeIfAbsent(getNamespaces(), key -> new ConcurrentHashMap<>());
 
-        try {
-            List<UIExtension> allExtensions = contextComponentManagerProvider.get().getInstanceList(UIExtension.class);
-            for (UIExtension extension : allExtensions) {
-                if (extension.getExtensionPointId().equals(extensionPointId)) {
-                    extensions.add(extension);
+        List<UIExtension> extensions = namespaceIndex.get(extensionPointId);
+
+        if (extensions == null) {
+            long currentVersion = this.version.get();
+
+            extensions = new ArrayList<UIExtension>();
+
+            try {
+                Map<String, UIExtension> allExtensions =
+                    this.contextComponentManagerProvider.get().getInstanceMap(UIExtension.class);
+                for (Map.Entry<String, UIExtension> entry : allExtensions.entrySet()) {
+                    UIExtension extension = entry.getValue();
+                    if (extension.getExtensionPointId().equals(extensionPointId)) {
+                        extensions.add(extension);
+                    }
+                    addExtensionPoint(entry.getKey(), extension.getExtensionPointId());
                 }
+            } catch (ComponentLookupException e) {
+                this.logger.error("Failed to lookup UIExtension instances, error: [{}]", e);
+
+                return extensions;
+            }
+
+            extensions = Collections.unmodifiableList(extensions);
+
+            // Don't index extensions which might have been registered or unregistered during the lookup
+            if (currentVersion == this.version.get()) {
+                namespaceIndex.put(extensionPointId, extensions);
             }
-        } catch (ComponentLookupException e) {
-            logger.error("Failed to lookup UIExtension instances, error: [{}]", e);
         }
 
-        return extensions;
+        // The callers are free to modify the returned list
+        return new ArrayList<>(extensions);
+    }
+
+    /**
+     * Update the index after a {@link UIExtension} component has been registered.
+     *
+     * @param roleHint the hint of the registered extension
+     * @since 9.12RC1
+     */
+    public void onUIExtensionAdded(String roleHint)
+    {
+        // The extension point of the new extension is only known once it's instantiated, which is left to the next
+        // lookup (many extensions are registered at startup and most of them are never displayed)
+        clear();
+    }
+
+    /**
+     * Update the index after a {@link UIExtension} component has been unregistered.
+     *
+     * @param roleHint the hint of the unregistered extension
+     * @since 9.12RC1
+     */
+    public void onUIExtensionRemoved(String roleHint)
+    {
+        // Extensions which have never been indexed can't be part of the index
+        Set<String> extensionPoints = this.extensionPointsByHint.get(roleHint);
+        if (extensionPoints != null) {
+            for (String extensionPointId : extensionPoints) {
+                invalidate(extensionPointId);
+            }
+        }
+    }
+
+    private void addExtensionPoint(String roleHint, String extensionPointId)
+    {
+        this.extensionPointsByHint.computeIfAbsent(roleHint, key -> ConcurrentHashMap.newKeySet())
+            .add(extensionPointId);
+    }
+
+    private void invalidate(String extensionPointId)
+    {
+        this.version.incrementAndGet();
+
+        for (Map<String, List<UIExtension>> namespaceIndex : this.index.values()) {
+            namespaceIndex.remove(extensionPointId);
+        }
+    }
+
+    private void clear()
+    {
+        this.version.incrementAndGet();
+
+        this.index.clear();
+    }
+
+    /**
+     * @return the current namespaces which have their own Component Manager, in the order in which the Context
+     *         Component Manager is looking for components
+     */
+    private List<String> getNamespaces()
+    {
+        List<String> namespaces = new ArrayList<>();
+
+        DocumentReference userReference = this.documentAccessBridge.getCurrentUserReference();
+        if (userReference != null) {
+            addNamespace(new UserNamespace(this.serializer.serialize(userReference)), namespaces);
+        }
+
+        DocumentReference documentReference = this.documentAccessBridge.getCurrentDocumentReference();
+        if (documentReference != null) {
+            addNamespace(new DocumentNamespace(this.serializer.serialize(documentReference)), namespaces);
+            addNamespace(new SpaceNamespace(this.serializer.serialize(documentReference.getLastSpaceReference())),
+                namespaces);
+        }
+
+        EntityReference currentReference = this.modelContext.getCurrentEntityReference();
+        EntityReference wikiReference =
+            currentReference != null ? currentReference.extractReference(EntityType.WIKI) : null;
+        if (wikiReference != null) {
+            addNamespace(new WikiNamespace(wikiReference.getName()), namespaces);
+        }
+
+        return namespaces;
+    }
+
+    private void addNamespace(Namespace namespace, List<String> namespaces)
+    {
+        String serializedNamespace = namespace.serialize();
+
+        if (this.componentManagerManager.getComponentManager(serializedNamespace, false) != null) {
+            namespaces.add(serializedNamespace);
+        }
     }
 }
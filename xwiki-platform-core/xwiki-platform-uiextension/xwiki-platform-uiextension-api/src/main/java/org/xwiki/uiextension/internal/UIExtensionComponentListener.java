@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.uiextension.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.uiextension.UIExtension;
+import org.xwiki.uiextension.UIExtensionManager;
+
+/**
+ * Keep the index of {@link DefaultUIExtensionManager} up to date when {@link UIExtension} components are registered or
+ * unregistered.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component
+@Named(UIExtensionComponentListener.NAME)
+@Singleton
+public class UIExtensionComponentListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.uiextension.internal.UIExtensionComponentListener";
+
+    @Inject
+    private Provider<UIExtensionManager> uiExtensionManagerProvider;
+
+    /**
+     * Default constructor.
+     */
+    public UIExtensionComponentListener()
+    {
+        super(NAME, new ComponentDescriptorAddedEvent(UIExtension.class),
+            new ComponentDescriptorRemovedEvent(UIExtension.class));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        UIExtensionManager manager = this.uiExtensionManagerProvider.get();
+
+        if (manager instanceof DefaultUIExtensionManager) {
+            if (event instanceof ComponentDescriptorAddedEvent) {
+                ((DefaultUIExtensionManager) manager)
+                    .onUIExtensionAdded(((ComponentDescriptorAddedEvent) event).getRoleHint());
+            } else {
+                ((DefaultUIExtensionManager) manager)
+                    .onUIExtensionRemoved(((ComponentDescriptorRemovedEvent) event).getRoleHint());
+            }
+        }
+    }
+}
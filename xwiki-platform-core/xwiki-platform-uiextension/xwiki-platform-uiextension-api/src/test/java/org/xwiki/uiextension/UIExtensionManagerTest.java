@@ -23,6 +23,7 @@
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 
 import org.junit.Rule;
@@ -42,18 +43,52 @@
     @Test
     public void testGet() throws Exception
     {
-        assertEquals(Arrays.asList(), this.mocker.getComponentUnderTest().get("extensionpoint"));
+        DefaultUIExtensionManager manager = (DefaultUIExtensionManager) this.mocker.getComponentUnderTest();
+
+        assertEquals(Arrays.asList(), manager.get("extensionpoint"));
 
         UIExtension uix1 = mocker.registerMockComponent(UIExtension.class, "uix1");
+        when(uix1.getId()).thenReturn("uix1");
         when(uix1.getExtensionPointId()).thenReturn("extensionpoint");
+        manager.onUIExtensionAdded("uix1");
 
         UIExtension uix2 = mocker.registerMockComponent(UIExtension.class, "uix2");
+        when(uix2.getId()).thenReturn("uix2");
         when(uix2.getExtensionPointId()).thenReturn("extensionpoint");
+        manager.onUIExtensionAdded("uix2");
 
         UIExtension notuix = mocker.registerMockComponent(UIExtension.class, "notuix");
+        when(notuix.getId()).thenReturn("notuix");
         when(notuix.getExtensionPointId()).thenReturn("notuix");
+        manager.onUIExtensionAdded("notuix");
 
         assertEquals(new HashSet<UIExtension>(Arrays.asList(uix1, uix2)), new HashSet<UIExtension>(this.mocker
             .getComponentUnderTest().get("extensionpoint")));
     }
+
+    @Test
+    public void testGetAfterUnregistration() throws Exception
+    {
+        DefaultUIExtensionManager manager = (DefaultUIExtensionManager) this.mocker.getComponentUnderTest();
+
+        UIExtension uix1 = mocker.registerMockComponent(UIExtension.class, "uix1");
+        when(uix1.getId()).thenReturn("uix1");
+        when(uix1.getExtensionPointId()).thenReturn("extensionpoint");
+
+        UIExtension uix2 = mocker.registerMockComponent(UIExtension.class, "uix2");
+        when(uix2.getId()).thenReturn("uix2");
+        when(uix2.getExtensionPointId()).thenReturn("extensionpoint");
+
+        assertEquals(new HashSet<UIExtension>(Arrays.asList(uix1, uix2)),
+            new HashSet<UIExtension>(manager.get("extensionpoint")));
+
+        // The returned list is a copy
+        manager.get("extensionpoint").clear();
+        assertEquals(2, manager.get("extensionpoint").size());
+
+        this.mocker.unregisterComponent(UIExtension.class, "uix1");
+        manager.onUIExtensionRemoved("uix1");
+
+        assertEquals(Collections.singletonList(uix2), manager.get("extensionpoint"));
+    }
 }
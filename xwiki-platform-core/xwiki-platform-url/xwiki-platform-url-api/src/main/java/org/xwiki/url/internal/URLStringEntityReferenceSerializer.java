@@ -26,6 +26,7 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.internal.reference.DefaultStringEntityReferenceSerializer;
 import org.xwiki.model.internal.reference.SymbolScheme;
+import org.xwiki.model.reference.EntityReference;
 
 /**
  * Special serializer to serialize Entity References when they're used in URLs. This is needed for
@@ -50,4 +51,11 @@ protected SymbolScheme getSymbolScheme()
     {
         return this.symbolScheme;
     }
+
+    @Override
+    protected boolean isCacheable(EntityReference reference, Object... parameters)
+    {
+        // The serialized reference only depends on the names and types of the reference and the symbol scheme
+        return getClass() == URLStringEntityReferenceSerializer.class;
+    }
 }
@@ -53,6 +53,15 @@ public void serializeReferences() throws Exception
         EntityReference reference = new DocumentReference("wiki!", Arrays.asList("space:.!"), "page.!");
         assertEquals("wiki!!:space!:!.!!.page!.!!", this.mocker.getComponentUnderTest().serialize(reference));
     }
+
+    @Test
+    public void serializeSameReferenceSeveralTimes() throws Exception
+    {
+        URLStringEntityReferenceSerializer serializer = this.mocker.getComponentUnderTest();
+        String serialized = serializer.serialize(new DocumentReference("wiki", "space", "page"));
+        assertEquals("wiki:space.page", serialized);
+        assertSame(serialized, serializer.serialize(new DocumentReference("wiki", "space", "page")));
+    }
 }
 
 
@@ -20,18 +20,32 @@
 package org.xwiki.webjars.internal;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.slf4j.Logger;
 import org.xwiki.classloader.ClassLoaderManager;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.container.Container;
+import org.xwiki.container.servlet.ServletRequest;
+import org.xwiki.container.servlet.ServletResponse;
+import org.xwiki.resource.ResourceReference;
+import org.xwiki.resource.ResourceReferenceHandlerChain;
 import org.xwiki.resource.ResourceReferenceHandlerException;
 import org.xwiki.resource.ResourceType;
 import org.xwiki.resource.servlet.AbstractServletResourceReferenceHandler;
@@ -50,14 +64,16 @@
 public class WebJarsResourceReferenceHandler extends AbstractServletResourceReferenceHandler<WebJarsResourceReference>
 {
     /**
-     * Prefix for locating resource files (JavaScript, CSS) in the classloader.
+     * The encoding used when evaluating WebJar (text) resources.
      */
-    private static final String WEBJARS_RESOURCE_PREFIX = "META-INF/resources/webjars/";
+    private static final String UTF8 = "UTF-8";
 
     /**
-     * The encoding used when evaluating WebJar (text) resources.
+     * One year duration can be considered as permanent caching.
      */
-    private static final String UTF8 = "UTF-8";
+    private static final long CACHE_DURATION = 365 * 24 * 3600 * 1000L;
+
+    private static final String GZIP = "gzip";
 
     /**
      * Used to evaluate the Velocity code from the WebJar resources.
@@ -68,16 +84,42 @@ public class WebJarsResourceReferenceHandler extends AbstractServletResourceRefe
     @Inject
     private ClassLoaderManager classLoaderManager;
 
+    @Inject
+    private WebJarsResourceStore store;
+
+    @Inject
+    private Container container;
+
+    @Inject
+    private Logger logger;
+
     @Override
     public List<ResourceType> getSupportedResourceReferences()
     {
         return Arrays.asList(WebJarsResourceReference.TYPE);
     }
 
+    @Override
+    public void handle(ResourceReference resourceReference, ResourceReferenceHandlerChain chain)
+        throws ResourceReferenceHandlerException
+    {
+        WebJarsResourceReference webJarsResourceReference = (WebJarsResourceReference) resourceReference;
+
+        // Static resources are served from their extracted copy, the others (or the ones that could not be extracted)
+        // are read from the jar. The standard handling also takes care of refusing the inaccessible resources.
+        if (isResourceAccessible(webJarsResourceReference) && isResourceCacheable(webJarsResourceReference)
+            && serveStaticResource(webJarsResourceReference)) {
+            chain.handleNext(resourceReference);
+        } else {
+            super.handle(resourceReference, chain);
+        }
+    }
+
     @Override
     protected InputStream getResourceStream(WebJarsResourceReference resourceReference)
     {
-        String resourcePath = String.format("%s%s", WEBJARS_RESOURCE_PREFIX, getResourceName(resourceReference));
+        String resourcePath =
+            String.format("%s%s", WebJarsResourceStore.WEBJARS_RESOURCE_PREFIX, getResourceName(resourceReference));
         return getClassLoader(resourceReference.getNamespace()).getResourceAsStream(resourcePath);
     }
 
@@ -113,6 +155,100 @@ protected InputStream filterResource(WebJarsResourceReference resourceReference,
         return super.filterResource(resourceReference, resourceStream);
     }
 
+    /**
+     * @param resourceReference the reference of the requested resource
+     * @return {@code true} if the resource has been served, {@code false} if it should be served from the jar
+     */
+    private boolean serveStaticResource(WebJarsResourceReference resourceReference)
+        throws ResourceReferenceHandlerException
+    {
+        if (!(this.container.getRequest() instanceof ServletRequest)
+            || !(this.container.getResponse() instanceof ServletResponse)) {
+            return false;
+        }
+
+        WebJarsStaticResource resource;
+        try {
+            resource = this.store.getResource(resourceReference.getNamespace(), getResourceName(resourceReference),
+                getClassLoader(resourceReference.getNamespace()));
+        } catch (IOException e) {
+            this.logger.warn("Failed to extract the WebJar resource [{}]: {}", getResourceName(resourceReference),
+                e.getMessage());
+            return false;
+        }
+
+        if (resource == null) {
+            // Let the standard handling send the error
+            return false;
+        }
+
+        HttpServletRequest request = ((ServletRequest) this.container.getRequest()).getHttpServletRequest();
+        HttpServletResponse response = ((ServletResponse) this.container.getResponse()).getHttpServletResponse();
+
+        boolean gzipped = resource.getGzipFile() != null && acceptsGzip(request);
+        String etag = resource.getETag(gzipped);
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public");
+        response.setDateHeader(HttpHeaders.EXPIRES, new Date().getTime() + CACHE_DURATION);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, resource.getLastModified());
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (resource.getGzipFile() != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        // The resource is static, so the browser can use its copy as soon as it has one
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null ? matches(ifNoneMatch, etag)
+            : request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        File file = gzipped ? resource.getGzipFile() : resource.getFile();
+        response.setContentType(resource.getContentType());
+        if (gzipped) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(file.length()));
+        try {
+            FileUtils.copyFile(file, response.getOutputStream());
+        } catch (IOException e) {
+            throw new ResourceReferenceHandlerException(
+                String.format("Failed to read resource [%s]", getResourceName(resourceReference)), e);
+        }
+
+        return true;
+    }
+
+    private boolean matches(String ifNoneMatch, String etag)
+    {
+        for (String value : StringUtils.split(ifNoneMatch, ',')) {
+            String trimmedValue = value.trim();
+            if (trimmedValue.equals(etag) || "*".equals(trimmedValue)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request)
+    {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null) {
+            for (String value : StringUtils.split(acceptEncoding, ',')) {
+                String[] parts = StringUtils.split(value, ';');
+                if (parts.length > 0 && GZIP.equalsIgnoreCase(parts[0].trim())) {
+                    // "gzip;q=0" means the encoding is not accepted
+                    return parts.length == 1 || !parts[1].trim().matches("q\\s*=\\s*0(\\.0*)?");
+                }
+            }
+        }
+
+        return false;
+    }
+
     /**
      * @return the Class Loader from which to look for WebJars resources
      */
@@ -0,0 +1,224 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.webjars.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+
+/**
+ * Extract the static WebJar resources on disk, with a gzipped variant for the resources that compress well, so that
+ * they can be served without looking in the jars and compressing them again on each request.
+ * <p>
+ * The extracted files are named after the digest of their content, so the same content found in several jars or
+ * several versions of a WebJar is stored only once.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component(roles = WebJarsResourceStore.class)
+@Singleton
+public class WebJarsResourceStore implements Initializable
+{
+    /**
+     * Prefix for locating resource files (JavaScript, CSS) in the classloader.
+     */
+    public static final String WEBJARS_RESOURCE_PREFIX = "META-INF/resources/webjars/";
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Used to determine the Content Type of the resource files.
+     */
+    private Tika tika = new Tika();
+
+    private File rootDirectory;
+
+    /**
+     * The extracted resources indexed by the URL of the resource in its jar.
+     */
+    private final ConcurrentMap<String, WebJarsStaticResource> resources = new ConcurrentHashMap<>();
+
+    /**
+     * The extracted resources indexed by namespace and resource path, to avoid looking in the class loader.
+     */
+    private final ConcurrentMap<String, WebJarsStaticResource> lookups = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.rootDirectory = new File(this.environment.getTemporaryDirectory(), "webjars");
+    }
+
+    /**
+     * @param namespace the namespace where the resource is looked for
+     * @param resourceName the name of the resource (without the WebJars prefix)
+     * @param classLoader the class loader from which to load the resource
+     * @return the extracted resource or {@code null} if no resource with this name exists
+     * @throws IOException when failing to extract the resource
+     */
+    public WebJarsStaticResource getResource(String namespace, String resourceName, ClassLoader classLoader)
+        throws IOException
+    {
+        String lookupKey = namespace + '\n' + resourceName;
+        WebJarsStaticResource resource = this.lookups.get(lookupKey);
+        if (resource != null && resource.exists()) {
+            return resource;
+        }
+
+        String resourcePath = WEBJARS_RESOURCE_PREFIX + resourceName;
+        URL url = classLoader.getResource(resourcePath);
+        if (url == null) {
+            // Don't remember missing resources, anyone can ask for random names
+            return null;
+        }
+
+        String resourceKey = url.toString();
+        resource = this.resources.get(resourceKey);
+        if (resource == null || !resource.exists()) {
+            try (InputStream stream = url.openStream()) {
+                resource = store(IOUtils.toByteArray(stream), resourcePath);
+            }
+            this.resources.put(resourceKey, resource);
+        }
+
+        this.lookups.put(lookupKey, resource);
+
+        return resource;
+    }
+
+    /**
+     * Extract all the WebJar resources of a jar.
+     *
+     * @param jarFile the jar
+     */
+    public void index(File jarFile)
+    {
+        try (JarFile jar = new JarFile(jarFile)) {
+            String jarURL = "jar:" + jarFile.toURI().toURL() + "!/";
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().startsWith(WEBJARS_RESOURCE_PREFIX)) {
+                    try (InputStream stream = jar.getInputStream(entry)) {
+                        this.resources.put(jarURL + entry.getName(),
+                            store(IOUtils.toByteArray(stream), entry.getName()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to index the WebJar resources of [{}]: {}", jarFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Forget which resource each name points to, because a jar has been added or removed.
+     */
+    public void reset()
+    {
+        this.lookups.clear();
+    }
+
+    private WebJarsStaticResource store(byte[] content, String name) throws IOException
+    {
+        String digest = DigestUtils.sha256Hex(content);
+        String contentType = this.tika.detect(content, name);
+
+        File file = new File(this.rootDirectory, digest);
+        if (!file.isFile()) {
+            write(file, content);
+        }
+
+        File gzipFile = null;
+        if (isCompressible(contentType)) {
+            gzipFile = new File(this.rootDirectory, digest + GZIP_EXTENSION);
+            if (!gzipFile.isFile()) {
+                byte[] gzipped = gzip(content);
+                if (gzipped.length < content.length) {
+                    write(gzipFile, gzipped);
+                } else {
+                    gzipFile = null;
+                }
+            }
+        }
+
+        return new WebJarsStaticResource(file, gzipFile, contentType, digest);
+    }
+
+    private boolean isCompressible(String contentType)
+    {
+        return contentType.startsWith("text/") || contentType.contains("javascript") || contentType.contains("json")
+            || contentType.contains("xml") || "application/x-font-ttf".equals(contentType)
+            || "application/vnd.ms-fontobject".equals(contentType);
+    }
+
+    private byte[] gzip(byte[] content) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(content);
+        }
+
+        return output.toByteArray();
+    }
+
+    private void write(File file, byte[] content) throws IOException
+    {
+        // Write in a temporary file first so that a partially written file is never served
+        this.rootDirectory.mkdirs();
+        File temporaryFile = File.createTempFile(file.getName(), null, this.rootDirectory);
+        try {
+            FileUtils.writeByteArrayToFile(temporaryFile, content);
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+}
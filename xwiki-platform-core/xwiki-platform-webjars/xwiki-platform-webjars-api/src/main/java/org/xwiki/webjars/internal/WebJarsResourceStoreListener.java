@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.webjars.internal;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.extension.InstalledExtension;
+import org.xwiki.extension.event.ExtensionInstalledEvent;
+import org.xwiki.extension.event.ExtensionUninstalledEvent;
+import org.xwiki.extension.event.ExtensionUpgradedEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Extract the resources of the WebJars when they are installed and make sure the removed WebJars are not served
+ * anymore.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+@Component
+@Named(WebJarsResourceStoreListener.NAME)
+@Singleton
+public class WebJarsResourceStoreListener implements EventListener
+{
+    /**
+     * The name of the event listener.
+     */
+    public static final String NAME = "webjars.resourceStore";
+
+    /**
+     * The type of extension supported by this listener.
+     */
+    private static final String EXTENSION_TYPE = "webjar";
+
+    /**
+     * The events to listen.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event>asList(new ExtensionInstalledEvent(),
+        new ExtensionUninstalledEvent(), new ExtensionUpgradedEvent());
+
+    @Inject
+    private WebJarsResourceStore store;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        InstalledExtension extension = (InstalledExtension) source;
+
+        if (EXTENSION_TYPE.equals(extension.getType())) {
+            if (!(event instanceof ExtensionUninstalledEvent) && extension.getFile() != null) {
+                this.store.index(new File(extension.getFile().getAbsolutePath()));
+            }
+
+            // The same resource name might now point to another jar
+            this.store.reset();
+        }
+    }
+}
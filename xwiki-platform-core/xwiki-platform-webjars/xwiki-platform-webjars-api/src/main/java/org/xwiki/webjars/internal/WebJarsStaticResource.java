@@ -0,0 +1,106 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.webjars.internal;
+
+import java.io.File;
+
+/**
+ * A WebJar resource extracted on disk, with its compressed variant when compressing it is worth it.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class WebJarsStaticResource
+{
+    private final File file;
+
+    private final File gzipFile;
+
+    private final String contentType;
+
+    private final String digest;
+
+    private final long lastModified;
+
+    /**
+     * @param file the file holding the content of the resource
+     * @param gzipFile the file holding the gzipped content of the resource, {@code null} if there is none
+     * @param contentType the content type of the resource
+     * @param digest the digest of the content of the resource
+     */
+    public WebJarsStaticResource(File file, File gzipFile, String contentType, String digest)
+    {
+        this.file = file;
+        this.gzipFile = gzipFile;
+        this.contentType = contentType;
+        this.digest = digest;
+        // HTTP dates have a precision of one second
+        this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    /**
+     * @return the file holding the content of the resource
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return the file holding the gzipped content of the resource, {@code null} if there is none
+     */
+    public File getGzipFile()
+    {
+        return this.gzipFile;
+    }
+
+    /**
+     * @return the content type of the resource
+     */
+    public String getContentType()
+    {
+        return this.contentType;
+    }
+
+    /**
+     * @return the date when the resource has been indexed
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @param gzipped whether the gzipped content is sent
+     * @return the strong entity tag of the sent content
+     */
+    public String getETag(boolean gzipped)
+    {
+        return '"' + (gzipped ? this.digest + "-gzip" : this.digest) + '"';
+    }
+
+    /**
+     * @return {@code true} if the files of the resource are still on disk
+     */
+    public boolean exists()
+    {
+        return this.file.isFile() && (this.gzipFile == null || this.gzipFile.isFile());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.webjars.internal;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link WebJarsResourceStore}.
+ *
+ * @version $Id$
+ * @since 9.12RC1
+ */
+public class WebJarsResourceStoreTest
+{
+    private static final File TEMPORARY_DIRECTORY = new File("target/test-" + WebJarsResourceStoreTest.class.getName());
+
+    private static final String CSS = "font-awesome/4.7.0/css/font-awesome.css";
+
+    @Rule
+    public MockitoComponentMockingRule<WebJarsResourceStore> mocker =
+        new MockitoComponentMockingRule<>(WebJarsResourceStore.class);
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+
+    @BeforeComponent
+    public void registerMockComponents() throws Exception
+    {
+        FileUtils.deleteDirectory(TEMPORARY_DIRECTORY);
+
+        Environment environment = this.mocker.registerMockComponent(Environment.class);
+        when(environment.getTemporaryDirectory()).thenReturn(TEMPORARY_DIRECTORY);
+    }
+
+    @Test
+    public void getResource() throws Exception
+    {
+        WebJarsStaticResource resource = this.mocker.getComponentUnderTest().getResource("wiki:xwiki", CSS,
+            this.classLoader);
+
+        assertEquals("text/css", resource.getContentType());
+        assertTrue(resource.exists());
+
+        byte[] content;
+        try (InputStream stream = this.classLoader.getResourceAsStream("META-INF/resources/webjars/" + CSS)) {
+            content = IOUtils.toByteArray(stream);
+        }
+        assertArrayEquals(content, FileUtils.readFileToByteArray(resource.getFile()));
+        try (InputStream stream = new GZIPInputStream(FileUtils.openInputStream(resource.getGzipFile()))) {
+            assertArrayEquals(content, IOUtils.toByteArray(stream));
+        }
+
+        assertTrue(resource.getETag(false).startsWith("\""));
+        assertNotEquals(resource.getETag(false), resource.getETag(true));
+
+        // The resource is not looked for again
+        assertSame(resource, this.mocker.getComponentUnderTest().getResource("wiki:xwiki", CSS, this.classLoader));
+    }
+
+    @Test
+    public void getResourceWhenCompressionIsUseless() throws Exception
+    {
+        WebJarsStaticResource resource = this.mocker.getComponentUnderTest().getResource(null,
+            "font-awesome/4.7.0/fonts/fontawesome-webfont.woff2", this.classLoader);
+
+        assertTrue(resource.exists());
+        assertNull(resource.getGzipFile());
+    }
+
+    @Test
+    public void getMissingResource() throws Exception
+    {
+        assertNull(this.mocker.getComponentUnderTest().getResource(null, "font-awesome/4.7.0/missing.css",
+            this.classLoader));
+    }
+}